@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import org.apache.kylin.common.util.CompressionUtils;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CompressionUtils on a block of serialized GTRecords, like the scan responses sent back by the coprocessor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompressionUtilsBenchmark {
+
+    /** records in the block */
+    @Param({ "1000", "100000" })
+    public int records;
+
+    byte[] raw;
+    byte[] compressed;
+
+    @Setup
+    public void setup() throws IOException {
+        GTBenchmarkData data = new GTBenchmarkData(false);
+        ImmutableBitSet allColumns = data.getInfo().getAllColumns();
+
+        ByteBuffer buf = ByteBuffer.allocate(records * 64);
+        IGTScanner scanner = data.generate(records);
+        try {
+            Iterator<GTRecord> it = scanner.iterator();
+            while (it.hasNext()) {
+                it.next().exportColumns(allColumns, buf);
+            }
+        } finally {
+            scanner.close();
+        }
+
+        raw = Arrays.copyOf(buf.array(), buf.position());
+        compressed = CompressionUtils.compress(raw);
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        return CompressionUtils.compress(raw);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException, DataFormatException {
+        return CompressionUtils.decompress(compressed);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GTAggregateScanner over 1 million generated records, by group-by columns and by the type of the second measure.
+ * The generateOnly benchmark is the cost of the input alone, to be subtracted from the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GTAggregateScannerBenchmark {
+
+    static final long N = 1000000;
+
+    @Param({ "0,1", "0,2", "0,1,2,3" })
+    public String groupBy;
+
+    @Param({ "false", "true" })
+    public boolean hllc;
+
+    GTBenchmarkData data;
+    GTScanRequest req;
+
+    @Setup
+    public void setup() {
+        data = new GTBenchmarkData(hllc);
+        req = new GTScanRequestBuilder().setInfo(data.getInfo()).setRanges(null).setDimensions(GTBenchmarkData.DIMENSIONS) //
+                .setAggrGroupBy(GTBenchmarkData.columns(groupBy)).setAggrMetrics(GTBenchmarkData.METRICS).setAggrMetricsFuncs(data.getAggrFuncs()) //
+                .setFilterPushDown(null).createGTScanRequest();
+    }
+
+    @Benchmark
+    public long generateOnly() throws IOException {
+        return GTBenchmarkData.count(data.generate(N));
+    }
+
+    @Benchmark
+    public long aggregate() throws IOException {
+        return GTBenchmarkData.count(req.decorateScanner(data.generate(N)));
+    }
+}
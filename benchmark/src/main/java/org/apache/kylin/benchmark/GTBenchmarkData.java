@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleCodeSystem;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.benchmark.SortedGTRecordGenerator;
+import org.apache.kylin.gridtable.benchmark.SortedGTRecordGenerator.Randomizer;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The synthetic grid table of GTScannerBenchmark and GTScannerBenchmark2: 5 dimensions of type int4,
+ * a long8 measure, and a second measure that is either long8 or a single-value HLLC.
+ */
+public class GTBenchmarkData {
+
+    public static final ImmutableBitSet DIMENSIONS = ImmutableBitSet.valueOf(0, 1, 2, 3, 4);
+    public static final ImmutableBitSet METRICS = ImmutableBitSet.valueOf(5, 6);
+
+    final GTInfo info;
+    final SortedGTRecordGenerator gen;
+    final String[] aggrFuncs;
+
+    public GTBenchmarkData(boolean hllc) {
+        GTInfo.Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        DataType tint = DataType.getType("int4");
+        DataType tlong = DataType.getType("long8");
+        builder.setColumns(tint, tint, tint, tint, tint, tlong, hllc ? DataType.getType("hllc(12)") : tlong);
+        builder.setPrimaryKey(DIMENSIONS);
+        info = builder.build();
+
+        gen = new SortedGTRecordGenerator(info);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(100, 4, null);
+        gen.addMeasure(8);
+        if (hllc) {
+            gen.addMeasure(8, new Randomizer() {
+                HyperLogLogPlusCounter hllc = new HyperLogLogPlusCounter(12);
+
+                @Override
+                public int fillRandom(Random rand, byte[] array, int offset) {
+                    try {
+                        hllc.clear();
+                        hllc.add(rand.nextInt());
+                        ByteBuffer wrap = ByteBuffer.wrap(array, offset, array.length - offset);
+                        hllc.writeRegisters(wrap);
+                        return wrap.position() - offset;
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            aggrFuncs = new String[] { "SUM", "COUNT_DISTINCT" };
+        } else {
+            gen.addMeasure(8);
+            aggrFuncs = new String[] { "SUM", "SUM" };
+        }
+    }
+
+    public GTInfo getInfo() {
+        return info;
+    }
+
+    public String[] getAggrFuncs() {
+        return aggrFuncs;
+    }
+
+    public IGTScanner generate(long nRows) {
+        return gen.generate(nRows);
+    }
+
+    public static long count(IGTScanner scanner) throws IOException {
+        long count = 0;
+        try {
+            Iterator<GTRecord> iterator = scanner.iterator();
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+        } finally {
+            scanner.close();
+        }
+        return count;
+    }
+
+    /** parses a column list like "0,1,3" */
+    public static ImmutableBitSet columns(String cols) {
+        String[] parts = cols.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return ImmutableBitSet.valueOf(values);
+    }
+
+    // ============================================================================
+
+    public LogicalTupleFilter and(TupleFilter... filters) {
+        return logical(FilterOperatorEnum.AND, filters);
+    }
+
+    public LogicalTupleFilter or(TupleFilter... filters) {
+        return logical(FilterOperatorEnum.OR, filters);
+    }
+
+    private LogicalTupleFilter logical(FilterOperatorEnum op, TupleFilter[] filters) {
+        LogicalTupleFilter r = new LogicalTupleFilter(op);
+        for (TupleFilter f : filters)
+            r.addChild(f);
+        return r;
+    }
+
+    public CompareTupleFilter gt(ColumnTupleFilter col, int v) {
+        CompareTupleFilter r = new CompareTupleFilter(FilterOperatorEnum.GT);
+        r.addChild(col);
+        r.addChild(new ConstantTupleFilter(encode(col, v)));
+        return r;
+    }
+
+    public CompareTupleFilter eq(ColumnTupleFilter col, int... values) {
+        CompareTupleFilter r = new CompareTupleFilter(FilterOperatorEnum.IN);
+        r.addChild(col);
+
+        List<ByteArray> list = Lists.newArrayList();
+        for (int v : values) {
+            list.add(encode(col, v));
+        }
+        r.addChild(new ConstantTupleFilter(list));
+        return r;
+    }
+
+    public ColumnTupleFilter col(int i) {
+        return new ColumnTupleFilter(info.colRef(i));
+    }
+
+    private ByteArray encode(ColumnTupleFilter col, int v) {
+        int c = col.getColumn().getColumnDesc().getZeroBasedIndex();
+        int len = info.getCodeSystem().maxCodeLength(c);
+        ByteArray bytes = new ByteArray(len);
+        BytesUtil.writeLong(v, bytes.array(), bytes.offset(), len);
+        return bytes;
+    }
+}
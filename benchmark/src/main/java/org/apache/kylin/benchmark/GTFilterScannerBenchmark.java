@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GTFilterScanner over 1 million generated records, with the filters of GTScannerBenchmark.
+ * The generateOnly benchmark is the cost of the input alone, to be subtracted from the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GTFilterScannerBenchmark {
+
+    static final long N = 1000000;
+
+    @Param({ "in", "and", "nested" })
+    public String filter;
+
+    GTBenchmarkData data;
+    GTScanRequest req;
+
+    @Setup
+    public void setup() {
+        data = new GTBenchmarkData(false);
+        req = new GTScanRequestBuilder().setInfo(data.getInfo()).setRanges(null).setDimensions(data.getInfo().getAllColumns()) //
+                .setFilterPushDown(newFilter(filter)).createGTScanRequest();
+    }
+
+    private TupleFilter newFilter(String name) {
+        GTBenchmarkData d = data;
+        if ("in".equals(name)) {
+            return d.eq(d.col(1), 1, 5, 7);
+        } else if ("and".equals(name)) {
+            return d.and(d.gt(d.col(0), 5), d.eq(d.col(2), 2, 4));
+        } else if ("nested".equals(name)) {
+            return d.and(//
+                    d.gt(d.col(0), 2), //
+                    d.eq(d.col(4), 1, 3, 5, 9, 12, 14, 23, 43, 52, 78, 92), //
+                    d.or(//
+                            d.eq(d.col(1), 2, 4), //
+                            d.eq(d.col(2), 2, 4, 5, 9)));
+        } else {
+            throw new IllegalArgumentException("Unknown filter " + name);
+        }
+    }
+
+    @Benchmark
+    public long generateOnly() throws IOException {
+        return GTBenchmarkData.count(data.generate(N));
+    }
+
+    @Benchmark
+    public long scan() throws IOException {
+        return GTBenchmarkData.count(req.decorateScanner(data.generate(N)));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.inmemcubing.ICuboidWriter;
+import org.apache.kylin.cube.inmemcubing.InMemCubeBuilder;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableDesc;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
+import org.apache.kylin.dict.DictionaryGenerator;
+import org.apache.kylin.dict.IterableDictionaryValueEnumerator;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.MeasureDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * InMemCubeBuilder building all cuboids of a test cube from random rows, the way ITInMemCubeBuilderTest does.
+ * The cuboid output is discarded, so this is the cost of the cubing alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InMemCubeBuilderBenchmark {
+
+    static final String CUBE = "test_kylin_cube_without_slr_left_join_empty";
+    static final String FLAT_TABLE = LocalFileMetadataTestCase.LOCALMETA_TEST_DATA + "/data/flatten_data_for_without_slr_left_join.csv";
+
+    @Param({ "10000", "70000" })
+    public int rows;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    CubeInstance cube;
+    Map<TblColRef, Dictionary<String>> dictionaryMap;
+    List<List<String>> input;
+    ExecutorService executor;
+
+    @Setup
+    public void setup() throws IOException {
+        LocalFileMetadataTestCase.staticCreateTestMetadata();
+
+        cube = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(CUBE);
+        dictionaryMap = buildDictionaries(cube.getDescriptor());
+        input = randomRows(cube.getDescriptor(), rows);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        LocalFileMetadataTestCase.cleanAfterClass();
+    }
+
+    @Benchmark
+    public void build() throws Exception {
+        CubeDesc desc = cube.getDescriptor();
+        InMemCubeBuilder builder = new InMemCubeBuilder(desc, new CubeJoinedFlatTableDesc(desc), dictionaryMap);
+        builder.setConcurrentThreads(threads);
+
+        ArrayBlockingQueue<List<String>> queue = new ArrayBlockingQueue<List<String>>(1000);
+        Future<?> future = executor.submit(builder.buildAsRunnable(queue, new NoopCuboidWriter()));
+        for (List<String> row : input) {
+            queue.put(row);
+        }
+        queue.put(new ArrayList<String>(0));
+        future.get();
+    }
+
+    private static List<String[]> readFlatTable(int nColumns) throws IOException {
+        List<String[]> result = Lists.newArrayList();
+        for (String line : FileUtils.readLines(new File(FLAT_TABLE), "UTF-8")) {
+            String[] row = line.trim().split(",");
+            if (row.length != nColumns) {
+                throw new IllegalStateException("Expect " + nColumns + " columns in " + FLAT_TABLE + ", but got " + row.length);
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    /** random combinations of the distinct values of each flat table column */
+    private static List<List<String>> randomRows(CubeDesc desc, int count) throws IOException {
+        int nColumns = new CubeJoinedFlatTableDesc(desc).getAllColumns().size();
+
+        @SuppressWarnings("unchecked")
+        Set<String>[] distinctSets = new Set[nColumns];
+        for (int i = 0; i < nColumns; i++) {
+            distinctSets[i] = new TreeSet<String>();
+        }
+        for (String[] row : readFlatTable(nColumns)) {
+            for (int i = 0; i < nColumns; i++) {
+                distinctSets[i].add(row[i]);
+            }
+        }
+
+        String[][] distincts = new String[nColumns][];
+        for (int i = 0; i < nColumns; i++) {
+            distincts[i] = distinctSets[i].toArray(new String[distinctSets[i].size()]);
+        }
+
+        Random rand = new Random(0);
+        List<List<String>> result = new ArrayList<List<String>>(count);
+        for (int r = 0; r < count; r++) {
+            ArrayList<String> row = new ArrayList<String>(nColumns);
+            for (int i = 0; i < nColumns; i++) {
+                String[] candidates = distincts[i];
+                row.add(candidates[rand.nextInt(candidates.length)]);
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    private static Map<TblColRef, Dictionary<String>> buildDictionaries(CubeDesc desc) throws IOException {
+        Map<TblColRef, Dictionary<String>> result = Maps.newHashMap();
+        CubeJoinedFlatTableEnrich flatDesc = new CubeJoinedFlatTableEnrich(new CubeJoinedFlatTableDesc(desc), desc);
+        List<String[]> flatRows = readFlatTable(flatDesc.getAllColumns().size());
+
+        List<TblColRef> columns = Cuboid.getBaseCuboid(desc).getColumns();
+        for (int c = 0; c < columns.size(); c++) {
+            TblColRef col = columns.get(c);
+            if (desc.getRowkey().isUseDictionary(col)) {
+                result.put(col, buildDictionary(col, flatRows, flatDesc.getRowKeyColumnIndexes()[c]));
+            }
+        }
+
+        for (int measureIdx = 0; measureIdx < desc.getMeasures().size(); measureIdx++) {
+            MeasureDesc measureDesc = desc.getMeasures().get(measureIdx);
+            FunctionDesc func = measureDesc.getFunction();
+            List<TblColRef> dictCols = func.getMeasureType().getColumnsNeedDictionary(func);
+            if (dictCols.isEmpty())
+                continue;
+
+            int[] flatTableIdx = flatDesc.getMeasureColumnIndexes()[measureIdx];
+            List<TblColRef> paramCols = func.getParameter().getColRefs();
+            for (int i = 0; i < paramCols.size(); i++) {
+                TblColRef col = paramCols.get(i);
+                if (dictCols.contains(col)) {
+                    result.put(col, buildDictionary(col, flatRows, flatTableIdx[i]));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Dictionary<String> buildDictionary(TblColRef col, List<String[]> flatRows, int c) throws IOException {
+        List<byte[]> values = Lists.newArrayList();
+        for (String[] row : flatRows) {
+            values.add(Bytes.toBytes(row[c]));
+        }
+        return DictionaryGenerator.buildDictionary(col.getType(), new IterableDictionaryValueEnumerator(values));
+    }
+
+    private static class NoopCuboidWriter implements ICuboidWriter {
+        @Override
+        public void write(long cuboidId, GTRecord record) throws IOException {
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
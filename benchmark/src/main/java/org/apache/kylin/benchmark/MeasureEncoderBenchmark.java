@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.measure.BufferedMeasureEncoder;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * BufferedMeasureEncoder encoding and decoding a typical row of measures: decimal sum, count, double and HLLC, per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MeasureEncoderBenchmark {
+
+    static final int ROWS = 1024;
+    static final String[] TYPES = { "decimal(19,4)", "bigint", "double", "hllc(12)" };
+
+    BufferedMeasureEncoder encoder;
+    Object[][] rows = new Object[ROWS][];
+    ByteBuffer[] encoded = new ByteBuffer[ROWS];
+    Object[] decoded = new Object[TYPES.length];
+
+    @Setup
+    public void setup() {
+        encoder = new BufferedMeasureEncoder(TYPES);
+
+        Random rand = new Random(0);
+        for (int i = 0; i < ROWS; i++) {
+            HyperLogLogPlusCounter hllc = new HyperLogLogPlusCounter(12);
+            int distinct = 1 + rand.nextInt(100);
+            for (int k = 0; k < distinct; k++) {
+                hllc.add(rand.nextInt());
+            }
+            rows[i] = new Object[] { new BigDecimal(rand.nextInt(1000000)).movePointLeft(2), new LongMutable(rand.nextInt(1000)), new DoubleMutable(rand.nextDouble()), hllc };
+
+            ByteBuffer buf = encoder.encode(rows[i]);
+            encoded[i] = ByteBuffer.wrap(Arrays.copyOf(buf.array(), buf.position()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void encode(Blackhole bh) {
+        for (int i = 0; i < ROWS; i++) {
+            bh.consume(encoder.encode(rows[i]).position());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void decode(Blackhole bh) {
+        for (int i = 0; i < ROWS; i++) {
+            ByteBuffer buf = encoded[i];
+            buf.rewind();
+            encoder.decode(buf, decoded);
+            bh.consume(decoded);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.measure.bitmap.BitmapCounter;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.measure.topn.TopNCounter;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merging serialized HLLC, bitmap and TopN measures through their aggregators, the way storage aggregation does.
+ * Each operation deserializes and merges all the inputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class MeasureMergeBenchmark {
+
+    static final int INPUTS = 256;
+
+    /** distinct values in each input */
+    @Param({ "10", "10000" })
+    public int valuesPerInput;
+
+    MeasureInput hllc;
+    MeasureInput bitmap;
+    MeasureInput topN;
+
+    @Setup
+    public void setup() throws Exception {
+        Random rand = new Random(0);
+
+        hllc = new MeasureInput("COUNT_DISTINCT", "hllc(14)");
+        bitmap = new MeasureInput("COUNT_DISTINCT", "bitmap");
+        topN = new MeasureInput("TOP_N", "topn(100)");
+        for (int i = 0; i < INPUTS; i++) {
+            HyperLogLogPlusCounter h = new HyperLogLogPlusCounter(14);
+            BitmapCounter b = new BitmapCounter();
+            TopNCounter<ByteArray> t = new TopNCounter<ByteArray>(100 * TopNCounter.EXTRA_SPACE_RATE);
+            for (int k = 0; k < valuesPerInput; k++) {
+                int v = rand.nextInt(INPUTS * valuesPerInput);
+                h.add(v);
+                b.add(v);
+                ByteArray key = new ByteArray(4);
+                BytesUtil.writeUnsigned(v, key.array(), key.offset(), 4);
+                t.offer(key, rand.nextInt(1000));
+            }
+            hllc.add(i, h);
+            bitmap.add(i, b);
+            topN.add(i, t);
+        }
+    }
+
+    @Benchmark
+    public Object mergeHLLC() {
+        return hllc.merge();
+    }
+
+    @Benchmark
+    public Object mergeBitmap() {
+        return bitmap.merge();
+    }
+
+    @Benchmark
+    public Object mergeTopN() {
+        return topN.merge();
+    }
+
+    private static class MeasureInput {
+        final DataTypeSerializer serializer;
+        final MeasureAggregator aggregator;
+        final ByteBuffer[] inputs = new ByteBuffer[INPUTS];
+        final ByteBuffer buf;
+
+        MeasureInput(String func, String dataType) {
+            DataType type = DataType.getType(dataType);
+            this.serializer = DataTypeSerializer.create(type);
+            this.aggregator = MeasureAggregator.create(func, type);
+            this.buf = ByteBuffer.allocate(Math.max(serializer.maxLength(), 1024 * 1024));
+        }
+
+        void add(int i, Object value) {
+            buf.clear();
+            serializer.serialize(value, buf);
+            inputs[i] = ByteBuffer.wrap(Arrays.copyOf(buf.array(), buf.position()));
+        }
+
+        Object merge() {
+            aggregator.reset();
+            for (ByteBuffer in : inputs) {
+                in.rewind();
+                aggregator.aggregate(serializer.deserialize(in));
+            }
+            return aggregator.getState();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.kv.RowKeyEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * RowKeyEncoder on the base cuboid of a test cube, per row, one by one and in batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RowKeyEncoderBenchmark {
+
+    static final int ROWS = 1024;
+
+    RowKeyEncoder encoder;
+    byte[][][] rows = new byte[ROWS][][];
+    byte[][] keys = new byte[ROWS][];
+
+    @Setup
+    public void setup() {
+        LocalFileMetadataTestCase.staticCreateTestMetadata();
+
+        CubeInstance cube = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube("TEST_KYLIN_CUBE_WITHOUT_SLR_READY");
+        Cuboid baseCuboid = Cuboid.findById(cube.getDescriptor(), Cuboid.getBaseCuboidId(cube.getDescriptor()));
+        encoder = new RowKeyEncoder(cube.getFirstSegment(), baseCuboid);
+
+        // the row of RowKeyEncoderTest, whose values are all in the segment dictionaries
+        String[] sample = { "2012-12-15", "11848", "Health & Beauty", "Fragrances", "Women", "FP-GTC", "0", "15" };
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new byte[sample.length][];
+            for (int c = 0; c < sample.length; c++) {
+                rows[i][c] = Bytes.toBytes(sample[c]);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        LocalFileMetadataTestCase.cleanAfterClass();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void encode(Blackhole bh) {
+        for (int i = 0; i < ROWS; i++) {
+            bh.consume(encoder.encode(rows[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public byte[][] encodeBatch() {
+        encoder.encode(rows, ROWS, keys);
+        return keys;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.MetadataManager;
+import org.apache.kylin.metadata.model.ColumnDesc;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.source.kafka.TimedJsonStreamParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Lists;
+
+/**
+ * TimedJsonStreamParser on Kafka messages of the test streaming table, per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimedJsonStreamParserBenchmark {
+
+    static final int MESSAGES = 1024;
+    static final String[] SITES = { "US", "UK", "DE", "CN", "JP", "AU" };
+
+    TimedJsonStreamParser parser;
+    ByteBuffer[] messages = new ByteBuffer[MESSAGES];
+
+    @Setup
+    public void setup() {
+        LocalFileMetadataTestCase.staticCreateTestMetadata();
+
+        TableDesc table = MetadataManager.getInstance(KylinConfig.getInstanceFromEnv()).getTableDesc("DEFAULT.STREAMING_TABLE");
+        List<TblColRef> columns = Lists.newArrayList();
+        for (ColumnDesc col : table.getColumns()) {
+            columns.add(col.getRef());
+        }
+        parser = new TimedJsonStreamParser(columns, null);
+
+        Random rand = new Random(0);
+        long ts = 1466000000000L;
+        for (int i = 0; i < MESSAGES; i++) {
+            ts += rand.nextInt(1000);
+            String json = "{\"timestamp\":\"" + ts + "\"" //
+                    + ",\"itm\":\"item-" + rand.nextInt(10000) + "\"" //
+                    + ",\"site\":\"" + SITES[rand.nextInt(SITES.length)] + "\"" //
+                    + ",\"gmv\":\"" + rand.nextInt(100000) / 100.0 + "\"" //
+                    + ",\"item_count\":\"" + (1 + rand.nextInt(10)) + "\"}";
+            messages[i] = ByteBuffer.wrap(Bytes.toBytes(json));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        LocalFileMetadataTestCase.cleanAfterClass();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void parse(Blackhole bh) {
+        for (int i = 0; i < MESSAGES; i++) {
+            ByteBuffer msg = messages[i];
+            msg.rewind();
+            bh.consume(parser.parse(msg));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.benchmark;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.dict.StringBytesConverter;
+import org.apache.kylin.dict.TrieDictionary;
+import org.apache.kylin.dict.TrieDictionaryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * TrieDictionary encode (value to id) and decode (id to value), per value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TrieDictionaryBenchmark {
+
+    static final int LOOKUPS = 10000;
+
+    @Param({ "1000", "100000" })
+    public int cardinality;
+
+    TrieDictionary<String> dict;
+    String[] values = new String[LOOKUPS];
+    byte[][] valueBytes = new byte[LOOKUPS][];
+    int[] ids = new int[LOOKUPS];
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(0);
+        TreeSet<String> distinct = new TreeSet<String>();
+        while (distinct.size() < cardinality) {
+            // values sharing prefixes, like item names or URLs
+            distinct.add("item-" + rand.nextInt(cardinality / 10 + 1) + "-" + rand.nextInt(1000000));
+        }
+
+        TrieDictionaryBuilder<String> builder = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (String v : distinct) {
+            builder.addValue(v);
+        }
+        dict = builder.build(0);
+
+        String[] all = distinct.toArray(new String[distinct.size()]);
+        for (int i = 0; i < LOOKUPS; i++) {
+            values[i] = all[rand.nextInt(all.length)];
+            valueBytes[i] = Bytes.toBytes(values[i]);
+            ids[i] = dict.getIdFromValue(values[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void encode(Blackhole bh) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            bh.consume(dict.getIdFromValue(values[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void encodeBytes(Blackhole bh) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            byte[] v = valueBytes[i];
+            bh.consume(dict.getIdFromValueBytes(v, 0, v.length));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void decode(Blackhole bh) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            bh.consume(dict.getValueFromId(ids[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void decodeBytes(Blackhole bh) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            bh.consume(dict.getValueBytesFromId(ids[i]));
+        }
+    }
+}
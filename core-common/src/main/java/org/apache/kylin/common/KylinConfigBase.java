@@ -162,6 +162,22 @@ abstract public class KylinConfigBase implements Serializable {
         }
     }
 
+    public int getMetadataLoadThreads() {
+        return Integer.parseInt(getOptional("kylin.metadata.load.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    public boolean isMetadataCacheEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.metadata.cache.enabled", "false"));
+    }
+
+    public long getMetadataCacheMaxBytes() {
+        return Long.parseLong(getOptional("kylin.metadata.cache.max.bytes", String.valueOf(64L * 1024 * 1024)));
+    }
+
+    public long getMetadataCacheSyncIntervalMs() {
+        return Long.parseLong(getOptional("kylin.metadata.cache.sync.interval.ms", "1000"));
+    }
+
     public String getServerMode() {
         return this.getOptional("kylin.server.mode", "all");
     }
@@ -448,6 +464,10 @@ abstract public class KylinConfigBase implements Serializable {
         return getPropertiesByPrefix("kylin.cube.measure.customMeasureType.");
     }
 
+    public int getCubeDimensionRangeMaxValues() {
+        return Integer.parseInt(getOptional("kylin.cube.dimension.range.max.values", "32"));
+    }
+
     public int getDictionaryMaxCardinality() {
         return Integer.parseInt(getOptional("kylin.dictionary.max.cardinality", "5000000"));
     }
@@ -464,6 +484,34 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.hbase.region.count.max", "500"));
     }
 
+    /**
+     * When enabled, query servers record per-cuboid visits and endpoint latency, and new or merged segments
+     * plan cuboid shard numbers with the observed stats on top of the estimated cuboid sizes.
+     */
+    public boolean isHBaseAdaptiveShardEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.hbase.shard.adaptive.enabled", "false"));
+    }
+
+    public long getHBaseAdaptiveShardTargetLatencyMs() {
+        return Long.parseLong(getOptional("kylin.hbase.shard.adaptive.target.latency.ms", "1000"));
+    }
+
+    public double getHBaseAdaptiveShardHotRatio() {
+        return Double.parseDouble(getOptional("kylin.hbase.shard.adaptive.hot.ratio", "0.05"));
+    }
+
+    public int getHBaseAdaptiveShardMinVisits() {
+        return Integer.parseInt(getOptional("kylin.hbase.shard.adaptive.min.visits", "100"));
+    }
+
+    public int getCuboidQueryStatsFlushIntervalSeconds() {
+        return Integer.parseInt(getOptional("kylin.hbase.shard.adaptive.stats.flush.interval.seconds", "300"));
+    }
+
+    public double getCuboidQueryStatsHalfLifeDays() {
+        return Double.parseDouble(getOptional("kylin.hbase.shard.adaptive.stats.half.life.days", "7"));
+    }
+
     // for test only
     public void setHBaseHFileSizeGB(float size) {
         setProperty("kylin.hbase.hfile.size.gb", String.valueOf(size));
@@ -477,14 +525,48 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.query.pushdown.limit.max", "10000"));
     }
 
+    public boolean isQueryStorageTopKEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.storage.topk.enabled", "true"));
+    }
+
     public int getScanThreshold() {
         return Integer.parseInt(getOptional("kylin.query.scan.threshold", "10000000"));
     }
 
+    public boolean isQueryConnectionPoolEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.connection.pool.enabled", "true"));
+    }
+
+    public int getQueryConnectionPoolMaxIdle() {
+        return Integer.parseInt(getOptional("kylin.query.connection.pool.max.idle", "32"));
+    }
+
     public int getCubeVisitTimeoutTimes() {
         return Integer.parseInt(getOptional("kylin.query.cube.visit.timeout.times", "1"));
     }
 
+    /**
+     * Re-issue a region RPC that has not answered after the hedge delay, and take the first response. The region is
+     * looked up again first, so the request goes to its new server if it has moved, else it is retried in place.
+     */
+    public boolean isQueryHedgedRpcEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.hbase.hedge.enabled", "false"));
+    }
+
+    /** the hedge delay is this percentile of the recent region RPC latencies of the cuboid */
+    public double getQueryHedgedRpcPercentile() {
+        return Double.parseDouble(getOptional("kylin.query.hbase.hedge.percentile", "95"));
+    }
+
+    public long getQueryHedgedRpcMinDelay() {
+        return Long.parseLong(getOptional("kylin.query.hbase.hedge.min.delay.ms", "50"));
+    }
+
+    /** at most this many region RPCs of one query are hedged */
+    public int getQueryHedgedRpcBudget() {
+        return Integer.parseInt(getOptional("kylin.query.hbase.hedge.budget", "10"));
+    }
+
     public int getBadQueryStackTraceDepth() {
         return Integer.parseInt(getOptional("kylin.query.badquery.stacktrace.depth", "10"));
     }
@@ -558,6 +640,18 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(this.getOptional("kylin.query.scan.fuzzykey.max", "200"));
     }
 
+    public boolean isQuerySegmentPruningEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.segment.pruning.enabled", "true"));
+    }
+
+    public boolean isQuerySegmentMergeAggregationEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.segment.merge.aggregation.enabled", "false"));
+    }
+
+    public int getQuerySegmentMergeAggregationMemMB() {
+        return Integer.parseInt(this.getOptional("kylin.query.segment.merge.aggregation.mem.mb", "256"));
+    }
+
     public int getQueryStorageVisitScanRangeMax() {
         return Integer.valueOf(this.getOptional("kylin.query.storage.visit.scanrange.max", "1000000"));
     }
@@ -579,6 +673,10 @@ abstract public class KylinConfigBase implements Serializable {
         return getOptionalIntArray("kylin.query.metrics.percentiles.intervals", dft);
     }
 
+    public int getQueryProfileKeepCount() {
+        return Integer.parseInt(getOptional("kylin.query.profile.keep.count", "1000"));
+    }
+
     public int getHBaseKeyValueSize() {
         return Integer.parseInt(this.getOptional("kylin.hbase.client.keyvalue.maxsize", "10485760"));
     }
@@ -591,6 +689,18 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(this.getOptional("kylin.hbase.scan.cache_rows", "1024"));
     }
 
+    public int getHBaseMetadataMultiGetBatchSize() {
+        return Integer.parseInt(this.getOptional("kylin.hbase.metadata.multiget.batch", "500"));
+    }
+
+    public boolean isLongDictEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.dict.long.enabled", "false"));
+    }
+
+    public boolean isFrontCodedDictEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.dict.front.coded.enabled", "false"));
+    }
+
     public boolean isGrowingDictEnabled() {
         return Boolean.parseBoolean(this.getOptional("kylin.dict.growing.enabled", "false"));
     }
@@ -614,6 +724,18 @@ abstract public class KylinConfigBase implements Serializable {
         return percent;
     }
 
+    public boolean isCubingInMemOffHeapStoreEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.job.cubing.inmem.offheap.store", "false"));
+    }
+
+    /**
+     * A parent cuboid having more rows than this is aggregated into its child by several threads, each on a key range.
+     * Zero or negative disables the split.
+     */
+    public int getCubingInMemSplitRowThreshold() {
+        return Integer.parseInt(this.getOptional("kylin.job.cubing.inmem.split.row.threshold", "1000000"));
+    }
+
     public String getHbaseDefaultCompressionCodec() {
         return getOptional("kylin.hbase.default.compression.codec", "none");
     }
@@ -630,6 +752,47 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.valueOf(getOptional("kylin.hbase.small.family.block.size", "65536"));
     }
 
+    public boolean isStreamingHFileOutputEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.streaming.output.hfile.enabled", "false"));
+    }
+
+    public int getStreamingHFileBufferMB() {
+        return Integer.parseInt(getOptional("kylin.streaming.output.hfile.buffer.mb", "64"));
+    }
+
+    public int getStreamingFetchMaxWaitMs() {
+        return Integer.parseInt(getOptional("kylin.streaming.fetch.max.wait.ms", "1000"));
+    }
+
+    public int getStreamingParserThreads() {
+        return Integer.parseInt(getOptional("kylin.streaming.parser.threads", "2"));
+    }
+
+    public int getStreamingQueueSize() {
+        return Integer.parseInt(getOptional("kylin.streaming.queue.size", "10000"));
+    }
+
+    public boolean isStreamingIncrementalEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.streaming.incremental.enabled", "false"));
+    }
+
+    public long getStreamingIncrementalFlushIntervalMs() {
+        return Long.parseLong(getOptional("kylin.streaming.incremental.flush.interval.ms", "3600000"));
+    }
+
+    public int getStreamingIncrementalFlushRows() {
+        return Integer.parseInt(getOptional("kylin.streaming.incremental.flush.rows", "5000000"));
+    }
+
+    /**
+     * The open window is flushed to a segment once its messages take about this much heap. The window is also
+     * what a restarted builder holds: restoring re-reads the whole open window from Kafka, so keep this within
+     * the heap of the streaming CLI.
+     */
+    public int getStreamingIncrementalFlushMB() {
+        return Integer.parseInt(getOptional("kylin.streaming.incremental.flush.mb", "128"));
+    }
+
     public boolean isHiveKeepFlatTable() {
         return Boolean.parseBoolean(this.getOptional("kylin.hive.keep.flat.table", "false"));
     }
@@ -710,6 +873,14 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.job.cubing.inmem.sampling.hll.precision", "14"));
     }
 
+    /**
+     * Max rows each mapper counts for cuboid statistics, out of the rows left by the sampling percentage; 0 counts
+     * them all. A sampled row holds 8 bytes per rowkey column.
+     */
+    public int getCubeStatsReservoirSize() {
+        return Integer.parseInt(getOptional("kylin.job.cubing.inmem.sampling.reservoir.size", "100000"));
+    }
+
     public String getJobControllerLock() {
         return getOptional("kylin.job.controller.lock", "org.apache.kylin.storage.hbase.util.ZookeeperJobLock");
     }
@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.common;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Where the time of one query goes: the stages on the query server, the storage scan of each segment
+ * and region, and the conversion of storage records into tuples.
+ * <p/>
+ * The profile of the running query is bound to the query thread. Code that hands work to other threads,
+ * like the endpoint RPCs, takes the profile (or one of its segments) with it before forking.
+ */
+@SuppressWarnings("serial")
+@JsonAutoDetect(fieldVisibility = Visibility.NONE, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
+public class QueryProfile implements Serializable {
+
+    private static final ThreadLocal<QueryProfile> current = new ThreadLocal<QueryProfile>();
+
+    /** binds a new profile to the current thread */
+    public static QueryProfile start(String queryId) {
+        QueryProfile profile = new QueryProfile(queryId);
+        current.set(profile);
+        return profile;
+    }
+
+    /** the profile of the query running in the current thread, or null if no query is profiled */
+    public static QueryProfile current() {
+        return current.get();
+    }
+
+    public static void end() {
+        current.remove();
+    }
+
+    // ============================================================================
+
+    @JsonProperty("query_id")
+    private String queryId;
+    @JsonProperty("start_time")
+    private long startTime;
+    @JsonProperty("duration")
+    private long duration;
+    @JsonProperty("storage_cache_used")
+    private boolean storageCacheUsed;
+    @JsonProperty("exception_cache_hit")
+    private boolean exceptionCacheHit;
+    // ms spent in each stage, in the order the stages ended
+    @JsonProperty("stages")
+    private LinkedHashMap<String, Long> stages = new LinkedHashMap<String, Long>();
+    @JsonProperty("segments")
+    private List<SegmentProfile> segments = new CopyOnWriteArrayList<SegmentProfile>();
+    @JsonProperty("tuple_count")
+    private long tupleCount;
+    @JsonProperty("tuple_convert_time")
+    private long tupleConvertTime;
+
+    private transient long lastMark;
+    private long tupleConvertNanos;
+    private transient AtomicInteger hedgeBudget; // region RPCs the query may still hedge, across its scans
+
+    public QueryProfile(String queryId) {
+        this.queryId = queryId;
+        this.startTime = System.currentTimeMillis();
+        this.lastMark = startTime;
+    }
+
+    /**
+     * Ends a stage: the time since the previous stage ended, or since the query started, is added to the stage.
+     */
+    public synchronized void mark(String stage) {
+        long now = System.currentTimeMillis();
+        Long sofar = stages.get(stage);
+        stages.put(stage, (sofar == null ? 0 : sofar) + now - lastMark);
+        lastMark = now;
+    }
+
+    public synchronized void addTupleConvert(long count, long nanos) {
+        tupleCount += count;
+        tupleConvertNanos += nanos;
+        tupleConvertTime = tupleConvertNanos / 1000000;
+    }
+
+    /** the hedge budget shared by the storage scans of the query, set to the initial value on first use */
+    public synchronized AtomicInteger getHedgeBudget(int initial) {
+        if (hedgeBudget == null) {
+            hedgeBudget = new AtomicInteger(initial);
+        }
+        return hedgeBudget;
+    }
+
+    public SegmentProfile newSegment(String segment, long cuboidId) {
+        SegmentProfile seg = new SegmentProfile(segment, cuboidId);
+        segments.add(seg);
+        return seg;
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public boolean isStorageCacheUsed() {
+        return storageCacheUsed;
+    }
+
+    public void setStorageCacheUsed(boolean storageCacheUsed) {
+        this.storageCacheUsed = storageCacheUsed;
+    }
+
+    public boolean isExceptionCacheHit() {
+        return exceptionCacheHit;
+    }
+
+    public void setExceptionCacheHit(boolean exceptionCacheHit) {
+        this.exceptionCacheHit = exceptionCacheHit;
+    }
+
+    public synchronized Map<String, Long> getStages() {
+        return new LinkedHashMap<String, Long>(stages);
+    }
+
+    public List<SegmentProfile> getSegments() {
+        return segments;
+    }
+
+    public synchronized long getTupleCount() {
+        return tupleCount;
+    }
+
+    public synchronized long getTupleConvertTime() {
+        return tupleConvertTime;
+    }
+
+    public long getRegionRpcCount() {
+        long count = 0;
+        for (SegmentProfile seg : segments) {
+            count += seg.regions.size();
+        }
+        return count;
+    }
+
+    public long getHedgedRpcCount() {
+        long count = 0;
+        for (SegmentProfile seg : segments) {
+            count += seg.getHedgedRpcs();
+        }
+        return count;
+    }
+
+    public long getHedgeWinCount() {
+        long count = 0;
+        for (SegmentProfile seg : segments) {
+            count += seg.getHedgeWins();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("stages(ms) ").append(getStages());
+        sb.append(", tuples ").append(getTupleCount()).append(" converted in ").append(getTupleConvertTime()).append("ms");
+        for (SegmentProfile seg : segments) {
+            sb.append("; ").append(seg);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The storage scan of one segment, with the regions (or shards) that served it.
+     */
+    @JsonAutoDetect(fieldVisibility = Visibility.NONE, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
+    public static class SegmentProfile implements Serializable {
+
+        @JsonProperty("segment")
+        private String segment;
+        @JsonProperty("cuboid_id")
+        private long cuboidId;
+        @JsonProperty("storage")
+        private String storage;
+        @JsonProperty("scan_ranges")
+        private int scanRanges;
+        @JsonProperty("request_bytes")
+        private long requestBytes;
+        @JsonProperty("regions")
+        private List<RegionProfile> regions = new CopyOnWriteArrayList<RegionProfile>();
+        // region RPCs re-issued because the first request was slow, and how many of them answered first
+        @JsonProperty("hedged_rpcs")
+        private int hedgedRpcs;
+        @JsonProperty("hedge_wins")
+        private int hedgeWins;
+
+        public SegmentProfile(String segment, long cuboidId) {
+            this.segment = segment;
+            this.cuboidId = cuboidId;
+        }
+
+        public void setStorage(String storage, int scanRanges, long requestBytes) {
+            this.storage = storage;
+            this.scanRanges = scanRanges;
+            this.requestBytes = requestBytes;
+        }
+
+        public void addRegion(RegionProfile region) {
+            regions.add(region);
+        }
+
+        public synchronized void setHedges(int hedgedRpcs, int hedgeWins) {
+            this.hedgedRpcs = hedgedRpcs;
+            this.hedgeWins = hedgeWins;
+        }
+
+        public String getSegment() {
+            return segment;
+        }
+
+        public long getCuboidId() {
+            return cuboidId;
+        }
+
+        public String getStorage() {
+            return storage;
+        }
+
+        public int getScanRanges() {
+            return scanRanges;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        public List<RegionProfile> getRegions() {
+            return regions;
+        }
+
+        public synchronized int getHedgedRpcs() {
+            return hedgedRpcs;
+        }
+
+        public synchronized int getHedgeWins() {
+            return hedgeWins;
+        }
+
+        @Override
+        public String toString() {
+            long scanned = 0, returned = 0, bytes = 0, slowest = 0;
+            for (RegionProfile r : regions) {
+                scanned += r.scannedRows;
+                returned += r.returnedRows;
+                bytes += r.compressedBytes;
+                slowest = Math.max(slowest, r.rpcTime);
+            }
+            String str = segment + " cuboid " + cuboidId + ": " + regions.size() + " regions, " + scanned + " rows scanned, " + returned + " returned, " //
+                    + bytes + " bytes transferred, slowest rpc " + slowest + "ms";
+            if (getHedgedRpcs() > 0) {
+                str += ", " + getHedgedRpcs() + " rpcs hedged, " + getHedgeWins() + " won";
+            }
+            return str;
+        }
+    }
+
+    /**
+     * The endpoint RPC to one region. Times are in ms.
+     */
+    @JsonAutoDetect(fieldVisibility = Visibility.NONE, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
+    public static class RegionProfile implements Serializable {
+
+        @JsonProperty("region")
+        String region;
+        @JsonProperty("host")
+        String host;
+        @JsonProperty("rpc_time")
+        long rpcTime; // on the query server, from submitting the RPC to the response
+        @JsonProperty("service_time")
+        long serviceTime; // on the region server
+        @JsonProperty("scan_time")
+        long scanTime; // scan, filter and aggregation, pipelined
+        @JsonProperty("compress_time")
+        long compressTime;
+        @JsonProperty("decompress_time")
+        long decompressTime;
+        @JsonProperty("scanned_rows")
+        long scannedRows;
+        @JsonProperty("returned_rows")
+        long returnedRows;
+        @JsonProperty("uncompressed_bytes")
+        long uncompressedBytes;
+        @JsonProperty("compressed_bytes")
+        long compressedBytes;
+        @JsonProperty("normal_complete")
+        boolean normalComplete;
+        @JsonProperty("hedged")
+        boolean hedged; // the response came from a re-issued request
+
+        public RegionProfile(String region, String host) {
+            this.region = region;
+            this.host = host;
+        }
+
+        public void setTimes(long rpcTime, long serviceTime, long scanTime, long compressTime, long decompressTime) {
+            this.rpcTime = rpcTime;
+            this.serviceTime = serviceTime;
+            this.scanTime = scanTime;
+            this.compressTime = compressTime;
+            this.decompressTime = decompressTime;
+        }
+
+        public void setRows(long scannedRows, long returnedRows) {
+            this.scannedRows = scannedRows;
+            this.returnedRows = returnedRows;
+        }
+
+        public void setBytes(long uncompressedBytes, long compressedBytes) {
+            this.uncompressedBytes = uncompressedBytes;
+            this.compressedBytes = compressedBytes;
+        }
+
+        public void setNormalComplete(boolean normalComplete) {
+            this.normalComplete = normalComplete;
+        }
+
+        public void setHedged(boolean hedged) {
+            this.hedged = hedged;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getRpcTime() {
+            return rpcTime;
+        }
+
+        public long getServiceTime() {
+            return serviceTime;
+        }
+
+        public long getScanTime() {
+            return scanTime;
+        }
+
+        public long getCompressTime() {
+            return compressTime;
+        }
+
+        public long getDecompressTime() {
+            return decompressTime;
+        }
+
+        public long getScannedRows() {
+            return scannedRows;
+        }
+
+        public long getReturnedRows() {
+            return returnedRows;
+        }
+
+        public long getUncompressedBytes() {
+            return uncompressedBytes;
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes;
+        }
+
+        public boolean isNormalComplete() {
+            return normalComplete;
+        }
+
+        public boolean isHedged() {
+            return hedged;
+        }
+    }
+}
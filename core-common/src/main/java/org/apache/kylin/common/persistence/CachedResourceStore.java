@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.common.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
+
+/**
+ * A read-through cache over another ResourceStore, bounded by bytes. Resource content and timestamps are served
+ * from memory once read. Job outputs and the job index change all the time while jobs run, they are neither
+ * cached nor logged.
+ * <p>
+ * A write through this store adds one small resource to the change log folder, keyed by time and a random id and
+ * holding the changed path. Writers do not read or lock anything shared, so the log has no hot spot. Every
+ * instance, on any server, polls the folder at most once per sync interval and drops the cached paths of the
+ * changes it has not seen yet. Changes older than ten minutes are trimmed; an instance that has not synced for
+ * half that long drops everything. Call sync() to catch up at once, e.g. before reloading a manager on a broadcast
+ * event.
+ */
+public class CachedResourceStore extends ResourceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachedResourceStore.class);
+
+    public static final String CHANGE_LOG_ROOT = "/metadata_changes";
+
+    // changed too often to be worth caching
+    private static final String[] UNCACHED_ROOTS = new String[] { EXECUTE_OUTPUT_RESOURCE_ROOT, EXECUTE_INDEX_RESOURCE_ROOT, CHANGE_LOG_ROOT };
+    private static final long CHANGE_RETENTION_MS = 10 * 60 * 1000L;
+    // a resource larger than this share of the cache is not cached, e.g. a big dictionary or snapshot
+    private static final int MAX_ENTRY_SHARE = 16;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final ResourceStore delegate;
+    private final long maxEntryBytes;
+    private final long syncIntervalMs;
+    private final Cache<String, Entry> cache;
+
+    // bumped by every invalidation, a read from the delegate is cached only if no invalidation happened meanwhile
+    private final AtomicLong invalidations = new AtomicLong();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile Set<String> seenChanges;
+    volatile long lastSyncTime;
+
+    public CachedResourceStore(KylinConfig kylinConfig, ResourceStore delegate) throws IOException {
+        super(kylinConfig);
+        this.delegate = delegate;
+        this.maxEntryBytes = kylinConfig.getMetadataCacheMaxBytes() / MAX_ENTRY_SHARE;
+        this.syncIntervalMs = kylinConfig.getMetadataCacheSyncIntervalMs();
+        this.cache = CacheBuilder.newBuilder().maximumWeight(kylinConfig.getMetadataCacheMaxBytes()).weigher(new Weigher<String, Entry>() {
+            @Override
+            public int weigh(String path, Entry entry) {
+                return ENTRY_OVERHEAD + path.length() * 2 + (entry.content == null ? 0 : entry.content.length);
+            }
+        }).build();
+
+        this.seenChanges = listChanges();
+        this.lastSyncTime = System.currentTimeMillis();
+        logger.info("Caching resource store " + delegate.getClass().getSimpleName() + " up to " + kylinConfig.getMetadataCacheMaxBytes() + " bytes, " + seenChanges.size() + " changes in the log");
+    }
+
+    public ResourceStore getDelegate() {
+        return delegate;
+    }
+
+    public long getCachedBytes() {
+        long bytes = 0;
+        for (Entry entry : cache.asMap().values()) {
+            bytes += entry.content == null ? 0 : entry.content.length;
+        }
+        return bytes;
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private void invalidate(String resPath) {
+        invalidations.incrementAndGet();
+        cache.invalidate(resPath);
+    }
+
+    static boolean isCached(String resPath) {
+        for (String root : UNCACHED_ROOTS) {
+            if (resPath.startsWith(root + "/")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ============================================================================
+
+    /** drops the cached resources changed since the last sync */
+    public void sync() throws IOException {
+        syncLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            Set<String> changes = listChanges();
+            if (now - lastSyncTime > CHANGE_RETENTION_MS / 2) {
+                // changes may have been trimmed before this instance saw them
+                logger.info("Last synced " + (now - lastSyncTime) + " ms ago, dropping all cached resources");
+                invalidateAll();
+            } else {
+                List<String> unseen = Lists.newArrayList();
+                for (String change : changes) {
+                    if (!seenChanges.contains(change)) {
+                        unseen.add(change);
+                    }
+                }
+                if (!unseen.isEmpty()) {
+                    invalidateChanged(unseen);
+                }
+            }
+            seenChanges = changes;
+            lastSyncTime = now;
+            trimChanges(changes, now);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void invalidateChanged(List<String> changes) throws IOException {
+        List<RawResource> raws = delegate.getResourcesImpl(changes);
+        boolean lost = false;
+        for (RawResource raw : raws) {
+            if (raw == null) {
+                lost = true; // trimmed meanwhile
+                continue;
+            }
+            try {
+                invalidate(Bytes.toString(IOUtils.toByteArray(raw.inputStream)));
+            } finally {
+                IOUtils.closeQuietly(raw.inputStream);
+            }
+        }
+        if (lost) {
+            invalidateAll();
+        }
+    }
+
+    private void trimChanges(Set<String> changes, long now) {
+        for (String change : changes) {
+            if (timeOfChange(change) < now - CHANGE_RETENTION_MS) {
+                try {
+                    delegate.deleteResourceImpl(change);
+                } catch (IOException e) {
+                    logger.warn("Failed to trim change " + change, e);
+                }
+            }
+        }
+    }
+
+    private void syncIfDue() {
+        if (System.currentTimeMillis() - lastSyncTime < syncIntervalMs) {
+            return;
+        }
+        // one thread syncs, the others go on with what is cached
+        if (syncLock.tryLock()) {
+            try {
+                sync();
+            } catch (IOException e) {
+                logger.warn("Failed to sync with the change log", e);
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+
+    private Set<String> listChanges() throws IOException {
+        NavigableSet<String> changes = delegate.listResourcesImpl(CHANGE_LOG_ROOT);
+        return changes == null ? Collections.<String> emptySet() : changes;
+    }
+
+    private static long timeOfChange(String change) {
+        String key = change.substring(change.lastIndexOf('/') + 1);
+        return Long.parseLong(key.substring(0, key.indexOf('.')));
+    }
+
+    private void logChange(String resPath) {
+        if (!isCached(resPath)) {
+            return;
+        }
+        invalidate(resPath);
+        long now = System.currentTimeMillis();
+        String change = CHANGE_LOG_ROOT + "/" + String.format("%019d", now) + "." + UUID.randomUUID();
+        try {
+            delegate.putResourceImpl(change, new ByteArrayInputStream(Bytes.toBytes(resPath)), now);
+        } catch (IOException e) {
+            logger.error("Failed to log the change of " + resPath + ", other servers may serve it stale", e);
+        }
+    }
+
+    // ============================================================================
+
+    @Override
+    protected NavigableSet<String> listResourcesImpl(String folderPath) throws IOException {
+        return delegate.listResourcesImpl(folderPath);
+    }
+
+    @Override
+    protected boolean existsImpl(String resPath) throws IOException {
+        syncIfDue();
+        Entry entry = cache.getIfPresent(resPath);
+        if (entry != null) {
+            return entry.timestamp != 0;
+        }
+        return delegate.existsImpl(resPath);
+    }
+
+    @Override
+    protected List<RawResource> getAllResourcesImpl(String folderPath, long timeStart, long timeEndExclusive) throws IOException {
+        return delegate.getAllResourcesImpl(folderPath, timeStart, timeEndExclusive);
+    }
+
+    @Override
+    protected RawResource getResourceImpl(String resPath) throws IOException {
+        syncIfDue();
+        Entry entry = cache.getIfPresent(resPath);
+        if (entry != null && entry.hasContent) {
+            return entry.toRawResource();
+        }
+
+        long seen = invalidations.get();
+        entry = load(delegate.getResourceImpl(resPath));
+        cacheIfUnchanged(resPath, entry, seen);
+        return entry.toRawResource();
+    }
+
+    @Override
+    protected List<RawResource> getResourcesImpl(List<String> resPaths) throws IOException {
+        syncIfDue();
+        RawResource[] result = new RawResource[resPaths.size()];
+        List<Integer> missIndexes = Lists.newArrayList();
+        List<String> missPaths = Lists.newArrayList();
+        for (int i = 0; i < resPaths.size(); i++) {
+            Entry entry = cache.getIfPresent(resPaths.get(i));
+            if (entry != null && entry.hasContent) {
+                result[i] = entry.toRawResource();
+            } else {
+                missIndexes.add(i);
+                missPaths.add(resPaths.get(i));
+            }
+        }
+
+        if (!missPaths.isEmpty()) {
+            long seen = invalidations.get();
+            List<RawResource> loaded = delegate.getResourcesImpl(missPaths);
+            try {
+                for (int i = 0; i < missPaths.size(); i++) {
+                    Entry entry = load(loaded.get(i));
+                    loaded.set(i, null);
+                    cacheIfUnchanged(missPaths.get(i), entry, seen);
+                    result[missIndexes.get(i)] = entry.toRawResource();
+                }
+            } finally {
+                for (RawResource raw : loaded) {
+                    if (raw != null) {
+                        IOUtils.closeQuietly(raw.inputStream);
+                    }
+                }
+            }
+        }
+        return Lists.newArrayList(result);
+    }
+
+    @Override
+    protected long getResourceTimestampImpl(String resPath) throws IOException {
+        syncIfDue();
+        Entry entry = cache.getIfPresent(resPath);
+        if (entry != null) {
+            return entry.timestamp;
+        }
+
+        long seen = invalidations.get();
+        long timestamp = delegate.getResourceTimestampImpl(resPath);
+        cacheIfUnchanged(resPath, new Entry(timestamp), seen);
+        return timestamp;
+    }
+
+    private Entry load(RawResource raw) throws IOException {
+        if (raw == null) {
+            return new Entry(null, 0);
+        }
+        try {
+            return new Entry(IOUtils.toByteArray(raw.inputStream), raw.timestamp);
+        } finally {
+            IOUtils.closeQuietly(raw.inputStream);
+        }
+    }
+
+    private void cacheIfUnchanged(String resPath, Entry entry, long seen) {
+        if (!isCached(resPath)) {
+            return;
+        }
+        if (entry.content != null && entry.content.length > maxEntryBytes) {
+            entry = new Entry(entry.timestamp);
+        }
+        if (invalidations.get() == seen) {
+            cache.put(resPath, entry);
+        }
+    }
+
+    @Override
+    protected void putResourceImpl(String resPath, InputStream content, long ts) throws IOException {
+        try {
+            delegate.putResourceImpl(resPath, content, ts);
+        } finally {
+            logChange(resPath);
+        }
+    }
+
+    @Override
+    protected long checkAndPutResourceImpl(String resPath, byte[] content, long oldTS, long newTS) throws IOException, IllegalStateException {
+        long result;
+        try {
+            result = delegate.checkAndPutResourceImpl(resPath, content, oldTS, newTS);
+        } catch (IllegalStateException e) {
+            // conflict means what is cached is out of date
+            invalidate(resPath);
+            throw e;
+        } catch (IOException e) {
+            logChange(resPath); // may have been written anyway
+            throw e;
+        }
+        logChange(resPath);
+        return result;
+    }
+
+    @Override
+    protected void deleteResourceImpl(String resPath) throws IOException {
+        try {
+            delegate.deleteResourceImpl(resPath);
+        } finally {
+            logChange(resPath);
+        }
+    }
+
+    @Override
+    protected String getReadableResourcePathImpl(String resPath) {
+        return delegate.getReadableResourcePathImpl(resPath);
+    }
+
+    @Override
+    public List<String> collectResourceRecursively(String root, String suffix) throws IOException {
+        return delegate.collectResourceRecursively(root, suffix);
+    }
+
+    // ============================================================================
+
+    private static class Entry {
+        final boolean hasContent;
+        final byte[] content; // null if the resource does not exist
+        final long timestamp; // 0 if the resource does not exist
+
+        Entry(long timestamp) {
+            this.hasContent = false;
+            this.content = null;
+            this.timestamp = timestamp;
+        }
+
+        Entry(byte[] content, long timestamp) {
+            this.hasContent = true;
+            this.content = content;
+            this.timestamp = timestamp;
+        }
+
+        RawResource toRawResource() {
+            return content == null ? null : new RawResource(new ByteArrayInputStream(content), timestamp);
+        }
+    }
+}
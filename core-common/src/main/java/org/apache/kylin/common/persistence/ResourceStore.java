@@ -28,10 +28,15 @@ import java.util.Collections;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.ClassUtil;
+import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,11 +58,16 @@ abstract public class ResourceStore {
     public static final String HYBRID_RESOURCE_ROOT = "/hybrid";
     public static final String EXECUTE_RESOURCE_ROOT = "/execute";
     public static final String EXECUTE_OUTPUT_RESOURCE_ROOT = "/execute_output";
+    public static final String EXECUTE_INDEX_RESOURCE_ROOT = "/execute_index";
     public static final String STREAMING_RESOURCE_ROOT = "/streaming";
     public static final String KAFKA_RESOURCE_ROOT = "/kafka";
     public static final String STREAMING_OUTPUT_RESOURCE_ROOT = "/streaming_output";
     public static final String CUBE_STATISTICS_ROOT = "/cube_statistics";
     public static final String BAD_QUERY_RESOURCE_ROOT = "/bad_query";
+    public static final String CUBE_QUERY_STATS_ROOT = "/cube_query_stats";
+
+    // below this, deserializing is not worth another thread
+    private static final int MIN_RESOURCES_PER_THREAD = 16;
 
     private static final ConcurrentHashMap<KylinConfig, ResourceStore> CACHE = new ConcurrentHashMap<KylinConfig, ResourceStore>();
 
@@ -79,11 +89,14 @@ abstract public class ResourceStore {
         List<Throwable> es = new ArrayList<Throwable>();
         logger.info("Using metadata url " + kylinConfig.getMetadataUrl() + " for resource store");
         for (Class<? extends ResourceStore> cls : getKnownImpl()) {
+            ResourceStore store;
             try {
-                return cls.getConstructor(KylinConfig.class).newInstance(kylinConfig);
+                store = cls.getConstructor(KylinConfig.class).newInstance(kylinConfig);
             } catch (Throwable e) {
                 es.add(e);
+                continue;
             }
+            return kylinConfig.isMetadataCacheEnabled() ? createCachedResourceStore(kylinConfig, store) : store;
         }
         for (Throwable exceptionOrError : es) {
             logger.error("Create new store instance failed ", exceptionOrError);
@@ -91,6 +104,15 @@ abstract public class ResourceStore {
         throw new IllegalArgumentException("Failed to find metadata store by url: " + kylinConfig.getMetadataUrl());
     }
 
+    private static ResourceStore createCachedResourceStore(KylinConfig kylinConfig, ResourceStore store) {
+        try {
+            return new CachedResourceStore(kylinConfig, store);
+        } catch (IOException e) {
+            logger.error("Failed to create cache over " + store.getClass().getSimpleName() + ", going without", e);
+            return store;
+        }
+    }
+
     public static ResourceStore getStore(KylinConfig kylinConfig) {
         if (CACHE.containsKey(kylinConfig)) {
             return CACHE.get(kylinConfig);
@@ -193,6 +215,99 @@ abstract public class ResourceStore {
 
     abstract protected List<RawResource> getAllResourcesImpl(String folderPath, long timeStart, long timeEndExclusive) throws IOException;
 
+    /**
+     * Read many resources in batch, and deserialize them in parallel. The result is in the order of the given paths,
+     * with null for a resource that is not found or fails to deserialize (which is logged).
+     */
+    final public <T extends RootPersistentEntity> List<T> getResources(List<String> resPaths, final Class<T> clz, final Serializer<T> serializer) throws IOException {
+        final List<String> paths = Lists.newArrayListWithCapacity(resPaths.size());
+        for (String resPath : resPaths) {
+            paths.add(norm(resPath));
+        }
+
+        final List<RawResource> rawResources = getResourcesImpl(paths);
+        final Object[] result = new Object[paths.size()];
+        try {
+            final int nThreads = Math.min(kylinConfig.getMetadataLoadThreads(), (paths.size() + MIN_RESOURCES_PER_THREAD - 1) / MIN_RESOURCES_PER_THREAD);
+            if (nThreads <= 1) {
+                for (int i = 0; i < paths.size(); i++) {
+                    result[i] = deserializeQuietly(paths.get(i), rawResources.get(i), serializer);
+                }
+            } else {
+                ExecutorService pool = Executors.newFixedThreadPool(nThreads, new DaemonThreadFactory());
+                try {
+                    List<Future<?>> futures = Lists.newArrayListWithCapacity(nThreads);
+                    for (int t = 0; t < nThreads; t++) {
+                        final int first = t;
+                        futures.add(pool.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                for (int i = first; i < paths.size(); i += nThreads) {
+                                    result[i] = deserializeQuietly(paths.get(i), rawResources.get(i), serializer);
+                                }
+                            }
+                        }));
+                    }
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while loading " + paths.size() + " resources", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to load " + paths.size() + " resources", e.getCause());
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+        } finally {
+            for (RawResource rawResource : rawResources) {
+                if (rawResource != null)
+                    IOUtils.closeQuietly(rawResource.inputStream);
+            }
+        }
+
+        List<T> list = Lists.newArrayListWithCapacity(result.length);
+        for (Object r : result) {
+            list.add(clz.cast(r));
+        }
+        return list;
+    }
+
+    private <T extends RootPersistentEntity> T deserializeQuietly(String resPath, RawResource res, Serializer<T> serializer) {
+        if (res == null)
+            return null;
+
+        try {
+            T r = serializer.deserialize(new DataInputStream(res.inputStream));
+            r.setLastModified(res.timestamp);
+            return r;
+        } catch (Exception e) {
+            logger.error("Error deserializing resource " + resPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Read many resources, return a list in the same order as the paths, with null for a resource not found.
+     * Subclass may override to fetch them in fewer round trips.
+     */
+    protected List<RawResource> getResourcesImpl(List<String> resPaths) throws IOException {
+        List<RawResource> result = Lists.newArrayListWithCapacity(resPaths.size());
+        try {
+            for (String resPath : resPaths) {
+                result.add(getResourceImpl(resPath));
+            }
+        } catch (IOException e) {
+            for (RawResource rawResource : result) {
+                if (rawResource != null)
+                    IOUtils.closeQuietly(rawResource.inputStream);
+            }
+            throw e;
+        }
+        return result;
+    }
+
     /** returns null if not exists */
     abstract protected RawResource getResourceImpl(String resPath) throws IOException;
 
@@ -270,7 +385,7 @@ abstract public class ResourceStore {
 
     abstract protected String getReadableResourcePathImpl(String resPath);
 
-    private String norm(String resPath) {
+    final protected String norm(String resPath) {
         resPath = resPath.trim();
         while (resPath.startsWith("//"))
             resPath = resPath.substring(1);
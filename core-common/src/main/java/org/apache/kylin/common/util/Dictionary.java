@@ -132,6 +132,22 @@ abstract public class Dictionary<T> implements Serializable {
 
     abstract protected T getValueFromIdImpl(int id);
 
+    /**
+     * @return true if the values are integers that getLongFromId() decodes without the string form
+     */
+    public boolean isLongValued() {
+        return false;
+    }
+
+    /**
+     * @return the integer value of the given ID, only for dictionaries that are long valued
+     * @throws IllegalArgumentException
+     *             if ID is not found in dictionary
+     */
+    public long getLongFromId(int id) throws IllegalArgumentException {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Convenient form of
      * <code>getIdFromValueBytes(value, offset, len, 0)</code>
@@ -168,6 +184,51 @@ abstract public class Dictionary<T> implements Serializable {
         return value == null;
     }
 
+    /**
+     * Batch form of getIdFromValue(), encodes values[offset, offset + n) into returnIds[returnOffset, returnOffset + n).
+     * Rounding is the same as the single value form, except that a value not found gives ID -1 instead of an
+     * exception, so one bad value does not fail the whole batch.
+     * <p>
+     * Implementations may be faster when adjacent values share a prefix, e.g. when a column is sorted or clustered.
+     */
+    public void getIdsFromValues(T[] values, int offset, int n, int roundingFlag, int[] returnIds, int returnOffset) {
+        for (int i = 0; i < n; i++) {
+            T value = values[offset + i];
+            int id;
+            if (isNullObjectForm(value)) {
+                id = nullId();
+            } else {
+                try {
+                    id = getIdFromValueImpl(value, roundingFlag);
+                } catch (IllegalArgumentException e) {
+                    id = -1;
+                }
+            }
+            returnIds[returnOffset + i] = id;
+        }
+    }
+
+    /**
+     * Batch form of getIdFromValueBytes(), each of values[offset, offset + n) is a whole byte array. A value not
+     * found gives ID -1, like in getIdsFromValues().
+     */
+    public void getIdsFromValueBytes(byte[][] values, int offset, int n, int roundingFlag, int[] returnIds, int returnOffset) {
+        for (int i = 0; i < n; i++) {
+            byte[] value = values[offset + i];
+            int id;
+            if (isNullByteForm(value, 0, value == null ? 0 : value.length)) {
+                id = nullId();
+            } else {
+                try {
+                    id = getIdFromValueBytesImpl(value, 0, value.length, roundingFlag);
+                } catch (IllegalArgumentException e) {
+                    id = -1;
+                }
+            }
+            returnIds[returnOffset + i] = id < 0 ? -1 : id;
+        }
+    }
+
     abstract protected int getIdFromValueBytesImpl(byte[] value, int offset, int len, int roundingFlag);
 
     final public byte[] getValueBytesFromId(int id) {
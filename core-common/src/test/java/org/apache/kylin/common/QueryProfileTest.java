@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.common;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kylin.common.QueryProfile.RegionProfile;
+import org.apache.kylin.common.QueryProfile.SegmentProfile;
+import org.apache.kylin.common.util.JsonUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryProfileTest {
+
+    @After
+    public void after() {
+        QueryProfile.end();
+    }
+
+    @Test
+    public void testThreadBinding() throws InterruptedException {
+        Assert.assertNull(QueryProfile.current());
+
+        QueryProfile profile = QueryProfile.start("q1");
+        Assert.assertSame(profile, QueryProfile.current());
+
+        final QueryProfile[] inOtherThread = new QueryProfile[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                inOtherThread[0] = QueryProfile.current();
+            }
+        };
+        t.start();
+        t.join();
+        Assert.assertNull(inOtherThread[0]);
+
+        QueryProfile.end();
+        Assert.assertNull(QueryProfile.current());
+    }
+
+    @Test
+    public void testStages() throws InterruptedException {
+        QueryProfile profile = new QueryProfile("q1");
+        profile.mark("plan");
+        Thread.sleep(20);
+        profile.mark("execute");
+        profile.mark("plan");
+
+        Map<String, Long> stages = profile.getStages();
+        Assert.assertEquals("[plan, execute]", stages.keySet().toString());
+        Assert.assertTrue(stages.get("execute") >= 20);
+
+        profile.addTupleConvert(10, 1500000);
+        profile.addTupleConvert(10, 1500000);
+        Assert.assertEquals(20, profile.getTupleCount());
+        Assert.assertEquals(3, profile.getTupleConvertTime());
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        QueryProfile profile = new QueryProfile("q1");
+        SegmentProfile seg = profile.newSegment("cube[seg1]", 255);
+        seg.setStorage("KYLIN_ABC", 2, 1024);
+        for (int i = 0; i < 3; i++) {
+            RegionProfile region = new RegionProfile("000" + i, "host" + i);
+            region.setTimes(100 + i, 80, 60, 10, 5);
+            region.setRows(1000, 10);
+            region.setBytes(400, 100);
+            region.setNormalComplete(true);
+            seg.addRegion(region);
+        }
+
+        Assert.assertEquals(1, profile.getSegments().size());
+        Assert.assertEquals(3, seg.getRegions().size());
+        Assert.assertEquals("cube[seg1] cuboid 255: 3 regions, 3000 rows scanned, 30 returned, 300 bytes transferred, slowest rpc 102ms", seg.toString());
+
+        String json = JsonUtil.writeValueAsString(profile);
+        Assert.assertTrue(json.contains("\"query_id\":\"q1\""));
+        Assert.assertTrue(json.contains("\"request_bytes\":1024"));
+        Assert.assertTrue(json.contains("\"scan_time\":60"));
+
+        seg.setHedges(2, 1);
+        Assert.assertEquals(3, profile.getRegionRpcCount());
+        Assert.assertEquals(2, profile.getHedgedRpcCount());
+        Assert.assertEquals(1, profile.getHedgeWinCount());
+        Assert.assertTrue(seg.toString().endsWith(", 2 rpcs hedged, 1 won"));
+    }
+
+    @Test
+    public void testHedgeBudget() {
+        QueryProfile profile = new QueryProfile("q1");
+        AtomicInteger budget = profile.getHedgeBudget(3);
+        Assert.assertEquals(3, budget.get());
+        budget.decrementAndGet();
+        // later scans of the query share what is left
+        Assert.assertSame(budget, profile.getHedgeBudget(3));
+        Assert.assertEquals(2, profile.getHedgeBudget(3).get());
+    }
+}
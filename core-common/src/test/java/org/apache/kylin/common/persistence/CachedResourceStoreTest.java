@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.common.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.NavigableSet;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.ResourceStoreTest.StringEntity;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachedResourceStoreTest extends LocalFileMetadataTestCase {
+
+    private static final String PATH = "/cube/_cached_test.json";
+
+    private KylinConfig config;
+    private FileResourceStore fileStore;
+
+    @Before
+    public void setup() throws Exception {
+        this.createTestMetadata();
+        config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.metadata.cache.sync.interval.ms", String.valueOf(Long.MAX_VALUE / 2));
+        fileStore = new FileResourceStore(config);
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testCachedStore() throws Exception {
+        ResourceStoreTest.testAStore(new CachedResourceStore(config, fileStore));
+    }
+
+    @Test
+    public void testGetStore() throws Exception {
+        assertFalse(ResourceStore.getStore(config) instanceof CachedResourceStore);
+
+        KylinConfig cachedConfig = KylinConfig.createKylinConfig(config);
+        cachedConfig.setProperty("kylin.metadata.cache.enabled", "true");
+        assertTrue(ResourceStore.getStore(cachedConfig) instanceof CachedResourceStore);
+    }
+
+    @Test
+    public void testReadThrough() throws Exception {
+        CachedResourceStore store = new CachedResourceStore(config, fileStore);
+        write(store, PATH, "v1", 1000);
+        assertEquals("v1", store.getResource(PATH, StringEntity.class, StringEntity.serializer).str);
+
+        // changed behind the cache
+        write(fileStore, PATH, "v2", 2000);
+        assertEquals("v1", store.getResource(PATH, StringEntity.class, StringEntity.serializer).str);
+        assertEquals(1000, store.getResourceTimestamp(PATH));
+
+        store.invalidateAll();
+        assertEquals("v2", store.getResource(PATH, StringEntity.class, StringEntity.serializer).str);
+        assertEquals(2000, store.getResourceTimestamp(PATH));
+
+        // absence is cached too
+        String missing = "/cube/_cached_missing.json";
+        assertNull(store.getResource(missing, StringEntity.class, StringEntity.serializer));
+        write(fileStore, missing, "x", 1000);
+        assertFalse(store.exists(missing));
+        assertEquals(0, store.getResourceTimestamp(missing));
+
+        store.deleteResource(missing);
+        store.deleteResource(PATH);
+        assertFalse(store.exists(PATH));
+    }
+
+    @Test
+    public void testChangeLog() throws Exception {
+        // two servers on the same metadata
+        CachedResourceStore store1 = new CachedResourceStore(config, fileStore);
+        CachedResourceStore store2 = new CachedResourceStore(config, new FileResourceStore(config));
+        String other = "/cube/_cached_other.json";
+
+        write(store1, PATH, "v1", 1000);
+        write(store1, other, "o1", 1000);
+        assertEquals("v1", read(store2, PATH));
+        assertEquals("o1", read(store2, other));
+
+        write(store1, PATH, "v2", 2000);
+        assertEquals("v2", read(store1, PATH));
+        assertEquals("v1", read(store2, PATH)); // not synced yet
+
+        store2.sync();
+        assertEquals("v2", read(store2, PATH));
+        assertEquals(2000, store2.getResourceTimestamp(PATH));
+
+        store1.deleteResource(PATH);
+        store2.sync();
+        assertFalse(store2.exists(PATH));
+
+        store1.deleteResource(other);
+    }
+
+    @Test
+    public void testSyncOnRead() throws Exception {
+        KylinConfig eagerConfig = KylinConfig.createKylinConfig(config);
+        eagerConfig.setProperty("kylin.metadata.cache.sync.interval.ms", "0");
+        CachedResourceStore store1 = new CachedResourceStore(eagerConfig, fileStore);
+        CachedResourceStore store2 = new CachedResourceStore(eagerConfig, fileStore);
+
+        write(store1, PATH, "v1", 1000);
+        assertEquals("v1", read(store2, PATH));
+        write(store1, PATH, "v2", 2000);
+        assertEquals("v2", read(store2, PATH));
+        store1.deleteResource(PATH);
+    }
+
+    @Test
+    public void testOneChangePerWrite() throws Exception {
+        CachedResourceStore store = new CachedResourceStore(config, fileStore);
+        int before = countChanges();
+        for (int i = 0; i < 150; i++) {
+            store.deleteResource("/cube/_cached_none.json");
+        }
+        // every write adds its own change, nothing is rewritten or dropped
+        assertEquals(before + 150, countChanges());
+
+        CachedResourceStore other = new CachedResourceStore(config, fileStore);
+        write(fileStore, PATH, "v1", 1000);
+        assertEquals("v1", read(other, PATH));
+        write(fileStore, PATH, "v2", 2000);
+        store.deleteResource(PATH);
+        other.sync();
+        assertNull(read(other, PATH));
+    }
+
+    @Test
+    public void testFallenBehind() throws Exception {
+        CachedResourceStore store1 = new CachedResourceStore(config, fileStore);
+        CachedResourceStore store2 = new CachedResourceStore(config, fileStore);
+        String other = "/cube/_cached_other.json";
+
+        write(store1, other, "o1", 1000);
+        store2.sync();
+        assertEquals("o1", read(store2, other));
+
+        // changed behind the cache, and store2 has not synced for longer than the changes are kept
+        write(fileStore, other, "o2", 2000);
+        store2.lastSyncTime = 0;
+        store2.sync();
+        assertEquals("o2", read(store2, other));
+
+        store1.deleteResource(other);
+    }
+
+    @Test
+    public void testUncachedRoots() throws Exception {
+        CachedResourceStore store = new CachedResourceStore(config, fileStore);
+        String output = ResourceStore.EXECUTE_OUTPUT_RESOURCE_ROOT + "/_cached_test";
+        int before = countChanges();
+
+        write(store, output, "running", 1000);
+        assertEquals("running", read(store, output));
+        write(fileStore, output, "done", 2000);
+        assertEquals("done", read(store, output));
+        assertEquals(2000, store.getResourceTimestamp(output));
+
+        store.deleteResource(output);
+        assertEquals(before, countChanges());
+    }
+
+    private int countChanges() throws IOException {
+        NavigableSet<String> changes = fileStore.listResources(CachedResourceStore.CHANGE_LOG_ROOT);
+        return changes == null ? 0 : changes.size();
+    }
+
+    @Test
+    public void testByteBound() throws Exception {
+        KylinConfig smallConfig = KylinConfig.createKylinConfig(config);
+        smallConfig.setProperty("kylin.metadata.cache.max.bytes", "65536");
+        CachedResourceStore store = new CachedResourceStore(smallConfig, fileStore);
+
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            big.append('x');
+        }
+        for (int i = 0; i < 50; i++) {
+            write(store, "/cube/_cached_" + i + ".json", big.toString(), 1000);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals(big.toString(), read(store, "/cube/_cached_" + i + ".json"));
+        }
+        assertTrue(store.getCachedBytes() <= 65536);
+
+        // larger than the share of one entry, not cached
+        StringBuilder huge = new StringBuilder(big);
+        huge.append(big).append(big);
+        write(store, PATH, huge.toString(), 1000);
+        store.invalidateAll();
+        assertEquals(huge.toString(), read(store, PATH));
+        assertEquals(0, store.getCachedBytes());
+
+        for (int i = 0; i < 50; i++) {
+            store.deleteResource("/cube/_cached_" + i + ".json");
+        }
+        store.deleteResource(PATH);
+    }
+
+    private void write(ResourceStore store, String path, String str, long ts) throws IOException {
+        StringEntity entity = new StringEntity(str);
+        entity.setLastModified(fileStore.getResourceTimestamp(path));
+        store.putResource(path, entity, ts, StringEntity.serializer);
+    }
+
+    private static String read(ResourceStore store, String path) throws IOException {
+        StringEntity entity = store.getResource(path, StringEntity.class, StringEntity.serializer);
+        return entity == null ? null : entity.str;
+    }
+}
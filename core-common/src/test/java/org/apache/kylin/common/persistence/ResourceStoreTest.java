@@ -23,6 +23,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -31,6 +32,8 @@ import java.util.NavigableSet;
 
 import org.apache.commons.lang.StringUtils;
 
+import com.google.common.collect.Lists;
+
 /**
  * Be called by LocalFileResourceStoreTest and ITHBaseResourceStoreTest.
  */
@@ -39,6 +42,45 @@ public class ResourceStoreTest {
     public static void testAStore(ResourceStore store) throws IOException {
         testBasics(store);
         testGetAllResources(store);
+        testGetResources(store);
+    }
+
+    private static void testGetResources(ResourceStore store) throws IOException {
+        final String folder = "/testFolder";
+        final int n = 100;
+
+        // reset any leftover garbage
+        ResourceTool.resetR(store, folder);
+
+        List<String> paths = Lists.newArrayList();
+        for (int i = 0; i < n; i++) {
+            String path = folder + "/sub" + (i % 3) + "/res" + i + ".json";
+            store.putResource(path, new StringEntity("data" + i), 1000 + i, StringEntity.serializer);
+            paths.add(path);
+        }
+        store.putResource(folder + "/other.txt", new StringEntity("other"), 1000, StringEntity.serializer);
+        store.putResource(folder + "/broken.json", new ByteArrayInputStream(new byte[] { 1 }), 1000);
+
+        List<String> collected = store.collectResourceRecursively(folder, ".json");
+        assertEquals(n + 1, collected.size());
+        assertTrue(collected.containsAll(paths));
+        assertTrue(collected.contains(folder + "/broken.json"));
+
+        // not found and broken resources are null, in place
+        paths.add(3, folder + "/notexist.json");
+        paths.add(folder + "/broken.json");
+        List<StringEntity> result = store.getResources(paths, StringEntity.class, StringEntity.serializer);
+        assertEquals(paths.size(), result.size());
+        for (int i = 0, j = 0; i < paths.size(); i++) {
+            if (i == 3 || i == paths.size() - 1) {
+                assertNull(result.get(i));
+            } else {
+                assertEntity(result.get(i), "data" + j, 1000 + j);
+                j++;
+            }
+        }
+
+        ResourceTool.resetR(store, folder);
     }
 
     private static void testGetAllResources(ResourceStore store) throws IOException {
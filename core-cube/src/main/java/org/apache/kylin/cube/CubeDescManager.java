@@ -126,7 +126,10 @@ public class CubeDescManager {
     private CubeDesc loadCubeDesc(String path) throws IOException {
         ResourceStore store = getStore();
         CubeDesc ndesc = store.getResource(path, CubeDesc.class, CUBE_DESC_SERIALIZER);
+        return initCubeDesc(path, ndesc);
+    }
 
+    private CubeDesc initCubeDesc(String path, CubeDesc ndesc) {
         if (StringUtils.isBlank(ndesc.getName())) {
             throw new IllegalStateException("CubeDesc name must not be blank");
         }
@@ -199,10 +202,12 @@ public class CubeDescManager {
         cubeDescMap.clear();
 
         List<String> paths = store.collectResourceRecursively(ResourceStore.CUBE_DESC_RESOURCE_ROOT, MetadataConstants.FILE_SURFIX);
-        for (String path : paths) {
+        List<CubeDesc> descs = store.getResources(paths, CubeDesc.class, CUBE_DESC_SERIALIZER);
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
             CubeDesc desc;
             try {
-                desc = loadCubeDesc(path);
+                desc = initCubeDesc(path, descs.get(i));
             } catch (Exception e) {
                 logger.error("Error loading cube desc " + path, e);
                 continue;
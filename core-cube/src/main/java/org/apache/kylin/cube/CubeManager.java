@@ -175,6 +175,7 @@ public class CubeManager implements IRealizationProvider {
         return result;
     }
 
+    @SuppressWarnings("unchecked")
     public DictionaryInfo buildDictionary(CubeSegment cubeSeg, TblColRef col, DistinctColumnValuesProvider factTableValueProvider) throws IOException {
         CubeDesc cubeDesc = cubeSeg.getCubeDesc();
         if (!cubeDesc.getAllColumnsNeedDictionaryBuilt().contains(col))
@@ -187,6 +188,7 @@ public class CubeManager implements IRealizationProvider {
         if (dictInfo != null) {
             Dictionary<?> dict = dictInfo.getDictionaryObject();
             cubeSeg.putDictResPath(col, dictInfo.getResourcePath());
+            cubeSeg.putDimensionRangeInfo(col, DimensionRangeInfo.fromDictionary((Dictionary<String>) dict, cubeSeg.getConfig().getCubeDimensionRangeMaxValues()));
             cubeSeg.getRowkeyStats().add(new Object[] { col.getName(), dict.getSize(), dict.getSizeOfId() });
 
             CubeUpdate cubeBuilder = new CubeUpdate(cubeSeg.getCubeInstance());
@@ -827,10 +829,13 @@ public class CubeManager implements IRealizationProvider {
 
         logger.info("Loading Cube from folder " + store.getReadableResourcePath(ResourceStore.CUBE_RESOURCE_ROOT));
 
+        // read in batch and deserialize in parallel, rather than a round trip per cube
+        List<CubeInstance> cubes = store.getResources(paths, CubeInstance.class, CUBE_SERIALIZER);
+
         int succeed = 0;
         int fail = 0;
-        for (String path : paths) {
-            CubeInstance cube = reloadCubeLocalAt(path);
+        for (int i = 0; i < paths.size(); i++) {
+            CubeInstance cube = cubes.get(i) == null ? null : initCubeInstance(paths.get(i), cubes.get(i));
             if (cube == null) {
                 fail++;
             } else {
@@ -847,7 +852,15 @@ public class CubeManager implements IRealizationProvider {
         CubeInstance cubeInstance;
         try {
             cubeInstance = store.getResource(path, CubeInstance.class, CUBE_SERIALIZER);
+        } catch (Exception e) {
+            logger.error("Error during load cube instance, skipping : " + path, e);
+            return null;
+        }
+        return initCubeInstance(path, cubeInstance);
+    }
 
+    private synchronized CubeInstance initCubeInstance(String path, CubeInstance cubeInstance) {
+        try {
             CubeDesc cubeDesc = CubeDescManager.getInstance(config).getCubeDesc(cubeInstance.getDescName());
             if (cubeDesc == null)
                 throw new IllegalStateException("CubeInstance desc not found '" + cubeInstance.getDescName() + "', at " + path);
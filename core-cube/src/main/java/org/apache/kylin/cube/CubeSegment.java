@@ -103,6 +103,10 @@ public class CubeSegment implements Comparable<CubeSegment>, IBuildable, ISegmen
     @JsonProperty("rowkey_stats")
     private List<Object[]> rowkeyStats = Lists.newArrayList();
 
+    @JsonProperty("dimension_range_info_map")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private ConcurrentHashMap<String, DimensionRangeInfo> dimensionRangeInfoMap; // table/column ==> value range of the dimension
+
     @JsonProperty("additionalInfo")
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
     private HashMap<String, String> additionalInfo = new LinkedHashMap<String, String>();
@@ -297,6 +301,26 @@ public class CubeSegment implements Comparable<CubeSegment>, IBuildable, ISegmen
         return col.getTable() + "/" + col.getName();
     }
 
+    public Map<String, DimensionRangeInfo> getDimensionRangeInfoMap() {
+        if (dimensionRangeInfoMap == null)
+            dimensionRangeInfoMap = new ConcurrentHashMap<String, DimensionRangeInfo>();
+        return dimensionRangeInfoMap;
+    }
+
+    /**
+     * return null if the value range of the column is unknown
+     */
+    public DimensionRangeInfo getDimensionRangeInfo(TblColRef col) {
+        return getDimensionRangeInfoMap().get(dictKey(col));
+    }
+
+    public void putDimensionRangeInfo(TblColRef col, DimensionRangeInfo rangeInfo) {
+        if (rangeInfo == null)
+            getDimensionRangeInfoMap().remove(dictKey(col));
+        else
+            getDimensionRangeInfoMap().put(dictKey(col), rangeInfo);
+    }
+
     public void setStorageLocationIdentifier(String storageLocationIdentifier) {
         this.storageLocationIdentifier = storageLocationIdentifier;
     }
@@ -439,6 +463,10 @@ public class CubeSegment implements Comparable<CubeSegment>, IBuildable, ISegmen
         this.snapshots = snapshots;
     }
 
+    public void setDimensionRangeInfoMap(ConcurrentHashMap<String, DimensionRangeInfo> dimensionRangeInfoMap) {
+        this.dimensionRangeInfoMap = dimensionRangeInfoMap;
+    }
+
     public String getStatisticsResourcePath() {
         return getStatisticsResourcePath(this.getCubeInstance().getName(), this.getUuid());
     }
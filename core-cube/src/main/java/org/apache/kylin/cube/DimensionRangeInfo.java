@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.cube;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.DateFormat;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.dict.AppendTrieDictionary;
+import org.apache.kylin.metadata.datatype.DataType;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The value range of a dimension within a segment, plus all its distinct values when there are only a few.
+ * Used to skip segments that a query filter cannot match.
+ */
+@JsonAutoDetect(fieldVisibility = Visibility.NONE, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
+public class DimensionRangeInfo {
+
+    @JsonProperty("min")
+    private String min;
+    @JsonProperty("max")
+    private String max;
+    @JsonProperty("values")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private TreeSet<String> values; // null if more than the configured number of distinct values
+
+    // for jackson
+    public DimensionRangeInfo() {
+    }
+
+    public DimensionRangeInfo(String min, String max, Set<String> values) {
+        this.min = min;
+        this.max = max;
+        this.values = values == null ? null : new TreeSet<String>(values);
+    }
+
+    /**
+     * For an order preserving dictionary, the min/max ids hold the min/max values.
+     * Return null for an empty dictionary, or one that is not order preserving, like the
+     * global dictionary whose ids are in append order and cannot be decoded. Null never prunes.
+     */
+    public static DimensionRangeInfo fromDictionary(Dictionary<String> dict, int maxValues) {
+        if (dict == null || dict instanceof AppendTrieDictionary || dict.getSize() <= 0)
+            return null;
+
+        String min = dict.getValueFromId(dict.getMinId());
+        String max = dict.getValueFromId(dict.getMaxId());
+        if (min == null || max == null)
+            return null;
+
+        TreeSet<String> values = null;
+        if (dict.getSize() <= maxValues) {
+            values = new TreeSet<String>();
+            for (int id = dict.getMinId(); id <= dict.getMaxId(); id++) {
+                values.add(dict.getValueFromId(id));
+            }
+        }
+        return new DimensionRangeInfo(min, max, values);
+    }
+
+    /**
+     * The range covering both, for merged segments. The distinct values are kept if there are still few enough.
+     */
+    public static DimensionRangeInfo union(DimensionRangeInfo a, DimensionRangeInfo b, DataType type, int maxValues) {
+        String min = compare(a.min, b.min, type) <= 0 ? a.min : b.min;
+        String max = compare(a.max, b.max, type) >= 0 ? a.max : b.max;
+
+        TreeSet<String> values = null;
+        if (a.values != null && b.values != null) {
+            values = new TreeSet<String>(a.values);
+            values.addAll(b.values);
+            if (values.size() > maxValues)
+                values = null;
+        }
+        return new DimensionRangeInfo(min, max, values);
+    }
+
+    /**
+     * Compare two values the way the column type orders them.
+     *
+     * @throws IllegalArgumentException if a value cannot be parsed as the type
+     */
+    public static int compare(String v1, String v2, DataType type) {
+        if (type != null && type.isNumberFamily()) {
+            return new BigDecimal(v1.trim()).compareTo(new BigDecimal(v2.trim()));
+        } else if (type != null && type.isDateTimeFamily()) {
+            long t1 = DateFormat.stringToMillis(v1);
+            long t2 = DateFormat.stringToMillis(v2);
+            return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+        } else {
+            return Bytes.compareTo(Bytes.toBytes(v1), Bytes.toBytes(v2));
+        }
+    }
+
+    /** Whether the segment may contain the value. */
+    public boolean mayContain(String value, DataType type) {
+        if (compare(value, min, type) < 0 || compare(value, max, type) > 0)
+            return false;
+        if (values == null)
+            return true;
+        for (String v : values) {
+            if (compare(value, v, type) == 0)
+                return true;
+        }
+        return false;
+    }
+
+    /** Whether the segment may contain a value less than (or equal to, if inclusive) the given one. */
+    public boolean mayContainLessThan(String value, DataType type, boolean inclusive) {
+        int c = compare(min, value, type);
+        return inclusive ? c <= 0 : c < 0;
+    }
+
+    /** Whether the segment may contain a value greater than (or equal to, if inclusive) the given one. */
+    public boolean mayContainGreaterThan(String value, DataType type, boolean inclusive) {
+        int c = compare(max, value, type);
+        return inclusive ? c >= 0 : c > 0;
+    }
+
+    public String getMin() {
+        return min;
+    }
+
+    public String getMax() {
+        return max;
+    }
+
+    public Set<String> getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "DimensionRangeInfo [min=" + min + ", max=" + max + ", values=" + values + "]";
+    }
+
+}
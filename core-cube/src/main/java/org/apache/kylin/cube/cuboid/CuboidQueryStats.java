@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.cuboid;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.common.persistence.RootPersistentEntity;
+import org.apache.kylin.metadata.MetadataConstants;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Observed query load of the cuboids of a cube, accumulated from all query servers. Counts decay over time
+ * (see CuboidQueryStatsManager), so they reflect the recent query pattern rather than the whole history.
+ */
+@SuppressWarnings("serial")
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NONE, getterVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE, setterVisibility = JsonAutoDetect.Visibility.NONE)
+public class CuboidQueryStats extends RootPersistentEntity {
+
+    @JsonProperty("cube")
+    private String cube;
+    @JsonProperty("cuboids")
+    private TreeMap<Long, CuboidEntry> cuboids = new TreeMap<>();
+
+    public CuboidQueryStats() {
+    }
+
+    public CuboidQueryStats(String cube) {
+        this.updateRandomUuid();
+        this.cube = cube;
+    }
+
+    public String getCube() {
+        return cube;
+    }
+
+    public Map<Long, CuboidEntry> getCuboids() {
+        return cuboids;
+    }
+
+    public CuboidEntry getCuboid(long cuboidId) {
+        return cuboids.get(cuboidId);
+    }
+
+    public CuboidEntry getOrCreateCuboid(long cuboidId) {
+        CuboidEntry entry = cuboids.get(cuboidId);
+        if (entry == null) {
+            entry = new CuboidEntry();
+            cuboids.put(cuboidId, entry);
+        }
+        return entry;
+    }
+
+    public double getTotalVisitCount() {
+        double total = 0;
+        for (CuboidEntry entry : cuboids.values()) {
+            total += entry.visitCount;
+        }
+        return total;
+    }
+
+    /** multiplies all counts by the factor, and drops cuboids that are hardly visited any more */
+    public void decay(double factor) {
+        for (Iterator<CuboidEntry> it = cuboids.values().iterator(); it.hasNext();) {
+            CuboidEntry entry = it.next();
+            entry.visitCount *= factor;
+            entry.shardVisitCount *= factor;
+            entry.shardLatencySumMs *= factor;
+            if (entry.visitCount < 0.01)
+                it.remove();
+        }
+    }
+
+    public String getResourcePath() {
+        return concatResourcePath(cube);
+    }
+
+    public static String concatResourcePath(String cubeName) {
+        return ResourceStore.CUBE_QUERY_STATS_ROOT + "/" + cubeName + MetadataConstants.FILE_SURFIX;
+    }
+
+    @Override
+    public String toString() {
+        return "CuboidQueryStats [ cube=" + cube + "]";
+    }
+
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.NONE, getterVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE, setterVisibility = JsonAutoDetect.Visibility.NONE)
+    public static class CuboidEntry {
+
+        /** number of segment scans on the cuboid */
+        @JsonProperty("visit_count")
+        private double visitCount;
+        /** number of endpoint responses, one per shard per visit */
+        @JsonProperty("shard_visit_count")
+        private double shardVisitCount;
+        @JsonProperty("shard_latency_sum_ms")
+        private double shardLatencySumMs;
+
+        public void add(double visits, double shardVisits, double shardLatencyMs) {
+            visitCount += visits;
+            shardVisitCount += shardVisits;
+            shardLatencySumMs += shardLatencyMs;
+        }
+
+        public double getVisitCount() {
+            return visitCount;
+        }
+
+        public double getShardVisitCount() {
+            return shardVisitCount;
+        }
+
+        public double getShardLatencySumMs() {
+            return shardLatencySumMs;
+        }
+
+        /** average shards touched by a visit, i.e. the shard number the stats were observed with */
+        public double getAvgShardsPerVisit() {
+            return visitCount == 0 ? 0 : shardVisitCount / visitCount;
+        }
+
+        public double getAvgShardLatencyMs() {
+            return shardVisitCount == 0 ? 0 : shardLatencySumMs / shardVisitCount;
+        }
+    }
+}
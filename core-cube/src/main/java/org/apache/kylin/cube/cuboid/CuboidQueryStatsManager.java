@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.cuboid;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.JsonSerializer;
+import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.common.persistence.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects per-cuboid visits and endpoint latency on a query server, and periodically merges them into the
+ * CuboidQueryStats of each cube in the metadata store. Recording only touches in-memory counters.
+ */
+public class CuboidQueryStatsManager {
+    public static final Serializer<CuboidQueryStats> CUBOID_QUERY_STATS_SERIALIZER = new JsonSerializer<>(CuboidQueryStats.class);
+    private static final Logger logger = LoggerFactory.getLogger(CuboidQueryStatsManager.class);
+
+    private static final ConcurrentHashMap<KylinConfig, CuboidQueryStatsManager> CACHE = new ConcurrentHashMap<>();
+
+    private static final int MAX_FLUSH_RETRY = 3;
+    private static final long ONE_DAY_MS = 24L * 3600 * 1000;
+
+    private KylinConfig kylinConfig;
+    // cube name ==> cuboid id ==> counters not flushed yet
+    private final ConcurrentMap<String, ConcurrentMap<Long, PendingCounter>> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushScheduler;
+
+    private CuboidQueryStatsManager(KylinConfig config) {
+        logger.info("Initializing CuboidQueryStatsManager with config " + config);
+        this.kylinConfig = config;
+    }
+
+    public static CuboidQueryStatsManager getInstance(KylinConfig config) {
+        CuboidQueryStatsManager r = CACHE.get(config);
+        if (r != null) {
+            return r;
+        }
+
+        synchronized (CuboidQueryStatsManager.class) {
+            r = CACHE.get(config);
+            if (r != null) {
+                return r;
+            }
+            r = new CuboidQueryStatsManager(config);
+            CACHE.put(config, r);
+            if (CACHE.size() > 1) {
+                logger.warn("More than one singleton exist");
+            }
+            return r;
+        }
+    }
+
+    public static void clearCache() {
+        for (CuboidQueryStatsManager mgr : CACHE.values()) {
+            mgr.stopFlushScheduler();
+        }
+        CACHE.clear();
+    }
+
+    private ResourceStore getStore() {
+        return ResourceStore.getStore(this.kylinConfig);
+    }
+
+    public CuboidQueryStats getCuboidQueryStats(String cubeName) throws IOException {
+        return getStore().getResource(CuboidQueryStats.concatResourcePath(cubeName), CuboidQueryStats.class, CUBOID_QUERY_STATS_SERIALIZER);
+    }
+
+    /** records one scan of a cuboid in a segment */
+    public void recordVisit(String cubeName, long cuboidId) {
+        getPendingCounter(cubeName, cuboidId).visits.incrementAndGet();
+    }
+
+    /** records one endpoint response of a shard (region) */
+    public void recordShardLatency(String cubeName, long cuboidId, long latencyMs) {
+        PendingCounter counter = getPendingCounter(cubeName, cuboidId);
+        counter.shardVisits.incrementAndGet();
+        counter.shardLatencyMs.addAndGet(Math.max(0, latencyMs));
+    }
+
+    private PendingCounter getPendingCounter(String cubeName, long cuboidId) {
+        ConcurrentMap<Long, PendingCounter> cuboids = pending.get(cubeName);
+        if (cuboids == null) {
+            ConcurrentMap<Long, PendingCounter> newMap = new ConcurrentHashMap<>();
+            cuboids = pending.putIfAbsent(cubeName, newMap);
+            if (cuboids == null) {
+                cuboids = newMap;
+                startFlushScheduler();
+            }
+        }
+
+        PendingCounter counter = cuboids.get(cuboidId);
+        if (counter == null) {
+            PendingCounter newCounter = new PendingCounter();
+            counter = cuboids.putIfAbsent(cuboidId, newCounter);
+            if (counter == null)
+                counter = newCounter;
+        }
+        return counter;
+    }
+
+    private synchronized void startFlushScheduler() {
+        if (flushScheduler != null)
+            return;
+
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "CuboidQueryStatsFlush");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long interval = kylinConfig.getCuboidQueryStatsFlushIntervalSeconds();
+        flushScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable ex) {
+                    logger.warn("Failed to flush cuboid query stats", ex);
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private synchronized void stopFlushScheduler() {
+        if (flushScheduler != null) {
+            flushScheduler.shutdownNow();
+            flushScheduler = null;
+        }
+    }
+
+    /** merges the counters collected so far into the metadata store */
+    public void flush() throws IOException {
+        for (Map.Entry<String, ConcurrentMap<Long, PendingCounter>> cubeEntry : pending.entrySet()) {
+            String cubeName = cubeEntry.getKey();
+
+            CuboidQueryStats delta = new CuboidQueryStats(cubeName);
+            for (Map.Entry<Long, PendingCounter> e : cubeEntry.getValue().entrySet()) {
+                PendingCounter c = e.getValue();
+                long visits = c.visits.getAndSet(0);
+                long shardVisits = c.shardVisits.getAndSet(0);
+                long latency = c.shardLatencyMs.getAndSet(0);
+                if (visits > 0 || shardVisits > 0)
+                    delta.getOrCreateCuboid(e.getKey()).add(visits, shardVisits, latency);
+            }
+            if (delta.getCuboids().isEmpty())
+                continue;
+
+            merge(cubeName, delta);
+        }
+    }
+
+    private void merge(String cubeName, CuboidQueryStats delta) throws IOException {
+        // query servers flush independently, retry on write conflict
+        for (int i = 0;; i++) {
+            CuboidQueryStats stats = getCuboidQueryStats(cubeName);
+            if (stats == null) {
+                stats = new CuboidQueryStats(cubeName);
+            } else {
+                stats.decay(decayFactor(System.currentTimeMillis() - stats.getLastModified()));
+            }
+
+            for (Map.Entry<Long, CuboidQueryStats.CuboidEntry> e : delta.getCuboids().entrySet()) {
+                CuboidQueryStats.CuboidEntry d = e.getValue();
+                stats.getOrCreateCuboid(e.getKey()).add(d.getVisitCount(), d.getShardVisitCount(), d.getShardLatencySumMs());
+            }
+
+            try {
+                getStore().putResource(stats.getResourcePath(), stats, CUBOID_QUERY_STATS_SERIALIZER);
+                return;
+            } catch (IllegalStateException ex) {
+                if (i >= MAX_FLUSH_RETRY) {
+                    logger.warn("Give up flushing cuboid query stats of " + cubeName + " after " + i + " write conflicts");
+                    return;
+                }
+            }
+        }
+    }
+
+    double decayFactor(long elapsedMs) {
+        double halfLifeDays = kylinConfig.getCuboidQueryStatsHalfLifeDays();
+        if (halfLifeDays <= 0 || elapsedMs <= 0)
+            return 1.0;
+        return Math.pow(0.5, elapsedMs / (halfLifeDays * ONE_DAY_MS));
+    }
+
+    public void removeCuboidQueryStats(String cubeName) throws IOException {
+        pending.remove(cubeName);
+        getStore().deleteResource(CuboidQueryStats.concatResourcePath(cubeName));
+    }
+
+    private static class PendingCounter {
+        final AtomicLong visits = new AtomicLong();
+        final AtomicLong shardVisits = new AtomicLong();
+        final AtomicLong shardLatencyMs = new AtomicLong();
+    }
+}
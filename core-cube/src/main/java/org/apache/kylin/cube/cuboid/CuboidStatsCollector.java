@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.cuboid;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Collects per cuboid HLL counters of rowkey combinations in one pass over the rows.
+ * <p>
+ * Each rowkey column value is hashed once into 64 bits (seeded by the column position), and the hash of a
+ * cuboid is the mixed sum of its column hashes. Cuboids are visited in the order of the spanning tree, so
+ * a child's sum is its parent's sum minus the columns it drops, making the per row cost one subtraction
+ * and one HLL update per cuboid, without any allocation.
+ * <p>
+ * The registers differ from counters of the same rows hashed the old way, by HLL itself over the concatenated
+ * column values, so the two must never be merged. Statistics record {@link #STATS_FORMAT_VERSION} for that.
+ * <p>
+ * Optionally rows are reservoir sampled, then only the column hashes of the sampled rows are kept and
+ * counted when result is requested. Not thread-safe.
+ */
+public class CuboidStatsCollector {
+
+    /** version of the cuboid statistics written from this collector, statistics without a version are 1 */
+    public static final int STATS_FORMAT_VERSION = 2;
+
+    private static final long NULL_HASH = 0x5bd1e9955bd1e995L;
+    private static final long COLUMN_SEED = 0x9e3779b97f4a7c15L;
+
+    private final int nRowKey;
+    private final long[] cuboidIds; // in spanning tree pre-order, base cuboid first
+    private final int[] parents; // index of parent in cuboidIds, -1 for base
+    private final int[][] droppedColumns; // rowkey column indexes in parent but not in child
+    private final HyperLogLogPlusCounter[] counters;
+    private final long[] sums;
+    private final long[] rowHashes;
+
+    private final int reservoirSize;
+    private final long[] reservoir;
+    private final Random random;
+    private long rowCount = 0;
+    private boolean reservoirFlushed = false;
+
+    public CuboidStatsCollector(CubeDesc cubeDesc, int hllPrecision) {
+        this(cubeDesc, hllPrecision, 0);
+    }
+
+    /**
+     * @param reservoirSize max number of rows to sample, 0 to count every row
+     */
+    public CuboidStatsCollector(CubeDesc cubeDesc, int hllPrecision, int reservoirSize) {
+        this(Cuboid.getBaseCuboidId(cubeDesc), spanningTreeOf(new CuboidScheduler(cubeDesc), Cuboid.getBaseCuboidId(cubeDesc)), hllPrecision, reservoirSize);
+    }
+
+    /**
+     * @param cuboidTree cuboid id to its parent id, parents must come before children in iteration order
+     */
+    public CuboidStatsCollector(long baseCuboidId, Map<Long, Long> cuboidTree, int hllPrecision, int reservoirSize) {
+        this.nRowKey = Long.bitCount(baseCuboidId);
+        int n = cuboidTree.size();
+        this.cuboidIds = new long[n];
+        this.parents = new int[n];
+        this.droppedColumns = new int[n][];
+        this.counters = new HyperLogLogPlusCounter[n];
+        this.sums = new long[n];
+        this.rowHashes = new long[nRowKey];
+
+        Map<Long, Integer> indexes = Maps.newHashMapWithExpectedSize(n);
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : cuboidTree.entrySet()) {
+            long cuboidId = entry.getKey();
+            Long parentId = entry.getValue();
+            cuboidIds[i] = cuboidId;
+            if (parentId == null) {
+                if (cuboidId != baseCuboidId)
+                    throw new IllegalArgumentException("Cuboid " + cuboidId + " has no parent");
+                parents[i] = -1;
+                droppedColumns[i] = new int[0];
+            } else {
+                Integer parentIndex = indexes.get(parentId);
+                if (parentIndex == null)
+                    throw new IllegalArgumentException("Parent " + parentId + " of cuboid " + cuboidId + " is not visited before it");
+                parents[i] = parentIndex;
+                droppedColumns[i] = toColumnIndexes(baseCuboidId, parentId & ~cuboidId);
+            }
+            counters[i] = new HyperLogLogPlusCounter(hllPrecision);
+            indexes.put(cuboidId, i);
+            i++;
+        }
+        if (n == 0 || parents[0] != -1)
+            throw new IllegalArgumentException("Base cuboid must come first");
+
+        this.reservoirSize = reservoirSize;
+        this.reservoir = reservoirSize > 0 ? new long[reservoirSize * nRowKey] : null;
+        this.random = reservoirSize > 0 ? new Random() : null;
+    }
+
+    /** cuboid id to parent id in spanning tree pre-order */
+    public static Map<Long, Long> spanningTreeOf(CuboidScheduler scheduler, long baseCuboidId) {
+        Map<Long, Long> tree = Maps.newLinkedHashMap();
+        tree.put(baseCuboidId, null);
+        List<Long> stack = Lists.newArrayList(baseCuboidId);
+        while (!stack.isEmpty()) {
+            long parent = stack.remove(stack.size() - 1);
+            Collection<Long> children = scheduler.getSpanningCuboid(parent);
+            for (Long child : children) {
+                tree.put(child, parent);
+                stack.add(child);
+            }
+        }
+        return tree;
+    }
+
+    private static int[] toColumnIndexes(long baseCuboidId, long mask) {
+        int[] result = new int[Long.bitCount(mask)];
+        long highestBit = Long.highestOneBit(baseCuboidId);
+        int position = 0;
+        for (int i = 0; highestBit != 0; i++, highestBit >>>= 1) {
+            if ((mask & highestBit) != 0) {
+                result[position++] = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param rowKeyValues values of rowkey columns, in rowkey order
+     */
+    public void addRow(String[] rowKeyValues) {
+        for (int i = 0; i < nRowKey; i++) {
+            rowHashes[i] = hashValue(rowKeyValues[i], i);
+        }
+        addRowHashes(rowHashes);
+    }
+
+    public void addRow(List<String> rowKeyValues) {
+        for (int i = 0; i < nRowKey; i++) {
+            rowHashes[i] = hashValue(rowKeyValues.get(i), i);
+        }
+        addRowHashes(rowHashes);
+    }
+
+    private void addRowHashes(long[] hashes) {
+        if (reservoirFlushed)
+            throw new IllegalStateException("Cannot add row after result is taken");
+
+        rowCount++;
+        if (reservoir == null) {
+            count(hashes, 0);
+        } else if (rowCount <= reservoirSize) {
+            System.arraycopy(hashes, 0, reservoir, (int) (rowCount - 1) * nRowKey, nRowKey);
+        } else {
+            long slot = (long) (random.nextDouble() * rowCount);
+            if (slot < reservoirSize) {
+                System.arraycopy(hashes, 0, reservoir, (int) slot * nRowKey, nRowKey);
+            }
+        }
+    }
+
+    private void count(long[] hashes, int offset) {
+        long baseSum = 0;
+        for (int i = 0; i < nRowKey; i++) {
+            baseSum += hashes[offset + i];
+        }
+        sums[0] = baseSum;
+        counters[0].addHashDirectly(mix(baseSum));
+
+        for (int k = 1; k < cuboidIds.length; k++) {
+            long sum = sums[parents[k]];
+            int[] dropped = droppedColumns[k];
+            for (int c = 0; c < dropped.length; c++) {
+                sum -= hashes[offset + dropped[c]];
+            }
+            sums[k] = sum;
+            counters[k].addHashDirectly(mix(sum));
+        }
+    }
+
+    private void flushReservoir() {
+        if (reservoir == null || reservoirFlushed)
+            return;
+
+        int sampled = (int) getSampledRowCount();
+        for (int r = 0; r < sampled; r++) {
+            count(reservoir, r * nRowKey);
+        }
+        reservoirFlushed = true;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /** number of rows that are counted, for scaling up the estimates */
+    public long getSampledRowCount() {
+        return reservoir == null ? rowCount : Math.min(rowCount, reservoirSize);
+    }
+
+    /** the HLL counter of each cuboid, call once after all rows are added */
+    public Map<Long, HyperLogLogPlusCounter> getResult() {
+        flushReservoir();
+        Map<Long, HyperLogLogPlusCounter> result = Maps.newLinkedHashMap();
+        for (int i = 0; i < cuboidIds.length; i++) {
+            result.put(cuboidIds[i], counters[i]);
+        }
+        return result;
+    }
+
+    static long hashValue(String value, int column) {
+        long h = 0xcbf29ce484222325L ^ ((column + 1) * COLUMN_SEED);
+        if (value == null)
+            return mix(h ^ NULL_HASH);
+
+        // FNV-1a over chars, finalized by the murmur3 mixer
+        for (int i = 0, n = value.length(); i < n; i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h ^ value.length());
+    }
+
+    // murmur3 fmix64
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.cuboid.benchmark;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.cube.cuboid.CuboidStatsCollector;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Compares per-cuboid rehashing of rowkey columns (how cuboid statistics used to be collected) with the
+ * incremental hashing of CuboidStatsCollector, on a full cube of 12 dimensions (4095 cuboids).
+ */
+public class CuboidStatsBenchmark {
+
+    final int nDims;
+    final long baseCuboidId;
+    final String[][] rows;
+    final int precision = 14;
+
+    public CuboidStatsBenchmark(int nDims, int nRows) {
+        this.nDims = nDims;
+        this.baseCuboidId = (1L << nDims) - 1;
+        this.rows = new String[nRows][nDims];
+
+        Random rand = new Random(0);
+        for (int r = 0; r < nRows; r++) {
+            for (int d = 0; d < nDims; d++) {
+                rows[r][d] = "v" + rand.nextInt(10 << d);
+            }
+        }
+    }
+
+    /** a spanning tree covering all cuboids of base, each child's parent adds back its lowest missing dimension */
+    public static Map<Long, Long> fullCubeTree(long baseCuboidId) {
+        Map<Long, Long> tree = Maps.newLinkedHashMap();
+        // a parent is always numerically larger than its children
+        for (long cuboid = baseCuboidId; cuboid > 0; cuboid--) {
+            if ((cuboid & ~baseCuboidId) != 0)
+                continue;
+            long missing = baseCuboidId & ~cuboid;
+            tree.put(cuboid, missing == 0 ? null : cuboid | Long.lowestOneBit(missing));
+        }
+        return tree;
+    }
+
+    long testRehashEachCuboid() {
+        Map<Long, Long> tree = fullCubeTree(baseCuboidId);
+        long[] cuboidIds = new long[tree.size()];
+        int[][] columns = new int[tree.size()][];
+        HyperLogLogPlusCounter[] counters = new HyperLogLogPlusCounter[tree.size()];
+        int i = 0;
+        for (long cuboid : tree.keySet()) {
+            cuboidIds[i] = cuboid;
+            columns[i] = new int[Long.bitCount(cuboid)];
+            for (int d = 0, p = 0; d < nDims; d++) {
+                if ((cuboid & (1L << (nDims - 1 - d))) != 0)
+                    columns[i][p++] = d;
+            }
+            counters[i] = new HyperLogLogPlusCounter(precision);
+            i++;
+        }
+
+        HashFunction hf = Hashing.murmur3_32();
+        ByteArray[] rowHashcodes = new ByteArray[nDims];
+        for (int d = 0; d < nDims; d++) {
+            rowHashcodes[d] = new ByteArray();
+        }
+
+        long t = System.currentTimeMillis();
+        for (String[] row : rows) {
+            for (int d = 0; d < nDims; d++) {
+                rowHashcodes[d].set(hf.newHasher().putString(row[d]).hash().asBytes());
+            }
+            for (int c = 0; c < cuboidIds.length; c++) {
+                Hasher hc = hf.newHasher();
+                for (int position = 0; position < columns[c].length; position++) {
+                    hc.putBytes(rowHashcodes[columns[c][position]].array());
+                }
+                counters[c].add(hc.hash().asBytes());
+            }
+        }
+        long time = System.currentTimeMillis() - t;
+        System.out.println("Rehash each cuboid: " + time + " ms, base cuboid count " + counters[0].getCountEstimate());
+        return time;
+    }
+
+    long testIncrementalHash() {
+        CuboidStatsCollector collector = new CuboidStatsCollector(baseCuboidId, fullCubeTree(baseCuboidId), precision, 0);
+
+        long t = System.currentTimeMillis();
+        for (String[] row : rows) {
+            collector.addRow(row);
+        }
+        Map<Long, HyperLogLogPlusCounter> result = collector.getResult();
+        long time = System.currentTimeMillis() - t;
+        System.out.println("Incremental hash:   " + time + " ms, base cuboid count " + result.get(baseCuboidId).getCountEstimate());
+        return time;
+    }
+
+    public static void main(String[] args) {
+        CuboidStatsBenchmark benchmark = new CuboidStatsBenchmark(12, 20000);
+        for (int i = 0; i < 3; i++) {
+            long t1 = benchmark.testRehashEachCuboid();
+            long t2 = benchmark.testIncrementalHash();
+            System.out.println("Speed-up: " + (t1 * 100 / Math.max(1, t2)) / 100.0 + "x");
+        }
+    }
+}
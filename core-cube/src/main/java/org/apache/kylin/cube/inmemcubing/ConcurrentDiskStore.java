@@ -38,7 +38,6 @@ import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.IGTScanner;
-import org.apache.kylin.gridtable.IGTStore;
 import org.apache.kylin.gridtable.IGTWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,7 +45,7 @@ import org.slf4j.LoggerFactory;
 /**
  * A disk store that allows concurrent read and exclusive write.
  */
-public class ConcurrentDiskStore implements IGTStore, Closeable {
+public class ConcurrentDiskStore implements ISeekableStore, Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(MemDiskStore.class);
     private static final boolean debug = true;
@@ -124,16 +123,30 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
 
     @Override
     public IGTScanner scan(GTScanRequest scanRequest) throws IOException {
-        return newReader();
+        return newReader(0);
     }
 
-    private IGTScanner newReader() throws IOException {
+    @Override
+    public IGTScanner scanFrom(long position) throws IOException {
+        return newReader(position);
+    }
+
+    @Override
+    public long getWritePosition() {
+        synchronized (lock) {
+            if (activeWriter == null)
+                throw new IllegalStateException();
+            return activeWriter.recordOffset;
+        }
+    }
+
+    private IGTScanner newReader(long startOffset) throws IOException {
         synchronized (lock) {
             if (activeWriter != null)
                 throw new IllegalStateException();
 
             openReadChannel();
-            Reader r = new Reader(0);
+            Reader r = new Reader(startOffset);
             activeReaders.add(r);
             return r;
         }
@@ -275,9 +288,11 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
         final DataOutputStream dout;
         final ByteBuffer buf;
         long writeOffset;
+        long recordOffset; // including what is still buffered
 
         Writer(long startOffset) {
             this.writeOffset = startOffset;
+            this.recordOffset = startOffset;
             this.buf = ByteBuffer.allocate(info.getMaxRecordLength());
 
             if (debug)
@@ -313,6 +328,7 @@ public class ConcurrentDiskStore implements IGTStore, Closeable {
             int len = buf.position();
             dout.writeInt(len);
             dout.write(buf.array(), buf.arrayOffset(), len);
+            recordOffset += 4 + len;
         }
 
         @Override
@@ -29,13 +29,19 @@ public class CuboidResult {
     public int nRows;
     public long timeSpent;
     public int aggrCacheMB;
+    public CuboidSplitSampler splitSampler; // null if the cuboid has no dimension
 
     public CuboidResult(long cuboidId, GridTable table, int nRows, long timeSpent, int aggrCacheMB) {
+        this(cuboidId, table, nRows, timeSpent, aggrCacheMB, null);
+    }
+
+    public CuboidResult(long cuboidId, GridTable table, int nRows, long timeSpent, int aggrCacheMB, CuboidSplitSampler splitSampler) {
         this.cuboidId = cuboidId;
         this.table = table;
         this.nRows = nRows;
         this.timeSpent = timeSpent;
         this.aggrCacheMB = aggrCacheMB;
+        this.splitSampler = splitSampler;
     }
 
 }
@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements. See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.kylin.cube.inmemcubing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+
+/**
+ * Samples the leading column of a cuboid while it is written in sorted order, keeping a bounded number of evenly
+ * spaced values. The samples later cut an aggregation over the cuboid into key ranges of similar row count.
+ * <p>
+ * Each sample remembers the store position of the first row of its value, so the aggregation of a key range can
+ * start reading right there (see ISeekableStore).
+ */
+public class CuboidSplitSampler {
+
+    static final int MAX_SAMPLES = 128; // must be even
+
+    /** the inclusive start of a key range, and where its first row is in the store */
+    public static class SplitPoint {
+        public final ByteArray key;
+        public final long position;
+
+        SplitPoint(ByteArray key, long position) {
+            this.key = key;
+            this.position = position;
+        }
+    }
+
+    private final ArrayList<SplitPoint> samples = new ArrayList<SplitPoint>();
+    private long step = 1;
+    private long count = 0;
+
+    // the value of the last row, and the position of the first row having that value
+    private ByteArray lastKey = new ByteArray(16);
+    private int lastKeyLength = -1;
+    private long groupPosition = -1;
+
+    /** adds the row about to be written to the store, whose write position is asked only when the value changes */
+    public void add(ByteArray leadingColumn, ISeekableStore store) {
+        add(leadingColumn, store, -1);
+    }
+
+    //for ut
+    void add(ByteArray leadingColumn, long position) {
+        add(leadingColumn, null, position);
+    }
+
+    private void add(ByteArray leadingColumn, ISeekableStore store, long position) {
+        int cmp = lastKeyLength < 0 ? 1 : Bytes.compareTo(leadingColumn.array(), leadingColumn.offset(), leadingColumn.length(), lastKey.array(), 0, lastKeyLength);
+        if (cmp < 0)
+            throw new IllegalStateException("Leading column is not in ascending order");
+        if (cmp > 0) {
+            setLastKey(leadingColumn);
+            groupPosition = store == null ? position : store.getWritePosition();
+        }
+
+        if (count++ % step != 0)
+            return;
+
+        samples.add(new SplitPoint(leadingColumn.copy(), groupPosition));
+
+        // keep every other sample and double the step, so the samples stay evenly spaced
+        if (samples.size() >= MAX_SAMPLES) {
+            for (int i = 0; i < samples.size() / 2; i++) {
+                samples.set(i, samples.get(i * 2));
+            }
+            samples.subList(samples.size() / 2, samples.size()).clear();
+            step *= 2;
+        }
+    }
+
+    // reuses the buffer, most rows don't change the value of the leading column
+    private void setLastKey(ByteArray key) {
+        if (lastKey.array().length < key.length())
+            lastKey = new ByteArray(key.length() * 2);
+        System.arraycopy(key.array(), key.offset(), lastKey.array(), 0, key.length());
+        lastKeyLength = key.length();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns at most (nSplits - 1) points of distinct values in ascending order, each being the inclusive start of
+     * a key range. The first range starts from the beginning, and the last range goes to the end. An empty list means
+     * no split.
+     */
+    public List<SplitPoint> getSplitPoints(int nSplits) {
+        if (nSplits <= 1 || samples.size() <= 1)
+            return Collections.emptyList();
+
+        List<SplitPoint> result = new ArrayList<SplitPoint>(nSplits - 1);
+        SplitPoint first = samples.get(0);
+        for (int i = 1; i < nSplits; i++) {
+            SplitPoint point = samples.get((int) ((long) i * samples.size() / nSplits));
+            SplitPoint prev = result.isEmpty() ? first : result.get(result.size() - 1);
+            // rows of the same value must fall into the same range
+            if (point.key.compareTo(prev.key) > 0)
+                result.add(point);
+        }
+        return result;
+    }
+}
@@ -19,22 +19,33 @@ package org.apache.kylin.cube.inmemcubing;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
+import java.util.NoSuchElementException;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.ImmutableBitSet;
 import org.apache.kylin.common.util.MemoryBudgetController;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.common.util.MemoryBudgetController.MemoryWaterLevel;
+import org.apache.kylin.common.util.MemoryBudgetController.NotEnoughBudgetException;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.cube.cuboid.CuboidScheduler;
+import org.apache.kylin.cube.inmemcubing.CuboidSplitSampler.SplitPoint;
 import org.apache.kylin.cube.gridtable.CubeGridTable;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.gridtable.GTAggregateScanner;
@@ -45,6 +56,7 @@ import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanRequestBuilder;
 import org.apache.kylin.gridtable.GridTable;
 import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStore;
 import org.apache.kylin.measure.topn.Counter;
 import org.apache.kylin.measure.topn.TopNCounter;
 import org.apache.kylin.metadata.datatype.DoubleMutable;
@@ -59,6 +71,11 @@ import com.google.common.collect.Lists;
 /**
  * Build a cube (many cuboids) in memory. Calculating multiple cuboids at the same time as long as memory permits.
  * Assumes base cuboid fits in memory or otherwise OOM exception will occur.
+ * <p>
+ * Cuboid tasks run on a work-stealing pool, a finished cuboid forks the tasks of its children. A large parent is
+ * aggregated into a child by several threads at once, each on a key range of the leading column (see CuboidSplitSampler).
+ * Every cuboid task reserves its aggregation cache from MemoryBudgetController before it starts, which limits how many
+ * cuboids are calculated at the same time.
  */
 public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
@@ -67,6 +84,7 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     // by experience
     private static final double DERIVE_AGGR_CACHE_CONSTANT_FACTOR = 0.1;
     private static final double DERIVE_AGGR_CACHE_VARIABLE_FACTOR = 0.9;
+    private static final int INPUT_BATCH_SIZE = 256;
 
     private final CuboidScheduler cuboidScheduler;
     private final long baseCuboidId;
@@ -78,10 +96,10 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     private MemoryBudgetController memBudget;
     private MemoryWaterLevel baseCuboidMemTracker;
 
-    private Thread[] taskThreads;
-    private Throwable[] taskThreadExceptions;
-    private TreeSet<CuboidTask> taskPending;
-    private AtomicInteger taskCuboidCompleted = new AtomicInteger(0);
+    private volatile ForkJoinPool taskPool;
+    private final ConcurrentLinkedQueue<Throwable> taskExceptions = new ConcurrentLinkedQueue<Throwable>();
+    private final AtomicInteger taskCuboidCompleted = new AtomicInteger(0);
+    private final int splitRowThreshold;
 
     private CuboidResult baseResult;
     private Object[] totalSumForSanityCheck;
@@ -103,6 +121,7 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
             metricsAggrFuncsList.add(measureDesc.getFunction().getExpression());
         }
         this.metricsAggrFuncs = metricsAggrFuncsList.toArray(new String[metricsAggrFuncsList.size()]);
+        this.splitRowThreshold = cubeDesc.getConfig().getCubingInMemSplitRowThreshold();
     }
 
     private GridTable newGridTableByCuboidID(long cuboidID) throws IOException {
@@ -111,7 +130,13 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         // Below several store implementation are very similar in performance. The ConcurrentDiskStore is the simplest.
         // MemDiskStore store = new MemDiskStore(info, memBudget == null ? MemoryBudgetController.ZERO_BUDGET : memBudget);
         // MemDiskStore store = new MemDiskStore(info, MemoryBudgetController.ZERO_BUDGET);
-        ConcurrentDiskStore store = new ConcurrentDiskStore(info);
+        // The OffHeapMemDiskStore keeps cuboids out of heap and lets task threads read without locking.
+        IGTStore store;
+        if (cubeDesc.getConfig().isCubingInMemOffHeapStoreEnabled()) {
+            store = new OffHeapMemDiskStore(info, memBudget == null ? MemoryBudgetController.ZERO_BUDGET : memBudget);
+        } else {
+            store = new ConcurrentDiskStore(info);
+        }
 
         GridTable gridTable = new GridTable(info, store);
         return gridTable;
@@ -155,28 +180,32 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         baseCuboidMemTracker.markLow();
 
         // multiple threads to compute cuboid in parallel
-        taskPending = new TreeSet<CuboidTask>();
         taskCuboidCompleted.set(0);
-        taskThreads = prepareTaskThreads();
-        taskThreadExceptions = new Throwable[taskThreadCount];
-
-        // build base cuboid
-        resultCollector = collector;
-        totalSumForSanityCheck = null;
-        baseResult = createBaseCuboid(input);
-        if (baseResult.nRows == 0)
-            return;
-
-        // plan memory budget
-        baseCuboidMemTracker.markLow();
-        makeMemoryBudget();
-
-        // kick off N-D cuboid tasks and output
-        addChildTasks(baseResult);
-        start(taskThreads);
+        taskExceptions.clear();
+        taskPool = prepareTaskPool();
 
-        // wait complete
-        join(taskThreads);
+        try {
+            // build base cuboid
+            resultCollector = collector;
+            totalSumForSanityCheck = null;
+            baseResult = createBaseCuboid(input);
+            if (baseResult.nRows == 0)
+                return;
+
+            // plan memory budget
+            baseCuboidMemTracker.markLow();
+            makeMemoryBudget();
+
+            // kick off N-D cuboid tasks and output, unless aborted already
+            if (taskHasNoException()) {
+                addChildTasks(baseResult);
+
+                // wait complete
+                waitForAllCuboidDone();
+            }
+        } finally {
+            shutdown(taskPool);
+        }
 
         long endTime = System.currentTimeMillis();
         logger.info("In Mem Cube Build end, " + cubeDesc.getName() + ", takes " + (endTime - startTime) + " ms");
@@ -185,35 +214,44 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
     }
 
     public void abort() {
-        interrupt(taskThreads);
+        ForkJoinPool pool = taskPool;
+        if (pool != null) {
+            addTaskException(new IOException("In-mem cube build of " + cubeDesc.getName() + " is aborted"));
+            pool.shutdownNow();
+        }
     }
 
-    private void start(Thread... threads) {
-        for (Thread t : threads)
-            t.start();
+    private void waitForAllCuboidDone() throws IOException {
+        try {
+            synchronized (taskCuboidCompleted) {
+                while (!isAllCuboidDone() && taskHasNoException()) {
+                    taskCuboidCompleted.wait(60000);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while waiting task and output complete", e);
+        }
     }
 
-    private void interrupt(Thread... threads) {
-        for (Thread t : threads)
-            t.interrupt();
+    private void notifyTaskProgress() {
+        synchronized (taskCuboidCompleted) {
+            taskCuboidCompleted.notifyAll();
+        }
     }
 
-    private void join(Thread... threads) throws IOException {
+    private void shutdown(ForkJoinPool pool) throws IOException {
+        // stop the rest of tasks in case of error, and don't return before the running ones finish
+        pool.shutdownNow();
         try {
-            for (Thread t : threads)
-                t.join();
+            if (!pool.awaitTermination(60, TimeUnit.SECONDS))
+                logger.warn("Cuboid tasks are still running after 60 seconds of shutdown");
         } catch (InterruptedException e) {
             throw new IOException("interrupted while waiting task and output complete", e);
         }
     }
 
     private void throwExceptionIfAny() throws IOException {
-        ArrayList<Throwable> errors = new ArrayList<Throwable>();
-        for (int i = 0; i < taskThreadCount; i++) {
-            Throwable t = taskThreadExceptions[i];
-            if (t != null)
-                errors.add(t);
-        }
+        ArrayList<Throwable> errors = new ArrayList<Throwable>(taskExceptions);
         if (errors.isEmpty()) {
             return;
         } else if (errors.size() == 1) {
@@ -229,77 +267,41 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         }
     }
 
-    private Thread[] prepareTaskThreads() {
-        Thread[] result = new Thread[taskThreadCount];
-        for (int i = 0; i < taskThreadCount; i++) {
-            result[i] = new CuboidTaskThread(i);
-        }
-        return result;
+    private ForkJoinPool prepareTaskPool() {
+        ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("CuboidTask-" + t.getPoolIndex());
+                return t;
+            }
+        };
+        return new ForkJoinPool(Math.max(taskThreadCount, 1), threadFactory, null, false);
     }
 
     public boolean isAllCuboidDone() {
         return taskCuboidCompleted.get() == totalCuboidCount;
     }
 
-    private class CuboidTaskThread extends Thread {
-        private int id;
-
-        CuboidTaskThread(int id) {
-            super("CuboidTask-" + id);
-            this.id = id;
-        }
-
-        @Override
-        public void run() {
-            try {
-                while (!isAllCuboidDone()) {
-                    CuboidTask task = null;
-                    synchronized (taskPending) {
-                        while (task == null && taskHasNoException()) {
-                            task = taskPending.pollFirst();
-                            if (task == null)
-                                taskPending.wait(60000);
-                        }
-                    }
-                    // if task error occurs
-                    if (task == null)
-                        break;
-
-                    CuboidResult newCuboid = buildCuboid(task.parent, task.childCuboidId);
-                    addChildTasks(newCuboid);
-
-                    if (isAllCuboidDone()) {
-                        for (Thread t : taskThreads) {
-                            if (t != Thread.currentThread())
-                                t.interrupt();
-                        }
-                    }
-                }
-            } catch (Throwable ex) {
-                if (!isAllCuboidDone()) {
-                    logger.error("task thread exception", ex);
-                    taskThreadExceptions[id] = ex;
-                }
-            }
-        }
+    private boolean taskHasNoException() {
+        return taskExceptions.isEmpty();
     }
 
-    private boolean taskHasNoException() {
-        for (int i = 0; i < taskThreadExceptions.length; i++)
-            if (taskThreadExceptions[i] != null)
-                return false;
-        return true;
+    private void addTaskException(Throwable ex) {
+        taskExceptions.add(ex);
+        notifyTaskProgress();
     }
 
     private void addChildTasks(CuboidResult parent) {
         List<Long> children = cuboidScheduler.getSpanningCuboid(parent.cuboidId);
-        if (!children.isEmpty()) {
-            synchronized (taskPending) {
-                for (Long child : children) {
-                    taskPending.add(new CuboidTask(parent, child));
-                }
-                taskPending.notifyAll();
-            }
+        // forked tasks are taken in LIFO order by the local thread, fork in reverse to start with the first child
+        for (int i = children.size() - 1; i >= 0; i--) {
+            CuboidTask task = new CuboidTask(parent, children.get(i));
+            Thread current = Thread.currentThread();
+            if (current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) current).getPool() == taskPool)
+                task.fork();
+            else
+                taskPool.execute(task);
         }
     }
 
@@ -335,11 +337,14 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         GTAggregateScanner aggregationScanner = new GTAggregateScanner(baseInput, req, Long.MAX_VALUE);
         aggregationScanner.trackMemoryLevel(baseCuboidMemTracker);
 
+        CuboidSplitSampler splitSampler = newSplitSampler(baseCuboidId, baseCuboid);
         int count = 0;
         for (GTRecord r : aggregationScanner) {
             if (count == 0) {
                 baseCuboidMemTracker.markHigh();
             }
+            if (splitSampler != null)
+                splitSampler.add(r.get(0), (ISeekableStore) baseCuboid.getStore());
             baseBuilder.write(r);
             count++;
         }
@@ -352,20 +357,27 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         int mbEstimateBaseAggrCache = (int) (aggregationScanner.getEstimateSizeOfAggrCache() / MemoryBudgetController.ONE_MB);
         logger.info("Wild estimate of base aggr cache is " + mbEstimateBaseAggrCache + " MB");
 
-        return updateCuboidResult(baseCuboidId, baseCuboid, count, timeSpent, 0);
+        return updateCuboidResult(baseCuboidId, baseCuboid, count, timeSpent, 0, splitSampler);
+    }
+
+    private CuboidSplitSampler newSplitSampler(long cuboidId, GridTable table) {
+        // the leading column is a dimension only if the cuboid has any, and range tasks need to seek to their start
+        return cuboidId == 0 || !(table.getStore() instanceof ISeekableStore) ? null : new CuboidSplitSampler();
     }
 
-    private CuboidResult updateCuboidResult(long cuboidId, GridTable table, int nRows, long timeSpent, int aggrCacheMB) {
+    private CuboidResult updateCuboidResult(long cuboidId, GridTable table, int nRows, long timeSpent, int aggrCacheMB, CuboidSplitSampler splitSampler) {
         if (aggrCacheMB <= 0 && baseResult != null) {
             aggrCacheMB = (int) Math.round(//
                     (DERIVE_AGGR_CACHE_CONSTANT_FACTOR + DERIVE_AGGR_CACHE_VARIABLE_FACTOR * nRows / baseResult.nRows) //
                             * baseResult.aggrCacheMB);
         }
 
-        CuboidResult result = new CuboidResult(cuboidId, table, nRows, timeSpent, aggrCacheMB);
+        CuboidResult result = new CuboidResult(cuboidId, table, nRows, timeSpent, aggrCacheMB, splitSampler);
         taskCuboidCompleted.incrementAndGet();
 
         resultCollector.collect(result);
+        if (isAllCuboidDone())
+            notifyTaskProgress();
         return result;
     }
 
@@ -384,7 +396,7 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         };
 
         // reserve memory for aggregation cache, can't be larger than the parent
-        memBudget.reserveInsist(consumer, parent.aggrCacheMB);
+        reserveManaged(consumer, parent.aggrCacheMB);
         try {
             return aggregateCuboid(parent, cuboidId);
         } finally {
@@ -392,15 +404,96 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         }
     }
 
+    /**
+     * MemoryBudgetController.reserveInsist() waits for other cuboids to give memory back. On a pool worker, the wait
+     * goes through a ManagedBlocker, so the pool can add a thread to keep those other cuboids running.
+     */
+    private void reserveManaged(final MemoryBudgetController.MemoryConsumer consumer, final int mb) throws IOException {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                boolean reserved = false;
+
+                @Override
+                public boolean block() {
+                    memBudget.reserveInsist(consumer, mb);
+                    reserved = true;
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    if (!reserved) {
+                        try {
+                            memBudget.reserve(consumer, mb);
+                            reserved = true;
+                        } catch (NotEnoughBudgetException ex) {
+                            // block then
+                        }
+                    }
+                    return reserved;
+                }
+            });
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while reserving memory for " + consumer, e);
+        }
+    }
+
+    /** waits for a forked task through a ManagedBlocker, same as reserveManaged() */
+    private void joinManaged(final ForkJoinTask<?> task) throws IOException {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() {
+                    task.quietlyJoin();
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return task.isDone();
+                }
+            });
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while waiting for " + task, e);
+        }
+    }
+
     private CuboidResult aggregateCuboid(CuboidResult parent, long cuboidId) throws IOException {
         final Pair<ImmutableBitSet, ImmutableBitSet> allNeededColumns = InMemCubeBuilderUtils.getDimensionAndMetricColumnBitSet(parent.cuboidId, cuboidId, measureCount);
-        return scanAndAggregateGridTable(parent.table, parent.cuboidId, cuboidId, allNeededColumns.getFirst(), allNeededColumns.getSecond());
+        List<SplitPoint> splitPoints = planSplitPoints(parent, cuboidId);
+        if (splitPoints.isEmpty())
+            return scanAndAggregateGridTable(parent.table, parent.cuboidId, cuboidId, allNeededColumns.getFirst(), allNeededColumns.getSecond());
+        else
+            return splitAndAggregateGridTable(parent.table, parent.cuboidId, cuboidId, allNeededColumns.getFirst(), allNeededColumns.getSecond(), splitPoints);
+    }
+
+    private List<SplitPoint> planSplitPoints(CuboidResult parent, long cuboidId) {
+        if (taskThreadCount <= 1 || splitRowThreshold <= 0 || parent.nRows < splitRowThreshold || parent.splitSampler == null)
+            return Collections.emptyList();
+
+        // Key ranges on the leading column of parent map to disjoint and ordered key ranges of the child, only if the
+        // child keeps that column. The leading column is the highest bit of cuboid ID.
+        if ((cuboidId & Long.highestOneBit(parent.cuboidId)) == 0)
+            return Collections.emptyList();
+
+        return parent.splitSampler.getSplitPoints(taskThreadCount);
     }
 
     private GTAggregateScanner prepareGTAggregationScanner(GridTable gridTable, long parentId, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns) throws IOException {
+        return prepareGTAggregationScanner(gridTable, parentId, cuboidId, aggregationColumns, measureColumns, null, null);
+    }
+
+    private GTAggregateScanner prepareGTAggregationScanner(GridTable gridTable, long parentId, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns, SplitPoint rangeStart, ByteArray rangeEnd) throws IOException {
         GTInfo info = gridTable.getInfo();
         GTScanRequest req = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null).setAggrGroupBy(aggregationColumns).setAggrMetrics(measureColumns).setAggrMetricsFuncs(metricsAggrFuncs).setFilterPushDown(null).createGTScanRequest();
-        GTAggregateScanner scanner = (GTAggregateScanner) gridTable.scan(req);
+        GTAggregateScanner scanner;
+        if (rangeStart == null && rangeEnd == null) {
+            scanner = (GTAggregateScanner) gridTable.scan(req);
+        } else {
+            // start reading at the first row of the range, so all range tasks together read the parent once
+            IGTScanner input = rangeStart == null ? gridTable.getStore().scan(req) : ((ISeekableStore) gridTable.getStore()).scanFrom(rangeStart.position);
+            scanner = new GTAggregateScanner(new KeyRangeScanner(input, rangeEnd), req, Long.MAX_VALUE);
+        }
 
         // for child cuboid, some measures don't need aggregation.
         if (parentId != cuboidId) {
@@ -429,16 +522,10 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         ImmutableBitSet allNeededColumns = aggregationColumns.or(measureColumns);
 
         GTRecord newRecord = new GTRecord(newGridTable.getInfo());
+        CuboidSplitSampler splitSampler = newSplitSampler(cuboidId, newGridTable);
         int count = 0;
         try {
-            for (GTRecord record : scanner) {
-                count++;
-                for (int i = 0; i < allNeededColumns.trueBitCount(); i++) {
-                    int c = allNeededColumns.trueBitAt(i);
-                    newRecord.set(i, record.get(c));
-                }
-                builder.write(newRecord);
-            }
+            count += writeCuboid(scanner.iterator(), allNeededColumns, newRecord, builder, splitSampler, newGridTable);
 
             //long t = System.currentTimeMillis();
             //sanityCheck(parentId, cuboidId, scanner.getTotalSumForSanityCheck());
@@ -451,7 +538,70 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         long timeSpent = System.currentTimeMillis() - startTime;
         logger.info("Cuboid " + cuboidId + " has " + count + " rows, build takes " + timeSpent + "ms");
 
-        return updateCuboidResult(cuboidId, newGridTable, count, timeSpent, 0);
+        return updateCuboidResult(cuboidId, newGridTable, count, timeSpent, 0, splitSampler);
+    }
+
+    private CuboidResult splitAndAggregateGridTable(GridTable gridTable, long parentId, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns, List<SplitPoint> splitPoints) throws IOException {
+        long startTime = System.currentTimeMillis();
+        logger.info("Calculating cuboid " + cuboidId + " in " + (splitPoints.size() + 1) + " key ranges");
+
+        List<RangeAggregationTask> rangeTasks = Lists.newArrayListWithCapacity(splitPoints.size() + 1);
+        for (int i = 0; i <= splitPoints.size(); i++) {
+            SplitPoint rangeStart = i == 0 ? null : splitPoints.get(i - 1);
+            ByteArray rangeEnd = i == splitPoints.size() ? null : splitPoints.get(i).key;
+            rangeTasks.add(new RangeAggregationTask(gridTable, parentId, cuboidId, aggregationColumns, measureColumns, rangeStart, rangeEnd));
+        }
+
+        GridTable newGridTable = newGridTableByCuboidID(cuboidId);
+        GTBuilder builder = newGridTable.rebuild();
+
+        ImmutableBitSet allNeededColumns = aggregationColumns.or(measureColumns);
+
+        GTRecord newRecord = new GTRecord(newGridTable.getInfo());
+        CuboidSplitSampler splitSampler = newSplitSampler(cuboidId, newGridTable);
+        int count = 0;
+        try {
+            // aggregate all ranges in parallel, the aggregation caches together are no larger than a single one;
+            // fork in reverse so the current thread picks up the first range itself when joining it
+            for (int i = rangeTasks.size() - 1; i >= 0; i--) {
+                rangeTasks.get(i).fork();
+            }
+
+            // ranges are disjoint and in order, appending them one after another keeps the child sorted
+            for (RangeAggregationTask task : rangeTasks) {
+                joinManaged(task);
+                count += writeCuboid(task.join(), allNeededColumns, newRecord, builder, splitSampler, newGridTable);
+            }
+        } finally {
+            for (RangeAggregationTask task : rangeTasks) {
+                // in case of error, don't close a scanner that is still aggregating
+                task.cancel(false);
+                task.quietlyJoin();
+                task.close();
+            }
+            builder.close();
+        }
+
+        long timeSpent = System.currentTimeMillis() - startTime;
+        logger.info("Cuboid " + cuboidId + " has " + count + " rows, build takes " + timeSpent + "ms");
+
+        return updateCuboidResult(cuboidId, newGridTable, count, timeSpent, 0, splitSampler);
+    }
+
+    private int writeCuboid(Iterator<GTRecord> records, ImmutableBitSet allNeededColumns, GTRecord newRecord, GTBuilder builder, CuboidSplitSampler splitSampler, GridTable newGridTable) throws IOException {
+        int count = 0;
+        while (records.hasNext()) {
+            GTRecord record = records.next();
+            count++;
+            for (int i = 0; i < allNeededColumns.trueBitCount(); i++) {
+                int c = allNeededColumns.trueBitAt(i);
+                newRecord.set(i, record.get(c));
+            }
+            if (splitSampler != null)
+                splitSampler.add(newRecord.get(0), (ISeekableStore) newGridTable.getStore());
+            builder.write(newRecord);
+        }
+        return count;
     }
 
     @SuppressWarnings({ "unused", "rawtypes", "unchecked" })
@@ -487,7 +637,9 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
     // ===========================================================================
 
-    private static class CuboidTask implements Comparable<CuboidTask> {
+    private class CuboidTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
         final CuboidResult parent;
         final long childCuboidId;
 
@@ -497,9 +649,123 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         }
 
         @Override
-        public int compareTo(CuboidTask o) {
-            long comp = this.childCuboidId - o.childCuboidId;
-            return comp < 0 ? -1 : (comp > 0 ? 1 : 0);
+        protected void compute() {
+            // if task error occurs
+            if (!taskHasNoException())
+                return;
+
+            try {
+                CuboidResult newCuboid = buildCuboid(parent, childCuboidId);
+                addChildTasks(newCuboid);
+            } catch (Throwable ex) {
+                if (!isAllCuboidDone()) {
+                    logger.error("task thread exception", ex);
+                    addTaskException(ex);
+                }
+            }
+        }
+    }
+
+    /** aggregates one key range of the parent, the result is held in the aggregation cache until joined */
+    private class RangeAggregationTask extends RecursiveTask<Iterator<GTRecord>> {
+        private static final long serialVersionUID = 1L;
+
+        final GridTable gridTable;
+        final long parentId;
+        final long cuboidId;
+        final ImmutableBitSet aggregationColumns;
+        final ImmutableBitSet measureColumns;
+        final SplitPoint rangeStart;
+        final ByteArray rangeEnd;
+        volatile GTAggregateScanner scanner;
+
+        RangeAggregationTask(GridTable gridTable, long parentId, long cuboidId, ImmutableBitSet aggregationColumns, ImmutableBitSet measureColumns, SplitPoint rangeStart, ByteArray rangeEnd) {
+            this.gridTable = gridTable;
+            this.parentId = parentId;
+            this.cuboidId = cuboidId;
+            this.aggregationColumns = aggregationColumns;
+            this.measureColumns = measureColumns;
+            this.rangeStart = rangeStart;
+            this.rangeEnd = rangeEnd;
+        }
+
+        @Override
+        protected Iterator<GTRecord> compute() {
+            try {
+                scanner = prepareGTAggregationScanner(gridTable, parentId, cuboidId, aggregationColumns, measureColumns, rangeStart, rangeEnd);
+                return scanner.iterator(); // the aggregation happens here
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void close() throws IOException {
+            if (scanner != null)
+                scanner.close();
+        }
+    }
+
+    /**
+     * Passes records until the leading column reaches rangeEnd, null means unbounded. The input starts at the
+     * first row of the range and records are sorted, so nothing outside the range is read except the row ending it.
+     */
+    private static class KeyRangeScanner implements IGTScanner {
+        final IGTScanner input;
+        final ByteArray rangeEnd;
+
+        KeyRangeScanner(IGTScanner input, ByteArray rangeEnd) {
+            this.input = input;
+            this.rangeEnd = rangeEnd;
+        }
+
+        @Override
+        public Iterator<GTRecord> iterator() {
+            final Iterator<GTRecord> inputIterator = input.iterator();
+            return new Iterator<GTRecord>() {
+                GTRecord next;
+                boolean end = false;
+
+                @Override
+                public boolean hasNext() {
+                    if (next == null && !end && inputIterator.hasNext()) {
+                        GTRecord r = inputIterator.next();
+                        if (rangeEnd != null && r.get(0).compareTo(rangeEnd) >= 0)
+                            end = true;
+                        else
+                            next = r;
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public GTRecord next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    GTRecord r = next;
+                    next = null;
+                    return r;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+
+        @Override
+        public GTInfo getInfo() {
+            return input.getInfo();
+        }
+
+        @Override
+        public long getScannedRowCount() {
+            return input.getScannedRowCount();
         }
     }
 
@@ -507,14 +773,17 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
 
     private class InputConverter implements IGTScanner {
         GTInfo info;
-        GTRecord record;
+        GTRecord[] records;
         BlockingQueue<List<String>> input;
         final InMemCubeBuilderInputConverter inMemCubeBuilderInputConverter;
 
         public InputConverter(GTInfo info, BlockingQueue<List<String>> input) {
             this.info = info;
             this.input = input;
-            this.record = new GTRecord(info);
+            this.records = new GTRecord[INPUT_BATCH_SIZE];
+            for (int i = 0; i < records.length; i++) {
+                records[i] = new GTRecord(info);
+            }
             this.inMemCubeBuilderInputConverter = new InMemCubeBuilderInputConverter(cubeDesc, flatDesc, dictionaryMap, info);
         }
 
@@ -522,25 +791,48 @@ public class InMemCubeBuilder extends AbstractInMemCubeBuilder {
         public Iterator<GTRecord> iterator() {
             return new Iterator<GTRecord>() {
 
-                List<String> currentObject = null;
+                // rows converted together, taking whatever is in the queue up to the batch size
+                final List<List<String>> batch = Lists.newArrayListWithCapacity(INPUT_BATCH_SIZE);
+                int batchIndex = 0;
+                boolean inputEnd = false;
 
                 @Override
                 public boolean hasNext() {
+                    if (batchIndex < batch.size())
+                        return true;
+                    if (inputEnd)
+                        return false;
+
+                    batch.clear();
+                    batchIndex = 0;
                     try {
-                        currentObject = input.take();
+                        List<String> row = input.take();
+                        while (row != null) {
+                            if (row.isEmpty()) {
+                                inputEnd = true;
+                                break;
+                            }
+                            batch.add(row);
+                            if (batch.size() == INPUT_BATCH_SIZE)
+                                break;
+                            row = input.poll();
+                        }
                     } catch (InterruptedException e) {
                         throw new RuntimeException(e);
                     }
-                    return currentObject != null && currentObject.size() > 0;
+                    if (batch.isEmpty())
+                        return false;
+
+                    inMemCubeBuilderInputConverter.convert(batch, records);
+                    return true;
                 }
 
                 @Override
                 public GTRecord next() {
-                    if (currentObject.size() == 0)
+                    if (!hasNext())
                         throw new IllegalStateException();
 
-                    inMemCubeBuilderInputConverter.convert(currentObject, record);
-                    return record;
+                    return records[batchIndex++];
                 }
 
                 @Override
@@ -17,15 +17,21 @@
 */
 package org.apache.kylin.cube.inmemcubing;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
+import org.apache.kylin.dimension.DictionaryDimEnc;
+import org.apache.kylin.dimension.DimensionEncoding;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.IGTCodeSystem;
 import org.apache.kylin.measure.MeasureIngester;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.IJoinedFlatTableDesc;
@@ -74,6 +80,62 @@ public class InMemCubeBuilderInputConverter {
         record.setValues(recordValues);
     }
 
+    /**
+     * Converts rows into records[0, rows.size()). Dimensions are encoded column by column, so that each dictionary
+     * looks up a whole column of the batch at once.
+     */
+    public final void convert(List<List<String>> rows, GTRecord[] records) {
+        int n = rows.size();
+        int keySize = flatDesc.getRowKeyColumnIndexes().length;
+        IGTCodeSystem codeSystem = gtInfo.getCodeSystem();
+
+        Object[][] keys = new Object[n][];
+        ByteBuffer[] bufs = new ByteBuffer[n];
+        for (int r = 0; r < n; r++) {
+            keys[r] = buildKey(rows.get(r));
+            bufs[r] = new ByteArray(gtInfo.getMaxRecordLength()).asBuffer();
+        }
+
+        String[] columnValues = new String[n];
+        int[] ids = new int[n];
+        for (int c = 0; c < keySize; c++) {
+            DimensionEncoding dimEnc = codeSystem.getDimEnc(c);
+            if (dimEnc instanceof DictionaryDimEnc) {
+                Dictionary<String> dict = ((DictionaryDimEnc) dimEnc).getDictionary();
+                for (int r = 0; r < n; r++) {
+                    columnValues[r] = (String) keys[r][c];
+                }
+                dict.getIdsFromValues(columnValues, 0, n, 0, ids, 0);
+                for (int r = 0; r < n; r++) {
+                    if (ids[r] < 0)
+                        throw new IllegalArgumentException("Value '" + columnValues[r] + "' not exists in the dictionary of dimension #" + c);
+                    int pos = bufs[r].position();
+                    BytesUtil.writeUnsigned(ids[r], dict.getSizeOfId(), bufs[r]);
+                    setColumn(records[r], c, bufs[r], pos);
+                }
+            } else {
+                for (int r = 0; r < n; r++) {
+                    int pos = bufs[r].position();
+                    codeSystem.encodeColumnValue(c, keys[r][c], bufs[r]);
+                    setColumn(records[r], c, bufs[r], pos);
+                }
+            }
+        }
+
+        for (int r = 0; r < n; r++) {
+            Object[] metricsValues = buildValue(rows.get(r));
+            for (int i = 0; i < metricsValues.length; i++) {
+                int pos = bufs[r].position();
+                codeSystem.encodeColumnValue(keySize + i, metricsValues[i], bufs[r]);
+                setColumn(records[r], keySize + i, bufs[r], pos);
+            }
+        }
+    }
+
+    private void setColumn(GTRecord record, int c, ByteBuffer buf, int startPos) {
+        record.getInternal()[c].set(buf.array(), buf.arrayOffset() + startPos, buf.position() - startPos);
+    }
+
     private Object[] buildKey(List<String> row) {
         int keySize = flatDesc.getRowKeyColumnIndexes().length;
         Object[] key = new Object[keySize];
@@ -0,0 +1,621 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import static org.apache.kylin.common.util.MemoryBudgetController.ONE_MB;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.kylin.common.util.MemoryBudgetController;
+import org.apache.kylin.common.util.MemoryBudgetController.MemoryConsumer;
+import org.apache.kylin.common.util.MemoryBudgetController.NotEnoughBudgetException;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Like MemDiskStore, but keeps data in direct (off-heap) chunks and lets readers go without locking.
+ * <p>
+ * Records are a byte stream cut into fixed size chunks. The single writer fills a chunk, then publishes it by
+ * advancing a volatile committed length, so readers only ever see completed bytes and never block the writer.
+ * Every completed chunk is flushed to the disk file by a background thread. Memory chunks are reserved from
+ * MemoryBudgetController; once flushed they can be given back on freeUp(), after which readers map that part of
+ * the file instead. When budget runs out, the writer continues through two staging buffers that are written to
+ * disk asynchronously, and those chunks become visible after they are flushed. Readers of the disk part read into
+ * direct buffers taken from a shared pool.
+ * <p>
+ * All stores share a few spill threads. The flushes of one writer still run one after another, in order.
+ */
+public class OffHeapMemDiskStore implements ISeekableStore, Closeable, MemoryConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapMemDiskStore.class);
+    private static final boolean debug = false;
+
+    private static final int CHUNK_SIZE_MB = 4;
+    private static final int CHUNK_SIZE = CHUNK_SIZE_MB * ONE_MB;
+
+    private static final int READ_BUFFER_SIZE = ONE_MB;
+    private static final ConcurrentLinkedQueue<ByteBuffer> readBufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private static final int SPILL_THREADS = 4;
+    private static final ThreadPoolExecutor spillPool;
+    static {
+        spillPool = new ThreadPoolExecutor(SPILL_THREADS, SPILL_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OffHeapMemDiskStore-spill-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        spillPool.allowCoreThreadTimeOut(true);
+    }
+
+    private final GTInfo info;
+    private final MemoryBudgetController budgetCtrl;
+    private final File diskFile;
+    private final boolean delOnClose;
+
+    private final Object chunkLock = new Object(); // guards growing and releasing chunks, never held by readers
+    private volatile AtomicReferenceArray<ByteBuffer> memChunks = new AtomicReferenceArray<ByteBuffer>(16);
+    private final AtomicInteger memChunkCount = new AtomicInteger(0);
+    private final AtomicInteger flushedChunkCount = new AtomicInteger(0);
+    private final AtomicLong committedLength = new AtomicLong(0);
+
+    private volatile FileChannel channel; // positional read/write is thread-safe, null until the first rebuild
+    private Writer ongoingWriter;
+
+    public OffHeapMemDiskStore(GTInfo info, MemoryBudgetController budgetCtrl) throws IOException {
+        this(info, budgetCtrl, File.createTempFile("OffHeapMemDiskStore", ""), true);
+    }
+
+    public OffHeapMemDiskStore(GTInfo info, MemoryBudgetController budgetCtrl, File diskFile) throws IOException {
+        this(info, budgetCtrl, diskFile, false);
+    }
+
+    private OffHeapMemDiskStore(GTInfo info, MemoryBudgetController budgetCtrl, File diskFile, boolean delOnClose) throws IOException {
+        this.info = info;
+        this.budgetCtrl = budgetCtrl;
+        this.diskFile = diskFile;
+        this.delOnClose = delOnClose;
+
+        // in case user forget to call close()
+        if (delOnClose)
+            diskFile.deleteOnExit();
+
+        if (debug)
+            logger.debug(this + " disk file " + diskFile.getAbsolutePath());
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return info;
+    }
+
+    @Override
+    public IGTWriter rebuild() throws IOException {
+        return newWriter();
+    }
+
+    @Override
+    public IGTWriter append() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    private synchronized Writer newWriter() throws IOException {
+        if (ongoingWriter != null)
+            throw new IllegalStateException();
+
+        clear();
+        channel = FileChannel.open(diskFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ongoingWriter = new Writer();
+        return ongoingWriter;
+    }
+
+    private synchronized void writerClosed(Writer w) {
+        if (ongoingWriter == w)
+            ongoingWriter = null;
+    }
+
+    @Override
+    public IGTScanner scan(GTScanRequest scanRequest) throws IOException {
+        return new Reader(0);
+    }
+
+    @Override
+    public IGTScanner scanFrom(long position) throws IOException {
+        return new Reader(position);
+    }
+
+    @Override
+    public synchronized long getWritePosition() {
+        if (ongoingWriter == null)
+            throw new IllegalStateException();
+        return ongoingWriter.recordOffset;
+    }
+
+    public long length() {
+        return committedLength.get();
+    }
+
+    private void clear() throws IOException {
+        synchronized (chunkLock) {
+            memChunks = new AtomicReferenceArray<ByteBuffer>(16);
+            memChunkCount.set(0);
+        }
+        flushedChunkCount.set(0);
+        committedLength.set(0);
+        budgetCtrl.reserve(this, 0);
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Writer w;
+        synchronized (this) {
+            w = ongoingWriter;
+        }
+        if (w != null)
+            w.close();
+
+        clear();
+        if (delOnClose)
+            diskFile.delete();
+    }
+
+    /** gives back memory chunks that are already on disk, oldest first */
+    @Override
+    public int freeUp(int mb) {
+        int released = 0;
+        synchronized (chunkLock) {
+            AtomicReferenceArray<ByteBuffer> chunks = memChunks;
+            int flushed = Math.min(flushedChunkCount.get(), chunks.length());
+            for (int i = 0; i < flushed && released < mb; i++) {
+                if (chunks.getAndSet(i, null) != null) {
+                    memChunkCount.decrementAndGet();
+                    released += CHUNK_SIZE_MB;
+                }
+            }
+        }
+        if (debug && released > 0)
+            logger.debug(this + " freed up " + released + " MB of flushed chunks");
+        return released;
+    }
+
+    private void putMemChunk(int index, ByteBuffer chunk) {
+        synchronized (chunkLock) {
+            AtomicReferenceArray<ByteBuffer> chunks = memChunks;
+            if (index >= chunks.length()) {
+                AtomicReferenceArray<ByteBuffer> grown = new AtomicReferenceArray<ByteBuffer>(Math.max(chunks.length() * 2, index + 1));
+                for (int i = 0; i < chunks.length(); i++) {
+                    grown.set(i, chunks.get(i));
+                }
+                chunks = grown;
+                memChunks = grown;
+            }
+            chunks.set(index, chunk);
+        }
+    }
+
+    private ByteBuffer getMemChunk(int index) {
+        AtomicReferenceArray<ByteBuffer> chunks = memChunks;
+        return index < chunks.length() ? chunks.get(index) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapMemDiskStore@" + (info.getTableName() == null ? this.hashCode() : info.getTableName());
+    }
+
+    private class Writer implements IGTWriter {
+
+        final ByteBuffer recordBuf;
+        final SerialSpiller spiller = new SerialSpiller();
+        final ByteBuffer[] stagingBuffers = new ByteBuffer[2];
+        final Future<?>[] stagingFlushes = new Future<?>[2];
+        Future<?> lastFlush;
+
+        boolean memActivated;
+        ByteBuffer chunk;
+        boolean chunkInMem;
+        int chunkIndex = -1;
+        long memWrite = 0;
+        long diskWrite = 0;
+        volatile long recordOffset = 0;
+        boolean closed = false;
+
+        Writer() {
+            recordBuf = ByteBuffer.allocate(info.getMaxRecordLength());
+            memActivated = budgetCtrl.getTotalBudgetMB() > 0;
+            if (debug)
+                logger.debug(OffHeapMemDiskStore.this + " write start, mem write " + (memActivated ? "activated" : "de-activated"));
+        }
+
+        @Override
+        public void write(GTRecord rec) throws IOException {
+            recordBuf.clear();
+            rec.exportColumns(info.getAllColumns(), recordBuf);
+
+            int len = recordBuf.position();
+            writeInt(len);
+            writeBytes(recordBuf.array(), recordBuf.arrayOffset(), len);
+            recordOffset += 4 + len;
+        }
+
+        private void writeInt(int v) throws IOException {
+            if (chunk != null && chunk.remaining() >= 4) {
+                chunk.putInt(v);
+            } else {
+                byte[] b = new byte[] { (byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v };
+                writeBytes(b, 0, 4);
+            }
+        }
+
+        private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (chunk == null || !chunk.hasRemaining()) {
+                    nextChunk();
+                }
+                int n = Math.min(chunk.remaining(), length);
+                chunk.put(bytes, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        private void nextChunk() throws IOException {
+            if (chunk != null)
+                completeChunk();
+
+            chunkIndex++;
+            chunkInMem = false;
+            if (memActivated) {
+                try {
+                    // must not hold any lock here, reserve() may call back freeUp() of every consumer
+                    budgetCtrl.reserve(OffHeapMemDiskStore.this, (memChunkCount.get() + 1) * CHUNK_SIZE_MB);
+                    chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                    memChunkCount.incrementAndGet();
+                    putMemChunk(chunkIndex, chunk);
+                    chunkInMem = true;
+                    return;
+                } catch (NotEnoughBudgetException ex) {
+                    memActivated = false;
+                    if (debug)
+                        logger.debug(OffHeapMemDiskStore.this + " mem write de-activated @ chunk " + chunkIndex);
+                } catch (OutOfMemoryError err) {
+                    // direct memory is limited by -XX:MaxDirectMemorySize, which the budget does not know
+                    budgetCtrl.reserve(OffHeapMemDiskStore.this, memChunkCount.get() * CHUNK_SIZE_MB);
+                    memActivated = false;
+                    logger.warn(OffHeapMemDiskStore.this + " out of direct memory, mem write de-activated @ chunk " + chunkIndex);
+                }
+            }
+
+            // disk mode, take the staging buffer whose previous flush is done
+            int s = chunkIndex % 2;
+            waitFor(stagingFlushes[s]);
+            if (stagingBuffers[s] == null)
+                stagingBuffers[s] = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            chunk = stagingBuffers[s];
+            chunk.clear();
+        }
+
+        private void completeChunk() {
+            final long start = (long) chunkIndex * CHUNK_SIZE;
+            final int len = chunk.position();
+            final ByteBuffer toFlush = chunk.duplicate();
+            toFlush.flip();
+            final boolean inMem = chunkInMem;
+            final FileChannel writeChannel = channel;
+
+            if (inMem) {
+                // publish, readers can see the chunk right away
+                committedLength.set(start + len);
+                memWrite += len;
+            } else {
+                diskWrite += len;
+            }
+
+            lastFlush = spiller.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    long pos = start;
+                    while (toFlush.hasRemaining()) {
+                        pos += writeChannel.write(toFlush, pos);
+                    }
+                    flushedChunkCount.incrementAndGet();
+                    if (!inMem) {
+                        // disk chunk is visible only after it is on disk
+                        committedLength.set(start + len);
+                    }
+                    return null;
+                }
+            });
+            if (!inMem)
+                stagingFlushes[chunkIndex % 2] = lastFlush;
+            chunk = null;
+        }
+
+        private void waitFor(Future<?> future) throws IOException {
+            if (future == null)
+                return;
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted while waiting async flush", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                else
+                    throw new IOException(cause);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+
+            try {
+                if (chunk != null)
+                    completeChunk();
+                waitFor(lastFlush); // flushes run in order, the last one done means all done
+            } finally {
+                stagingBuffers[0] = stagingBuffers[1] = null;
+                writerClosed(this);
+            }
+
+            if (debug)
+                logger.debug(OffHeapMemDiskStore.this + " write end @ " + committedLength.get() + ", " + memWrite + " to mem, " + diskWrite + " to disk, " + (chunkIndex + 1) + " chunks");
+        }
+    }
+
+    /** runs the flushes of one writer in submission order on the shared spill pool, one at a time */
+    private static class SerialSpiller implements Runnable {
+
+        final ArrayDeque<FutureTask<Void>> queue = new ArrayDeque<FutureTask<Void>>();
+        boolean scheduled = false;
+
+        Future<Void> submit(Callable<Void> flush) {
+            FutureTask<Void> task = new FutureTask<Void>(flush);
+            synchronized (queue) {
+                queue.add(task);
+                if (scheduled)
+                    return task;
+                scheduled = true;
+            }
+            spillPool.execute(this);
+            return task;
+        }
+
+        @Override
+        public void run() {
+            FutureTask<Void> task;
+            synchronized (queue) {
+                task = queue.poll();
+            }
+            task.run();
+
+            // one flush per turn, so a busy writer does not hold a spill thread from the others
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            spillPool.execute(this);
+        }
+    }
+
+    private class Reader implements IGTScanner {
+
+        long readOffset;
+        long memRead = 0;
+        long diskRead = 0;
+        int count = 0;
+
+        // the chunk being read, either a memory chunk or the read buffer filled from the disk file
+        ByteBuffer cur;
+        ByteBuffer readBuffer;
+        long curStart = -1;
+        boolean curInMem;
+
+        Reader(long startOffset) throws IOException {
+            // the channel is taken when a disk part is read, a reader opened before the first rebuild() sees an empty store
+            readOffset = startOffset;
+            if (debug)
+                logger.debug(OffHeapMemDiskStore.this + " read start @ " + readOffset);
+        }
+
+        private boolean readFully(byte[] b, int off, int len) throws IOException {
+            if (readOffset + len > committedLength.get())
+                return false;
+
+            while (len > 0) {
+                locateChunk();
+                int n = Math.min(cur.remaining(), len);
+                cur.get(b, off, n);
+                if (curInMem)
+                    memRead += n;
+                else
+                    diskRead += n;
+                off += n;
+                len -= n;
+                readOffset += n;
+            }
+            return true;
+        }
+
+        private int readInt(byte[] tmp) throws IOException {
+            if (!readFully(tmp, 0, 4))
+                return -1;
+            return ((tmp[0] & 0xff) << 24) | ((tmp[1] & 0xff) << 16) | ((tmp[2] & 0xff) << 8) | (tmp[3] & 0xff);
+        }
+
+        private void locateChunk() throws IOException {
+            if (cur != null && cur.hasRemaining() && readOffset == curStart + cur.position())
+                return;
+
+            int index = (int) (readOffset / CHUNK_SIZE);
+            long start = (long) index * CHUNK_SIZE;
+            int posInChunk = (int) (readOffset - start);
+            int visible = (int) Math.min(CHUNK_SIZE, committedLength.get() - start);
+
+            ByteBuffer memChunk = getMemChunk(index);
+            if (memChunk != null) {
+                // a duplicate never changes even if the chunk is freed up later, the buffer stays valid while referenced
+                cur = memChunk.duplicate();
+                curInMem = true;
+                cur.limit(visible);
+                cur.position(posInChunk);
+                curStart = start;
+            } else {
+                readDisk(Math.min(READ_BUFFER_SIZE, visible - posInChunk));
+            }
+        }
+
+        // reads from the disk file at readOffset, never across a chunk end, as the next chunk may be in memory
+        private void readDisk(int len) throws IOException {
+            FileChannel readChannel = channel;
+            if (readChannel == null)
+                throw new IllegalStateException(OffHeapMemDiskStore.this + " is cleared");
+            if (readBuffer == null) {
+                readBuffer = readBufferPool.poll();
+                if (readBuffer == null)
+                    readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            }
+
+            readBuffer.clear();
+            readBuffer.limit(len);
+            while (readBuffer.hasRemaining()) {
+                if (readChannel.read(readBuffer, readOffset + readBuffer.position()) < 0)
+                    throw new IOException(OffHeapMemDiskStore.this + " disk file ends before " + committedLength.get());
+            }
+            readBuffer.flip();
+            cur = readBuffer;
+            curInMem = false;
+            curStart = readOffset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            cur = null;
+            if (readBuffer != null) {
+                readBufferPool.offer(readBuffer);
+                readBuffer = null;
+            }
+            if (debug)
+                logger.debug(OffHeapMemDiskStore.this + " read end @ " + readOffset + ", " + memRead + " from mem, " + diskRead + " from disk");
+        }
+
+        @Override
+        public Iterator<GTRecord> iterator() {
+            count = 0;
+            return new Iterator<GTRecord>() {
+                GTRecord record = new GTRecord(info);
+                GTRecord next;
+                ByteBuffer buf = ByteBuffer.allocate(info.getMaxRecordLength());
+                byte[] tmp = new byte[4];
+
+                @Override
+                public boolean hasNext() {
+                    if (next != null)
+                        return true;
+
+                    try {
+                        long mark = readOffset;
+                        int len = readInt(tmp);
+                        if (len >= 0) {
+                            if (!readFully(buf.array(), buf.arrayOffset(), len)) {
+                                readOffset = mark; // record not fully published yet
+                                return false;
+                            }
+                            buf.clear();
+                            buf.limit(len);
+                            record.loadColumns(info.getAllColumns(), buf);
+                            next = record;
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+
+                    return next != null;
+                }
+
+                @Override
+                public GTRecord next() {
+                    if (next == null) {
+                        hasNext();
+                        if (next == null)
+                            throw new NoSuchElementException();
+                    }
+                    GTRecord r = next;
+                    next = null;
+                    count++;
+                    return r;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public GTInfo getInfo() {
+            return info;
+        }
+
+        @Override
+        public long getScannedRowCount() {
+            return count;
+        }
+    }
+}
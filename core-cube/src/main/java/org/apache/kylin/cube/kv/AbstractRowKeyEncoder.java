@@ -85,4 +85,13 @@ public abstract class AbstractRowKeyEncoder {
     abstract public byte[] encode(Map<TblColRef, String> valueMap);
 
     abstract public byte[] encode(byte[][] values);
+
+    /**
+     * batch form of encode(byte[][]), encodes rows[0, n) into returnKeys
+     */
+    public void encode(byte[][][] rows, int n, byte[][] returnKeys) {
+        for (int r = 0; r < n; r++) {
+            returnKeys[r] = encode(rows[r]);
+        }
+    }
 }
@@ -55,6 +55,15 @@ public class RowKeyColumnIO {
         dimEnc.encode(value, valueLen, output, outputOffset);
     }
 
+    /** batch form of writeColumn(), null values are skipped */
+    public void writeColumns(TblColRef col, byte[][] values, int n, int roundingFlag, byte defaultValue, byte[][] outputs, int outputOffset) {
+        DimensionEncoding dimEnc = dimEncMap.get(col);
+        if (dimEnc instanceof DictionaryDimEnc)
+            dimEnc = ((DictionaryDimEnc) dimEnc).copy(roundingFlag, defaultValue);
+
+        dimEnc.encode(values, n, outputs, outputOffset);
+    }
+
     public String readColumnString(TblColRef col, byte[] bytes, int offset, int length) {
         DimensionEncoding dimEnc = dimEncMap.get(col);
         return dimEnc.decode(bytes, offset, length);
@@ -171,6 +171,36 @@ public class RowKeyEncoder extends AbstractRowKeyEncoder {
         return bytes;
     }
 
+    /**
+     * Encodes column by column, so that each dictionary looks up a whole column of the batch at once.
+     */
+    @Override
+    public void encode(byte[][][] rows, int n, byte[][] returnKeys) {
+        for (int r = 0; r < n; r++) {
+            returnKeys[r] = new byte[this.getBytesLength()];
+        }
+
+        byte[][] columnValues = new byte[n][];
+        int offset = getHeaderLength();
+        for (int i = 0; i < cuboid.getColumns().size(); i++) {
+            TblColRef column = cuboid.getColumns().get(i);
+            int colLength = colIO.getColumnLength(column);
+            for (int r = 0; r < n; r++) {
+                columnValues[r] = rows[r][i];
+                if (columnValues[r] == null) {
+                    fillColumnValue(column, colLength, null, 0, returnKeys[r], offset);
+                }
+            }
+            colIO.writeColumns(column, columnValues, n, 0, this.blankByte, returnKeys, offset);
+            offset += colLength;
+        }
+
+        //fill shard and cuboid
+        for (int r = 0; r < n; r++) {
+            fillHeader(returnKeys[r]);
+        }
+    }
+
     protected void fillHeader(byte[] bytes) {
         int offset = 0;
 
@@ -35,18 +35,18 @@ package org.apache.kylin.cube.util;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nullable;
 
-import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeSegment;
-import org.apache.kylin.cube.cuboid.Cuboid;
-import org.apache.kylin.cube.cuboid.CuboidScheduler;
+import org.apache.kylin.cube.DimensionRangeInfo;
+import org.apache.kylin.cube.cuboid.CuboidStatsCollector;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
 import org.apache.kylin.dict.DictionaryGenerator;
@@ -63,11 +63,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Function;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
 
 /**
  */
@@ -77,78 +73,26 @@ public class CubingUtils {
 
     public static Map<Long, HyperLogLogPlusCounter> sampling(CubeDesc cubeDesc, IJoinedFlatTableDesc flatDescIn, Iterable<List<String>> streams) {
         final CubeJoinedFlatTableEnrich flatDesc = new CubeJoinedFlatTableEnrich(flatDescIn, cubeDesc);
-        final int rowkeyLength = cubeDesc.getRowkey().getRowKeyColumns().length;
-        final List<Long> allCuboidIds = new CuboidScheduler(cubeDesc).getAllCuboidIds();
-        final long baseCuboidId = Cuboid.getBaseCuboidId(cubeDesc);
-        final Map<Long, Integer[]> allCuboidsBitSet = Maps.newHashMap();
-
-        Lists.transform(allCuboidIds, new Function<Long, Integer[]>() {
-            @Nullable
-            @Override
-            public Integer[] apply(@Nullable Long cuboidId) {
-                Integer[] result = new Integer[Long.bitCount(cuboidId)];
-
-                long mask = Long.highestOneBit(baseCuboidId);
-                int position = 0;
-                for (int i = 0; i < rowkeyLength; i++) {
-                    if ((mask & cuboidId) > 0) {
-                        result[position] = i;
-                        position++;
-                    }
-                    mask = mask >> 1;
-                }
-                return result;
-            }
-        });
-        final Map<Long, HyperLogLogPlusCounter> result = Maps.newHashMapWithExpectedSize(allCuboidIds.size());
-        for (Long cuboidId : allCuboidIds) {
-            result.put(cuboidId, new HyperLogLogPlusCounter(cubeDesc.getConfig().getCubeStatsHLLPrecision()));
-            Integer[] cuboidBitSet = new Integer[Long.bitCount(cuboidId)];
-
-            long mask = Long.highestOneBit(baseCuboidId);
-            int position = 0;
-            for (int i = 0; i < rowkeyLength; i++) {
-                if ((mask & cuboidId) > 0) {
-                    cuboidBitSet[position] = i;
-                    position++;
-                }
-                mask = mask >> 1;
-            }
-            allCuboidsBitSet.put(cuboidId, cuboidBitSet);
-        }
-
-        HashFunction hf = Hashing.murmur3_32();
-        ByteArray[] row_hashcodes = new ByteArray[rowkeyLength];
-        for (int i = 0; i < rowkeyLength; i++) {
-            row_hashcodes[i] = new ByteArray();
-        }
+        final int[] rowKeyColumnIndexes = flatDesc.getRowKeyColumnIndexes();
+        final CuboidStatsCollector collector = new CuboidStatsCollector(cubeDesc, cubeDesc.getConfig().getCubeStatsHLLPrecision());
+        final String[] rowKeyValues = new String[rowKeyColumnIndexes.length];
         for (List<String> row : streams) {
-            //generate hash for each row key column
-            for (int i = 0; i < rowkeyLength; i++) {
-                Hasher hc = hf.newHasher();
-                final String cell = row.get(flatDesc.getRowKeyColumnIndexes()[i]);
-                if (cell != null) {
-                    row_hashcodes[i].set(hc.putString(cell).hash().asBytes());
-                } else {
-                    row_hashcodes[i].set(hc.putInt(0).hash().asBytes());
-                }
-            }
-
-            for (Map.Entry<Long, HyperLogLogPlusCounter> longHyperLogLogPlusCounterEntry : result.entrySet()) {
-                Long cuboidId = longHyperLogLogPlusCounterEntry.getKey();
-                HyperLogLogPlusCounter counter = longHyperLogLogPlusCounterEntry.getValue();
-                Hasher hc = hf.newHasher();
-                final Integer[] cuboidBitSet = allCuboidsBitSet.get(cuboidId);
-                for (int position = 0; position < cuboidBitSet.length; position++) {
-                    hc.putBytes(row_hashcodes[cuboidBitSet[position]].array());
-                }
-                counter.add(hc.hash().asBytes());
+            for (int i = 0; i < rowKeyColumnIndexes.length; i++) {
+                rowKeyValues[i] = row.get(rowKeyColumnIndexes[i]);
             }
+            collector.addRow(rowKeyValues);
         }
-        return result;
+        return collector.getResult();
     }
 
     public static Map<TblColRef, Dictionary<String>> buildDictionary(final CubeInstance cubeInstance, Iterable<List<String>> recordList) throws IOException {
+        return buildDictionary(cubeInstance, recordList, Collections.<TblColRef, Dictionary<String>> emptyMap());
+    }
+
+    /**
+     * @param existingDicts dictionaries to reuse, the existing dictionary of a column is returned as is when it contains all values of the column
+     */
+    public static Map<TblColRef, Dictionary<String>> buildDictionary(final CubeInstance cubeInstance, Iterable<List<String>> recordList, Map<TblColRef, Dictionary<String>> existingDicts) throws IOException {
         final List<TblColRef> columnsNeedToBuildDictionary = cubeInstance.getDescriptor().listDimensionColumnsExcludingDerived(true);
         final HashMap<Integer, TblColRef> tblColRefMap = Maps.newHashMap();
         int index = 0;
@@ -168,6 +112,12 @@ public class CubingUtils {
             }
         }
         for (TblColRef tblColRef : valueMap.keySet()) {
+            final Dictionary<String> existing = existingDicts.get(tblColRef);
+            if (existing != null && containsAll(existing, valueMap.get(tblColRef))) {
+                logger.info("reuse the existing dictionary of " + tblColRef);
+                result.put(tblColRef, existing);
+                continue;
+            }
             final Collection<byte[]> bytes = Collections2.transform(valueMap.get(tblColRef), new Function<String, byte[]>() {
                 @Nullable
                 @Override
@@ -181,6 +131,14 @@ public class CubingUtils {
         return result;
     }
 
+    private static boolean containsAll(Dictionary<String> dict, Collection<String> values) {
+        for (String value : values) {
+            if (value != null && dict.containsValue(value) == false)
+                return false;
+        }
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     public static Map<TblColRef, Dictionary<String>> writeDictionary(CubeSegment cubeSegment, Map<TblColRef, Dictionary<String>> dictionaryMap, long startOffset, long endOffset) {
         Map<TblColRef, Dictionary<String>> realDictMap = Maps.newHashMap();
@@ -198,6 +156,7 @@ public class CubingUtils {
             try {
                 DictionaryInfo realDict = dictionaryManager.trySaveNewDict(dictionary, dictInfo);
                 cubeSegment.putDictResPath(tblColRef, realDict.getResourcePath());
+                cubeSegment.putDimensionRangeInfo(tblColRef, DimensionRangeInfo.fromDictionary(dictionary, cubeSegment.getConfig().getCubeDimensionRangeMaxValues()));
                 realDictMap.put(tblColRef, (Dictionary<String>) realDict.getDictionaryObject());
             } catch (IOException e) {
                 throw new RuntimeException("error save dictionary for column:" + tblColRef, e);
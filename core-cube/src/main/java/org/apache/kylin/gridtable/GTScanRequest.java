@@ -62,9 +62,15 @@ public class GTScanRequest {
     private int storageScanRowNumThreshold;
     private int storagePushDownLimit;
 
+    // optional top-K on a metric after aggregation, for "order by measure limit k"
+    private int topKColumn;
+    private boolean topKDescending;
+    private int topK;
+
     GTScanRequest(GTInfo info, List<GTScanRange> ranges, ImmutableBitSet dimensions, ImmutableBitSet aggrGroupBy, //
             ImmutableBitSet aggrMetrics, String[] aggrMetricsFuncs, TupleFilter filterPushDown, boolean allowStorageAggregation, //
-            double aggCacheMemThreshold, int storageScanRowNumThreshold, int storagePushDownLimit) {
+            double aggCacheMemThreshold, int storageScanRowNumThreshold, int storagePushDownLimit, //
+            int topKColumn, boolean topKDescending, int topK) {
         this.info = info;
         if (ranges == null) {
             this.ranges = Lists.newArrayList(new GTScanRange(new GTRecord(info), new GTRecord(info)));
@@ -82,6 +88,9 @@ public class GTScanRequest {
         this.aggCacheMemThreshold = aggCacheMemThreshold;
         this.storageScanRowNumThreshold = storageScanRowNumThreshold;
         this.storagePushDownLimit = storagePushDownLimit;
+        this.topKColumn = topKColumn;
+        this.topKDescending = topKDescending;
+        this.topK = topK;
 
         validate(info);
     }
@@ -173,6 +182,11 @@ public class GTScanRequest {
             } else {
                 logger.info("has no aggregation, skip it");
             }
+
+            if (this.hasTopK()) {
+                logger.info("keeping the top " + topK + " rows on column " + topKColumn);
+                result = new GTTopKScanner(result, this, deadline);
+            }
             return result;
         }
 
@@ -284,6 +298,29 @@ public class GTScanRequest {
         this.storagePushDownLimit = limit;
     }
 
+    public boolean hasTopK() {
+        return topKColumn >= 0;
+    }
+
+    public int getTopKColumn() {
+        return topKColumn;
+    }
+
+    public boolean isTopKDescending() {
+        return topKDescending;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public void setTopK(int column, boolean descending, int k) {
+        logger.info("topK is set to " + k + " on column " + column + (descending ? " desc" : " asc"));
+        this.topKColumn = column;
+        this.topKDescending = descending;
+        this.topK = k;
+    }
+
     @Override
     public String toString() {
         return "GTScanRequest [range=" + ranges + ", columns=" + columns + ", filterPushDown=" + filterPushDown + ", aggrGroupBy=" + aggrGroupBy + ", aggrMetrics=" + aggrMetrics + ", aggrMetricsFuncs=" + Arrays.toString(aggrMetricsFuncs) + "]";
@@ -324,6 +361,9 @@ public class GTScanRequest {
             out.putDouble(value.aggCacheMemThreshold);
             BytesUtil.writeVInt(value.storageScanRowNumThreshold, out);
             BytesUtil.writeVInt(value.storagePushDownLimit, out);
+            BytesUtil.writeVInt(value.topKColumn, out);
+            BytesUtil.writeVInt(value.topKDescending ? 1 : 0, out);
+            BytesUtil.writeVInt(value.topK, out);
         }
 
         @Override
@@ -354,11 +394,15 @@ public class GTScanRequest {
             double sAggrCacheGB = in.getDouble();
             int storageScanRowNumThreshold = BytesUtil.readVInt(in);
             int storagePushDownLimit = BytesUtil.readVInt(in);
+            int sTopKColumn = BytesUtil.readVInt(in);
+            boolean sTopKDescending = (BytesUtil.readVInt(in) == 1);
+            int sTopK = BytesUtil.readVInt(in);
 
             return new GTScanRequestBuilder().setInfo(sInfo).setRanges(sRanges).setDimensions(sColumns).//
             setAggrGroupBy(sAggGroupBy).setAggrMetrics(sAggrMetrics).setAggrMetricsFuncs(sAggrMetricFuncs).//
             setFilterPushDown(sGTFilter).setAllowStorageAggregation(sAllowPreAggr).setAggCacheMemThreshold(sAggrCacheGB).//
-            setStorageScanRowNumThreshold(storageScanRowNumThreshold).setStoragePushDownLimit(storagePushDownLimit).createGTScanRequest();
+            setStorageScanRowNumThreshold(storageScanRowNumThreshold).setStoragePushDownLimit(storagePushDownLimit).//
+            setTopK(sTopKColumn, sTopKDescending, sTopK).createGTScanRequest();
         }
 
         private void serializeGTRecord(GTRecord gtRecord, ByteBuffer out) {
@@ -36,6 +36,9 @@ public class GTScanRequestBuilder {
     private double aggCacheMemThreshold = 0;
     private int storageScanRowNumThreshold = Integer.MAX_VALUE;// storage should terminate itself when $storageScanRowNumThreshold cuboid rows are scanned, and throw exception.   
     private int storagePushDownLimit = Integer.MAX_VALUE;// storage can quit working when $toragePushDownLimit aggregated rows are produced. 
+    private int topKColumn = -1;// storage returns only the top $topK aggregated rows on the metric column, -1 means no top-K
+    private boolean topKDescending = true;
+    private int topK = Integer.MAX_VALUE;
 
     public GTScanRequestBuilder setInfo(GTInfo info) {
         this.info = info;
@@ -92,6 +95,13 @@ public class GTScanRequestBuilder {
         return this;
     }
 
+    public GTScanRequestBuilder setTopK(int topKColumn, boolean topKDescending, int topK) {
+        this.topKColumn = topKColumn;
+        this.topKDescending = topKDescending;
+        this.topK = topK;
+        return this;
+    }
+
     public GTScanRequest createGTScanRequest() {
         if (aggrGroupBy == null) {
             aggrGroupBy = new ImmutableBitSet(new BitSet());
@@ -105,6 +115,6 @@ public class GTScanRequestBuilder {
             aggrMetricsFuncs = new String[0];
         }
         
-        return new GTScanRequest(info, ranges, dimensions, aggrGroupBy, aggrMetrics, aggrMetricsFuncs, filterPushDown, allowStorageAggregation, aggCacheMemThreshold, storageScanRowNumThreshold, storagePushDownLimit);
+        return new GTScanRequest(info, ranges, dimensions, aggrGroupBy, aggrMetrics, aggrMetricsFuncs, filterPushDown, allowStorageAggregation, aggCacheMemThreshold, storageScanRowNumThreshold, storagePushDownLimit, topKColumn, topKDescending, topK);
     }
 }
\ No newline at end of file
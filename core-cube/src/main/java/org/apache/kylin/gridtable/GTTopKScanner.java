@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.IntMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps only the top K rows by the value of one metric column, using a bounded heap.
+ * Returns them best first. Nulls are taken as larger than any value, the way the query engine sorts them.
+ *
+ * The rows must have been fully aggregated, otherwise a group could be dropped on a partial value.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class GTTopKScanner implements IGTScanner {
+
+    final IGTScanner inputScanner;
+    final int column;
+    final boolean descending;
+    final int k;
+    final long deadline;
+
+    public GTTopKScanner(IGTScanner inputScanner, GTScanRequest req, long deadline) {
+        this.inputScanner = inputScanner;
+        this.column = req.getTopKColumn();
+        this.descending = req.isTopKDescending();
+        this.k = req.getTopK();
+        this.deadline = deadline;
+
+        if (column < 0 || k < 0)
+            throw new IllegalArgumentException();
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return inputScanner.getInfo();
+    }
+
+    @Override
+    public long getScannedRowCount() {
+        return inputScanner.getScannedRowCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputScanner.close();
+    }
+
+    @Override
+    public Iterator<GTRecord> iterator() {
+        // the worst kept row is at the head of the heap
+        Comparator<Entry> worstFirst = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                int c = compareValues(o1.value, o2.value);
+                return descending ? c : -c;
+            }
+        };
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(Math.max(1, Math.min(k, 1024)), worstFirst);
+
+        IGTCodeSystem codeSystem = getInfo().getCodeSystem();
+        long count = 0;
+        for (GTRecord r : inputScanner) {
+            if (k == 0)
+                break;
+
+            //check deadline
+            count++;
+            if (count % 10000 == 1 && System.currentTimeMillis() > deadline) {
+                throw new GTScanTimeoutException("Timeout in GTTopKScanner with scanned count " + count);
+            }
+
+            ByteArray bytes = r.get(column);
+            Comparable value = bytes == null || bytes.array() == null ? null : snapshot(codeSystem.decodeColumnValue(column, bytes.asBuffer()));
+            Entry entry = new Entry(value, null);
+            if (heap.size() < k) {
+                entry.record = r.copy();
+                heap.offer(entry);
+            } else if (worstFirst.compare(entry, heap.peek()) > 0) {
+                heap.poll();
+                entry.record = r.copy();
+                heap.offer(entry);
+            }
+        }
+
+        List<GTRecord> result = Lists.newArrayListWithCapacity(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(heap.poll().record);
+        }
+        Collections.reverse(result);
+        return result.iterator();
+    }
+
+    // serializers decode numbers into a reused mutable, the kept rows need values of their own
+    private static Comparable snapshot(Object value) {
+        if (value instanceof LongMutable)
+            return ((LongMutable) value).get();
+        if (value instanceof DoubleMutable)
+            return ((DoubleMutable) value).get();
+        if (value instanceof IntMutable)
+            return ((IntMutable) value).get();
+        return (Comparable) value;
+    }
+
+    public static int compareValues(Comparable a, Comparable b) {
+        if (a == null)
+            return b == null ? 0 : 1;
+        if (b == null)
+            return -1;
+        return a.compareTo(b);
+    }
+
+    private static class Entry {
+        final Comparable value;
+        GTRecord record;
+
+        Entry(Comparable value, GTRecord record) {
+            this.value = value;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.cuboid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CuboidQueryStatsManagerTest extends LocalFileMetadataTestCase {
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+    }
+
+    @After
+    public void after() throws Exception {
+        CuboidQueryStatsManager.clearCache();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testRecordAndFlush() throws Exception {
+        CuboidQueryStatsManager mgr = CuboidQueryStatsManager.getInstance(getTestConfig());
+        assertNull(mgr.getCuboidQueryStats("test_cube"));
+
+        for (int i = 0; i < 10; i++) {
+            mgr.recordVisit("test_cube", 255L);
+            mgr.recordShardLatency("test_cube", 255L, 100);
+            mgr.recordShardLatency("test_cube", 255L, 300);
+        }
+        mgr.recordVisit("test_cube", 7L);
+        mgr.flush();
+
+        CuboidQueryStats stats = mgr.getCuboidQueryStats("test_cube");
+        assertEquals(11, stats.getTotalVisitCount(), 0.01);
+        CuboidQueryStats.CuboidEntry entry = stats.getCuboid(255L);
+        assertEquals(10, entry.getVisitCount(), 0.01);
+        assertEquals(2, entry.getAvgShardsPerVisit(), 0.01);
+        assertEquals(200, entry.getAvgShardLatencyMs(), 0.01);
+
+        // a second flush adds to the persisted stats
+        mgr.recordVisit("test_cube", 7L);
+        mgr.flush();
+        stats = mgr.getCuboidQueryStats("test_cube");
+        assertEquals(2, stats.getCuboid(7L).getVisitCount(), 0.01);
+        assertEquals(10, stats.getCuboid(255L).getVisitCount(), 0.01);
+
+        mgr.removeCuboidQueryStats("test_cube");
+        assertNull(mgr.getCuboidQueryStats("test_cube"));
+    }
+
+    @Test
+    public void testDecay() {
+        getTestConfig().setProperty("kylin.hbase.shard.adaptive.stats.half.life.days", "2");
+        CuboidQueryStatsManager mgr = CuboidQueryStatsManager.getInstance(getTestConfig());
+        assertEquals(1.0, mgr.decayFactor(0), 0.0001);
+        assertEquals(0.5, mgr.decayFactor(2 * 24 * 3600 * 1000L), 0.0001);
+
+        CuboidQueryStats stats = new CuboidQueryStats("test_cube");
+        stats.getOrCreateCuboid(1L).add(100, 200, 2000);
+        stats.getOrCreateCuboid(2L).add(0.01, 0.01, 1);
+        stats.decay(0.5);
+        assertEquals(50, stats.getCuboid(1L).getVisitCount(), 0.01);
+        assertEquals(10, stats.getCuboid(1L).getAvgShardLatencyMs(), 0.01);
+        assertNull(stats.getCuboid(2L));
+    }
+}
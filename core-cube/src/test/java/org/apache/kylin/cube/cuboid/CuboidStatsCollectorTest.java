@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.cuboid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeDescManager;
+import org.apache.kylin.cube.cuboid.benchmark.CuboidStatsBenchmark;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.MetadataManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class CuboidStatsCollectorTest extends LocalFileMetadataTestCase {
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        MetadataManager.clearCache();
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testEstimateAgainstExactCount() {
+        int nDims = 6;
+        long baseCuboidId = (1L << nDims) - 1;
+        Map<Long, Long> tree = CuboidStatsBenchmark.fullCubeTree(baseCuboidId);
+        assertEquals(baseCuboidId, tree.size());
+
+        CuboidStatsCollector collector = new CuboidStatsCollector(baseCuboidId, tree, 14, 0);
+        Map<Long, Set<String>> exact = Maps.newHashMap();
+        Random rand = new Random(0);
+        for (int r = 0; r < 20000; r++) {
+            String[] row = new String[nDims];
+            for (int d = 0; d < nDims; d++) {
+                row[d] = rand.nextInt(10) == 0 ? null : "v" + rand.nextInt(3 << d);
+            }
+            collector.addRow(row);
+
+            for (long cuboid : tree.keySet()) {
+                StringBuilder buf = new StringBuilder();
+                for (int d = 0; d < nDims; d++) {
+                    if ((cuboid & (1L << (nDims - 1 - d))) != 0)
+                        buf.append(row[d]).append('|');
+                }
+                Set<String> set = exact.get(cuboid);
+                if (set == null) {
+                    set = Sets.newHashSet();
+                    exact.put(cuboid, set);
+                }
+                set.add(buf.toString());
+            }
+        }
+
+        Map<Long, HyperLogLogPlusCounter> result = collector.getResult();
+        assertEquals(tree.size(), result.size());
+        assertEquals(20000, collector.getRowCount());
+        assertEquals(20000, collector.getSampledRowCount());
+        for (long cuboid : tree.keySet()) {
+            long actual = exact.get(cuboid).size();
+            long estimate = result.get(cuboid).getCountEstimate();
+            assertTrue("cuboid " + cuboid + " estimate " + estimate + " actual " + actual, Math.abs(estimate - actual) <= actual * 0.05);
+        }
+    }
+
+    @Test
+    public void testReservoirSampling() {
+        int nDims = 3;
+        long baseCuboidId = (1L << nDims) - 1;
+        CuboidStatsCollector collector = new CuboidStatsCollector(baseCuboidId, CuboidStatsBenchmark.fullCubeTree(baseCuboidId), 14, 1000);
+        for (int r = 0; r < 10000; r++) {
+            collector.addRow(new String[] { "a" + r, "b" + (r % 7), "c" });
+        }
+        assertEquals(10000, collector.getRowCount());
+        assertEquals(1000, collector.getSampledRowCount());
+
+        Map<Long, HyperLogLogPlusCounter> result = collector.getResult();
+        long baseEstimate = result.get(baseCuboidId).getCountEstimate();
+        assertTrue(Math.abs(baseEstimate - 1000) <= 50);
+        assertEquals(1, result.get(1L).getCountEstimate());
+        assertEquals(7, result.get(2L).getCountEstimate());
+    }
+
+    @Test
+    public void testCubeDescSpanningTree() {
+        CubeDesc cube = CubeDescManager.getInstance(getTestConfig()).getCubeDesc("test_kylin_cube_with_slr_desc");
+        CuboidScheduler scheduler = new CuboidScheduler(cube);
+        long baseCuboidId = Cuboid.getBaseCuboidId(cube);
+
+        Map<Long, Long> tree = CuboidStatsCollector.spanningTreeOf(scheduler, baseCuboidId);
+        assertEquals(scheduler.getCuboidCount(), tree.size());
+        assertEquals(baseCuboidId, (long) tree.keySet().iterator().next());
+
+        int nRowKey = cube.getRowkey().getRowKeyColumns().length;
+        CuboidStatsCollector collector = new CuboidStatsCollector(cube, 10);
+        String[] row = new String[nRowKey];
+        for (int r = 0; r < 100; r++) {
+            for (int i = 0; i < nRowKey; i++) {
+                row[i] = String.valueOf(r % (i + 1));
+            }
+            collector.addRow(row);
+        }
+        Map<Long, HyperLogLogPlusCounter> result = collector.getResult();
+        assertEquals(tree.keySet(), result.keySet());
+    }
+}
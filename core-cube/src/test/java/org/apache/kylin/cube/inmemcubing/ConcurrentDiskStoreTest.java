@@ -57,6 +57,29 @@ public class ConcurrentDiskStoreTest extends LocalFileMetadataTestCase {
         System.out.println("Cost " + (end - start) + " millis");
     }
 
+    @Test
+    public void testScanFrom() throws IOException {
+        ConcurrentDiskStore store = new ConcurrentDiskStore(info);
+        int from = data.size() / 3;
+        long position = -1;
+        GTBuilder builder = new GridTable(info, store).rebuild();
+        for (int i = 0; i < data.size(); i++) {
+            if (i == from)
+                position = store.getWritePosition();
+            builder.write(data.get(i));
+        }
+        builder.close();
+
+        IGTScanner scanner = store.scanFrom(position);
+        int i = from;
+        for (GTRecord r : scanner) {
+            assertEquals(data.get(i++), r);
+        }
+        scanner.close();
+        assertEquals(data.size(), i);
+        store.close();
+    }
+
     @Test
     public void testMultiThreadRead() throws IOException, InterruptedException {
         long start = System.currentTimeMillis();
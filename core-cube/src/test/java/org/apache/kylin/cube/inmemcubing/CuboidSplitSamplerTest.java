@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.cube.inmemcubing.CuboidSplitSampler.SplitPoint;
+import org.junit.Test;
+
+public class CuboidSplitSamplerTest {
+
+    @Test
+    public void testEvenSplit() {
+        CuboidSplitSampler sampler = new CuboidSplitSampler();
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            sampler.add(key(i), i * 10L);
+        }
+        assertEquals(n, sampler.getCount());
+
+        List<SplitPoint> points = sampler.getSplitPoints(4);
+        assertEquals(3, points.size());
+        for (int i = 0; i < points.size(); i++) {
+            int v = BytesUtil.readUnsigned(points.get(i).key.array(), points.get(i).key.offset(), 4);
+            int expected = n / 4 * (i + 1);
+            assertTrue("split point " + v + " too far from " + expected, Math.abs(v - expected) <= n / 50);
+            assertEquals(v * 10L, points.get(i).position);
+        }
+    }
+
+    @Test
+    public void testDuplicatedKeys() {
+        CuboidSplitSampler sampler = new CuboidSplitSampler();
+        for (int i = 0; i < 10000; i++) {
+            sampler.add(key(i < 5000 ? 0 : 1), i);
+        }
+
+        // rows of one value never cross a split point, and the point is at the first row of its value
+        List<SplitPoint> points = sampler.getSplitPoints(8);
+        assertEquals(1, points.size());
+        assertEquals(0, points.get(0).key.compareTo(key(1)));
+        assertEquals(5000, points.get(0).position);
+    }
+
+    @Test
+    public void testNoSplit() {
+        CuboidSplitSampler sampler = new CuboidSplitSampler();
+        assertTrue(sampler.getSplitPoints(4).isEmpty());
+
+        for (int i = 0; i < 1000; i++) {
+            sampler.add(key(7), i);
+        }
+        assertTrue(sampler.getSplitPoints(4).isEmpty());
+        assertTrue(sampler.getSplitPoints(1).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnsorted() {
+        CuboidSplitSampler sampler = new CuboidSplitSampler();
+        sampler.add(key(2), 0);
+        sampler.add(key(1), 1);
+    }
+
+    private ByteArray key(int v) {
+        ByteArray key = new ByteArray(4);
+        BytesUtil.writeUnsigned(v, key.array(), key.offset(), 4);
+        return key;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.common.util.MemoryBudgetController;
+import org.apache.kylin.gridtable.GTBuilder;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.GridTable;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.UnitTestSupport;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class OffHeapMemDiskStoreTest extends LocalFileMetadataTestCase {
+
+    final GTInfo info = UnitTestSupport.advancedInfo();
+    final List<GTRecord> data = UnitTestSupport.mockupData(info, 1000000); // converts to about 34 MB data
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testAllInMem() throws IOException {
+        MemoryBudgetController budgetCtrl = new MemoryBudgetController(100);
+        OffHeapMemDiskStore store = new OffHeapMemDiskStore(info, budgetCtrl);
+        verifyWriteAndRead(new GridTable(info, store));
+        assertTrue(budgetCtrl.getTotalReservedMB() > 0);
+        store.close();
+        assertEquals(0, budgetCtrl.getTotalReservedMB());
+    }
+
+    @Test
+    public void testSpillToDisk() throws IOException {
+        MemoryBudgetController budgetCtrl = new MemoryBudgetController(8);
+        OffHeapMemDiskStore store = new OffHeapMemDiskStore(info, budgetCtrl);
+        verifyWriteAndRead(new GridTable(info, store));
+        store.close();
+        assertEquals(0, budgetCtrl.getTotalReservedMB());
+    }
+
+    @Test
+    public void testDiskOnly() throws IOException {
+        OffHeapMemDiskStore store = new OffHeapMemDiskStore(info, MemoryBudgetController.ZERO_BUDGET);
+        verifyWriteAndRead(new GridTable(info, store));
+        store.close();
+    }
+
+    @Test
+    public void testFreeUpThenRead() throws IOException {
+        MemoryBudgetController budgetCtrl = new MemoryBudgetController(100);
+        OffHeapMemDiskStore store = new OffHeapMemDiskStore(info, budgetCtrl);
+        GridTable table = new GridTable(info, store);
+        write(table);
+
+        // all chunks are flushed once the writer is closed, so they can all be given back
+        int reserved = budgetCtrl.getTotalReservedMB();
+        assertEquals(reserved, store.freeUp(Integer.MAX_VALUE));
+        budgetCtrl.reserve(store, 0);
+        assertEquals(0, budgetCtrl.getTotalReservedMB());
+
+        verifyRead(table);
+        store.close();
+    }
+
+    @Test
+    public void testScanFrom() throws IOException {
+        OffHeapMemDiskStore store = new OffHeapMemDiskStore(info, new MemoryBudgetController(8));
+        int from = data.size() / 3;
+        long position = -1;
+        GTBuilder builder = new GridTable(info, store).rebuild();
+        for (int i = 0; i < data.size(); i++) {
+            if (i == from)
+                position = store.getWritePosition();
+            builder.write(data.get(i));
+        }
+        builder.close();
+
+        IGTScanner scanner = store.scanFrom(position);
+        int i = from;
+        for (GTRecord r : scanner) {
+            assertEquals(data.get(i++), r);
+        }
+        scanner.close();
+        assertEquals(data.size(), i);
+        store.close();
+    }
+
+    @Test
+    public void testReadBeforeRebuild() throws IOException {
+        OffHeapMemDiskStore store = new OffHeapMemDiskStore(info, MemoryBudgetController.ZERO_BUDGET);
+        IGTScanner scanner = store.scan(null);
+        Iterator<GTRecord> it = scanner.iterator();
+        assertFalse(it.hasNext());
+
+        // the reader then sees what is written to the disk file created by rebuild()
+        write(new GridTable(info, store));
+        int i = 0;
+        while (it.hasNext()) {
+            assertEquals(data.get(i++), it.next());
+        }
+        scanner.close();
+        assertEquals(data.size(), i);
+        store.close();
+    }
+
+    @Test
+    public void testConcurrentSpill() throws Exception {
+        // more writers than spill threads, each must still get its chunks flushed in order
+        int nThreads = 6;
+        Thread[] t = new Thread[nThreads];
+        final Throwable[] errors = new Throwable[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            final int id = i;
+            t[i] = new Thread() {
+                public void run() {
+                    try {
+                        OffHeapMemDiskStore store = new OffHeapMemDiskStore(info, MemoryBudgetController.ZERO_BUDGET);
+                        verifyWriteAndRead(new GridTable(info, store));
+                        store.close();
+                    } catch (Throwable ex) {
+                        errors[id] = ex;
+                    }
+                }
+            };
+            t[i].start();
+        }
+        for (int i = 0; i < nThreads; i++) {
+            t[i].join();
+            if (errors[i] != null)
+                throw new RuntimeException(errors[i]);
+        }
+    }
+
+    @Test
+    public void testMultiThreadRead() throws Exception {
+        MemoryBudgetController budgetCtrl = new MemoryBudgetController(20);
+        OffHeapMemDiskStore store = new OffHeapMemDiskStore(info, budgetCtrl);
+        final GridTable table = new GridTable(info, store);
+        write(table);
+
+        int nThreads = 5;
+        Thread[] t = new Thread[nThreads];
+        final Throwable[] errors = new Throwable[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            final int id = i;
+            t[i] = new Thread() {
+                public void run() {
+                    try {
+                        verifyRead(table);
+                    } catch (Throwable ex) {
+                        errors[id] = ex;
+                    }
+                }
+            };
+            t[i].start();
+        }
+        for (int i = 0; i < nThreads; i++) {
+            t[i].join();
+            if (errors[i] != null)
+                throw new RuntimeException(errors[i]);
+        }
+        store.close();
+    }
+
+    private void verifyWriteAndRead(GridTable table) throws IOException {
+        write(table);
+        verifyRead(table);
+    }
+
+    private void write(GridTable table) throws IOException {
+        GTBuilder builder = table.rebuild();
+        for (GTRecord r : data) {
+            builder.write(r);
+        }
+        builder.close();
+    }
+
+    private void verifyRead(GridTable table) throws IOException {
+        IGTScanner scanner = table.scan(new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null).setFilterPushDown(null).createGTScanRequest());
+        int i = 0;
+        for (GTRecord r : scanner) {
+            assertEquals(data.get(i++), r);
+        }
+        scanner.close();
+        assertEquals(data.size(), i);
+    }
+}
@@ -145,4 +145,31 @@ public class RowKeyEncoderTest extends LocalFileMetadataTestCase {
         assertEquals(511, Bytes.toLong(cuboidId));
         assertArrayEquals(new byte[] { -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }, rest);
     }
+
+    @Test
+    public void testEncodeBatch() throws Exception {
+        CubeInstance cube = CubeManager.getInstance(getTestConfig()).getCube("TEST_KYLIN_CUBE_WITH_SLR_READY");
+        CubeDesc cubeDesc = cube.getDescriptor();
+        Cuboid baseCuboid = Cuboid.findById(cubeDesc, Cuboid.getBaseCuboidId(cubeDesc));
+        RowKeyEncoder rowKeyEncoder = new RowKeyEncoder(cube.getFirstSegment(), baseCuboid);
+
+        String[][] rows = new String[][] { //
+                { "123456789", "2012-12-15", "11848", "Health & Beauty", "Fragrances", "Women", "FP-GTC", "0", "15" }, //
+                { "123456789", null, null, null, null, null, null, null, null }, //
+                { "987654321", "2012-12-15", "not a category", "Health & Beauty", "Fragrances", "Women", "FP-GTC", "0", "15" }, //
+                { "123456789", "2012-12-15", "11848", "Health & Beauty", "Fragrances", "Women", "FP-GTC", "0", "15" } };
+        byte[][][] data = new byte[rows.length][][];
+        for (int r = 0; r < rows.length; r++) {
+            data[r] = new byte[rows[r].length][];
+            for (int i = 0; i < rows[r].length; i++) {
+                data[r][i] = rows[r][i] == null ? null : Bytes.toBytes(rows[r][i]);
+            }
+        }
+
+        byte[][] keys = new byte[rows.length][];
+        rowKeyEncoder.encode(data, rows.length, keys);
+        for (int r = 0; r < rows.length; r++) {
+            assertArrayEquals(rowKeyEncoder.encode(data[r]), keys[r]);
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class GTTopKScannerTest extends LocalFileMetadataTestCase {
+
+    static GTInfo INFO;
+    static List<GTRecord> DATA = Lists.newArrayList();
+
+    @BeforeClass
+    public static void beforeClass() {
+        staticCreateTestMetadata();
+
+        INFO = UnitTestSupport.basicInfo();
+        long[] values = { 30, 10, 50, 20, 40, 50, 0 };
+        for (int i = 0; i < values.length; i++) {
+            DATA.add(new GTRecord(INFO).setValues("2015-01-14", "name" + i, "Food", new LongMutable(values[i]), new BigDecimal("10.5")));
+        }
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testTopKDescending() throws IOException {
+        assertEquals(Lists.newArrayList(50L, 50L, 40L), topK(true, 3));
+    }
+
+    @Test
+    public void testTopKAscending() throws IOException {
+        assertEquals(Lists.newArrayList(0L, 10L), topK(false, 2));
+    }
+
+    @Test
+    public void testTopKMoreThanRows() throws IOException {
+        assertEquals(Lists.newArrayList(50L, 50L, 40L, 30L, 20L, 10L, 0L), topK(true, 100));
+        assertEquals(0, topK(true, 0).size());
+    }
+
+    @Test(expected = GTScanTimeoutException.class)
+    public void testDeadline() throws IOException {
+        GTTopKScanner scanner = new GTTopKScanner(newInputScanner(), newRequest(true, 3), System.currentTimeMillis() - 1);
+        scanner.iterator();
+    }
+
+    @Test
+    public void testSerialize() {
+        GTScanRequest req = newRequest(true, 5);
+        ByteBuffer buffer = ByteBuffer.wrap(req.toByteArray());
+        GTScanRequest sReq = GTScanRequest.serializer.deserialize(buffer);
+        assertTrue(sReq.hasTopK());
+        assertEquals(3, sReq.getTopKColumn());
+        assertTrue(sReq.isTopKDescending());
+        assertEquals(5, sReq.getTopK());
+
+        GTScanRequest noTopK = new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(null).createGTScanRequest();
+        assertFalse(GTScanRequest.serializer.deserialize(ByteBuffer.wrap(noTopK.toByteArray())).hasTopK());
+    }
+
+    private List<Long> topK(boolean descending, int k) throws IOException {
+        GTTopKScanner scanner = new GTTopKScanner(newInputScanner(), newRequest(descending, k), Long.MAX_VALUE);
+        List<Long> result = Lists.newArrayList();
+        for (GTRecord r : scanner) {
+            result.add(((LongMutable) r.getValues()[3]).get());
+        }
+        scanner.close();
+        return result;
+    }
+
+    private GTScanRequest newRequest(boolean descending, int k) {
+        return new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(null).setTopK(3, descending, k).createGTScanRequest();
+    }
+
+    private IGTScanner newInputScanner() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return DATA.size();
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return DATA.iterator();
+            }
+        };
+    }
+}
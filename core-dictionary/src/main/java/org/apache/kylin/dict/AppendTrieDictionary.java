@@ -30,6 +30,7 @@ import java.io.UnsupportedEncodingException;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
@@ -975,6 +976,82 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         return id;
     }
 
+    @Override
+    public void getIdsFromValues(T[] values, int offset, int n, int roundingFlag, int[] returnIds, int returnOffset) {
+        HashMap cache = enableValueCache && roundingFlag == 0 ? valueToIdCache.get() : null;
+
+        // probe the cache, and look up the misses together
+        byte[][] missBytes = new byte[n][];
+        int[] missIndexes = new int[n];
+        int nMiss = 0;
+        for (int i = 0; i < n; i++) {
+            T value = values[offset + i];
+            Integer cached = cache == null || value == null ? null : (Integer) cache.get(value);
+            if (cached != null) {
+                returnIds[returnOffset + i] = cached.intValue();
+            } else if (isNullObjectForm(value)) {
+                returnIds[returnOffset + i] = nullId();
+            } else {
+                missBytes[nMiss] = bytesConverter.convertToBytes(value);
+                missIndexes[nMiss++] = i;
+            }
+        }
+        if (nMiss == 0)
+            return;
+
+        int[] missIds = new int[nMiss];
+        getIdsFromValueBytes(missBytes, 0, nMiss, roundingFlag, missIds, 0);
+        for (int j = 0; j < nMiss; j++) {
+            int i = missIndexes[j];
+            returnIds[returnOffset + i] = missIds[j];
+            if (cache != null && missIds[j] >= 0)
+                cache.put(values[offset + i], missIds[j]);
+        }
+    }
+
+    @Override
+    public void getIdsFromValueBytes(final byte[][] values, final int offset, int n, int roundingFlag, int[] returnIds, int returnOffset) {
+        // visit values in sorted order, so each slice is fetched from the cached tree map once per batch
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                byte[] v1 = values[offset + o1];
+                byte[] v2 = values[offset + o2];
+                if (v1 == null || v2 == null)
+                    return v1 == null ? (v2 == null ? 0 : -1) : 1;
+                return Bytes.compareTo(v1, v2);
+            }
+        });
+
+        DictSlice slice = null;
+        DictSliceKey sliceEnd = null; // the key of next slice, or null if the current is the last
+        for (int i : order) {
+            byte[] value = values[offset + i];
+            if (isNullByteForm(value, 0, value == null ? 0 : value.length)) {
+                returnIds[returnOffset + i] = nullId();
+                continue;
+            }
+            if (dictSliceMap.isEmpty()) {
+                returnIds[returnOffset + i] = -1;
+                continue;
+            }
+            if (slice == null || (sliceEnd != null && Bytes.compareTo(value, sliceEnd.key) >= 0)) {
+                DictSliceKey sliceKey = dictSliceMap.floorKey(DictSliceKey.wrap(value));
+                if (sliceKey == null) {
+                    sliceKey = dictSliceMap.firstKey();
+                }
+                slice = dictSliceMap.get(sliceKey);
+                sliceEnd = dictSliceMap.higherKey(sliceKey);
+            }
+            int id = slice.getIdFromValueBytesImpl(value, 0, value.length, roundingFlag);
+            returnIds[returnOffset + i] = id < 0 ? -1 : id;
+        }
+    }
+
     @Override
     public int getMinId() {
         return baseId;
@@ -42,6 +42,10 @@ public class DictionaryGenerator {
 
     private static final int DICT_MAX_CARDINALITY = getDictionaryMaxCardinality();
 
+    private static final boolean LONG_DICT_ENABLED = isLongDictEnabled();
+
+    private static final boolean FRONT_CODED_DICT_ENABLED = isFrontCodedDictEnabled();
+
     private static final Logger logger = LoggerFactory.getLogger(DictionaryGenerator.class);
 
     private static final String[] DATE_PATTERNS = new String[] { "yyyy-MM-dd", "yyyyMMdd" };
@@ -54,6 +58,22 @@ public class DictionaryGenerator {
         }
     }
 
+    private static boolean isLongDictEnabled() {
+        try {
+            return KylinConfig.getInstanceFromEnv().isLongDictEnabled();
+        } catch (Throwable e) {
+            return false; // some test case does not have KylinConfig setup properly
+        }
+    }
+
+    private static boolean isFrontCodedDictEnabled() {
+        try {
+            return KylinConfig.getInstanceFromEnv().isFrontCodedDictEnabled();
+        } catch (Throwable e) {
+            return false; // some test case does not have KylinConfig setup properly
+        }
+    }
+
     public static Dictionary<String> buildDictionary(DataType dataType, IDictionaryValueEnumerator valueEnumerator) throws IOException {
         Preconditions.checkNotNull(dataType, "dataType cannot be null");
 
@@ -64,8 +84,12 @@ public class DictionaryGenerator {
                 builder = new DateDictBuilder();
             else
                 builder = new TimeDictBuilder();
+        } else if (dataType.isIntegerFamily() && LONG_DICT_ENABLED) {
+            builder = new LongDictBuilder();
         } else if (dataType.isNumberFamily()) {
             builder = new NumberDictBuilder();
+        } else if (FRONT_CODED_DICT_ENABLED) {
+            builder = new FrontCodedDictBuilder();
         } else {
             builder = new StringDictBuilder();
         }
@@ -92,7 +116,7 @@ public class DictionaryGenerator {
         logger.debug("Dictionary cardinality: " + dict.getSize());
         logger.debug("Dictionary builder class: " + builder.getClass().getName());
         logger.debug("Dictionary class: " + dict.getClass().getName());
-        if (dict instanceof TrieDictionary && dict.getSize() > DICT_MAX_CARDINALITY) {
+        if ((dict instanceof TrieDictionary || dict instanceof FrontCodedDictionary) && dict.getSize() > DICT_MAX_CARDINALITY) {
             throw new IllegalArgumentException("Too high cardinality is not suitable for dictionary -- cardinality: " + dict.getSize());
         }
         return dict;
@@ -186,4 +210,63 @@ public class DictionaryGenerator {
             return builder.build(baseId);
         }
     }
+
+    /**
+     * Builds a LongDictionary, or falls back to the number trie once a value is not a long.
+     */
+    static class LongDictBuilder implements IDictionaryBuilder {
+        @Override
+        public Dictionary<String> build(DictionaryInfo dictInfo, IDictionaryValueEnumerator valueEnumerator, int baseId, int nSamples, ArrayList<String> returnSamples) throws IOException {
+            LongDictionaryBuilder builder = new LongDictionaryBuilder();
+            NumberDictionaryBuilder fallback = null;
+            byte[] value;
+            while (valueEnumerator.moveNext()) {
+                value = valueEnumerator.current();
+                if (value == null)
+                    continue;
+                String v = Bytes.toString(value).trim();
+                if (v.isEmpty()) // empty string is null for numbers
+                    continue;
+
+                if (fallback == null) {
+                    try {
+                        builder.addValue(Long.parseLong(v));
+                    } catch (NumberFormatException e) {
+                        logger.info("Value " + v + " is not a long, falling back to NumberDictionary");
+                        fallback = new NumberDictionaryBuilder(new StringBytesConverter());
+                        for (long l : builder.getValues()) {
+                            fallback.addValue(Long.toString(l));
+                        }
+                    }
+                }
+                if (fallback != null) {
+                    fallback.addValue(v);
+                }
+                if (returnSamples.size() < nSamples && returnSamples.contains(v) == false)
+                    returnSamples.add(v);
+            }
+            return fallback == null ? builder.build(baseId) : fallback.build(baseId);
+        }
+    }
+
+    /**
+     * Builds a FrontCodedDictionary of strings, same IDs and order as the string trie.
+     */
+    static class FrontCodedDictBuilder implements IDictionaryBuilder {
+        @Override
+        public Dictionary<String> build(DictionaryInfo dictInfo, IDictionaryValueEnumerator valueEnumerator, int baseId, int nSamples, ArrayList<String> returnSamples) throws IOException {
+            FrontCodedDictionaryBuilder<String> builder = new FrontCodedDictionaryBuilder<String>(new StringBytesConverter());
+            byte[] value;
+            while (valueEnumerator.moveNext()) {
+                value = valueEnumerator.current();
+                if (value == null)
+                    continue;
+                String v = Bytes.toString(value);
+                builder.addValue(v);
+                if (returnSamples.size() < nSamples && returnSamples.contains(v) == false)
+                    returnSamples.add(v);
+            }
+            return builder.build(baseId);
+        }
+    }
 }
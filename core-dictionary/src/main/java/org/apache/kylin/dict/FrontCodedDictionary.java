@@ -0,0 +1,548 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.ClassUtil;
+import org.apache.kylin.common.util.Dictionary;
+
+/**
+ * An order preserving dictionary of byte values, an alternative to TrieDictionary for long values that share
+ * prefixes, like URLs. The sorted values are front coded in blocks of 8: each block starts with a whole value, and
+ * each following value keeps only the length of its common prefix with the previous value plus the rest of its bytes.
+ * The ID of a value is its position in the sorted order.
+ * <p>
+ * An exact lookup hashes the value into an open addressing table of positions, then checks the candidate block
+ * without decoding it. A rounding lookup is a binary search over the block heads followed by a scan of one block.
+ * Decoding an ID walks at most 7 values of one block into the return buffer. There is no value cache.
+ * <p>
+ * Only the blocks are serialized, the block offsets and the hash table are rebuilt when the dictionary is read.
+ */
+@SuppressWarnings({ "serial", "unchecked" })
+public class FrontCodedDictionary<T> extends Dictionary<T> {
+
+    private static final byte VERSION = 1;
+
+    private static final int BLOCK_SHIFT = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private int baseId;
+    private int nValues;
+    private int sizeOfId;
+    private int maxValueLength;
+    transient private BytesConverter<T> bytesConvert;
+
+    private byte[] data; // the front coded blocks, lengths in vint
+    transient private int[] blockOffsets; // where each block starts in data
+
+    // open addressing table, a slot is the position + 1 in the low bits and a fingerprint of the hash in the high bits
+    transient private int[] slots;
+    transient private int seqBits;
+    transient private int seqMask;
+
+    public FrontCodedDictionary() { // default constructor for Writable interface
+    }
+
+    /**
+     * @param sortedValues distinct values in ascending order, bytes compared as unsigned
+     */
+    public FrontCodedDictionary(byte[][] sortedValues, int nValues, int baseId, BytesConverter<T> bytesConverter) {
+        this.bytesConvert = bytesConverter;
+        this.baseId = baseId;
+        this.nValues = nValues;
+        this.data = encode(sortedValues, nValues);
+        init();
+    }
+
+    private static byte[] encode(byte[][] values, int nValues) {
+        int size = 0;
+        for (int i = 0; i < nValues; i++) {
+            size += values[i].length + 10;
+        }
+        byte[] buf = new byte[size];
+        int p = 0;
+        for (int i = 0; i < nValues; i++) {
+            byte[] v = values[i];
+            if (i > 0 && compare(values[i - 1], v) >= 0)
+                throw new IllegalArgumentException("Values are not distinct and ascending at " + i);
+
+            if ((i & BLOCK_MASK) == 0) {
+                p = writeVInt(buf, p, v.length);
+                System.arraycopy(v, 0, buf, p, v.length);
+                p += v.length;
+            } else {
+                byte[] prev = values[i - 1];
+                int prefix = commonPrefix(prev, v);
+                p = writeVInt(buf, p, prefix);
+                p = writeVInt(buf, p, v.length - prefix);
+                System.arraycopy(v, prefix, buf, p, v.length - prefix);
+                p += v.length - prefix;
+            }
+        }
+        return Arrays.copyOf(buf, p);
+    }
+
+    private void init() {
+        this.sizeOfId = BytesUtil.sizeForValue(baseId + nValues + 1L); // +1 to reserve all 0xFF for NULL case
+        this.blockOffsets = new int[(nValues + BLOCK_SIZE - 1) >>> BLOCK_SHIFT];
+        this.seqBits = 32 - Integer.numberOfLeadingZeros(nValues); // position + 1 fits in
+        this.seqMask = (1 << seqBits) - 1;
+        this.slots = new int[nValues + nValues / 4 + 1]; // load factor 0.8
+        this.maxValueLength = 0;
+
+        // walk all the values once, record the block offsets and hash each value into the table
+        byte[] buf = new byte[16];
+        int p = 0;
+        int len = 0;
+        for (int i = 0; i < nValues; i++) {
+            if ((i & BLOCK_MASK) == 0) {
+                blockOffsets[i >>> BLOCK_SHIFT] = p;
+                len = readVInt(data, p);
+                p += sizeOfVInt(len);
+                buf = ensure(buf, len);
+                System.arraycopy(data, p, buf, 0, len);
+                p += len;
+            } else {
+                int prefix = readVInt(data, p);
+                p += sizeOfVInt(prefix);
+                int suffix = readVInt(data, p);
+                p += sizeOfVInt(suffix);
+                len = prefix + suffix;
+                buf = ensure(buf, len);
+                System.arraycopy(data, p, buf, prefix, suffix);
+                p += suffix;
+            }
+            maxValueLength = Math.max(maxValueLength, len);
+            putSlot(hash(buf, 0, len), i);
+        }
+    }
+
+    private static byte[] ensure(byte[] buf, int len) {
+        return buf.length >= len ? buf : Arrays.copyOf(buf, Math.max(len, buf.length * 2));
+    }
+
+    private void putSlot(int h, int seq) {
+        int s = slotOf(h);
+        while (slots[s] != 0) {
+            if (++s == slots.length)
+                s = 0;
+        }
+        slots[s] = fingerprint(h) | (seq + 1);
+    }
+
+    // the slot comes from the high bits of the hash, the fingerprint from the low bits, so that they are independent
+    private int slotOf(int h) {
+        return (int) (((h & 0xffffffffL) * slots.length) >>> 32);
+    }
+
+    private int fingerprint(int h) {
+        return h << seqBits;
+    }
+
+    // ============================================================================
+
+    /** the position of value, or (-(insertion point) - 1) if not found */
+    private int search(byte[] value, int offset, int len) {
+        int b = findBlock(value, offset, len);
+        if (b < 0)
+            return -1;
+        return scanBlock(b, value, offset, len);
+    }
+
+    /** the position of value by the hash table, -1 if not found */
+    private int lookup(byte[] value, int offset, int len) {
+        int h = hash(value, offset, len);
+        int fingerprint = fingerprint(h);
+        int s = slotOf(h);
+        int slot;
+        while ((slot = slots[s]) != 0) {
+            if ((slot & ~seqMask) == fingerprint) {
+                int r = scanBlock(((slot & seqMask) - 1) >>> BLOCK_SHIFT, value, offset, len);
+                if (r >= 0)
+                    return r;
+            }
+            if (++s == slots.length)
+                s = 0;
+        }
+        return -1;
+    }
+
+    /** the last block whose head is not greater than value, -1 if value is less than all */
+    private int findBlock(byte[] value, int offset, int len) {
+        int lo = 0;
+        int hi = blockOffsets.length - 1;
+        if (compareHead(lo, value, offset, len) > 0)
+            return -1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (compareHead(mid, value, offset, len) <= 0)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private int compareHead(int b, byte[] value, int offset, int len) {
+        int p = blockOffsets[b];
+        int headLen = readVInt(data, p);
+        p += sizeOfVInt(headLen);
+        int n = Math.min(headLen, len);
+        for (int i = 0; i < n; i++) {
+            int comp = (data[p + i] & 0xff) - (value[offset + i] & 0xff);
+            if (comp != 0)
+                return comp;
+        }
+        return headLen - len;
+    }
+
+    /**
+     * Scans block b for value, returns its position if found, otherwise (-(insertion point) - 1). Values are compared
+     * without decoding: as they are ascending, only the common prefix of value and the current block value needs to be
+     * tracked.
+     */
+    private int scanBlock(int b, byte[] value, int offset, int len) {
+        int start = b << BLOCK_SHIFT;
+        int end = Math.min(nValues, start + BLOCK_SIZE);
+        int p = blockOffsets[b];
+
+        // the head
+        int entryLen = readVInt(data, p);
+        p += sizeOfVInt(entryLen);
+        int matched = 0;
+        int n = Math.min(entryLen, len);
+        while (matched < n && data[p + matched] == value[offset + matched]) {
+            matched++;
+        }
+        int comp = compareAt(matched, entryLen, p, value, offset, len);
+        p += entryLen;
+
+        for (int i = start;;) {
+            if (comp == 0)
+                return i;
+            if (comp > 0)
+                return -(i + 1);
+            if (++i == end)
+                return -(i + 1);
+
+            // the current value is smaller than value, and shares matched bytes with it
+            int prefix = readVInt(data, p);
+            p += sizeOfVInt(prefix);
+            int suffix = readVInt(data, p);
+            p += sizeOfVInt(suffix);
+            if (prefix < matched) {
+                // the next value is bigger than the current one at byte prefix, where the current equals value
+                comp = 1;
+            } else if (prefix == matched) {
+                entryLen = prefix + suffix;
+                int base = p - prefix; // so that data[base + k] is byte k of the next value, for k >= prefix
+                n = Math.min(entryLen, len);
+                while (matched < n && data[base + matched] == value[offset + matched]) {
+                    matched++;
+                }
+                comp = compareAt(matched, entryLen, base, value, offset, len);
+            }
+            // if prefix > matched, the next value differs from value where the current does, it is still smaller
+            p += suffix;
+        }
+    }
+
+    private int compareAt(int matched, int entryLen, int base, byte[] value, int offset, int len) {
+        if (matched < entryLen && matched < len)
+            return (data[base + matched] & 0xff) - (value[offset + matched] & 0xff);
+        return entryLen - len;
+    }
+
+    private int toIndex(int searchResult, int roundingFlag) {
+        if (searchResult >= 0)
+            return searchResult;
+        int insertion = -(searchResult + 1);
+        if (roundingFlag < 0)
+            return insertion - 1; // -1 if nothing is smaller
+        if (roundingFlag > 0)
+            return insertion < nValues ? insertion : -1;
+        return -1;
+    }
+
+    private int getSeq(int id) {
+        int seq = id - baseId;
+        if (seq < 0 || seq >= nValues)
+            throw new IllegalArgumentException("Not a valid ID: " + id);
+        return seq;
+    }
+
+    /** the length of the value at seq, without copying it */
+    private int valueLength(int seq) {
+        int p = blockOffsets[seq >>> BLOCK_SHIFT];
+        int len = readVInt(data, p);
+        p += sizeOfVInt(len) + len;
+        for (int j = seq & BLOCK_MASK; j > 0; j--) {
+            int prefix = readVInt(data, p);
+            p += sizeOfVInt(prefix);
+            int suffix = readVInt(data, p);
+            p += sizeOfVInt(suffix) + suffix;
+            len = prefix + suffix;
+        }
+        return len;
+    }
+
+    /** copies the value at seq of given length, touches no byte of returnValue beyond the value */
+    private void copyValue(int seq, int len, byte[] returnValue, int offset) {
+        int p = blockOffsets[seq >>> BLOCK_SHIFT];
+        int headLen = readVInt(data, p);
+        p += sizeOfVInt(headLen);
+        System.arraycopy(data, p, returnValue, offset, Math.min(headLen, len));
+        p += headLen;
+        for (int j = seq & BLOCK_MASK; j > 0; j--) {
+            int prefix = readVInt(data, p);
+            p += sizeOfVInt(prefix);
+            int suffix = readVInt(data, p);
+            p += sizeOfVInt(suffix);
+            if (prefix < len)
+                System.arraycopy(data, p, returnValue, offset + prefix, Math.min(suffix, len - prefix));
+            p += suffix;
+        }
+    }
+
+    // ============================================================================
+
+    @Override
+    public int getMinId() {
+        return baseId;
+    }
+
+    @Override
+    public int getMaxId() {
+        return baseId + nValues - 1;
+    }
+
+    @Override
+    public int getSizeOfId() {
+        return sizeOfId;
+    }
+
+    @Override
+    public int getSizeOfValue() {
+        return maxValueLength;
+    }
+
+    @Override
+    protected int getIdFromValueImpl(T value, int roundingFlag) {
+        byte[] valueBytes = bytesConvert.convertToBytes(value);
+        return getIdFromValueBytes(valueBytes, 0, valueBytes.length, roundingFlag);
+    }
+
+    @Override
+    protected int getIdFromValueBytesImpl(byte[] value, int offset, int len, int roundingFlag) {
+        if (nValues == 0)
+            return -1;
+        int index = roundingFlag == 0 ? lookup(value, offset, len) : toIndex(search(value, offset, len), roundingFlag);
+        return index < 0 ? -1 : baseId + index;
+    }
+
+    @Override
+    protected T getValueFromIdImpl(int id) {
+        byte[] value = getValueBytesFromIdImpl(id);
+        return bytesConvert.convertFromBytes(value, 0, value.length);
+    }
+
+    @Override
+    protected byte[] getValueBytesFromIdImpl(int id) {
+        int seq = getSeq(id);
+        byte[] value = new byte[valueLength(seq)];
+        copyValue(seq, value.length, value, 0);
+        return value;
+    }
+
+    @Override
+    protected int getValueBytesFromIdImpl(int id, byte[] returnValue, int offset) {
+        int seq = getSeq(id);
+        int len = valueLength(seq);
+        copyValue(seq, len, returnValue, offset);
+        return len;
+    }
+
+    @Override
+    public boolean contains(Dictionary<?> other) {
+        if (other.getSize() > this.getSize()) {
+            return false;
+        }
+
+        for (int i = other.getMinId(); i <= other.getMaxId(); ++i) {
+            T v = (T) other.getValueFromId(i);
+            if (!this.containsValue(v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void dump(PrintStream out) {
+        out.println("Total " + nValues + " values, " + blockOffsets.length + " blocks, " + data.length + " bytes");
+        for (int i = 0; i < nValues; i++) {
+            out.println((baseId + i) + ": " + getValueFromId(baseId + i));
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeUTF(bytesConvert.getClass().getName());
+        out.writeInt(baseId);
+        out.writeInt(nValues);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unknown FrontCodedDictionary version " + version);
+
+        String converterName = in.readUTF();
+        try {
+            this.bytesConvert = ClassUtil.forName(converterName, BytesConverter.class).newInstance();
+        } catch (Exception e) {
+            throw new IOException("Cannot create " + converterName, e);
+        }
+        this.baseId = in.readInt();
+        this.nValues = in.readInt();
+        this.data = new byte[in.readInt()];
+        in.readFully(data);
+        init();
+    }
+
+    private void writeObject(java.io.ObjectOutputStream stream) throws IOException {
+        write(stream);
+    }
+
+    private void readObject(java.io.ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        readFields(stream);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * baseId + Arrays.hashCode(data);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if ((o instanceof FrontCodedDictionary) == false) {
+            return false;
+        }
+        FrontCodedDictionary<?> that = (FrontCodedDictionary<?>) o;
+        return this.baseId == that.baseId && this.nValues == that.nValues && Arrays.equals(this.data, that.data);
+    }
+
+    // ============================================================================
+
+    static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int comp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (comp != 0)
+                return comp;
+        }
+        return a.length - b.length;
+    }
+
+    private static int commonPrefix(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /** murmur3 over the bytes, 4 at a time */
+    private static int hash(byte[] b, int offset, int len) {
+        int h = 0x9747b28c;
+        int end = offset + (len & ~3);
+        for (int i = offset; i < end; i += 4) {
+            int k = (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | b[i + 3] << 24;
+            h ^= mixK(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        switch (len & 3) {
+        case 3:
+            k ^= (b[end + 2] & 0xff) << 16; // fall through
+        case 2:
+            k ^= (b[end + 1] & 0xff) << 8; // fall through
+        case 1:
+            k ^= b[end] & 0xff;
+            h ^= mixK(k);
+        default:
+        }
+        h ^= len;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixK(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1b873593;
+    }
+
+    private static int writeVInt(byte[] buf, int p, int v) {
+        while ((v & ~0x7f) != 0) {
+            buf[p++] = (byte) (v | 0x80);
+            v >>>= 7;
+        }
+        buf[p++] = (byte) v;
+        return p;
+    }
+
+    private static int readVInt(byte[] buf, int p) {
+        int b = buf[p];
+        if (b >= 0)
+            return b;
+        int v = b & 0x7f;
+        for (int shift = 7;; shift += 7) {
+            b = buf[++p];
+            v |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return v;
+        }
+    }
+
+    private static int sizeOfVInt(int v) {
+        int n = 1;
+        while ((v & ~0x7f) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+}
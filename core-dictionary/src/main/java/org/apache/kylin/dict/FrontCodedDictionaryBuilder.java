@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Collects values in byte[] form, then sorts and dedups them into a FrontCodedDictionary.
+ */
+public class FrontCodedDictionaryBuilder<T> {
+
+    private static final Comparator<byte[]> UNSIGNED_BYTES = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            return FrontCodedDictionary.compare(a, b);
+        }
+    };
+
+    private final BytesConverter<T> bytesConverter;
+    private final ArrayList<byte[]> values = new ArrayList<byte[]>();
+
+    public FrontCodedDictionaryBuilder(BytesConverter<T> bytesConverter) {
+        this.bytesConverter = bytesConverter;
+    }
+
+    public void addValue(T value) {
+        addValue(bytesConverter.convertToBytes(value));
+    }
+
+    public void addValue(byte[] value) {
+        values.add(value);
+    }
+
+    public FrontCodedDictionary<T> build(int baseId) {
+        Collections.sort(values, UNSIGNED_BYTES);
+        byte[][] sorted = new byte[values.size()][];
+        int n = 0;
+        for (byte[] v : values) {
+            if (n == 0 || FrontCodedDictionary.compare(sorted[n - 1], v) != 0) {
+                sorted[n++] = v;
+            }
+        }
+        return new FrontCodedDictionary<T>(sorted, n, baseId, bytesConverter);
+    }
+}
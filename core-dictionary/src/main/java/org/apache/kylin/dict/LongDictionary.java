@@ -0,0 +1,475 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.Dictionary;
+
+/**
+ * A dictionary of integers, the values kept as a sorted long array. The ID of a value is its position in the array,
+ * so the order is preserved. The array is compressed in blocks of 64 by frame of reference: each block keeps its
+ * first value, and the other values as bit-packed deltas from it. Lookup is an interpolation search over the block
+ * heads followed by a binary search within the block; decoding an ID is a single unpack.
+ * <p>
+ * Besides the string API, there are primitive and batch APIs that skip the string form altogether.
+ */
+@SuppressWarnings("serial")
+public class LongDictionary extends Dictionary<String> {
+
+    private static final byte VERSION = 1;
+
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    // interpolation steps before falling back to binary search, guards against skewed values
+    private static final int MAX_INTERPOLATION_STEPS = 3;
+
+    private int baseId;
+    private int nValues;
+    private int sizeOfId;
+    private int maxValueLength;
+
+    private long[] blockHeads; // first value of each block
+    private byte[] blockBits; // bits of each delta in a block
+    private long[] blockBitOffsets; // where the deltas of each block start in packed
+    private long[] packed;
+
+    public LongDictionary() { // default constructor for Writable interface
+    }
+
+    /**
+     * @param sortedValues distinct values in ascending order
+     */
+    public LongDictionary(long[] sortedValues, int nValues, int baseId) {
+        init(baseId, nValues);
+        pack(sortedValues);
+    }
+
+    private void init(int baseId, int nValues) {
+        this.baseId = baseId;
+        this.nValues = nValues;
+        this.sizeOfId = BytesUtil.sizeForValue(baseId + nValues + 1L); // +1 to reserve all 0xFF for NULL case
+        int nBlocks = (nValues + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+        this.blockHeads = new long[nBlocks];
+        this.blockBits = new byte[nBlocks];
+        this.blockBitOffsets = new long[nBlocks];
+    }
+
+    private void pack(long[] values) {
+        for (int i = 1; i < nValues; i++) {
+            if (values[i] <= values[i - 1])
+                throw new IllegalArgumentException("Values are not distinct and ascending at " + i + ": " + values[i - 1] + ", " + values[i]);
+        }
+
+        long totalBits = 0;
+        for (int b = 0; b < blockHeads.length; b++) {
+            int start = b << BLOCK_SHIFT;
+            int end = Math.min(nValues, start + BLOCK_SIZE);
+            blockHeads[b] = values[start];
+            // the delta is unsigned, it takes all the 64 bits if the block spans more than Long.MAX_VALUE
+            blockBits[b] = (byte) (64 - Long.numberOfLeadingZeros(values[end - 1] - values[start]));
+            blockBitOffsets[b] = totalBits;
+            totalBits += (long) (end - start - 1) * blockBits[b];
+        }
+
+        packed = new long[(int) ((totalBits + 63) >>> 6)];
+        for (int b = 0; b < blockHeads.length; b++) {
+            int start = b << BLOCK_SHIFT;
+            int end = Math.min(nValues, start + BLOCK_SIZE);
+            long bitPos = blockBitOffsets[b];
+            int bits = blockBits[b];
+            for (int i = start + 1; i < end; i++, bitPos += bits) {
+                writeBits(bitPos, bits, values[i] - values[start]);
+            }
+        }
+
+        if (nValues > 0) {
+            maxValueLength = Math.max(Long.toString(values[0]).length(), Long.toString(values[nValues - 1]).length());
+        }
+    }
+
+    private void writeBits(long bitPos, int bits, long v) {
+        if (bits == 0)
+            return;
+        int word = (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        packed[word] |= v << shift;
+        if (shift + bits > 64) {
+            packed[word + 1] |= v >>> (64 - shift);
+        }
+    }
+
+    private long readBits(long bitPos, int bits) {
+        if (bits == 0)
+            return 0;
+        int word = (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        long v = packed[word] >>> shift;
+        if (shift + bits > 64) {
+            v |= packed[word + 1] << (64 - shift);
+        }
+        return bits == 64 ? v : v & ((1L << bits) - 1);
+    }
+
+    private long valueAt(int index) {
+        int b = index >>> BLOCK_SHIFT;
+        int j = index & BLOCK_MASK;
+        if (j == 0)
+            return blockHeads[b];
+        int bits = blockBits[b];
+        return blockHeads[b] + readBits(blockBitOffsets[b] + (long) (j - 1) * bits, bits);
+    }
+
+    // ============================================================================
+
+    /** the last block whose head is not greater than v, -1 if v is less than all */
+    private int findBlock(long v) {
+        int lo = 0;
+        int hi = blockHeads.length - 1;
+        if (v < blockHeads[lo])
+            return -1;
+        if (v >= blockHeads[hi])
+            return hi;
+
+        // blockHeads[lo] <= v < blockHeads[hi]
+        int steps = 0;
+        while (hi - lo > 1) {
+            int mid;
+            if (steps++ < MAX_INTERPOLATION_STEPS) {
+                double ratio = ((double) v - (double) blockHeads[lo]) / ((double) blockHeads[hi] - (double) blockHeads[lo]);
+                mid = lo + (int) (ratio * (hi - lo));
+                mid = Math.max(lo + 1, Math.min(hi - 1, mid));
+            } else {
+                mid = (lo + hi) >>> 1;
+            }
+            if (blockHeads[mid] <= v)
+                lo = mid;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /** binary search within [from, to), returns the index if found, otherwise (-(insertion point) - 1) */
+    private int binarySearch(int from, int to, long v) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midVal = valueAt(mid);
+            if (midVal < v)
+                lo = mid + 1;
+            else if (midVal > v)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    private int search(long v) {
+        int b = findBlock(v);
+        if (b < 0)
+            return -1;
+        int start = b << BLOCK_SHIFT;
+        return binarySearch(start, Math.min(nValues, start + BLOCK_SIZE), v);
+    }
+
+    private int toIndex(int searchResult, int roundingFlag) {
+        if (searchResult >= 0)
+            return searchResult;
+        int insertion = -(searchResult + 1);
+        if (roundingFlag < 0)
+            return insertion - 1; // -1 if nothing is smaller
+        if (roundingFlag > 0)
+            return insertion < nValues ? insertion : -1;
+        return -1;
+    }
+
+    /**
+     * Returns the ID of given value, -1 if not found and rounding is off or cannot find a smaller or bigger ID.
+     */
+    public int getIdFromLong(long value, int roundingFlag) {
+        if (nValues == 0)
+            return -1;
+        int index = toIndex(search(value), roundingFlag);
+        return index < 0 ? -1 : baseId + index;
+    }
+
+    @Override
+    public boolean isLongValued() {
+        return true;
+    }
+
+    @Override
+    public long getLongFromId(int id) {
+        int index = id - baseId;
+        if (index < 0 || index >= nValues)
+            throw new IllegalArgumentException("Not a valid ID: " + id);
+        return valueAt(index);
+    }
+
+    /**
+     * Encodes n values into IDs, -1 for a value not found. Runs of ascending values are searched forward from the
+     * previous hit, so sorted input costs about one short gallop each.
+     */
+    public void getIdsFromLongs(long[] values, int offset, int n, int[] returnIds, int returnOffset) {
+        int last = -1;
+        long lastValue = 0;
+        for (int i = 0; i < n; i++) {
+            long v = values[offset + i];
+            int r;
+            if (last >= 0 && v >= lastValue) {
+                r = gallop(last, v);
+            } else {
+                r = nValues == 0 ? -1 : search(v);
+            }
+            if (r >= 0) {
+                returnIds[returnOffset + i] = baseId + r;
+                last = r;
+                lastValue = v;
+            } else {
+                returnIds[returnOffset + i] = -1;
+                int insertion = -(r + 1);
+                last = insertion > 0 ? insertion - 1 : -1; // the position of the largest value smaller than v
+                lastValue = last >= 0 ? valueAt(last) : 0;
+            }
+        }
+    }
+
+    // search forward from index from, knowing valueAt(from) <= v
+    private int gallop(int from, long v) {
+        int step = 1;
+        int lo = from;
+        while (lo + step < nValues && valueAt(lo + step) <= v) {
+            lo += step;
+            step <<= 1;
+        }
+        return binarySearch(lo, Math.min(nValues, lo + step), v);
+    }
+
+    /** decodes n IDs into values, IDs must be valid and not null */
+    public void getLongsFromIds(int[] ids, int offset, int n, long[] returnValues, int returnOffset) {
+        for (int i = 0; i < n; i++) {
+            returnValues[returnOffset + i] = getLongFromId(ids[offset + i]);
+        }
+    }
+
+    // ============================================================================
+
+    @Override
+    public int getMinId() {
+        return baseId;
+    }
+
+    @Override
+    public int getMaxId() {
+        return baseId + nValues - 1;
+    }
+
+    @Override
+    public int getSizeOfId() {
+        return sizeOfId;
+    }
+
+    @Override
+    public int getSizeOfValue() {
+        return maxValueLength;
+    }
+
+    @Override
+    protected boolean isNullObjectForm(String value) {
+        return value == null || value.equals("");
+    }
+
+    @Override
+    protected int getIdFromValueImpl(String value, int roundingFlag) {
+        byte[] bytes = Bytes.toBytes(value);
+        int id = getIdFromValueBytesImpl(bytes, 0, bytes.length, roundingFlag);
+        if (id < 0)
+            throw new IllegalArgumentException("Value '" + value + "' (" + Bytes.toStringBinary(bytes) + ") not exists!");
+        return id;
+    }
+
+    @Override
+    protected int getIdFromValueBytesImpl(byte[] value, int offset, int len, int roundingFlag) {
+        // fast path for plain integers that surely fit in a long
+        if (len > 0 && len <= 18) {
+            int i = offset;
+            int end = offset + len;
+            boolean negative = value[i] == '-';
+            if (negative || value[i] == '+')
+                i++;
+            if (i < end) {
+                long v = 0;
+                for (; i < end; i++) {
+                    int d = value[i] - '0';
+                    if (d < 0 || d > 9)
+                        break;
+                    v = v * 10 + d;
+                }
+                if (i == end)
+                    return getIdFromLong(negative ? -v : v, roundingFlag);
+            }
+        }
+        return getIdFromDecimal(Bytes.toString(value, offset, len).trim(), roundingFlag);
+    }
+
+    private int getIdFromDecimal(String str, int roundingFlag) {
+        BigDecimal d;
+        try {
+            d = new BigDecimal(str);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (nValues == 0)
+            return -1;
+
+        BigDecimal rounded = d.setScale(0, roundingFlag < 0 ? RoundingMode.FLOOR : RoundingMode.CEILING);
+        boolean exact = rounded.compareTo(d) == 0;
+        if (!exact && roundingFlag == 0)
+            return -1;
+        if (rounded.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0)
+            return roundingFlag < 0 ? getMaxId() : -1;
+        if (rounded.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0)
+            return roundingFlag > 0 ? getMinId() : -1;
+        return getIdFromLong(rounded.longValue(), roundingFlag);
+    }
+
+    @Override
+    protected String getValueFromIdImpl(int id) {
+        return Long.toString(getLongFromId(id));
+    }
+
+    @Override
+    protected byte[] getValueBytesFromIdImpl(int id) {
+        return Bytes.toBytes(Long.toString(getLongFromId(id)));
+    }
+
+    @Override
+    protected int getValueBytesFromIdImpl(int id, byte[] returnValue, int offset) {
+        long v = getLongFromId(id);
+        if (v == Long.MIN_VALUE) {
+            byte[] bytes = Bytes.toBytes(Long.toString(v));
+            System.arraycopy(bytes, 0, returnValue, offset, bytes.length);
+            return bytes.length;
+        }
+
+        int len = 0;
+        if (v < 0) {
+            returnValue[offset + len++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long x = v / 10; x > 0; x /= 10) {
+            digits++;
+        }
+        for (int i = offset + len + digits - 1; i >= offset + len; i--) {
+            returnValue[i] = (byte) ('0' + (v % 10));
+            v /= 10;
+        }
+        return len + digits;
+    }
+
+    @Override
+    public boolean contains(Dictionary<?> other) {
+        if (other.getSize() > this.getSize()) {
+            return false;
+        }
+
+        for (int i = other.getMinId(); i <= other.getMaxId(); ++i) {
+            Object v = other.getValueFromId(i);
+            if (v != null && !this.containsValue(v.toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void dump(PrintStream out) {
+        out.println("Total " + nValues + " values, " + blockHeads.length + " blocks, " + packed.length * 8 + " bytes packed");
+        for (int i = 0; i < nValues; i++) {
+            out.println((baseId + i) + ": " + valueAt(i));
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(baseId);
+        out.writeInt(nValues);
+        out.writeInt(maxValueLength);
+        for (int b = 0; b < blockHeads.length; b++) {
+            out.writeLong(blockHeads[b]);
+            out.writeByte(blockBits[b]);
+        }
+        out.writeInt(packed.length);
+        for (long word : packed) {
+            out.writeLong(word);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unknown LongDictionary version " + version);
+
+        init(in.readInt(), in.readInt());
+        this.maxValueLength = in.readInt();
+        long totalBits = 0;
+        for (int b = 0; b < blockHeads.length; b++) {
+            blockHeads[b] = in.readLong();
+            blockBits[b] = in.readByte();
+            blockBitOffsets[b] = totalBits;
+            int blockLen = Math.min(nValues - (b << BLOCK_SHIFT), BLOCK_SIZE);
+            totalBits += (long) (blockLen - 1) * blockBits[b];
+        }
+        packed = new long[in.readInt()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = in.readLong();
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(blockHeads) + Arrays.hashCode(packed);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if ((o instanceof LongDictionary) == false) {
+            return false;
+        }
+        LongDictionary that = (LongDictionary) o;
+        return this.baseId == that.baseId && this.nValues == that.nValues && Arrays.equals(this.blockHeads, that.blockHeads) //
+                && Arrays.equals(this.blockBits, that.blockBits) && Arrays.equals(this.packed, that.packed);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict;
+
+import java.util.Arrays;
+
+/**
+ * Collects integer values in a primitive array, then sorts and dedups them into a LongDictionary.
+ */
+public class LongDictionaryBuilder {
+
+    private long[] values = new long[1024];
+    private int size = 0;
+
+    public void addValue(long v) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = v;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** values added so far, unsorted, possibly duplicated */
+    public long[] getValues() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public LongDictionary build(int baseId) {
+        Arrays.sort(values, 0, size);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || values[i] != values[n - 1]) {
+                values[n++] = values[i];
+            }
+        }
+        return new LongDictionary(values, n, baseId);
+    }
+}
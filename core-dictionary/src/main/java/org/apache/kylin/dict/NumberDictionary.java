@@ -181,6 +181,17 @@ public class NumberDictionary<T> extends TrieDictionary<T> {
         return super.getIdFromValueBytesImpl(codec.buf, codec.bufOffset, codec.bufLen, roundingFlag);
     }
 
+    @Override
+    int lookupInBatch(PrefixLookup lookup, byte[] value, int offset, int len) {
+        NumberBytesCodec codec = getCodec();
+        try {
+            codec.encodeNumber(value, offset, len);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        return super.lookupInBatch(lookup, codec.buf, codec.bufOffset, codec.bufLen);
+    }
+
     @Override
     protected boolean isNullObjectForm(T value) {
         return value == null || value.equals("");
@@ -203,9 +203,18 @@ public class TrieDictionary<T> extends Dictionary<T> {
         if (o == inpEnd) // special 'empty' value
             return checkFlag(headSize, BIT_IS_END_OF_VALUE) ? 0 : roundSeqNo(roundingFlag, -1, -1, 0);
 
-        int seq = 0; // the sequence no under track
+        return lookupSeqNoFromNode(n, 0, inp, o, o, inpEnd, roundingFlag, null);
+    }
 
+    /**
+     * continues a lookup from node n, with inp[inpStart, o) matched so far and seq values before node n;
+     * every node passed is recorded into path, if given
+     */
+    private int lookupSeqNoFromNode(int n, int seq, byte[] inp, int inpStart, int o, int inpEnd, int roundingFlag, PrefixLookup path) {
         while (true) {
+            if (path != null)
+                path.push(n, o - inpStart, seq);
+
             // match the current node, note [0] of node's value has been matched
             // when this node is selected by its parent
             int p = n + firstByteOffset; // start of node's value
@@ -253,6 +262,119 @@ public class TrieDictionary<T> extends Dictionary<T> {
         }
     }
 
+    @Override
+    public void getIdsFromValues(T[] values, int offset, int n, int roundingFlag, int[] returnIds, int returnOffset) {
+        Map cache = enableValueCache && roundingFlag == 0 ? valueToIdCache.get() : null;
+        PrefixLookup lookup = new PrefixLookup(roundingFlag);
+        for (int i = 0; i < n; i++) {
+            T value = values[offset + i];
+            int id;
+            if (isNullObjectForm(value)) {
+                id = nullId();
+            } else {
+                Integer cached = cache == null ? null : (Integer) cache.get(value);
+                if (cached != null) {
+                    id = cached.intValue();
+                } else {
+                    byte[] valueBytes = bytesConvert.convertToBytes(value);
+                    id = lookupInBatch(lookup, valueBytes, 0, valueBytes.length);
+                    if (cache != null && id >= 0)
+                        cache.put(value, id);
+                }
+            }
+            returnIds[returnOffset + i] = id;
+        }
+    }
+
+    @Override
+    public void getIdsFromValueBytes(byte[][] values, int offset, int n, int roundingFlag, int[] returnIds, int returnOffset) {
+        PrefixLookup lookup = new PrefixLookup(roundingFlag);
+        for (int i = 0; i < n; i++) {
+            byte[] value = values[offset + i];
+            if (isNullByteForm(value, 0, value == null ? 0 : value.length))
+                returnIds[returnOffset + i] = nullId();
+            else
+                returnIds[returnOffset + i] = lookupInBatch(lookup, value, 0, value.length);
+        }
+    }
+
+    /** looks up one value of a batch, returns -1 if not found */
+    int lookupInBatch(PrefixLookup lookup, byte[] value, int offset, int len) {
+        try {
+            return lookup.lookup(value, offset, len);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Looks up the values of a batch one after another. Each lookup resumes from the deepest node on the path of
+     * the previous value that is still within their common prefix, and a repeated value is not looked up again.
+     * Lives within one batch call, thus not thread-safe.
+     */
+    class PrefixLookup {
+        final int roundingFlag;
+
+        byte[] prev = new byte[Math.max(16, maxValueLength)];
+        int prevLen = -1;
+        int prevSeq;
+
+        // the path of the previous value, as (node, matched length, seq) at each node
+        int[] pathNodes = new int[16];
+        int[] pathMatched = new int[16];
+        int[] pathSeqs = new int[16];
+        int depth;
+
+        PrefixLookup(int roundingFlag) {
+            this.roundingFlag = roundingFlag;
+        }
+
+        int lookup(byte[] value, int offset, int len) {
+            int common = 0;
+            int max = Math.min(len, prevLen);
+            while (common < max && prev[common] == value[offset + common])
+                common++;
+
+            int seq;
+            if (common == len && len == prevLen) {
+                seq = prevSeq;
+            } else if (len == 0) {
+                seq = lookupSeqNoFromValue(headSize, value, offset, offset, roundingFlag);
+                depth = 0;
+            } else {
+                int d = depth - 1;
+                while (d > 0 && pathMatched[d] > common)
+                    d--;
+                if (d < 0) {
+                    depth = 0;
+                    seq = lookupSeqNoFromNode(headSize, 0, value, offset, offset, offset + len, roundingFlag, this);
+                } else {
+                    depth = d; // the resumed node is pushed again
+                    seq = lookupSeqNoFromNode(pathNodes[d], pathSeqs[d], value, offset, offset + pathMatched[d], offset + len, roundingFlag, this);
+                }
+            }
+
+            if (prev.length < len)
+                prev = new byte[len * 2];
+            System.arraycopy(value, offset, prev, 0, len);
+            prevLen = len;
+            prevSeq = seq;
+            return calcIdFromSeqNo(seq);
+        }
+
+        void push(int node, int matched, int seq) {
+            if (depth == pathNodes.length) {
+                pathNodes = Arrays.copyOf(pathNodes, depth * 2);
+                pathMatched = Arrays.copyOf(pathMatched, depth * 2);
+                pathSeqs = Arrays.copyOf(pathSeqs, depth * 2);
+            }
+            pathNodes[depth] = node;
+            pathMatched[depth] = matched;
+            pathSeqs[depth] = seq;
+            depth++;
+        }
+    }
+
     private int getChildOffset(int n) {
         long offset = headSize + (BytesUtil.readLong(trieBytes, n, sizeChildOffset) & childOffsetMask);
         assert offset < trieBytes.length;
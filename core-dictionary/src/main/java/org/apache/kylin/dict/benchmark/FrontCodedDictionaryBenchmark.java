@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.dict.FrontCodedDictionary;
+import org.apache.kylin.dict.FrontCodedDictionaryBuilder;
+import org.apache.kylin.dict.StringBytesConverter;
+import org.apache.kylin.dict.TrieDictionary;
+import org.apache.kylin.dict.TrieDictionaryBuilder;
+
+/**
+ * Compares size and lookup speed of TrieDictionary and FrontCodedDictionary on high cardinality URL like values,
+ * looked up in random order so that neither the value caches nor the CPU caches help much.
+ */
+public class FrontCodedDictionaryBenchmark {
+
+    final byte[][] probes;
+    final String[] strProbes;
+    final TrieDictionary<String> trieDict;
+    final FrontCodedDictionary<String> frontCodedDict;
+
+    public FrontCodedDictionaryBenchmark(int cardinality, int nProbes) {
+        Random rand = new Random(0);
+        String[] hosts = new String[] { "http://www.example.com/", "http://shop.example.com/item/", "https://m.example.org/p/", "https://cdn.example.net/static/" };
+        String[] distinct = new String[cardinality];
+        TrieDictionaryBuilder<String> trieBuilder = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        FrontCodedDictionaryBuilder<String> frontCodedBuilder = new FrontCodedDictionaryBuilder<String>(new StringBytesConverter());
+        for (int i = 0; i < cardinality; i++) {
+            distinct[i] = hosts[rand.nextInt(hosts.length)] + Long.toString(rand.nextLong() & Long.MAX_VALUE, 36) + "/" + rand.nextInt(1000);
+            trieBuilder.addValue(distinct[i]);
+            frontCodedBuilder.addValue(distinct[i]);
+        }
+        trieDict = trieBuilder.build(0);
+        frontCodedDict = frontCodedBuilder.build(0);
+
+        probes = new byte[nProbes][];
+        strProbes = new String[nProbes];
+        for (int i = 0; i < nProbes; i++) {
+            strProbes[i] = distinct[rand.nextInt(cardinality)];
+            probes[i] = Bytes.toBytes(strProbes[i]);
+        }
+    }
+
+    long testBytes(String name, Dictionary<String> dict) {
+        byte[] buf = new byte[dict.getSizeOfValue()];
+        long t = System.currentTimeMillis();
+        long sum = 0;
+        for (byte[] v : probes) {
+            int id = dict.getIdFromValueBytes(v, 0, v.length);
+            sum += id + dict.getValueBytesFromId(id, buf, 0);
+        }
+        long time = System.currentTimeMillis() - t;
+        System.out.println(name + ", bytes:   " + time + " ms, checksum " + sum);
+        return time;
+    }
+
+    long testStrings(String name, Dictionary<String> dict) {
+        long t = System.currentTimeMillis();
+        long sum = 0;
+        for (String v : strProbes) {
+            int id = dict.getIdFromValue(v);
+            sum += id + dict.getValueFromId(id).length();
+        }
+        long time = System.currentTimeMillis() - t;
+        System.out.println(name + ", strings: " + time + " ms, checksum " + sum);
+        return time;
+    }
+
+    public static void main(String[] args) throws Exception {
+        FrontCodedDictionaryBenchmark benchmark = new FrontCodedDictionaryBenchmark(1000000, 5000000);
+        System.out.println("Serialized bytes: TrieDictionary " + sizeOf(benchmark.trieDict) + ", FrontCodedDictionary " + sizeOf(benchmark.frontCodedDict));
+        for (int i = 0; i < 3; i++) {
+            long t1 = benchmark.testBytes("TrieDictionary      ", benchmark.trieDict);
+            long t2 = benchmark.testBytes("FrontCodedDictionary", benchmark.frontCodedDict);
+            long t3 = benchmark.testStrings("TrieDictionary      ", benchmark.trieDict);
+            long t4 = benchmark.testStrings("FrontCodedDictionary", benchmark.frontCodedDict);
+            System.out.println("Speed-up: bytes " + (t1 * 100 / Math.max(1, t2)) / 100.0 + "x, strings " + (t3 * 100 / Math.max(1, t4)) / 100.0 + "x");
+        }
+    }
+
+    private static int sizeOf(Dictionary<?> dict) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        dict.write(new DataOutputStream(bout));
+        return bout.size();
+    }
+}
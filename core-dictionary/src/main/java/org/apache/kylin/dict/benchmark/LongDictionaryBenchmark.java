@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.kylin.dict.LongDictionary;
+import org.apache.kylin.dict.LongDictionaryBuilder;
+import org.apache.kylin.dict.NumberDictionary;
+import org.apache.kylin.dict.NumberDictionaryBuilder;
+import org.apache.kylin.dict.StringBytesConverter;
+
+/**
+ * Compares encoding and decoding of integer values by the number trie (NumberDictionary) and the sorted array
+ * (LongDictionary), both value by value and in batches of sorted values as a cube build sees them after sort.
+ */
+public class LongDictionaryBenchmark {
+
+    final int batchSize = 1024;
+    final long[] values;
+    final String[] strValues;
+    final NumberDictionary<String> trieDict;
+    final LongDictionary longDict;
+
+    public LongDictionaryBenchmark(int cardinality, int nRows) {
+        Random rand = new Random(0);
+        long[] distinct = new long[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            distinct[i] = 20000000L + i * 7L + rand.nextInt(7); // ascending, like ids or yyyyMMddHH
+        }
+
+        NumberDictionaryBuilder<String> trieBuilder = new NumberDictionaryBuilder<String>(new StringBytesConverter());
+        LongDictionaryBuilder longBuilder = new LongDictionaryBuilder();
+        for (long v : distinct) {
+            trieBuilder.addValue(Long.toString(v));
+            longBuilder.addValue(v);
+        }
+        trieDict = trieBuilder.build(0);
+        longDict = longBuilder.build(0);
+
+        values = new long[nRows];
+        strValues = new String[nRows];
+        for (int i = 0; i < nRows; i++) {
+            values[i] = distinct[rand.nextInt(cardinality)];
+        }
+        // sorted within each batch
+        for (int i = 0; i < nRows; i += batchSize) {
+            Arrays.sort(values, i, Math.min(nRows, i + batchSize));
+        }
+        for (int i = 0; i < nRows; i++) {
+            strValues[i] = Long.toString(values[i]);
+        }
+    }
+
+    long testTrie() {
+        long t = System.currentTimeMillis();
+        long sum = 0;
+        for (String v : strValues) {
+            int id = trieDict.getIdFromValue(v);
+            sum += id + trieDict.getValueFromId(id).length();
+        }
+        long time = System.currentTimeMillis() - t;
+        System.out.println("NumberDictionary:           " + time + " ms, checksum " + sum + ", " + trieDict.getSizeOfId() + " byte ids");
+        return time;
+    }
+
+    long testLong() {
+        long t = System.currentTimeMillis();
+        long sum = 0;
+        for (String v : strValues) {
+            int id = longDict.getIdFromValue(v);
+            sum += id + longDict.getValueFromId(id).length();
+        }
+        long time = System.currentTimeMillis() - t;
+        System.out.println("LongDictionary:             " + time + " ms, checksum " + sum);
+        return time;
+    }
+
+    long testLongBatch() {
+        int[] ids = new int[batchSize];
+        long[] decoded = new long[batchSize];
+        long t = System.currentTimeMillis();
+        long sum = 0;
+        for (int i = 0; i < values.length; i += batchSize) {
+            int n = Math.min(batchSize, values.length - i);
+            longDict.getIdsFromLongs(values, i, n, ids, 0);
+            longDict.getLongsFromIds(ids, 0, n, decoded, 0);
+            for (int j = 0; j < n; j++) {
+                sum += ids[j] + decoded[j];
+            }
+        }
+        long time = System.currentTimeMillis() - t;
+        System.out.println("LongDictionary, in batches: " + time + " ms, checksum " + sum);
+        return time;
+    }
+
+    public static void main(String[] args) {
+        LongDictionaryBenchmark benchmark = new LongDictionaryBenchmark(1000000, 5000000);
+        for (int i = 0; i < 3; i++) {
+            long t1 = benchmark.testTrie();
+            long t2 = benchmark.testLong();
+            long t3 = benchmark.testLongBatch();
+            System.out.println("Speed-up: " + (t1 * 100 / Math.max(1, t2)) / 100.0 + "x, in batches " + (t1 * 100 / Math.max(1, t3)) / 100.0 + "x");
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+@SuppressWarnings("unchecked")
+public class FrontCodedDictionaryTest {
+
+    @Test
+    public void simpleTest() {
+        ArrayList<String> values = new ArrayList<String>(Arrays.asList("", "a", "ab", "abc", "abd", "b", "ba", "xyz", "xyzzz"));
+        ArrayList<String> probes = new ArrayList<String>(Arrays.asList("aa", "abb", "abcd", "abe", "ac", "bb", "c", "xy", "xyzz", "z", "\u00ff"));
+        testAgainstTrie(values, probes, 0);
+        testAgainstTrie(values, probes, 10);
+    }
+
+    @Test
+    public void emptyTest() {
+        FrontCodedDictionary<String> dict = newDictBuilder(new ArrayList<String>()).build(0);
+        assertEquals(0, dict.getSize());
+        assertFalse(dict.containsValue("a"));
+        assertEquals(-1, rounded(dict, "a", -1));
+        dict = serialize(dict);
+        assertEquals(0, dict.getSize());
+    }
+
+    @Test
+    public void englishWordsTest() throws Exception {
+        ArrayList<String> words = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream("src/test/resources/dict/english-words.80 (scowl-2015.05.18).txt"), "UTF-8"));
+        try {
+            String word;
+            while ((word = reader.readLine()) != null) {
+                word = word.trim();
+                if (word.isEmpty() == false)
+                    words.add(word);
+            }
+        } finally {
+            reader.close();
+        }
+
+        // every other word is left out, to be probed as not found
+        ArrayList<String> values = new ArrayList<String>();
+        ArrayList<String> probes = new ArrayList<String>();
+        for (int i = 0; i < words.size(); i++) {
+            (i % 2 == 0 ? values : probes).add(words.get(i));
+        }
+        testAgainstTrie(values, probes, 0);
+    }
+
+    @Test
+    public void randomBytesTest() {
+        // high cardinality values with long shared prefixes and non-ascii bytes, like URLs
+        Random rand = new Random(0);
+        ArrayList<String> values = new ArrayList<String>();
+        ArrayList<String> probes = new ArrayList<String>();
+        String[] prefixes = new String[] { "http://a.com/", "http://a.com/x/", "http://b.org/\u00e9t\u00e9/", "" };
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder buf = new StringBuilder(prefixes[rand.nextInt(prefixes.length)]);
+            int len = rand.nextInt(12);
+            for (int j = 0; j < len; j++) {
+                buf.append((char) (rand.nextBoolean() ? 'a' + rand.nextInt(26) : 0xa0 + rand.nextInt(0x60)));
+            }
+            (i % 4 == 0 ? probes : values).add(buf.toString());
+        }
+        testAgainstTrie(values, probes, 0);
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        FrontCodedDictionary<String> dict = newDictBuilder(Arrays.asList("x", "xy", "y")).build(0);
+        FrontCodedDictionary<String> copy = serialize(dict);
+        assertEquals(dict, copy);
+        assertEquals(dict.hashCode(), copy.hashCode());
+        assertEquals(1, copy.getIdFromValue("xy"));
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(dict);
+        out.close();
+        Object obj = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray())).readObject();
+        assertEquals(dict, obj);
+
+        assertTrue(dict.contains(newDictBuilder(Arrays.asList("x", "y")).build(0)));
+        assertFalse(dict.contains(newDictBuilder(Arrays.asList("x", "z")).build(0)));
+
+        DictionaryInfo info = new DictionaryInfo("T", "C", 0, "varchar", null);
+        info.setDictionaryClass(dict.getClass().getName());
+        info.setDictionaryObject(dict);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DictionaryInfoSerializer.FULL_SERIALIZER.serialize(info, new DataOutputStream(buf));
+        DictionaryInfo reloaded = DictionaryInfoSerializer.FULL_SERIALIZER.deserialize(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        assertEquals(dict, reloaded.getDictionaryObject());
+        assertEquals("xy", ((Dictionary<String>) reloaded.getDictionaryObject()).getValueFromId(1));
+    }
+
+    @Test
+    public void testValueBytesBoundary() {
+        // decoding writes nothing past the value, even if earlier values in the block are longer
+        FrontCodedDictionary<String> dict = newDictBuilder(Arrays.asList("abcdefgh", "abd", "b")).build(0);
+        byte[] buf = new byte[] { 9, 9, 9, 9, 9, 9, 9, 9, 9, 9 };
+        assertEquals(3, dict.getValueBytesFromId(1, buf, 1));
+        assertEquals("abd", Bytes.toString(buf, 1, 3));
+        for (int i = 4; i < buf.length; i++) {
+            assertEquals(9, buf[i]);
+        }
+        assertEquals(9, buf[0]);
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        ArrayList<String> samples = new ArrayList<String>();
+        List<byte[]> values = Lists.newArrayList(Bytes.toBytes("b"), null, Bytes.toBytes("a"), Bytes.toBytes(""), Bytes.toBytes("b"));
+        Dictionary<String> dict = new DictionaryGenerator.FrontCodedDictBuilder().build(null, new IterableDictionaryValueEnumerator(values), 0, 5, samples);
+        assertTrue(dict instanceof FrontCodedDictionary);
+        assertEquals(3, dict.getSize());
+        assertEquals(0, dict.getIdFromValueBytes(new byte[0], 0, 0));
+        assertEquals(2, dict.getIdFromValue("b"));
+        assertEquals(Arrays.asList("b", "a", ""), samples);
+    }
+
+    private static void testAgainstTrie(ArrayList<String> values, ArrayList<String> probes, int baseId) {
+        TrieDictionaryBuilder<String> trieBuilder = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (String v : values)
+            trieBuilder.addValue(v);
+        TrieDictionary<String> trie = trieBuilder.build(baseId);
+        FrontCodedDictionary<String> dict = serialize(newDictBuilder(values).build(baseId));
+
+        assertEquals(trie.getMinId(), dict.getMinId());
+        assertEquals(trie.getMaxId(), dict.getMaxId());
+        assertEquals(trie.getSizeOfId(), dict.getSizeOfId());
+        assertEquals(trie.getSizeOfValue(), dict.getSizeOfValue());
+
+        byte[] buf = new byte[dict.getSizeOfValue()];
+        for (int id = dict.getMinId(); id <= dict.getMaxId(); id++) {
+            String v = trie.getValueFromId(id);
+            assertEquals(v, dict.getValueFromId(id));
+            assertEquals(id, dict.getIdFromValue(v));
+            byte[] bytes = Bytes.toBytes(v);
+            assertEquals(bytes.length, dict.getValueBytesFromId(id, buf, 0));
+            assertEquals(id, dict.getIdFromValueBytes(buf, 0, bytes.length));
+        }
+
+        for (String p : probes) {
+            if (values.contains(p))
+                continue;
+            assertFalse(dict.containsValue(p));
+            try {
+                dict.getIdFromValue(p);
+                fail("'" + p + "' should not be found");
+            } catch (IllegalArgumentException e) {
+                // good
+            }
+            assertEquals(rounded(trie, p, -1), rounded(dict, p, -1));
+            assertEquals(rounded(trie, p, 1), rounded(dict, p, 1));
+        }
+
+        int nullId = dict.getIdFromValue(null);
+        assertNull(dict.getValueFromId(nullId));
+    }
+
+    private static int rounded(Dictionary<String> dict, String value, int roundingFlag) {
+        try {
+            return dict.getIdFromValue(value, roundingFlag);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static FrontCodedDictionary<String> serialize(FrontCodedDictionary<String> dict) {
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            DataOutputStream dataout = new DataOutputStream(bout);
+            dict.write(dataout);
+            dataout.close();
+            DataInputStream datain = new DataInputStream(new ByteArrayInputStream(bout.toByteArray()));
+            FrontCodedDictionary<String> r = new FrontCodedDictionary<String>();
+            r.readFields(datain);
+            datain.close();
+            return r;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static FrontCodedDictionaryBuilder<String> newDictBuilder(Iterable<String> str) {
+        FrontCodedDictionaryBuilder<String> b = new FrontCodedDictionaryBuilder<String>(new StringBytesConverter());
+        for (String s : str)
+            b.addValue(s);
+        return b;
+    }
+}
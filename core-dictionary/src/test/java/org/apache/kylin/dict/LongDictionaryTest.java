@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.dimension.DictionaryDimEnc;
+import org.apache.kylin.metadata.tuple.CellValueConverter;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class LongDictionaryTest {
+
+    @Test
+    public void testBasics() {
+        LongDictionary dict = build(10, 5, -3, 100, 5, 0);
+        assertEquals(10, dict.getMinId());
+        assertEquals(13, dict.getMaxId());
+        assertEquals(1, dict.getSizeOfId());
+
+        assertEquals(10, dict.getIdFromValue("-3"));
+        assertEquals(11, dict.getIdFromValue("0"));
+        assertEquals(12, dict.getIdFromValue("5"));
+        assertEquals(13, dict.getIdFromValue("100"));
+        assertEquals("-3", dict.getValueFromId(10));
+        assertEquals("100", dict.getValueFromId(13));
+        assertEquals(100, dict.getLongFromId(13));
+
+        assertTrue(dict.containsValue("5"));
+        assertFalse(dict.containsValue("6"));
+        assertFalse(dict.containsValue("5.5"));
+
+        // null
+        assertEquals(dict.nullId(), dict.getIdFromValue(null));
+        assertEquals(dict.nullId(), dict.getIdFromValue(""));
+        assertNull(dict.getValueFromId(dict.nullId()));
+    }
+
+    @Test
+    public void testRounding() {
+        LongDictionary dict = build(0, -3, 0, 5, 100);
+
+        assertEquals(2, dict.getIdFromValue("3", 1));
+        assertEquals(1, dict.getIdFromValue("3", -1));
+        assertEquals(-1, dict.getIdFromLong(3, 0));
+        assertEquals(0, dict.getIdFromValue("-100", 1));
+        assertEquals(-1, dict.getIdFromLong(-100, -1));
+        assertEquals(3, dict.getIdFromValue("1000", -1));
+        assertEquals(-1, dict.getIdFromLong(1000, 1));
+
+        // decimals and leading zeros, as they come in query filters
+        assertEquals(2, dict.getIdFromValue("5.0"));
+        assertEquals(2, dict.getIdFromValue("005"));
+        assertEquals(2, dict.getIdFromValue("4.5", 1));
+        assertEquals(1, dict.getIdFromValue("4.5", -1));
+        assertEquals(0, dict.getIdFromValue("-2.5", -1));
+        assertEquals(1, dict.getIdFromValue("-2.5", 1));
+        assertEquals(0, dict.getIdFromValue("-99999999999999999999", 1));
+        assertEquals(3, dict.getIdFromValue("99999999999999999999", -1));
+    }
+
+    @Test
+    public void testMinMax() {
+        LongDictionary dict = build(0, Long.MAX_VALUE, Long.MIN_VALUE, 0);
+        assertEquals(0, dict.getIdFromValue("" + Long.MIN_VALUE));
+        assertEquals(2, dict.getIdFromValue("" + Long.MAX_VALUE));
+        assertEquals(Long.MIN_VALUE, dict.getLongFromId(0));
+        assertEquals(Long.MAX_VALUE, dict.getLongFromId(2));
+        assertEquals("" + Long.MIN_VALUE, dict.getValueFromId(0));
+    }
+
+    @Test
+    public void testRandom() throws IOException {
+        Random rand = new Random(0);
+        LongDictionaryBuilder builder = new LongDictionaryBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.addValue(rand.nextInt(1000000) - 500000L);
+        }
+        long[] sorted = builder.getValues();
+        Arrays.sort(sorted);
+        LongDictionary dict = builder.build(0);
+
+        long[] distinct = new long[dict.getSize()];
+        for (int id = dict.getMinId(); id <= dict.getMaxId(); id++) {
+            distinct[id] = dict.getLongFromId(id);
+            assertEquals(id, dict.getIdFromLong(distinct[id], 0));
+            assertEquals(id, dict.getIdFromValue(Long.toString(distinct[id])));
+            assertEquals(Long.toString(distinct[id]), new String(dict.getValueBytesFromId(id)));
+        }
+        for (int i = 1; i < distinct.length; i++) {
+            assertTrue(distinct[i - 1] < distinct[i]);
+        }
+        assertEquals(sorted[0], distinct[0]);
+        assertEquals(sorted[sorted.length - 1], distinct[distinct.length - 1]);
+
+        assertEquals(dict, reload(dict));
+    }
+
+    @Test
+    public void testBatch() {
+        Random rand = new Random(0);
+        LongDictionaryBuilder builder = new LongDictionaryBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.addValue(rand.nextInt(100000) * 2L); // even only
+        }
+        LongDictionary dict = builder.build(7);
+
+        int n = 2000;
+        long[] values = new long[n + 3];
+        for (int i = 0; i < n; i++) {
+            values[i + 3] = rand.nextInt(100000) * 2L + (i % 10 == 0 ? 1 : 0); // some misses
+        }
+        Arrays.sort(values, 3, 3 + n / 2); // an ascending run followed by random values
+        int[] ids = new int[n + 1];
+        dict.getIdsFromLongs(values, 3, n, ids, 1);
+        for (int i = 0; i < n; i++) {
+            assertEquals(dict.getIdFromLong(values[i + 3], 0), ids[i + 1]);
+        }
+
+        int[] hits = new int[n];
+        int nHits = 0;
+        for (int i = 0; i < n; i++) {
+            if (ids[i + 1] >= 0)
+                hits[nHits++] = ids[i + 1];
+        }
+        long[] decoded = new long[nHits];
+        dict.getLongsFromIds(hits, 0, nHits, decoded, 0);
+        for (int i = 0; i < nHits; i++) {
+            assertEquals(dict.getLongFromId(hits[i]), decoded[i]);
+        }
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        LongDictionary empty = build(0);
+        assertEquals(-1, empty.getIdFromLong(1, 1));
+        assertEquals(empty, reload(empty));
+
+        LongDictionary dict = build(3, 20160101, 20160102, 20160105, 20161231);
+        DictionaryInfo info = new DictionaryInfo("T", "C", 0, "bigint", null);
+        info.setDictionaryClass(dict.getClass().getName());
+        info.setDictionaryObject(dict);
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DictionaryInfoSerializer.FULL_SERIALIZER.serialize(info, new DataOutputStream(buf));
+        DictionaryInfo reloaded = DictionaryInfoSerializer.FULL_SERIALIZER.deserialize(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        Dictionary<?> reloadedDict = reloaded.getDictionaryObject();
+        assertEquals(dict, reloadedDict);
+        assertEquals(4, ((LongDictionary) reloadedDict).getIdFromLong(20160102, 0));
+    }
+
+    @Test
+    public void testBuilder() throws IOException {
+        ArrayList<String> samples = Lists.newArrayList();
+        Dictionary<String> dict = new DictionaryGenerator.LongDictBuilder().build(null, enumerator("3", " 1", "", null, "2", "3"), 0, 5, samples);
+        assertTrue(dict instanceof LongDictionary);
+        assertEquals(3, dict.getSize());
+        assertEquals(0, dict.getIdFromValue("1"));
+        assertEquals(Arrays.asList("3", "1", "2"), samples);
+
+        // not all longs, falls back to the number trie
+        dict = new DictionaryGenerator.LongDictBuilder().build(null, enumerator("3", "1", "2.5", "-0.5"), 0, 5, samples);
+        assertTrue(dict instanceof NumberDictionary);
+        assertEquals(4, dict.getSize());
+        assertEquals(0, dict.getIdFromValue("-0.5"));
+        assertEquals(2, dict.getIdFromValue("2.5"));
+    }
+
+    @Test
+    public void testTypedDecode() {
+        LongDictionary dict = build(0, -3, 0, 5, 100);
+        DictionaryDimEnc enc = new DictionaryDimEnc(dict);
+        byte[] buf = new byte[enc.getLengthOfEncoding()];
+
+        enc.encode(Bytes.toBytes("100"), 3, buf, 0);
+        assertEquals(Long.valueOf(100), enc.decode(buf, 0, buf.length, CellValueConverter.BIGINT));
+        assertEquals(Integer.valueOf(100), enc.decode(buf, 0, buf.length, CellValueConverter.INTEGER));
+        assertEquals(new BigDecimal(100), enc.decode(buf, 0, buf.length, CellValueConverter.DECIMAL));
+        assertEquals("100", enc.decode(buf, 0, buf.length, CellValueConverter.VARCHAR));
+
+        enc.encode(null, 0, buf, 0);
+        assertNull(enc.decode(buf, 0, buf.length, CellValueConverter.BIGINT));
+    }
+
+    private static IDictionaryValueEnumerator enumerator(String... values) {
+        List<byte[]> list = Lists.newArrayList();
+        for (String v : values) {
+            list.add(v == null ? null : Bytes.toBytes(v));
+        }
+        return new IterableDictionaryValueEnumerator(list);
+    }
+
+    private static LongDictionary build(int baseId, long... values) {
+        LongDictionaryBuilder builder = new LongDictionaryBuilder();
+        for (long v : values) {
+            builder.addValue(v);
+        }
+        return builder.build(baseId);
+    }
+
+    private static LongDictionary reload(LongDictionary dict) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        dict.write(new DataOutputStream(buf));
+        LongDictionary result = new LongDictionary();
+        result.readFields(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+        return result;
+    }
+}
@@ -187,6 +187,38 @@ public class NumberDictionaryTest extends LocalFileMetadataTestCase {
         }
     }
 
+    @Test
+    public void testBatchLookup() {
+        NumberDictionaryBuilder<String> builder = new NumberDictionaryBuilder<String>(new StringBytesConverter());
+        for (int i = 0; i < 1000; i++) {
+            builder.addValue(randNumber());
+        }
+        NumberDictionary<String> dict = builder.build(0);
+
+        int n = 5000;
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i % 2 == 0 ? dict.getValueFromId(rand.nextInt(dict.getSize())) : randNumber();
+        }
+        values[7] = null;
+        values[8] = "";
+        values[9] = "12345678901234567890123456789"; // too many digits
+
+        int[] ids = new int[n];
+        for (int roundingFlag = -1; roundingFlag <= 1; roundingFlag++) {
+            dict.getIdsFromValues(values, 0, n, roundingFlag, ids, 0);
+            for (int i = 0; i < n; i++) {
+                int expected;
+                try {
+                    expected = dict.getIdFromValue(values[i], roundingFlag);
+                } catch (IllegalArgumentException e) {
+                    expected = -1;
+                }
+                assertEquals(values[i], expected, ids[i]);
+            }
+        }
+    }
+
     private String randNumber() {
         int digits1 = rand.nextInt(10);
         int digits2 = rand.nextInt(3);
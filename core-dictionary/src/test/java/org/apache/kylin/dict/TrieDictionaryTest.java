@@ -33,12 +33,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.TreeSet;
 
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
 import org.junit.Test;
 
 public class TrieDictionaryTest {
@@ -221,6 +224,57 @@ public class TrieDictionaryTest {
         testStringDictionary(str, null);
     }
 
+    @Test
+    public void batchLookupTest() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/dict/english-words.80 (scowl-2015.05.18).txt");
+        ArrayList<String> str = loadStrings(is);
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (int i = 0; i < str.size(); i += 2) {
+            b.addValue(str.get(i));
+        }
+        b.addValue("");
+        TrieDictionary<String> dict = b.build(0);
+
+        // all words sorted, half of them not found, then shuffled
+        ArrayList<String> values = new ArrayList<String>(new TreeSet<String>(str));
+        values.add(0, "");
+        values.add(values.size() / 2, null);
+        values.add(values.get(values.size() / 3));
+        values.add("zzzzzz");
+        testBatchLookup(dict, values);
+        Collections.shuffle(values, new Random(0));
+        testBatchLookup(dict, values);
+    }
+
+    private static void testBatchLookup(TrieDictionary<String> dict, ArrayList<String> values) {
+        int n = values.size();
+        String[] strs = values.toArray(new String[n + 1]);
+        byte[][] bytes = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            bytes[i] = strs[i] == null ? null : Bytes.toBytes(strs[i]);
+        }
+
+        int[] ids = new int[n + 1];
+        for (int roundingFlag = -1; roundingFlag <= 1; roundingFlag++) {
+            dict.getIdsFromValueBytes(bytes, 0, n, roundingFlag, ids, 1);
+            for (int i = 0; i < n; i++) {
+                assertEquals(strs[i], singleLookup(dict, bytes[i], roundingFlag), ids[i + 1]);
+            }
+            dict.getIdsFromValues(strs, 0, n, roundingFlag, ids, 0);
+            for (int i = 0; i < n; i++) {
+                assertEquals(strs[i], singleLookup(dict, bytes[i], roundingFlag), ids[i]);
+            }
+        }
+    }
+
+    private static int singleLookup(Dictionary<String> dict, byte[] value, int roundingFlag) {
+        try {
+            return dict.getIdFromValueBytes(value, 0, value == null ? 0 : value.length, roundingFlag);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
     private static void benchmarkStringDictionary(Iterable<String> str) throws IOException {
         TrieDictionaryBuilder<String> b = newDictBuilder(str);
         b.stats().print();
@@ -18,10 +18,15 @@
 
 package org.apache.kylin.job.dao;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -29,12 +34,18 @@ import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.persistence.JsonSerializer;
 import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.common.persistence.Serializer;
+import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.job.exception.PersistentException;
+import org.apache.kylin.job.execution.ExecutableState;
 import org.apache.kylin.metadata.MetadataManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  */
@@ -45,6 +56,13 @@ public class ExecutableDao {
     private static final Logger logger = LoggerFactory.getLogger(ExecutableDao.class);
     private static final ConcurrentHashMap<KylinConfig, ExecutableDao> CACHE = new ConcurrentHashMap<KylinConfig, ExecutableDao>();
 
+    /** jobs are indexed by this param, same as CubingExecutableUtil.CUBE_NAME; jobs without it are not indexed */
+    public static final String JOB_INDEX_CUBE_PARAM = "cubeName";
+    // a cube name never contains a dot, so the marks do not collide with the cube folders; since v2 the keys carry
+    // the job type and since v3 the output last modified time, an index built before is rebuilt
+    private static final String JOB_INDEX_BUILT_MARK = ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT + "/.built_v3";
+    private static final String[] JOB_INDEX_OLD_BUILT_MARKS = { ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT + "/.built", ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT + "/.built_v2" };
+
     private ResourceStore store;
 
     public static ExecutableDao getInstance(KylinConfig config) {
@@ -81,6 +99,38 @@ public class ExecutableDao {
         return ResourceStore.EXECUTE_OUTPUT_RESOURCE_ROOT + "/" + uuid;
     }
 
+    /**
+     * The job index lives in /execute_index/{cube}/{status}/{key}, where the key sorts the newest submitted job
+     * first, then carries the last modified time of the job output and the job type. Only the paths carry
+     * information, so a listing is served and filtered without reading the job or its output.
+     *
+     * @return null if the job is not indexed
+     */
+    public static String pathOfJobIndex(ExecutablePO job, String status, long outputLastModified) {
+        String cube = cubeOf(job);
+        if (cube == null) {
+            return null;
+        }
+        return pathOfJobIndexFolder(cube, status) + "/" + jobIndexKeyPrefix(job) + outputLastModified + "." + job.getType();
+    }
+
+    private static String cubeOf(ExecutablePO job) {
+        return job.getParams() == null ? null : job.getParams().get(JOB_INDEX_CUBE_PARAM);
+    }
+
+    private static String pathOfJobIndexFolder(String cube, String status) {
+        return ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT + "/" + cube + "/" + status;
+    }
+
+    /** the part of the key that does not change over the life of the job */
+    private static String jobIndexKeyPrefix(ExecutablePO job) {
+        return invertedTime(job.getLastModified()) + "." + job.getUuid() + ".";
+    }
+
+    private static String invertedTime(long time) {
+        return String.format("%019d", Long.MAX_VALUE - time);
+    }
+
     private ExecutablePO readJobResource(String path) throws IOException {
         return store.getResource(path, ExecutablePO.class, JOB_SERIALIZER);
     }
@@ -133,6 +183,34 @@ public class ExecutableDao {
         }
     }
 
+    /** returns the jobs in the order of the given ids, null for a missing job */
+    public List<ExecutablePO> getJobs(List<String> uuids) throws PersistentException {
+        List<String> paths = Lists.newArrayListWithCapacity(uuids.size());
+        for (String uuid : uuids) {
+            paths.add(pathOfJob(uuid));
+        }
+        try {
+            return store.getResources(paths, ExecutablePO.class, JOB_SERIALIZER);
+        } catch (IOException e) {
+            logger.error("error get Jobs:" + uuids, e);
+            throw new PersistentException(e);
+        }
+    }
+
+    /** returns the job outputs in the order of the given ids, null for a missing output */
+    public List<ExecutableOutputPO> getJobOutputs(List<String> uuids) throws PersistentException {
+        List<String> paths = Lists.newArrayListWithCapacity(uuids.size());
+        for (String uuid : uuids) {
+            paths.add(pathOfJobOutput(uuid));
+        }
+        try {
+            return store.getResources(paths, ExecutableOutputPO.class, JOB_OUTPUT_SERIALIZER);
+        } catch (IOException e) {
+            logger.error("error get job outputs:" + uuids, e);
+            throw new PersistentException(e);
+        }
+    }
+
     public List<String> getJobIds() throws PersistentException {
         try {
             NavigableSet<String> resources = store.listResources(ResourceStore.EXECUTE_RESOURCE_ROOT);
@@ -174,6 +252,10 @@ public class ExecutableDao {
 
     public void deleteJob(String uuid) throws PersistentException {
         try {
+            ExecutablePO job = readJobResource(pathOfJob(uuid));
+            if (job != null) {
+                deleteJobIndex(job);
+            }
             store.deleteResource(pathOfJob(uuid));
         } catch (IOException e) {
             logger.error("error delete job:" + uuid, e);
@@ -224,4 +306,268 @@ public class ExecutableDao {
             throw new PersistentException(e);
         }
     }
+
+    private void writeJobIndex(String indexPath, String uuid) throws IOException {
+        if (indexPath != null) {
+            store.putResource(indexPath, new ByteArrayInputStream(Bytes.toBytes(uuid)), System.currentTimeMillis());
+        }
+    }
+
+    private void deleteJobIndex(String indexPath) throws IOException {
+        if (indexPath != null) {
+            store.deleteResource(indexPath);
+        }
+    }
+
+    // the output may be gone already or behind the index, so clear the entries of every status and time
+    private void deleteJobIndex(ExecutablePO job) throws IOException {
+        String cube = cubeOf(job);
+        if (cube == null) {
+            return;
+        }
+        for (ExecutableState state : ExecutableState.values()) {
+            String folder = pathOfJobIndexFolder(cube, state.toString());
+            NavigableSet<String> paths = store.listResources(folder);
+            if (paths == null) {
+                continue;
+            }
+            String prefix = folder + "/" + jobIndexKeyPrefix(job);
+            for (String path : Lists.newArrayList(paths.subSet(prefix, true, prefix + Character.MAX_VALUE, false))) {
+                store.deleteResource(path);
+            }
+        }
+    }
+
+    /** indexes a newly added job by its output */
+    public void addJobIndex(ExecutablePO job, ExecutableOutputPO output) throws PersistentException {
+        try {
+            writeJobIndex(pathOfJobIndex(job, output.getStatus(), output.getLastModified()), job.getUuid());
+        } catch (IOException e) {
+            logger.error("error add job index id:" + job.getUuid(), e);
+            throw new PersistentException(e);
+        }
+    }
+
+    /**
+     * Moves a job to the index entry of its new status and output last modified time. Does nothing for a job that is
+     * not indexed, e.g. a sub task.
+     */
+    public void updateJobIndex(String uuid, String oldStatus, long oldLastModified, String newStatus, long newLastModified) throws PersistentException {
+        try {
+            ExecutablePO job = readJobResource(pathOfJob(uuid));
+            if (job == null) {
+                return;
+            }
+            String newPath = pathOfJobIndex(job, newStatus, newLastModified);
+            if (newPath == null) {
+                return;
+            }
+            writeJobIndex(newPath, uuid);
+            String oldPath = pathOfJobIndex(job, oldStatus, oldLastModified);
+            if (!newPath.equals(oldPath)) {
+                deleteJobIndex(oldPath);
+            }
+        } catch (IOException e) {
+            logger.error("error update job index id:" + uuid, e);
+            throw new PersistentException(e);
+        }
+    }
+
+    public void deleteJobIndex(JobIndexEntry entry) throws PersistentException {
+        try {
+            deleteJobIndex(entry.getPath());
+        } catch (IOException e) {
+            logger.error("error delete job index:" + entry.getPath(), e);
+            throw new PersistentException(e);
+        }
+    }
+
+    public boolean isJobIndexBuilt() throws PersistentException {
+        try {
+            return store.exists(JOB_INDEX_BUILT_MARK);
+        } catch (IOException e) {
+            logger.error("error check job index", e);
+            throw new PersistentException(e);
+        }
+    }
+
+    /** indexes all the existing jobs, for metadata written before the job index was there */
+    public void rebuildJobIndex() throws PersistentException {
+        Map<String, ExecutableOutputPO> outputs = Maps.newHashMap();
+        for (ExecutableOutputPO output : getJobOutputs()) {
+            outputs.put(output.getUuid(), output);
+        }
+        try {
+            clearJobIndex();
+            int count = 0;
+            for (ExecutablePO job : getJobs()) {
+                ExecutableOutputPO output = outputs.get(job.getUuid());
+                String path = output == null ? pathOfJobIndex(job, ExecutableState.READY.toString(), 0) : pathOfJobIndex(job, output.getStatus(), output.getLastModified());
+                if (path != null) {
+                    writeJobIndex(path, job.getUuid());
+                    count++;
+                }
+            }
+            store.putResource(JOB_INDEX_BUILT_MARK, new ByteArrayInputStream(new byte[0]), System.currentTimeMillis());
+            logger.info("Job index rebuilt, " + count + " jobs indexed");
+        } catch (IOException e) {
+            logger.error("error rebuild job index", e);
+            throw new PersistentException(e);
+        }
+    }
+
+    private void clearJobIndex() throws IOException {
+        for (String cube : getIndexedCubes()) {
+            NavigableSet<String> statusFolders = store.listResources(ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT + "/" + cube);
+            if (statusFolders == null) {
+                continue;
+            }
+            for (String folder : statusFolders) {
+                NavigableSet<String> entries = store.listResources(folder);
+                if (entries == null) {
+                    continue;
+                }
+                for (String entry : entries) {
+                    store.deleteResource(entry);
+                }
+            }
+        }
+        for (String mark : JOB_INDEX_OLD_BUILT_MARKS) {
+            store.deleteResource(mark);
+        }
+    }
+
+    /**
+     * Lists the job index entries of given cubes and statuses, submitted and last modified within [timeStart,
+     * timeEndExclusive), the newest submitted first. Only index paths are listed, the entries are merged and filtered
+     * lazily, so consuming a page of the result reads nothing but the folder listings.
+     *
+     * @param cubes null means all cubes
+     * @param statuses null means all statuses
+     */
+    public Iterator<JobIndexEntry> getJobIndex(Collection<String> cubes, Collection<String> statuses, long timeStart, long timeEndExclusive) throws PersistentException {
+        if (timeStart >= timeEndExclusive) {
+            return Collections.<JobIndexEntry> emptyIterator();
+        }
+        if (statuses == null) {
+            statuses = Lists.newArrayList();
+            for (ExecutableState state : ExecutableState.values()) {
+                statuses.add(state.toString());
+            }
+        }
+
+        try {
+            if (cubes == null) {
+                cubes = getIndexedCubes();
+            }
+
+            List<Iterator<String>> folders = Lists.newArrayList();
+            for (String cube : cubes) {
+                for (String status : statuses) {
+                    String folder = pathOfJobIndexFolder(cube, status);
+                    NavigableSet<String> paths = store.listResources(folder);
+                    if (paths == null) {
+                        continue;
+                    }
+                    // newer is smaller; '/' is right after the '.' separator, so the upper bound takes all jobs of timeStart
+                    String from = folder + "/" + invertedTime(timeEndExclusive - 1);
+                    String to = folder + "/" + invertedTime(timeStart) + "/";
+                    folders.add(paths.subSet(from, true, to, false).iterator());
+                }
+            }
+
+            Iterator<String> merged = Iterators.mergeSorted(folders, new Comparator<String>() {
+                @Override
+                public int compare(String o1, String o2) {
+                    return keyOf(o1).compareTo(keyOf(o2));
+                }
+            });
+            final long start = timeStart, end = timeEndExclusive;
+            return Iterators.filter(Iterators.transform(merged, new Function<String, JobIndexEntry>() {
+                @Override
+                public JobIndexEntry apply(String path) {
+                    return new JobIndexEntry(path);
+                }
+            }), new Predicate<JobIndexEntry>() {
+                @Override
+                public boolean apply(JobIndexEntry entry) {
+                    return entry.getLastModified() >= start && entry.getLastModified() < end;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("error get job index", e);
+            throw new PersistentException(e);
+        }
+    }
+
+    private List<String> getIndexedCubes() throws IOException {
+        NavigableSet<String> folders = store.listResources(ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT);
+        if (folders == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = Lists.newArrayList();
+        for (String folder : folders) {
+            String cube = keyOf(folder);
+            if (!cube.startsWith(".")) {
+                result.add(cube);
+            }
+        }
+        return result;
+    }
+
+    private static String keyOf(String path) {
+        return path.substring(path.lastIndexOf("/") + 1);
+    }
+
+    public static class JobIndexEntry {
+        private final String path;
+        private final String cube;
+        private final String status;
+        private final long submitTime;
+        private final String uuid;
+        private final long lastModified;
+        private final String type;
+
+        JobIndexEntry(String path) {
+            this.path = path;
+            String[] parts = path.substring(ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT.length() + 1).split("/");
+            this.cube = parts[0];
+            this.status = parts[1];
+            // the type is a class name and has dots, the times and the uuid have none
+            String[] key = parts[2].split("\\.", 4);
+            this.submitTime = Long.MAX_VALUE - Long.parseLong(key[0]);
+            this.uuid = key[1];
+            this.lastModified = Long.parseLong(key[2]);
+            this.type = key[3];
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getCube() {
+            return cube;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getSubmitTime() {
+            return submitTime;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        /** the last modified time of the job output */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
 }
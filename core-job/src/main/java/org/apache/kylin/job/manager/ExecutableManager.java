@@ -19,14 +19,18 @@
 package org.apache.kylin.job.manager;
 
 import java.lang.reflect.Constructor;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.ClassUtil;
 import org.apache.kylin.job.dao.ExecutableDao;
+import org.apache.kylin.job.dao.ExecutableDao.JobIndexEntry;
 import org.apache.kylin.job.dao.ExecutableOutputPO;
 import org.apache.kylin.job.dao.ExecutablePO;
 import org.apache.kylin.job.exception.IllegalStateTranferException;
@@ -41,8 +45,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  */
@@ -54,6 +61,7 @@ public class ExecutableManager {
     private final KylinConfig config;
 
     private ExecutableDao executableDao;
+    private volatile boolean jobIndexChecked = false;
 
     public static ExecutableManager getInstance(KylinConfig config) {
         ExecutableManager r = CACHE.get(config);
@@ -80,15 +88,16 @@ public class ExecutableManager {
 
     public void addJob(AbstractExecutable executable) {
         try {
-            executableDao.addJob(parse(executable));
-            addJobOutput(executable);
+            ExecutablePO job = executableDao.addJob(parse(executable));
+            // indexed once the output is there, the index entry carries its last modified time
+            executableDao.addJobIndex(job, addJobOutput(executable));
         } catch (PersistentException e) {
             logger.error("fail to submit job:" + executable.getId(), e);
             throw new RuntimeException(e);
         }
     }
 
-    private void addJobOutput(AbstractExecutable executable) throws PersistentException {
+    private ExecutableOutputPO addJobOutput(AbstractExecutable executable) throws PersistentException {
         ExecutableOutputPO executableOutputPO = new ExecutableOutputPO();
         executableOutputPO.setUuid(executable.getId());
         executableDao.addJobOutput(executableOutputPO);
@@ -97,6 +106,7 @@ public class ExecutableManager {
                 addJobOutput(subTask);
             }
         }
+        return executableOutputPO;
     }
 
     //for ut
@@ -166,6 +176,127 @@ public class ExecutableManager {
         }
     }
 
+    /** returns the outputs of given jobs or tasks, an id without output is left out */
+    public Map<String, Output> getOutputs(List<String> uuids) {
+        try {
+            HashMap<String, Output> result = Maps.newHashMap();
+            for (ExecutableOutputPO jobOutput : executableDao.getJobOutputs(uuids)) {
+                if (jobOutput != null) {
+                    result.put(jobOutput.getId(), parseOutput(jobOutput));
+                }
+            }
+            return result;
+        } catch (PersistentException e) {
+            logger.error("fail to get job outputs:" + uuids, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a page of the jobs of given cubes, type and states, submitted and last modified within
+     * [timeStartInMillis, timeEndInMillis), the newest submitted first; the last modified time is the one of the job
+     * output. Jobs are located and filtered via the job index, so only the jobs of the page are read. The index is
+     * checked against the outputs read, and entries found stale are fixed on the way.
+     *
+     * @param cubes null means all cubes
+     * @param jobType jobs of this class or its subclasses, null means all
+     */
+    public List<AbstractExecutable> queryJobs(Collection<String> cubes, final Class<? extends AbstractExecutable> jobType, Set<ExecutableState> states, long timeStartInMillis, long timeEndInMillis, int offset, int limit) {
+        try {
+            checkJobIndex();
+
+            List<String> statuses = Lists.newArrayList();
+            for (ExecutableState state : states) {
+                statuses.add(state.toString());
+            }
+            Iterator<JobIndexEntry> index = executableDao.getJobIndex(cubes, statuses, timeStartInMillis, timeEndInMillis);
+            if (jobType != null) {
+                index = Iterators.filter(index, new Predicate<JobIndexEntry>() {
+                    @Override
+                    public boolean apply(JobIndexEntry entry) {
+                        return isOfType(entry.getType(), jobType);
+                    }
+                });
+            }
+            Iterators.advance(index, offset);
+
+            List<AbstractExecutable> result = Lists.newArrayList();
+            Set<String> seen = Sets.newHashSet(); // a stale entry may duplicate the right one
+            while (result.size() < limit && index.hasNext()) {
+                List<JobIndexEntry> entries = Lists.newArrayList(Iterators.limit(index, limit - result.size()));
+                List<String> uuids = Lists.newArrayListWithCapacity(entries.size());
+                for (JobIndexEntry entry : entries) {
+                    uuids.add(entry.getUuid());
+                }
+                List<ExecutablePO> jobs = executableDao.getJobs(uuids);
+                List<ExecutableOutputPO> outputs = executableDao.getJobOutputs(uuids);
+
+                for (int i = 0; i < entries.size(); i++) {
+                    JobIndexEntry entry = entries.get(i);
+                    ExecutablePO job = jobs.get(i);
+                    if (!seen.add(entry.getUuid())) {
+                        continue;
+                    }
+                    if (job == null) {
+                        // deleted by a tool not aware of the index
+                        executableDao.deleteJobIndex(entry);
+                        continue;
+                    }
+                    ExecutableOutputPO output = outputs.get(i);
+                    ExecutableState state = output == null ? ExecutableState.READY : ExecutableState.valueOf(output.getStatus());
+                    long lastModified = output == null ? 0 : output.getLastModified();
+                    if (!state.toString().equals(entry.getStatus()) || lastModified != entry.getLastModified()) {
+                        logger.warn("Job index of " + entry.getUuid() + " is stale, " + entry.getStatus() + " at " + entry.getLastModified() + " instead of " + state + " at " + lastModified);
+                        executableDao.updateJobIndex(entry.getUuid(), entry.getStatus(), entry.getLastModified(), state.toString(), lastModified);
+                        if (!states.contains(state) || lastModified < timeStartInMillis || lastModified >= timeEndInMillis) {
+                            continue;
+                        }
+                    }
+                    try {
+                        result.add(parseTo(job));
+                    } catch (IllegalArgumentException e) {
+                        logger.error("error parsing one executabePO: ", e);
+                    }
+                }
+            }
+            return result;
+        } catch (PersistentException e) {
+            logger.error("error query jobs", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isOfType(String type, Class<? extends AbstractExecutable> jobType) {
+        try {
+            return jobType.isAssignableFrom(ClassUtil.forName(type, AbstractExecutable.class));
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private void checkJobIndex() throws PersistentException {
+        if (jobIndexChecked) {
+            return;
+        }
+        synchronized (this) {
+            if (!jobIndexChecked) {
+                if (!executableDao.isJobIndexBuilt()) {
+                    executableDao.rebuildJobIndex();
+                }
+                jobIndexChecked = true;
+            }
+        }
+    }
+
+    private void updateJobIndex(String jobId, String oldStatus, long oldLastModified, ExecutableOutputPO output) {
+        try {
+            executableDao.updateJobIndex(jobId, oldStatus, oldLastModified, output.getStatus(), output.getLastModified());
+        } catch (PersistentException e) {
+            // the index is fixed when it is found stale in a query
+            logger.warn("fail to update job index:" + jobId, e);
+        }
+    }
+
     public List<AbstractExecutable> getAllExecutables() {
         try {
             List<AbstractExecutable> ret = Lists.newArrayList();
@@ -216,8 +347,10 @@ public class ExecutableManager {
             final List<ExecutableOutputPO> jobOutputs = executableDao.getJobOutputs();
             for (ExecutableOutputPO executableOutputPO : jobOutputs) {
                 if (executableOutputPO.getStatus().equalsIgnoreCase(ExecutableState.RUNNING.toString())) {
+                    final long oldLastModified = executableOutputPO.getLastModified();
                     executableOutputPO.setStatus(ExecutableState.ERROR.toString());
                     executableDao.updateJobOutput(executableOutputPO);
+                    updateJobIndex(executableOutputPO.getUuid(), ExecutableState.RUNNING.toString(), oldLastModified, executableOutputPO);
                 }
             }
         } catch (PersistentException e) {
@@ -231,8 +364,10 @@ public class ExecutableManager {
             final List<ExecutableOutputPO> jobOutputs = executableDao.getJobOutputs();
             for (ExecutableOutputPO executableOutputPO : jobOutputs) {
                 if (executableOutputPO.getStatus().equalsIgnoreCase(ExecutableState.RUNNING.toString())) {
+                    final long oldLastModified = executableOutputPO.getLastModified();
                     executableOutputPO.setStatus(ExecutableState.READY.toString());
                     executableDao.updateJobOutput(executableOutputPO);
+                    updateJobIndex(executableOutputPO.getUuid(), ExecutableState.RUNNING.toString(), oldLastModified, executableOutputPO);
                 }
             }
         } catch (PersistentException e) {
@@ -276,6 +411,7 @@ public class ExecutableManager {
             final ExecutableOutputPO jobOutput = executableDao.getJobOutput(jobId);
             Preconditions.checkArgument(jobOutput != null, "there is no related output for job id:" + jobId);
             ExecutableState oldStatus = ExecutableState.valueOf(jobOutput.getStatus());
+            final long oldLastModified = jobOutput.getLastModified();
             if (newStatus != null && oldStatus != newStatus) {
                 if (!ExecutableState.isValidStateTransfer(oldStatus, newStatus)) {
                     throw new IllegalStateTranferException("there is no valid state transfer from:" + oldStatus + " to:" + newStatus);
@@ -289,6 +425,7 @@ public class ExecutableManager {
                 jobOutput.setContent(output);
             }
             executableDao.updateJobOutput(jobOutput);
+            updateJobIndex(jobId, oldStatus.toString(), oldLastModified, jobOutput);
             logger.info("job id:" + jobId + " from " + oldStatus + " to " + newStatus);
         } catch (PersistentException e) {
             logger.error("error change job:" + jobId + " to " + newStatus.toString());
@@ -301,11 +438,14 @@ public class ExecutableManager {
     public void resetJobOutput(String jobId, ExecutableState state, String output) {
         try {
             final ExecutableOutputPO jobOutput = executableDao.getJobOutput(jobId);
+            final String oldStatus = jobOutput.getStatus();
+            final long oldLastModified = jobOutput.getLastModified();
             jobOutput.setStatus(state.toString());
             if (output != null) {
                 jobOutput.setContent(output);
             }
             executableDao.updateJobOutput(jobOutput);
+            updateJobIndex(jobId, oldStatus, oldLastModified, jobOutput);
         } catch (PersistentException e) {
             throw new RuntimeException(e);
         }
@@ -318,8 +458,10 @@ public class ExecutableManager {
         try {
             ExecutableOutputPO output = executableDao.getJobOutput(id);
             Preconditions.checkArgument(output != null, "there is no related output for job id:" + id);
+            final long oldLastModified = output.getLastModified();
             output.getInfo().putAll(info);
             executableDao.updateJobOutput(output);
+            updateJobIndex(id, output.getStatus(), oldLastModified, output);
         } catch (PersistentException e) {
             logger.error("error update job info, id:" + id + "  info:" + info.toString());
             throw new RuntimeException(e);
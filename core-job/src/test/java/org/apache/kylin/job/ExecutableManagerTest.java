@@ -22,10 +22,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.NavigableSet;
 
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.job.dao.ExecutableDao;
 import org.apache.kylin.job.exception.IllegalStateTranferException;
 import org.apache.kylin.job.execution.AbstractExecutable;
 import org.apache.kylin.job.execution.ChainedExecutable;
@@ -113,6 +118,127 @@ public class ExecutableManagerTest extends LocalFileMetadataTestCase {
         service.updateJobOutput(job.getId(), ExecutableState.STOPPED, null, null);
     }
 
+    @Test
+    public void testQueryJobs() throws Exception {
+        long start = System.currentTimeMillis();
+        SucceedTestExecutable[] jobs = new SucceedTestExecutable[5];
+        for (int i = 0; i < jobs.length; i++) {
+            jobs[i] = new SucceedTestExecutable();
+            jobs[i].setParam(ExecutableDao.JOB_INDEX_CUBE_PARAM, i % 2 == 0 ? "cube_a" : "cube_b");
+            service.addJob(jobs[i]);
+            Thread.sleep(5);
+        }
+        service.addJob(new SucceedTestExecutable()); // not indexed
+        service.updateJobOutput(jobs[1].getId(), ExecutableState.RUNNING, null, null);
+        service.updateJobOutput(jobs[3].getId(), ExecutableState.RUNNING, null, null);
+        service.updateJobOutput(jobs[3].getId(), ExecutableState.SUCCEED, null, null);
+        long end = System.currentTimeMillis() + 1;
+
+        EnumSet<ExecutableState> all = EnumSet.allOf(ExecutableState.class);
+        assertIds(service.queryJobs(null, null, all, start, end, 0, 10), jobs[4], jobs[3], jobs[2], jobs[1], jobs[0]);
+        assertIds(service.queryJobs(null, null, all, start, end, 1, 2), jobs[3], jobs[2]);
+        assertIds(service.queryJobs(null, null, all, start, end, 5, 2));
+        assertIds(service.queryJobs(Collections.singleton("cube_a"), null, all, start, end, 0, 10), jobs[4], jobs[2], jobs[0]);
+        assertIds(service.queryJobs(null, null, EnumSet.of(ExecutableState.RUNNING, ExecutableState.SUCCEED), start, end, 0, 10), jobs[3], jobs[1]);
+        assertIds(service.queryJobs(Collections.singleton("cube_b"), null, EnumSet.of(ExecutableState.READY), start, end, 0, 10));
+        assertIds(service.queryJobs(null, null, all, end, end + 1000, 0, 10));
+
+        service.deleteJob(jobs[4].getId());
+        assertIds(service.queryJobs(Collections.singleton("cube_a"), null, all, start, end, 0, 10), jobs[2], jobs[0]);
+    }
+
+    @Test
+    public void testStaleJobIndex() throws Exception {
+        long start = System.currentTimeMillis();
+        SucceedTestExecutable job = new SucceedTestExecutable();
+        job.setParam(ExecutableDao.JOB_INDEX_CUBE_PARAM, "cube_a");
+        service.addJob(job);
+        service.updateJobOutput(job.getId(), ExecutableState.RUNNING, null, null);
+        long end = System.currentTimeMillis() + 1;
+        EnumSet<ExecutableState> all = EnumSet.allOf(ExecutableState.class);
+        assertIds(service.queryJobs(null, null, all, start, end, 0, 10), job);
+
+        // the index is behind the output
+        long lastModified = service.getOutput(job.getId()).getLastModified();
+        ExecutableDao.getInstance(KylinConfig.getInstanceFromEnv()).updateJobIndex(job.getId(), ExecutableState.RUNNING.toString(), lastModified, ExecutableState.READY.toString(), lastModified);
+        assertIds(service.queryJobs(null, null, EnumSet.of(ExecutableState.READY), start, end, 0, 10));
+        assertIds(service.queryJobs(null, null, EnumSet.of(ExecutableState.RUNNING), start, end, 0, 10), job);
+
+        // the job is gone
+        ResourceStore store = ResourceStore.getStore(KylinConfig.getInstanceFromEnv());
+        store.deleteResource(ExecutableDao.pathOfJob(job.getId()));
+        store.deleteResource(ExecutableDao.pathOfJobOutput(job.getId()));
+        assertIds(service.queryJobs(null, null, all, start, end, 0, 10));
+        NavigableSet<String> entries = store.listResources(ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT + "/cube_a/RUNNING");
+        assertTrue(entries == null || entries.isEmpty());
+    }
+
+    @Test
+    public void testQueryJobsByLastModified() throws Exception {
+        long start = System.currentTimeMillis();
+        SucceedTestExecutable job = new SucceedTestExecutable();
+        job.setParam(ExecutableDao.JOB_INDEX_CUBE_PARAM, "cube_a");
+        service.addJob(job);
+        Thread.sleep(5);
+        long mid = System.currentTimeMillis();
+        Thread.sleep(5);
+        EnumSet<ExecutableState> all = EnumSet.allOf(ExecutableState.class);
+        assertIds(service.queryJobs(null, null, all, start, mid, 0, 10), job);
+
+        // the output is modified after mid, so the job leaves the window ending there
+        service.addJobInfo(job.getId(), "key", "value");
+        long end = System.currentTimeMillis() + 1;
+        assertIds(service.queryJobs(null, null, all, start, mid, 0, 10));
+        assertIds(service.queryJobs(null, null, all, start, end, 0, 10), job);
+        // and it was submitted before mid
+        assertIds(service.queryJobs(null, null, all, mid, end, 0, 10));
+    }
+
+    @Test
+    public void testQueryJobsByType() throws Exception {
+        long start = System.currentTimeMillis();
+        AbstractExecutable[] jobs = new AbstractExecutable[4];
+        for (int i = 0; i < jobs.length; i++) {
+            jobs[i] = i % 2 == 0 ? new SucceedTestExecutable() : new FailedTestExecutable();
+            jobs[i].setParam(ExecutableDao.JOB_INDEX_CUBE_PARAM, "cube_a");
+            service.addJob(jobs[i]);
+            Thread.sleep(5);
+        }
+        long end = System.currentTimeMillis() + 1;
+
+        EnumSet<ExecutableState> all = EnumSet.allOf(ExecutableState.class);
+        // the type is filtered before paging
+        assertIds(service.queryJobs(null, SucceedTestExecutable.class, all, start, end, 0, 1), jobs[2]);
+        assertIds(service.queryJobs(null, SucceedTestExecutable.class, all, start, end, 1, 10), jobs[0]);
+        assertIds(service.queryJobs(null, FailedTestExecutable.class, all, start, end, 0, 10), jobs[3], jobs[1]);
+        assertIds(service.queryJobs(null, BaseTestExecutable.class, all, start, end, 0, 10), jobs[3], jobs[2], jobs[1], jobs[0]);
+    }
+
+    @Test
+    public void testDeleteJobWithoutOutput() throws Exception {
+        long start = System.currentTimeMillis();
+        SucceedTestExecutable job = new SucceedTestExecutable();
+        job.setParam(ExecutableDao.JOB_INDEX_CUBE_PARAM, "cube_a");
+        service.addJob(job);
+        service.updateJobOutput(job.getId(), ExecutableState.RUNNING, null, null);
+        long end = System.currentTimeMillis() + 1;
+
+        ResourceStore store = ResourceStore.getStore(KylinConfig.getInstanceFromEnv());
+        store.deleteResource(ExecutableDao.pathOfJobOutput(job.getId()));
+        service.deleteJob(job.getId());
+
+        assertIds(service.queryJobs(null, null, EnumSet.allOf(ExecutableState.class), start, end, 0, 10));
+        NavigableSet<String> entries = store.listResources(ResourceStore.EXECUTE_INDEX_RESOURCE_ROOT + "/cube_a/RUNNING");
+        assertTrue(entries == null || entries.isEmpty());
+    }
+
+    private static void assertIds(List<AbstractExecutable> actual, AbstractExecutable... expected) {
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getId(), actual.get(i).getId());
+        }
+    }
+
     private static void assertJobEqual(Executable one, Executable another) {
         assertEquals(one.getClass(), another.getClass());
         assertEquals(one.getId(), another.getId());
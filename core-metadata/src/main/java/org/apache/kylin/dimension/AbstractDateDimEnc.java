@@ -29,6 +29,7 @@ import java.util.Arrays;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.DateFormat;
 import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.tuple.CellValueConverter;
 
 public class AbstractDateDimEnc extends DimensionEncoding {
     private static final long serialVersionUID = 1L;
@@ -93,6 +94,19 @@ public class AbstractDateDimEnc extends DimensionEncoding {
         return String.valueOf(millis);
     }
 
+    @Override
+    public Object decode(byte[] bytes, int offset, int len, CellValueConverter converter) {
+        if (isNull(bytes, offset, len)) {
+            return null;
+        }
+
+        long code = BytesUtil.readLong(bytes, offset, fixedLen);
+        if (code < 0)
+            throw new IllegalArgumentException();
+
+        return converter.fromMillis(codec.codeToMillis(code));
+    }
+
     @Override
     public DataTypeSerializer<Object> asDataTypeSerializer() {
         return new DataTypeSerializer<Object>() {
@@ -27,6 +27,7 @@ import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.tuple.CellValueConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -98,6 +99,24 @@ public class DictionaryDimEnc extends DimensionEncoding {
         }
     }
 
+    @Override
+    public void encode(byte[][] values, int n, byte[][] outputs, int outputOffset) {
+        int[] ids = new int[n];
+        dict.getIdsFromValueBytes(values, 0, n, roundingFlag, ids, 0);
+        for (int i = 0; i < n; i++) {
+            if (values[i] == null)
+                continue;
+            if (ids[i] >= 0) {
+                BytesUtil.writeUnsigned(ids[i], outputs[i], outputOffset, fixedLen);
+            } else {
+                for (int j = outputOffset; j < outputOffset + fixedLen; j++) {
+                    outputs[i][j] = defaultByte;
+                }
+                logger.error("Can't translate value " + Bytes.toString(values[i]) + " to dictionary ID, roundingFlag " + roundingFlag + ". Using default value " + String.format("\\x%02X", defaultByte));
+            }
+        }
+    }
+
     @Override
     public String decode(byte[] bytes, int offset, int len) {
         int id = BytesUtil.readUnsigned(bytes, offset, len);
@@ -110,6 +129,22 @@ public class DictionaryDimEnc extends DimensionEncoding {
         }
     }
 
+    @Override
+    public Object decode(byte[] bytes, int offset, int len, CellValueConverter converter) {
+        if (dict.isLongValued() == false)
+            return converter.fromString(decode(bytes, offset, len));
+
+        int id = BytesUtil.readUnsigned(bytes, offset, len);
+        if (dict.isNullId(id))
+            return null;
+        try {
+            return converter.fromLong(dict.getLongFromId(id));
+        } catch (IllegalArgumentException e) {
+            logger.error("Can't get dictionary value from " + dict + " (id = " + id + ")");
+            return converter.fromString("");
+        }
+    }
+
     @Override
     public DataTypeSerializer<Object> asDataTypeSerializer() {
         return new DictionarySerializer();
@@ -22,6 +22,7 @@ import java.io.Externalizable;
 
 import org.apache.kylin.common.util.StringUtil;
 import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.tuple.CellValueConverter;
 
 /**
  * Dimension encoding maps a dimension (String) to bytes of fixed length.
@@ -69,9 +70,22 @@ public abstract class DimensionEncoding implements Externalizable {
     /** encode given value (a string in byte form) to bytes, note the NULL convention */
     abstract public void encode(byte[] value, int valueLen, byte[] output, int outputOffset);
 
+    /** batch form of encode(), encodes values[i] into outputs[i] at outputOffset; null values are skipped and left to the caller */
+    public void encode(byte[][] values, int n, byte[][] outputs, int outputOffset) {
+        for (int i = 0; i < n; i++) {
+            if (values[i] != null)
+                encode(values[i], values[i].length, outputs[i], outputOffset);
+        }
+    }
+
     /** decode given bytes to value string, note the NULL convention */
     abstract public String decode(byte[] bytes, int offset, int len);
 
+    /** decode given bytes to the Java object of the converter's type, skipping the value string where possible */
+    public Object decode(byte[] bytes, int offset, int len, CellValueConverter converter) {
+        return converter.fromString(decode(bytes, offset, len));
+    }
+
     /** return a DataTypeSerializer that does the same encoding/decoding on ByteBuffer */
     abstract public DataTypeSerializer<Object> asDataTypeSerializer();
 
@@ -27,6 +27,7 @@ import java.util.Arrays;
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.metadata.datatype.DataTypeSerializer;
+import org.apache.kylin.metadata.tuple.CellValueConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -109,6 +110,15 @@ public class IntegerDimEnc extends DimensionEncoding {
         return String.valueOf(integer);
     }
 
+    @Override
+    public Object decode(byte[] bytes, int offset, int len, CellValueConverter converter) {
+        if (isNull(bytes, offset, len)) {
+            return null;
+        }
+
+        return converter.fromLong(BytesUtil.readLong(bytes, offset, len));
+    }
+
     @Override
     public DataTypeSerializer<Object> asDataTypeSerializer() {
         return new IntegerSerializer();
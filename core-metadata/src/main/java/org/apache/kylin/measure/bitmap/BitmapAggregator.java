@@ -18,40 +18,77 @@
 
 package org.apache.kylin.measure.bitmap;
 
+import java.util.List;
+
 import org.apache.kylin.measure.MeasureAggregator;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import com.google.common.collect.Lists;
 
 /**
  * Created by sunyerui on 15/12/2.
+ *
+ * Inputs are kept as read-only bitmaps and OR-ed together in batches, which is much cheaper than
+ * merging them into a mutable bitmap one by one. A mutable bitmap is only built when the state is asked for.
  */
 public class BitmapAggregator extends MeasureAggregator<BitmapCounter> {
 
+    static final int BATCH_SIZE = 64;
+
     private BitmapCounter sum = null;
+    private List<ImmutableRoaringBitmap> pending = Lists.newArrayList();
+    private int pendingBytes = 0;
 
     @Override
     public void reset() {
         sum = null;
+        pending.clear();
+        pendingBytes = 0;
     }
 
     @Override
     public void aggregate(BitmapCounter value) {
-        if (sum == null) {
-            sum = new BitmapCounter(value);
+        // the input counter and the bytes under it may be reused by the caller, so keep a copy
+        pending.add(value.detach());
+        pendingBytes += value.getMemBytes();
+        if (pending.size() >= BATCH_SIZE) {
+            orPending();
+        }
+    }
+
+    private void orPending() {
+        if (pending.isEmpty())
+            return;
+
+        if (sum != null) {
+            pending.add(sum.getImmutableBitmap());
+        }
+        MutableRoaringBitmap result;
+        if (pending.size() == 1) {
+            ImmutableRoaringBitmap only = pending.get(0);
+            result = only instanceof MutableRoaringBitmap ? (MutableRoaringBitmap) only : only.toMutableRoaringBitmap();
         } else {
-            sum.merge(value);
+            result = BufferFastAggregation.or(pending.toArray(new ImmutableRoaringBitmap[pending.size()]));
         }
+        sum = new BitmapCounter(result);
+        pending.clear();
+        pendingBytes = 0;
     }
 
     @Override
     public BitmapCounter getState() {
+        orPending();
         return sum;
     }
 
     @Override
     public int getMemBytesEstimate() {
-        if (sum == null) {
+        if (sum == null && pending.isEmpty()) {
             return Integer.MIN_VALUE;
         } else {
-            return sum.getMemBytes();
+            return (sum == null ? 0 : sum.getMemBytes()) + pendingBytes;
         }
     }
 }
@@ -26,28 +26,85 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
 /**
  * Created by sunyerui on 15/12/1.
+ *
+ * A deserialized counter is a read-only view over its serialized bytes, which is turned into
+ * a mutable bitmap only when the counter is modified.
  */
 public class BitmapCounter implements Comparable<BitmapCounter> {
 
-    private MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+    private MutableRoaringBitmap bitmap; // null while the counter is a view
+    private ImmutableRoaringBitmap view; // over viewBytes, not to be modified
+    private ByteBuffer viewBytes; // the serialized bytes of the view, exactly
 
     public BitmapCounter() {
+        bitmap = new MutableRoaringBitmap();
     }
 
     public BitmapCounter(BitmapCounter another) {
+        this();
         merge(another);
     }
 
+    BitmapCounter(MutableRoaringBitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    /** a counter over the given serialized bytes, which must not change while the counter is in use */
+    static BitmapCounter wrap(ByteBuffer bytes) {
+        BitmapCounter counter = new BitmapCounter((MutableRoaringBitmap) null);
+        counter.setView(bytes);
+        return counter;
+    }
+
+    private void setView(ByteBuffer bytes) {
+        this.bitmap = null;
+        this.viewBytes = bytes;
+        this.view = new ImmutableRoaringBitmap(bytes.duplicate());
+    }
+
+    private MutableRoaringBitmap mutable() {
+        if (bitmap == null) {
+            bitmap = view.toMutableRoaringBitmap();
+            view = null;
+            viewBytes = null;
+        }
+        return bitmap;
+    }
+
+    ImmutableRoaringBitmap getImmutableBitmap() {
+        return bitmap != null ? bitmap : view;
+    }
+
+    boolean isView() {
+        return bitmap == null;
+    }
+
+    /**
+     * a read-only copy that stays valid when this counter or the bytes it was read from change
+     */
+    ImmutableRoaringBitmap detach() {
+        if (bitmap != null)
+            return bitmap.clone();
+
+        ByteBuffer copy = ByteBuffer.allocate(viewBytes.remaining());
+        copy.put(viewBytes.duplicate());
+        copy.flip();
+        return new ImmutableRoaringBitmap(copy);
+    }
+
     public void clear() {
-        bitmap.clear();
+        bitmap = new MutableRoaringBitmap();
+        view = null;
+        viewBytes = null;
     }
 
     public void add(int value) {
-        bitmap.add(value);
+        mutable().add(value);
     }
 
     public void add(byte[] value) {
@@ -70,22 +127,28 @@ public class BitmapCounter implements Comparable<BitmapCounter> {
     }
 
     public void merge(BitmapCounter another) {
-        this.bitmap.or(another.bitmap);
+        mutable().or(another.getImmutableBitmap());
     }
 
     public long getCount() {
-        return this.bitmap.getCardinality();
+        return getImmutableBitmap().getCardinality();
     }
 
     public int getMemBytes() {
-        return this.bitmap.getSizeInBytes();
+        return bitmap != null ? bitmap.getSizeInBytes() : viewBytes.remaining();
     }
 
     public Iterator<Integer> iterator() {
-        return bitmap.iterator();
+        return getImmutableBitmap().iterator();
     }
 
     public void writeRegisters(ByteBuffer out) throws IOException {
+        if (bitmap == null) {
+            // already serialized
+            out.put(viewBytes.duplicate());
+            return;
+        }
+
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         DataOutputStream dos = new DataOutputStream(bos);
         bitmap.runOptimize();
@@ -95,17 +158,23 @@ public class BitmapCounter implements Comparable<BitmapCounter> {
         out.put(bb);
     }
 
+    /**
+     * The counter becomes a view over the bytes in the buffer, which must not change while the counter is in use.
+     */
     public void readRegisters(ByteBuffer in) throws IOException {
-        DataInputByteBuffer input = new DataInputByteBuffer();
-        input.reset(new ByteBuffer[] { in });
-        bitmap.deserialize(input);
+        int len = peekLength(in);
+        ByteBuffer bytes = in.slice();
+        bytes.limit(len);
+        setView(bytes);
+        in.position(in.position() + len);
     }
 
     @Override
     public int hashCode() {
+        // must agree for a view and a mutable bitmap of the same content
         final int prime = 31;
         int result = 1;
-        result = prime * result + bitmap.hashCode();
+        result = prime * result + (int) getCount();
         return result;
     }
 
@@ -118,7 +187,7 @@ public class BitmapCounter implements Comparable<BitmapCounter> {
         if (getClass() != obj.getClass())
             return false;
         BitmapCounter other = (BitmapCounter) obj;
-        return bitmap.equals(other.bitmap);
+        return getCount() == other.getCount() && ImmutableRoaringBitmap.xor(getImmutableBitmap(), other.getImmutableBitmap()).isEmpty();
     }
 
     @Override
@@ -138,21 +207,8 @@ public class BitmapCounter implements Comparable<BitmapCounter> {
     }
 
     public int peekLength(ByteBuffer in) {
-        int mark = in.position();
-        int len;
-
-        DataInputByteBuffer input = new DataInputByteBuffer();
-        input.reset(new ByteBuffer[] { in });
-        MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
-        try {
-            bitmap.deserialize(input);
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
-        }
-
-        len = in.position() - mark;
-        in.position(mark);
-        return len;
+        // the immutable bitmap only reads the header to know its size
+        return new ImmutableRoaringBitmap(in.slice()).serializedSizeInBytes();
     }
 
     static class DataInputByteBuffer extends DataInputStream {
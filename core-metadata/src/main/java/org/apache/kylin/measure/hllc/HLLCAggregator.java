@@ -18,15 +18,26 @@
 
 package org.apache.kylin.measure.hllc;
 
+import java.util.List;
+
 import org.apache.kylin.measure.MeasureAggregator;
 
+import com.google.common.collect.Lists;
+
 /**
+ * Sparse inputs are small, so copies of them are collected and merged in batches with {@link HyperLogLogPlusCounter#mergeAll},
+ * as long as they hold no more registers than a sparse counter may.
+ * Dense inputs are merged right away, a copy would cost as much as the merge.
  */
 @SuppressWarnings("serial")
 public class HLLCAggregator extends MeasureAggregator<HyperLogLogPlusCounter> {
 
+    static final int BATCH_SIZE = 64;
+
     final int precision;
     HyperLogLogPlusCounter sum = null;
+    List<HyperLogLogPlusCounter> pending = Lists.newArrayList();
+    int pendingRegisters = 0;
 
     public HLLCAggregator(int precision) {
         this.precision = precision;
@@ -35,18 +46,37 @@ public class HLLCAggregator extends MeasureAggregator<HyperLogLogPlusCounter> {
     @Override
     public void reset() {
         sum = null;
+        pending.clear();
+        pendingRegisters = 0;
     }
 
     @Override
     public void aggregate(HyperLogLogPlusCounter value) {
-        if (sum == null)
+        if (sum == null) {
             sum = new HyperLogLogPlusCounter(value);
-        else
+        } else if (value.isSparse()) {
+            // the input may be reused by the caller, so keep a copy
+            pending.add(new HyperLogLogPlusCounter(value));
+            pendingRegisters += value.size();
+            if (pending.size() >= BATCH_SIZE || pendingRegisters > sum.sparseThreshold())
+                mergePending();
+        } else {
             sum.merge(value);
+        }
+    }
+
+    private void mergePending() {
+        if (pending.isEmpty() == false) {
+            sum.mergeAll(pending);
+            pending.clear();
+            pendingRegisters = 0;
+        }
     }
 
     @Override
     public HyperLogLogPlusCounter getState() {
+        if (sum != null)
+            mergePending();
         return sum;
     }
 
@@ -57,7 +87,9 @@ public class HLLCAggregator extends MeasureAggregator<HyperLogLogPlusCounter> {
                 + 4 // precision
                 + 8 // ref to HLLC
                 + 8 // HLLC obj shell
-                + 32 + (1 << precision); // HLLC internal
+                + 32 + (1 << precision) // HLLC internal
+                + 16 + BATCH_SIZE * 8 // pending list
+                + pending.size() * (8 + 32) + 4 * pendingRegisters; // pending sparse HLLC
     }
 
 }
@@ -21,11 +21,15 @@ package org.apache.kylin.measure.hllc;
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
 import org.apache.kylin.common.util.BytesUtil;
 
+import com.google.common.collect.Lists;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 
@@ -35,16 +39,29 @@ import com.google.common.hash.Hashing;
  * - LZF compression ratio is around 65%-80%, fast
  * - GZIP compression ratio is around 41%-46%, very slow
  * 
+ * A counter starts sparse, keeping only the registers that are set, and turns dense (2^p registers)
+ * once too many are set. Dense registers are packed 8 to a long, so merge works a word at a time.
+ * The serialized form does not depend on the in-memory mode.
+ * 
  * @author yangli9
  */
 @SuppressWarnings("serial")
 public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLogLogPlusCounter> {
 
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_BITS = 0x0101010101010101L;
+
     private final int p;
     private final int m;
     private final HashFunction hashFunc;
-    byte[] registers;
-    int singleBucket;
+
+    // sparse mode, the set registers as sorted (bucket << 8 | register) entries; null in dense mode
+    private int[] sparse;
+    private int sparseSize;
+
+    // dense mode, register i is byte (i & 7) of dense[i >>> 3]; null in sparse mode
+    private long[] dense;
+    private transient long[] spareDense; // kept for reuse after clear()
 
     public HyperLogLogPlusCounter() {
         this(10);
@@ -64,20 +81,17 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
         this.p = p;
         this.m = 1 << p;//(int) Math.pow(2, p);
         this.hashFunc = hashFunc;
-        this.registers = new byte[m];
-        this.singleBucket = -1;
+        this.sparse = new int[4];
+        this.sparseSize = 0;
     }
 
     public void clear() {
-        byte zero = (byte) 0;
-        if (singleBucket == -1) {
-            //nothing
-        } else if (singleBucket >= 0) {
-            registers[singleBucket] = 0;
-        } else {
-            Arrays.fill(registers, zero);
+        if (dense != null) {
+            spareDense = dense;
+            dense = null;
+            sparse = new int[4];
         }
-        singleBucket = -1;
+        sparseSize = 0;
     }
 
     public void add(int value) {
@@ -96,39 +110,78 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
         add(hashFunc.hashBytes(value, offset, length).asLong());
     }
 
+    /** add a hash that is already well distributed over all 64 bits, skipping the hash function of this counter */
+    public void addHashDirectly(long hash) {
+        add(hash);
+    }
+
     protected void add(long hash) {
         int bucketMask = m - 1;
         int bucket = (int) (hash & bucketMask);
         int firstOnePos = Long.numberOfLeadingZeros(hash | bucketMask) + 1;
 
-        if (firstOnePos > registers[bucket])
-            registers[bucket] = (byte) firstOnePos;
-
-        if (singleBucket == -1)
-            singleBucket = bucket;
-        else
-            singleBucket = Integer.MIN_VALUE;
+        setRegisterMax(bucket, firstOnePos);
     }
 
     public void merge(HyperLogLogPlusCounter another) {
         assert this.p == another.p;
         assert this.hashFunc == another.hashFunc;
 
-        // quick path for single value HLLC
-        if (another.singleBucket == -1) {
-            return;
-        } else if (another.singleBucket >= 0) {
-            int b = another.singleBucket;
-            if (registers[b] < another.registers[b])
-                registers[b] = another.registers[b];
+        if (another.dense == null) {
+            // quick path for sparse HLLC, e.g. a single value
+            for (int i = 0; i < another.sparseSize; i++) {
+                int entry = another.sparse[i];
+                setRegisterMax(entry >>> 8, entry & 0xff);
+            }
         } else {
             // normal path
-            for (int i = 0; i < m; i++) {
-                if (registers[i] < another.registers[i])
-                    registers[i] = another.registers[i];
+            if (dense == null)
+                toDense();
+            long[] others = another.dense;
+            for (int i = 0; i < dense.length; i++) {
+                dense[i] = maxBytes(dense[i], others[i]);
             }
         }
-        singleBucket = Integer.MIN_VALUE;
+    }
+
+    /** merge many counters in one pass over the registers of this counter */
+    public void mergeAll(Collection<HyperLogLogPlusCounter> others) {
+        List<long[]> denseOthers = Lists.newArrayListWithCapacity(others.size());
+        int sparseEntries = sparseSize;
+        for (HyperLogLogPlusCounter another : others) {
+            assert this.p == another.p;
+            assert this.hashFunc == another.hashFunc;
+
+            if (another.dense != null)
+                denseOthers.add(another.dense);
+            else
+                sparseEntries += another.sparseSize;
+        }
+
+        if (dense == null && (denseOthers.isEmpty() == false || sparseEntries > sparseThreshold()))
+            toDense();
+
+        if (denseOthers.isEmpty() == false) {
+            for (int i = 0; i < dense.length; i++) {
+                long word = dense[i];
+                for (long[] other : denseOthers) {
+                    word = maxBytes(word, other[i]);
+                }
+                dense[i] = word;
+            }
+        }
+        for (HyperLogLogPlusCounter another : others) {
+            if (another.dense == null)
+                merge(another);
+        }
+    }
+
+    /** byte-wise max of two words of registers, which are all below 128 */
+    static long maxBytes(long a, long b) {
+        // (a | 0x80) - b never borrows across bytes, and its high bit is set where a >= b
+        long aGreaterOrEqual = ((a | HIGH_BITS) - b) & HIGH_BITS;
+        long mask = (aGreaterOrEqual >>> 7) * 0xff;
+        return (a & mask) | (b & ~mask);
     }
 
     public long getCountEstimate() {
@@ -143,21 +196,103 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
         return 1.04 / Math.sqrt(m);
     }
 
-    private int size() {
-        if (singleBucket == -1) {
-            return 0;
-        } else if (singleBucket >= 0) {
-            return 1;
+    public boolean isSparse() {
+        return dense == null;
+    }
+
+    int size() {
+        if (dense == null) {
+            return sparseSize;
         } else {
             int size = 0;
-            for (int i = 0; i < m; i++) {
-                if (registers[i] > 0)
-                    size++;
+            for (long word : dense) {
+                // high bit of (x | 0x80) - 1 is set where x > 0
+                size += Long.bitCount(((word | HIGH_BITS) - LOW_BITS) & HIGH_BITS);
             }
             return size;
         }
     }
 
+    // ============================================================================
+
+    int sparseThreshold() {
+        // sparse entries are 4 bytes, keep them well below the m bytes of dense registers
+        return Math.max(1, m >>> 3);
+    }
+
+    private int getRegister(int bucket) {
+        if (dense != null) {
+            return (int) (dense[bucket >>> 3] >>> ((bucket & 7) << 3)) & 0xff;
+        } else {
+            int i = findSparse(bucket);
+            return i < 0 ? 0 : sparse[i] & 0xff;
+        }
+    }
+
+    private void setRegisterMax(int bucket, int value) {
+        if (dense != null) {
+            int shift = (bucket & 7) << 3;
+            long word = dense[bucket >>> 3];
+            if (value > ((int) (word >>> shift) & 0xff))
+                dense[bucket >>> 3] = (word & ~(0xffL << shift)) | ((long) value << shift);
+            return;
+        }
+
+        int i = findSparse(bucket);
+        if (i >= 0) {
+            if (value > (sparse[i] & 0xff))
+                sparse[i] = bucket << 8 | value;
+            return;
+        }
+
+        if (sparseSize >= sparseThreshold()) {
+            toDense();
+            setRegisterMax(bucket, value);
+            return;
+        }
+
+        int insertAt = -(i + 1);
+        if (sparseSize == sparse.length)
+            sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, sparseThreshold()));
+        System.arraycopy(sparse, insertAt, sparse, insertAt + 1, sparseSize - insertAt);
+        sparse[insertAt] = bucket << 8 | value;
+        sparseSize++;
+    }
+
+    /** index of the bucket in sparse entries, or (-(insertion point) - 1) if absent */
+    private int findSparse(int bucket) {
+        int low = 0;
+        int high = sparseSize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midBucket = sparse[mid] >>> 8;
+            if (midBucket < bucket)
+                low = mid + 1;
+            else if (midBucket > bucket)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    private void toDense() {
+        long[] words = spareDense;
+        spareDense = null;
+        if (words == null)
+            words = new long[(m + 7) >>> 3];
+        else
+            Arrays.fill(words, 0L);
+
+        for (int i = 0; i < sparseSize; i++) {
+            int bucket = sparse[i] >>> 8;
+            words[bucket >>> 3] |= (long) (sparse[i] & 0xff) << ((bucket & 7) << 3);
+        }
+        dense = words;
+        sparse = null;
+        sparseSize = 0;
+    }
+
     @Override
     public String toString() {
         return "" + getCountEstimate();
@@ -177,13 +312,21 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
             registerSum = 0;
             zeroBuckets = 0;
 
-            byte[] registers = hllc.registers;
-            for (int i = 0; i < hllc.m; i++) {
-                if (registers[i] == 0) {
-                    registerSum++;
-                    zeroBuckets++;
-                } else {
-                    registerSum += 1.0 / (1L << registers[i]);
+            if (hllc.dense == null) {
+                for (int i = 0; i < hllc.sparseSize; i++) {
+                    registerSum += 1.0 / (1L << (hllc.sparse[i] & 0xff));
+                }
+                zeroBuckets = hllc.m - hllc.sparseSize;
+                registerSum += zeroBuckets;
+            } else {
+                for (int i = 0; i < hllc.m; i++) {
+                    int register = hllc.getRegister(i);
+                    if (register == 0) {
+                        registerSum++;
+                        zeroBuckets++;
+                    } else {
+                        registerSum += 1.0 / (1L << register);
+                    }
                 }
             }
         }
@@ -212,6 +355,7 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
         int size = size();
 
         // decide output scheme -- map (3*size bytes) or array (2^p bytes)
+        // the scheme byte also tells the in-memory mode on read, so both modes read and write the old format
         byte scheme;
         if (5 + (indexLen + 1) * size < m) // 5 is max len of vint
             scheme = 0; // map
@@ -221,21 +365,22 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
 
         if (scheme == 0) { // map scheme
             BytesUtil.writeVInt(size, out);
-            if (singleBucket == -1) {
-                // no non-zero register
-            } else if (singleBucket >= 0) {
-                writeUnsigned(singleBucket, indexLen, out);
-                out.put(registers[singleBucket]);
+            if (dense == null) {
+                for (int i = 0; i < sparseSize; i++) {
+                    writeUnsigned(sparse[i] >>> 8, indexLen, out);
+                    out.put((byte) sparse[i]);
+                }
             } else {
                 for (int i = 0; i < m; i++) {
-                    if (registers[i] > 0) {
+                    int register = getRegister(i);
+                    if (register > 0) {
                         writeUnsigned(i, indexLen, out);
-                        out.put(registers[i]);
+                        out.put((byte) register);
                     }
                 }
             }
         } else if (scheme == 1) { // array scheme
-            out.put(registers);
+            writeRegistersArray(out);
         } else
             throw new IllegalStateException();
     }
@@ -248,23 +393,16 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
             int size = BytesUtil.readVInt(in);
             if (size > m)
                 throw new IllegalArgumentException("register size (" + size + ") cannot be larger than m (" + m + ")");
+            if (size > sparseThreshold())
+                toDense();
             int indexLen = getRegisterIndexSize();
-            int key = 0;
             for (int i = 0; i < size; i++) {
-                key = readUnsigned(in, indexLen);
-                registers[key] = in.get();
+                int key = readUnsigned(in, indexLen);
+                setRegisterMax(key, in.get());
             }
 
-            if (size == 0)
-                singleBucket = -1;
-            else if (size == 1)
-                singleBucket = key;
-            else
-                singleBucket = Integer.MIN_VALUE;
-
         } else if (scheme == 1) { // array scheme
-            in.get(registers);
-            singleBucket = Integer.MIN_VALUE;
+            readRegistersArray(in);
         } else
             throw new IllegalStateException();
     }
@@ -291,12 +429,39 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
     }
 
     public void writeRegistersArray(final ByteBuffer out) {
-        out.put(this.registers);
+        if (dense == null) {
+            for (int i = 0; i < m; i++) {
+                out.put((byte) getRegister(i));
+            }
+            return;
+        }
+
+        int words = m >>> 3;
+        ByteOrder order = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < words; i++) {
+            out.putLong(dense[i]);
+        }
+        out.order(order);
+        for (int i = words << 3; i < m; i++) {
+            out.put((byte) getRegister(i));
+        }
     }
 
     public void readRegistersArray(ByteBuffer in) {
-        in.get(registers, 0, m);
-        singleBucket = Integer.MIN_VALUE;
+        clear();
+        toDense();
+
+        int words = m >>> 3;
+        ByteOrder order = in.order();
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < words; i++) {
+            dense[i] = in.getLong();
+        }
+        in.order(order);
+        for (int i = words << 3; i < m; i++) {
+            setRegisterMax(i, in.get());
+        }
     }
 
     private int getRegisterIndexSize() {
@@ -309,7 +474,12 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
         int result = 1;
         result = prime * result + ((hashFunc == null) ? 0 : hashFunc.hashCode());
         result = prime * result + p;
-        result = prime * result + Arrays.hashCode(registers);
+        // same for the sparse and the dense mode
+        for (int i = 0; i < m; i++) {
+            int register = getRegister(i);
+            if (register > 0)
+                result = prime * result + (i << 8 | register);
+        }
         return result;
     }
 
@@ -329,8 +499,14 @@ public class HyperLogLogPlusCounter implements Serializable, Comparable<HyperLog
             return false;
         if (p != other.p)
             return false;
-        if (!Arrays.equals(registers, other.registers))
-            return false;
+        if (dense != null && other.dense != null)
+            return Arrays.equals(dense, other.dense);
+        if (dense == null && other.dense == null)
+            return sparseSize == other.sparseSize && Arrays.equals(Arrays.copyOf(sparse, sparseSize), Arrays.copyOf(other.sparse, other.sparseSize));
+        for (int i = 0; i < m; i++) {
+            if (getRegister(i) != other.getRegister(i))
+                return false;
+        }
         return true;
     }
 
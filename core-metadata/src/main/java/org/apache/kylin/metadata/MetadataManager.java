@@ -330,8 +330,11 @@ public class MetadataManager {
         srcTableMap.clear();
 
         List<String> paths = store.collectResourceRecursively(ResourceStore.TABLE_RESOURCE_ROOT, MetadataConstants.FILE_SURFIX);
-        for (String path : paths) {
-            reloadSourceTableAt(path);
+        List<TableDesc> tables = store.getResources(paths, TableDesc.class, TABLE_SERIALIZER);
+        for (TableDesc t : tables) {
+            if (t != null) {
+                initSourceTable(t);
+            }
         }
 
         logger.debug("Loaded " + srcTableMap.size() + " SourceTable(s)");
@@ -343,6 +346,10 @@ public class MetadataManager {
         if (t == null) {
             return null;
         }
+        return initSourceTable(t);
+    }
+
+    private TableDesc initSourceTable(TableDesc t) {
         t.init();
 
         String tableIdentity = t.getIdentity();
@@ -431,9 +438,13 @@ public class MetadataManager {
         dataModelDescMap.clear();
 
         List<String> paths = store.collectResourceRecursively(ResourceStore.DATA_MODEL_DESC_RESOURCE_ROOT, MetadataConstants.FILE_SURFIX);
-        for (String path : paths) {
+        List<DataModelDesc> models = store.getResources(paths, DataModelDesc.class, MODELDESC_SERIALIZER);
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
             try {
-                reloadDataModelDescAt(path);
+                if (models.get(i) == null)
+                    throw new IllegalStateException("Error to load" + path);
+                initDataModelDesc(models.get(i));
             } catch (IllegalStateException e) {
                 logger.error("Error to load DataModel at " + path, e);
                 continue;
@@ -451,14 +462,18 @@ public class MetadataManager {
         ResourceStore store = getStore();
         try {
             DataModelDesc dataModelDesc = store.getResource(path, DataModelDesc.class, MODELDESC_SERIALIZER);
-            dataModelDesc.init(config, this.getAllTablesMap());
-            dataModelDescMap.putLocal(dataModelDesc.getName(), dataModelDesc);
-            return dataModelDesc;
+            return initDataModelDesc(dataModelDesc);
         } catch (IOException e) {
             throw new IllegalStateException("Error to load" + path, e);
         }
     }
 
+    private DataModelDesc initDataModelDesc(DataModelDesc dataModelDesc) {
+        dataModelDesc.init(config, this.getAllTablesMap());
+        dataModelDescMap.putLocal(dataModelDesc.getName(), dataModelDesc);
+        return dataModelDesc;
+    }
+
     // sync on update
     public DataModelDesc dropModel(DataModelDesc desc) throws IOException {
         logger.info("Dropping model '" + desc.getName() + "'");
@@ -103,8 +103,13 @@ public class ProjectManager {
 
         logger.debug("Loading Project from folder " + store.getReadableResourcePath(ResourceStore.PROJECT_RESOURCE_ROOT));
 
-        for (String path : paths) {
-            reloadProjectLocalAt(path);
+        List<ProjectInstance> projects = store.getResources(paths, ProjectInstance.class, PROJECT_SERIALIZER);
+        for (int i = 0; i < paths.size(); i++) {
+            if (projects.get(i) == null) {
+                logger.warn("reload project at path:" + paths.get(i) + " failed, this:" + this.toString());
+                continue;
+            }
+            initProject(projects.get(i));
         }
         logger.debug("Loaded " + projectMap.size() + " Project(s)");
     }
@@ -121,6 +126,10 @@ public class ProjectManager {
             return null;
         }
 
+        return initProject(projectInstance);
+    }
+
+    private ProjectInstance initProject(ProjectInstance projectInstance) {
         projectInstance.init();
 
         projectMap.putLocal(projectInstance.getName(), projectInstance);
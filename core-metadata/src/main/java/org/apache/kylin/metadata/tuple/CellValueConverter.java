@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.metadata.tuple;
+
+import java.math.BigDecimal;
+
+import org.apache.kylin.common.util.DateFormat;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Shorts;
+import com.google.common.primitives.SignedBytes;
+
+/**
+ * Converts values into the Java objects Calcite expects for a column type, e.g. Integer of epoch days for date.
+ * <p>
+ * Resolving the converter of a column once replaces the comparison of data type names on every cell. Besides
+ * strings, values can be converted from a long or from epoch millis, which saves the string round-trip for
+ * dimension encodings and dictionaries that decode into numbers.
+ */
+public enum CellValueConverter {
+
+    /** type "string", keeps empty strings */
+    STRING,
+    /** varchar, char and any other type passed as string */
+    VARCHAR,
+    DATE, TIMESTAMP, TINYINT, SMALLINT, INTEGER, BIGINT, DOUBLE, DECIMAL, FLOAT, BOOLEAN;
+
+    private static final long MILLIS_PER_DAY = 1000L * 3600 * 24;
+
+    public static CellValueConverter of(String dataTypeName) {
+        if ("string".equals(dataTypeName)) {
+            return STRING;
+        } else if ("date".equals(dataTypeName)) {
+            return DATE;
+        } else if ("timestamp".equals(dataTypeName) || "datetime".equals(dataTypeName)) {
+            return TIMESTAMP;
+        } else if ("tinyint".equals(dataTypeName)) {
+            return TINYINT;
+        } else if ("short".equals(dataTypeName) || "smallint".equals(dataTypeName)) {
+            return SMALLINT;
+        } else if ("integer".equals(dataTypeName)) {
+            return INTEGER;
+        } else if ("long".equals(dataTypeName) || "bigint".equals(dataTypeName)) {
+            return BIGINT;
+        } else if ("double".equals(dataTypeName)) {
+            return DOUBLE;
+        } else if ("decimal".equals(dataTypeName)) {
+            return DECIMAL;
+        } else if ("float".equals(dataTypeName)) {
+            return FLOAT;
+        } else if ("boolean".equals(dataTypeName)) {
+            return BOOLEAN;
+        } else {
+            return VARCHAR;
+        }
+    }
+
+    public Object fromString(String strValue) {
+        if (strValue == null)
+            return null;
+
+        if (this != STRING && (strValue.isEmpty() || strValue.equals("\\N")))
+            return null;
+
+        switch (this) {
+            case DATE:
+                return Integer.valueOf(millisToEpochDays(DateFormat.stringToMillis(strValue))); // Optiq expects Integer instead of Long
+            case TIMESTAMP:
+                return Long.valueOf(DateFormat.stringToMillis(strValue));
+            case TINYINT:
+                return Byte.valueOf(strValue);
+            case SMALLINT:
+                return Short.valueOf(strValue);
+            case INTEGER:
+                return Integer.valueOf(strValue);
+            case BIGINT:
+                return Long.valueOf(strValue);
+            case DOUBLE:
+                return Double.valueOf(strValue);
+            case DECIMAL:
+                return new BigDecimal(strValue);
+            case FLOAT:
+                return Float.valueOf(strValue);
+            case BOOLEAN:
+                return Boolean.valueOf(strValue);
+            default:
+                return strValue;
+        }
+    }
+
+    /** converts an integer value, as if from its decimal string; a value out of the type's range is rejected */
+    public Object fromLong(long value) {
+        switch (this) {
+            case TINYINT:
+                return Byte.valueOf(SignedBytes.checkedCast(value));
+            case SMALLINT:
+                return Short.valueOf(Shorts.checkedCast(value));
+            case INTEGER:
+                return Integer.valueOf(Ints.checkedCast(value));
+            case BIGINT:
+                return Long.valueOf(value);
+            case DOUBLE:
+                return Double.valueOf(value);
+            case DECIMAL:
+                return BigDecimal.valueOf(value);
+            case FLOAT:
+                return Float.valueOf(value);
+            default:
+                return fromString(String.valueOf(value));
+        }
+    }
+
+    /** converts a point of time in epoch millis */
+    public Object fromMillis(long millis) {
+        switch (this) {
+            case DATE:
+                return Integer.valueOf(millisToEpochDays(millis));
+            case TIMESTAMP:
+                return Long.valueOf(millis);
+            default:
+                return fromLong(millis);
+        }
+    }
+
+    private static int millisToEpochDays(long millis) {
+        return (int) (millis / MILLIS_PER_DAY);
+    }
+}
@@ -21,7 +21,6 @@ package org.apache.kylin.metadata.tuple;
 import java.math.BigDecimal;
 import java.util.List;
 
-import org.apache.kylin.common.util.DateFormat;
 import org.apache.kylin.metadata.datatype.DoubleMutable;
 import org.apache.kylin.metadata.datatype.LongMutable;
 import org.apache.kylin.metadata.model.TblColRef;
@@ -99,7 +98,14 @@ public class Tuple implements ITuple {
     }
 
     public void setDimensionValue(int idx, String fieldValue) {
-        Object objectValue = convertOptiqCellValue(fieldValue, getDataTypeName(idx));
+        Object objectValue = info.getCellValueConverter(idx).fromString(fieldValue);
+        values[idx] = objectValue;
+    }
+
+    /**
+     * Sets a dimension value that is already of the Java type Calcite expects, see {@link CellValueConverter}.
+     */
+    public void setDimensionValueDirectly(int idx, Object objectValue) {
         values[idx] = objectValue;
     }
 
@@ -110,23 +116,22 @@ public class Tuple implements ITuple {
     public void setMeasureValue(int idx, Object fieldValue) {
         fieldValue = convertWritableToJava(fieldValue);
 
-        String dataType = getDataTypeName(idx);
+        CellValueConverter converter = info.getCellValueConverter(idx);
         // special handling for BigDecimal, allow double be aggregated as
         // BigDecimal during cube build for best precision
-        if ("double".equals(dataType) && fieldValue instanceof BigDecimal) {
+        if (converter == CellValueConverter.DOUBLE && fieldValue instanceof BigDecimal) {
             fieldValue = ((BigDecimal) fieldValue).doubleValue();
-        } else if ("integer".equals(dataType) && fieldValue instanceof Number) {
+        } else if (converter == CellValueConverter.INTEGER && fieldValue instanceof Number) {
             fieldValue = ((Number) fieldValue).intValue();
-        } else if ("float".equals(dataType) && fieldValue instanceof BigDecimal) {
+        } else if (converter == CellValueConverter.FLOAT && fieldValue instanceof BigDecimal) {
             fieldValue = ((BigDecimal) fieldValue).floatValue();
-        } else if ("date".equals(dataType) && fieldValue instanceof Long) {
-            long millis = ((Long) fieldValue).longValue();
-            fieldValue = (int) (millis / (1000 * 3600 * 24));
-        } else if ("smallint".equals(dataType) && fieldValue instanceof Long) {
+        } else if (converter == CellValueConverter.DATE && fieldValue instanceof Long) {
+            fieldValue = converter.fromMillis(((Long) fieldValue).longValue());
+        } else if (converter == CellValueConverter.SMALLINT && fieldValue instanceof Long) {
             fieldValue = ((Long) fieldValue).shortValue();
-        } else if ((!"varchar".equals(dataType) || !"char".equals(dataType)) && fieldValue instanceof String) {
-            fieldValue = convertOptiqCellValue((String) fieldValue, dataType);
-        } else if ("bigint".equals(dataType) && fieldValue instanceof Double) {
+        } else if (fieldValue instanceof String) {
+            fieldValue = converter.fromString((String) fieldValue);
+        } else if (converter == CellValueConverter.BIGINT && fieldValue instanceof Double) {
             fieldValue = ((Double) fieldValue).longValue();
         }
 
@@ -171,42 +176,7 @@ public class Tuple implements ITuple {
     }
 
     public static Object convertOptiqCellValue(String strValue, String dataTypeName) {
-        if (strValue == null)
-            return null;
-
-        if ((strValue.equals("") || strValue.equals("\\N")) && !dataTypeName.equals("string"))
-            return null;
-
-        // TODO use data type enum instead of string comparison
-        if ("date".equals(dataTypeName)) {
-            // convert epoch time
-            return Integer.valueOf(dateToEpicDays(strValue));// Optiq expects Integer instead of Long. by honma
-        } else if ("timestamp".equals(dataTypeName) || "datetime".equals(dataTypeName)) {
-            return Long.valueOf(DateFormat.stringToMillis(strValue));
-        } else if ("tinyint".equals(dataTypeName)) {
-            return Byte.valueOf(strValue);
-        } else if ("short".equals(dataTypeName) || "smallint".equals(dataTypeName)) {
-            return Short.valueOf(strValue);
-        } else if ("integer".equals(dataTypeName)) {
-            return Integer.valueOf(strValue);
-        } else if ("long".equals(dataTypeName) || "bigint".equals(dataTypeName)) {
-            return Long.valueOf(strValue);
-        } else if ("double".equals(dataTypeName)) {
-            return Double.valueOf(strValue);
-        } else if ("decimal".equals(dataTypeName)) {
-            return new BigDecimal(strValue);
-        } else if ("float".equals(dataTypeName)) {
-            return Float.valueOf(strValue);
-        } else if ("boolean".equals(dataTypeName)) {
-            return Boolean.valueOf(strValue);
-        } else {
-            return strValue;
-        }
-    }
-
-    private static int dateToEpicDays(String strValue) {
-        long millis = DateFormat.stringToMillis(strValue);
-        return (int) (millis / (1000 * 3600 * 24));
+        return CellValueConverter.of(dataTypeName).fromString(strValue);
     }
 
 }
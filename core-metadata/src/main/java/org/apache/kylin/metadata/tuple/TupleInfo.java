@@ -38,6 +38,7 @@ public class TupleInfo {
     private final List<String> fields;
     private final List<TblColRef> columns;
     private final List<String> dataTypeNames;
+    private final List<CellValueConverter> converters;
 
     public TupleInfo() {
         fieldMap = new HashMap<String, Integer>();
@@ -45,6 +46,7 @@ public class TupleInfo {
         fields = new ArrayList<String>();
         columns = new ArrayList<TblColRef>();
         dataTypeNames = new ArrayList<String>();
+        converters = new ArrayList<CellValueConverter>();
     }
 
     public TblColRef getColumn(String fieldName) {
@@ -60,6 +62,10 @@ public class TupleInfo {
         return dataTypeNames.get(index);
     }
 
+    public CellValueConverter getCellValueConverter(int index) {
+        return converters.get(index);
+    }
+
     public int getFieldIndex(String fieldName) {
         return fieldMap.get(fieldName);
     }
@@ -97,6 +103,11 @@ public class TupleInfo {
             dataTypeNames.set(index, col.getType().getName());
         else
             dataTypeNames.add(index, col.getType().getName());
+
+        if (converters.size() > index)
+            converters.set(index, CellValueConverter.of(col.getType().getName()));
+        else
+            converters.add(index, CellValueConverter.of(col.getType().getName()));
     }
 
     public List<String> getAllFields() {
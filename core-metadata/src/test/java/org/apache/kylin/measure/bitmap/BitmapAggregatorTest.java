@@ -21,6 +21,9 @@ package org.apache.kylin.measure.bitmap;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 import org.junit.Test;
 
 /**
@@ -55,4 +58,25 @@ public class BitmapAggregatorTest {
         assertNull(aggregator.getState());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testAggregateViews() throws IOException {
+        // one buffer and one counter reused for all inputs, the way the serializer does it
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        BitmapCounter view = new BitmapCounter();
+        BitmapAggregator aggregator = new BitmapAggregator();
+
+        int inputs = BitmapAggregator.BATCH_SIZE * 2 + 10;
+        for (int i = 0; i < inputs; i++) {
+            BitmapCounter counter = new BitmapCounter();
+            counter.add(i);
+            counter.add(100000 + i % 10);
+            buffer.clear();
+            counter.writeRegisters(buffer);
+            buffer.flip();
+            view.readRegisters(buffer);
+            aggregator.aggregate(view);
+        }
+        assertEquals(inputs + 10, aggregator.getState().getCount());
+    }
+
+}
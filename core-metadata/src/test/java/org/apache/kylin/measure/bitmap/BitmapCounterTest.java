@@ -19,6 +19,8 @@
 package org.apache.kylin.measure.bitmap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -70,4 +72,35 @@ public class BitmapCounterTest {
         assertEquals(999, counter2.getCount());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testViewCounter() throws IOException {
+        BitmapCounter counter = new BitmapCounter();
+        for (int i = 1; i < 1000; i++) {
+            counter.add(i * 7);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        counter.writeRegisters(buffer);
+        int len = buffer.position();
+        buffer.position(0);
+
+        BitmapCounter view = new BitmapCounter();
+        view.readRegisters(buffer);
+        assertEquals(len, buffer.position());
+        assertTrue(view.isView());
+        assertEquals(999, view.getCount());
+        assertEquals(counter, view);
+        assertEquals(counter.hashCode(), view.hashCode());
+
+        // written back as is
+        ByteBuffer out = ByteBuffer.allocate(1024 * 1024);
+        view.writeRegisters(out);
+        assertEquals(len, out.position());
+
+        // becomes mutable on change
+        view.add(1);
+        assertFalse(view.isView());
+        assertEquals(1000, view.getCount());
+        assertEquals(999, counter.getCount());
+    }
+
+}
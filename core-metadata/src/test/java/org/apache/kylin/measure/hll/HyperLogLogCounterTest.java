@@ -19,11 +19,13 @@
 package org.apache.kylin.measure.hll;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
@@ -32,6 +34,8 @@ import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 /**
  * @author yangli9
  * 
@@ -259,6 +263,56 @@ public class HyperLogLogCounterTest {
         Assert.assertTrue(ha.getCountEstimate() == hb.getCountEstimate());
     }
 
+    @Test
+    public void testSparseToDense() throws IOException {
+        HyperLogLogPlusCounter hllc = new HyperLogLogPlusCounter(10);
+        HyperLogLogPlusCounter copy = new HyperLogLogPlusCounter(10);
+        for (int i = 0; i < 1000; i++) {
+            hllc.add(i);
+
+            // the serialized form is the same in both modes
+            buf.clear();
+            hllc.writeRegisters(buf);
+            int len = buf.position();
+            byte scheme = buf.get(0);
+            buf.flip();
+            copy.readRegisters(buf);
+            assertEquals(hllc, copy);
+            assertEquals(hllc.hashCode(), copy.hashCode());
+            assertEquals(hllc.getCountEstimate(), copy.getCountEstimate());
+
+            buf.clear();
+            copy.writeRegisters(buf);
+            assertEquals(len, buf.position());
+            assertEquals(scheme, buf.get(0));
+        }
+        assertFalse(hllc.isSparse());
+
+        hllc.clear();
+        assertTrue(hllc.isSparse());
+        assertEquals(0, hllc.getCountEstimate());
+    }
+
+    @Test
+    public void testMergeAll() throws IOException {
+        List<HyperLogLogPlusCounter> inputs = Lists.newArrayList();
+        HyperLogLogPlusCounter expected = newHLLC();
+        for (int i = 0; i < 50; i++) {
+            HyperLogLogPlusCounter hllc = newHLLC();
+            int n = i % 5 == 0 ? 100000 : 10; // mix dense and sparse inputs
+            for (int k = 0; k < n; k++) {
+                hllc.add(rand1.nextInt());
+            }
+            inputs.add(hllc);
+            expected.merge(hllc);
+        }
+
+        HyperLogLogPlusCounter merged = newHLLC();
+        merged.mergeAll(inputs);
+        assertEquals(expected, merged);
+        assertEquals(expected.getCountEstimate(), merged.getCountEstimate());
+    }
+
     private HyperLogLogPlusCounter newHLLC() {
         return new HyperLogLogPlusCounter(16);
     }
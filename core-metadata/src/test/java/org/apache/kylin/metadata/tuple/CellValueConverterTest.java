@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.metadata.tuple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+
+import org.apache.kylin.common.util.DateFormat;
+import org.apache.kylin.dimension.DateDimEnc;
+import org.apache.kylin.dimension.DimensionEncoding;
+import org.apache.kylin.dimension.IntegerDimEnc;
+import org.apache.kylin.dimension.TimeDimEnc;
+import org.junit.Test;
+
+public class CellValueConverterTest {
+
+    @Test
+    public void testFromString() {
+        assertEquals(CellValueConverter.DECIMAL, CellValueConverter.of("decimal"));
+        assertEquals(CellValueConverter.VARCHAR, CellValueConverter.of("varchar"));
+        assertEquals(CellValueConverter.SMALLINT, CellValueConverter.of("short"));
+
+        assertEquals(Integer.valueOf(17093), CellValueConverter.DATE.fromString("2016-10-19"));
+        assertEquals(Long.valueOf(DateFormat.stringToMillis("2016-10-19 12:00:00")), CellValueConverter.TIMESTAMP.fromString("2016-10-19 12:00:00"));
+        assertEquals(Byte.valueOf((byte) 3), CellValueConverter.TINYINT.fromString("3"));
+        assertEquals(Long.valueOf(3), CellValueConverter.BIGINT.fromString("3"));
+        assertEquals(new BigDecimal("3.50"), CellValueConverter.DECIMAL.fromString("3.50"));
+        assertEquals(Boolean.TRUE, CellValueConverter.BOOLEAN.fromString("true"));
+
+        // empty strings are null, except for type string
+        assertNull(CellValueConverter.BIGINT.fromString(""));
+        assertNull(CellValueConverter.VARCHAR.fromString("\\N"));
+        assertEquals("", CellValueConverter.STRING.fromString(""));
+        assertNull(CellValueConverter.STRING.fromString(null));
+    }
+
+    @Test
+    public void testFromLong() {
+        for (CellValueConverter converter : CellValueConverter.values()) {
+            assertEquals(converter.name(), converter.fromString("100"), converter.fromLong(100));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromLongOverflowTinyint() {
+        CellValueConverter.TINYINT.fromLong(128);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromLongOverflowSmallint() {
+        CellValueConverter.SMALLINT.fromLong(Short.MIN_VALUE - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromLongOverflowInteger() {
+        CellValueConverter.INTEGER.fromLong(Integer.MAX_VALUE + 1L);
+    }
+
+    @Test
+    public void testTypedDecode() {
+        checkTypedDecode(new IntegerDimEnc(4), "12345", CellValueConverter.BIGINT, CellValueConverter.INTEGER, CellValueConverter.DECIMAL, CellValueConverter.VARCHAR);
+        checkTypedDecode(new DateDimEnc(), "2016-10-19", CellValueConverter.DATE, CellValueConverter.TIMESTAMP, CellValueConverter.VARCHAR);
+        checkTypedDecode(new TimeDimEnc(), "2016-10-19 12:34:56", CellValueConverter.TIMESTAMP, CellValueConverter.DATE, CellValueConverter.BIGINT);
+    }
+
+    // the typed decode must be the same as parsing the decoded string
+    private void checkTypedDecode(DimensionEncoding enc, String value, CellValueConverter... converters) {
+        byte[] buf = new byte[enc.getLengthOfEncoding()];
+        enc.encode(value.getBytes(), value.length(), buf, 0);
+        String str = enc.decode(buf, 0, buf.length);
+        for (CellValueConverter converter : converters) {
+            assertEquals(converter.fromString(str), enc.decode(buf, 0, buf.length, converter));
+        }
+
+        enc.encode(null, 0, buf, 0);
+        for (CellValueConverter converter : converters) {
+            assertNull(enc.decode(buf, 0, buf.length, converter));
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.kylin.storage;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.metadata.model.FunctionDesc;
 
 import com.google.common.collect.Range;
 
@@ -36,6 +37,7 @@ public class StorageContext {
     private int limit;
     private int offset;
     private boolean hasSort;
+    private int sortColumnCount;
     private boolean acceptPartialResult;
 
     private boolean exactAggregation;
@@ -49,6 +51,9 @@ public class StorageContext {
 
     private Range<Long> reusedPeriod;
 
+    private FunctionDesc topKMetric; // set if storage can return only the top rows on the metric
+    private boolean topKDescending;
+
     public StorageContext() {
         this.threshold = DEFAULT_THRESHOLD;
         this.limit = DEFAULT_THRESHOLD;
@@ -110,6 +115,11 @@ public class StorageContext {
     
     public void markSort() {
         this.hasSort = true;
+        this.sortColumnCount++;
+    }
+
+    public int getSortColumnCount() {
+        return this.sortColumnCount;
     }
 
     public boolean hasSort() {
@@ -179,4 +189,25 @@ public class StorageContext {
     public void setReusedPeriod(Range<Long> reusedPeriod) {
         this.reusedPeriod = reusedPeriod;
     }
+
+    public void enableTopK(FunctionDesc metric, boolean descending) {
+        this.topKMetric = metric;
+        this.topKDescending = descending;
+    }
+
+    public boolean isTopKEnabled() {
+        return this.topKMetric != null;
+    }
+
+    public FunctionDesc getTopKMetric() {
+        return topKMetric;
+    }
+
+    public boolean isTopKDescending() {
+        return topKDescending;
+    }
+
+    public int getStorageTopK() {
+        return this.getOffset() + this.getLimit();
+    }
 }
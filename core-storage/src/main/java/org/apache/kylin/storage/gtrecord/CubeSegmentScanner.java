@@ -83,6 +83,10 @@ public class CubeSegmentScanner implements IGTScanner {
             if (cubeSeg.getCubeDesc().supportsLimitPushDown()) {
                 scanRequest.setStoragePushDownLimit(context.getStoragePushDownLimit());
             }
+            if (context.isTopKEnabled()) {
+                int topKColumn = cuboid.getCuboidToGridTableMapping().getIndexOf(context.getTopKMetric());
+                scanRequest.setTopK(topKColumn, context.isTopKDescending(), context.getStorageTopK());
+            }
         }
         scanner = new ScannerWorker(cubeSeg, cuboid, scanRequest, gtStorage);
     }
@@ -25,18 +25,23 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import org.apache.kylin.common.util.Array;
+import org.apache.kylin.common.util.ByteArray;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.cube.gridtable.CuboidToGridTableMapping;
+import org.apache.kylin.cube.kv.CubeDimEncMap;
 import org.apache.kylin.cube.model.CubeDesc.DeriveInfo;
 import org.apache.kylin.dict.lookup.LookupStringTable;
+import org.apache.kylin.dimension.DimensionEncoding;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.IGTCodeSystem;
 import org.apache.kylin.measure.MeasureType;
 import org.apache.kylin.measure.MeasureType.IAdvMeasureFiller;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.tuple.CellValueConverter;
 import org.apache.kylin.metadata.tuple.ITuple;
 import org.apache.kylin.metadata.tuple.Tuple;
 import org.apache.kylin.metadata.tuple.TupleInfo;
@@ -58,6 +63,9 @@ public class CubeTupleConverter {
     private final int[] gtColIdx;
     private final int[] tupleIdx;
     private final Object[] gtValues;
+    private final DimensionEncoding[] dimEncs;
+    private final CellValueConverter[] dimConverters;
+    private final boolean needDimStrings;
     private final MeasureType<?>[] measureTypes;
 
     private final List<IAdvMeasureFiller> advMeasureFillers;
@@ -104,11 +112,16 @@ public class CubeTupleConverter {
 
         int i = 0;
 
-        // pre-calculate dimension index mapping to tuple
+        // pre-calculate dimension index mapping to tuple, and how to decode the dimension into the tuple type
+        dimEncs = new DimensionEncoding[nSelectedDims];
+        dimConverters = new CellValueConverter[nSelectedDims];
+        CubeDimEncMap dimEncMap = cubeSeg.getDimensionEncodingMap();
         for (TblColRef dim : selectedDimensions) {
             int dimIndex = mapping.getIndexOf(dim);
             gtColIdx[i] = dimIndex;
             tupleIdx[i] = tupleInfo.hasColumn(dim) ? tupleInfo.getColumnIndex(dim) : -1;
+            dimEncs[i] = dimEncMap.get(dim);
+            dimConverters[i] = tupleIdx[i] >= 0 ? tupleInfo.getCellValueConverter(tupleIdx[i]) : null;
 
             //            if (tupleIdx[iii] == -1) {
             //                throw new IllegalStateException("dim not used in tuple:" + dim);
@@ -153,6 +166,9 @@ public class CubeTupleConverter {
                 }
             }
         }
+
+        // derived columns are looked up by the value strings of their host columns
+        needDimStrings = !derivedColFillers.isEmpty();
     }
 
     public Comparator<ITuple> getTupleDimensionComparator() {
@@ -204,17 +220,25 @@ public class CubeTupleConverter {
 
     public List<IAdvMeasureFiller> translateResult(GTRecord record, Tuple tuple) {
 
-        record.getValues(gtColIdx, gtValues);
-
-        // dimensions
+        // dimensions, decoded straight into the Java types of the tuple
         for (int i = 0; i < nSelectedDims; i++) {
+            ByteArray bytes = record.get(gtColIdx[i]);
+            boolean isNull = bytes == null || bytes.array() == null;
             int ti = tupleIdx[i];
             if (ti >= 0) {
-                tuple.setDimensionValue(ti, toString(gtValues[i]));
+                tuple.setDimensionValueDirectly(ti, isNull ? null : dimEncs[i].decode(bytes.array(), bytes.offset(), bytes.length(), dimConverters[i]));
+            }
+            if (needDimStrings) {
+                gtValues[i] = isNull ? null : dimEncs[i].decode(bytes.array(), bytes.offset(), bytes.length());
             }
         }
 
         // measures
+        IGTCodeSystem codeSystem = record.getInfo().getCodeSystem();
+        for (int i = nSelectedDims; i < gtColIdx.length; i++) {
+            ByteArray bytes = record.get(gtColIdx[i]);
+            gtValues[i] = bytes == null || bytes.array() == null ? null : codeSystem.decodeColumnValue(gtColIdx[i], bytes.asBuffer());
+        }
         for (int i = nSelectedDims; i < gtColIdx.length; i++) {
             int ti = tupleIdx[i];
             if (ti >= 0 && measureTypes[i] != null) {
@@ -114,11 +114,17 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
 
         context.setNeedStorageAggregation(isNeedStorageAggregation(cuboid, groupsD, singleValuesD, exactAggregation));
         enableStoragePushDownLimit(cuboid, groups, derivedPostAggregation, groupsD, filter, sqlDigest.aggregations, context);
+        enableStorageTopK(sqlDigest, filter, metrics, context);
         setThreshold(dimensionsD, metrics, context); // set cautious threshold to prevent out of memory
 
+        SegmentPruner segPruner = cubeInstance.getConfig().isQuerySegmentPruningEnabled() ? new SegmentPruner(filterD) : null;
+
         List<CubeSegmentScanner> scanners = Lists.newArrayList();
         for (CubeSegment cubeSeg : cubeInstance.getSegments(SegmentStatusEnum.READY)) {
             CubeSegmentScanner scanner;
+            if (segPruner != null && !segPruner.check(cubeSeg)) {
+                continue;
+            }
             if (cubeSeg.getInputRecords() == 0) {
                 if (!skipZeroInputSegment(cubeSeg)) {
                     logger.warn("cube segment {} input record is 0, " + "it may caused by kylin failed to the job counter " + "as the hadoop history server wasn't running", cubeSeg);
@@ -424,6 +430,52 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
         }
     }
 
+    /**
+     * For "order by measure limit k", each shard and segment can return just its top k rows, if no group
+     * is split between them. That is the case when the aggregation is exact, i.e. the query engine
+     * need not aggregate further. The query server then picks the top k of all.
+     */
+    private void enableStorageTopK(SQLDigest sqlDigest, TupleFilter filter, Collection<FunctionDesc> metrics, StorageContext context) {
+        if (!cubeInstance.getConfig().isQueryStorageTopKEnabled())
+            return;
+
+        if (!context.isExactAggregation()) {
+            logger.info("Storage top-K is impossible because the aggregation is not exact");
+            return;
+        }
+
+        if (context.getSortColumnCount() != 1 || sqlDigest.sortMeasures.size() != 1) {
+            return;
+        }
+
+        // limit is left to default if not given, or if a having clause is skipped
+        if (context.getStorageTopK() > cubeInstance.getConfig().getStoragePushDownLimitMax()) {
+            logger.info("Storage top-K is impossible because the limit " + context.getStorageTopK() + " is absent or too large");
+            return;
+        }
+
+        boolean goodFilter = filter == null || (TupleFilter.isEvaluableRecursively(filter) && context.isCoprocessorEnabled());
+        if (!goodFilter) {
+            logger.info("Storage top-K is impossible because the filter is unevaluatable");
+            return;
+        }
+
+        FunctionDesc sortFunc = sqlDigest.sortMeasures.iterator().next().getFunction();
+        FunctionDesc metric = null;
+        for (FunctionDesc func : metrics) {
+            if (func.equals(sortFunc))
+                metric = func;
+        }
+        if (metric == null || !(metric.isSum() || metric.isMax() || metric.isMin() || metric.isCount()) || !metric.getReturnDataType().isNumberFamily()) {
+            logger.info("Storage top-K is impossible because the order by measure " + sortFunc + " is not a simple numeric measure");
+            return;
+        }
+
+        boolean descending = sqlDigest.sortOrders.iterator().next() == SQLDigest.OrderEnum.DESCENDING;
+        logger.info("Enable storage top " + context.getStorageTopK() + " on " + metric + (descending ? " desc" : " asc"));
+        context.enableTopK(metric, descending);
+    }
+
     private void notifyBeforeStorageQuery(SQLDigest sqlDigest) {
         Map<String, List<MeasureDesc>> map = Maps.newHashMap();
         for (MeasureDesc measure : cubeDesc.getMeasures()) {
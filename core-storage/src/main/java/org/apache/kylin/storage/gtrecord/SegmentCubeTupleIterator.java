@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import org.apache.kylin.common.QueryProfile;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.measure.MeasureType.IAdvMeasureFiller;
@@ -59,6 +60,10 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
     private int advMeasureRowsRemaining;
     private int advMeasureRowIndex;
 
+    private final QueryProfile profile;
+    private long convertCount;
+    private long convertNanos;
+
     public SegmentCubeTupleIterator(CubeSegmentScanner scanner, Cuboid cuboid, Set<TblColRef> selectedDimensions, //
             Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo, StorageContext context) {
         this.scanner = scanner;
@@ -70,12 +75,18 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
         this.context = context;
         this.gtItr = getGTItr(scanner);
         this.cubeTupleConverter = new CubeTupleConverter(scanner.cubeSeg, cuboid, selectedDimensions, selectedMetrics, tupleInfo);
+        this.profile = QueryProfile.current();
     }
 
     private Iterator<GTRecord> getGTItr(CubeSegmentScanner scanner) {
         return scanner.iterator();
     }
 
+    /** convert the given records of this segment instead of the scanner output, e.g. records merged across segments */
+    void setGTItr(Iterator<GTRecord> gtItr) {
+        this.gtItr = gtItr;
+    }
+
     @Override
     public boolean hasNext() {
         if (next != null)
@@ -101,7 +112,10 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
         Preconditions.checkNotNull(cubeTupleConverter);
 
         // translate into tuple
+        long start = System.nanoTime();
         advMeasureFillers = cubeTupleConverter.translateResult(curRecord, tuple);
+        convertNanos += System.nanoTime() - start;
+        convertCount++;
 
         // the simple case
         if (advMeasureFillers == null) {
@@ -145,6 +159,10 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
 
     @Override
     public void close() {
+        if (profile != null) {
+            profile.addTupleConvert(convertCount, convertNanos);
+            convertCount = convertNanos = 0;
+        }
         close(scanner);
     }
 
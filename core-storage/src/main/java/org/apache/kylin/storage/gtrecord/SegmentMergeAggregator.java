@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.kylin.common.util.Array;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.gridtable.CuboidToGridTableMapping;
+import org.apache.kylin.cube.kv.CubeDimEncMap;
+import org.apache.kylin.dimension.DimensionEncoding;
+import org.apache.kylin.gridtable.GTAggregateScanner;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.measure.MeasureAggregator;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.tuple.ITuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Aggregates the GTRecords of all segments by group key before they are converted to tuples,
+ * so the query engine receives one row per key instead of one per key and segment.
+ *
+ * Dictionaries differ from segment to segment, so the group key is made of the decoded dimension values.
+ * A merged row keeps the record of the first segment that has the key, with its measures replaced
+ * by the aggregated ones, and is converted to a tuple by that segment's converter.
+ *
+ * When the aggregated rows exceed the memory budget, they are handed on and aggregation starts over.
+ * The query engine aggregates again anyway, so the result stays correct.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class SegmentMergeAggregator implements Iterator<Iterator<ITuple>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentMergeAggregator.class);
+
+    private final List<SegmentCubeTupleIterator> segIterators;
+    private final SegmentInput[] inputs;
+    private final long memThreshold;
+
+    private int curInput = 0;
+    private long inputRowCount = 0;
+    private long outputRowCount = 0;
+
+    private List<GTRecord>[] batch; // the merged records of each segment, waiting to be converted
+    private int batchSeg;
+
+    public SegmentMergeAggregator(List<SegmentCubeTupleIterator> segIterators, Cuboid cuboid, Set<TblColRef> selectedDimensions, long memThreshold) {
+        this(segIterators, createInputs(segIterators, cuboid, selectedDimensions), memThreshold);
+    }
+
+    SegmentMergeAggregator(List<SegmentCubeTupleIterator> segIterators, SegmentInput[] inputs, long memThreshold) {
+        this.segIterators = segIterators;
+        this.inputs = inputs;
+        this.memThreshold = memThreshold;
+    }
+
+    private static SegmentInput[] createInputs(List<SegmentCubeTupleIterator> segIterators, Cuboid cuboid, Set<TblColRef> selectedDimensions) {
+        SegmentInput[] inputs = new SegmentInput[segIterators.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new SegmentInput(segIterators.get(i), cuboid, selectedDimensions);
+        }
+        return inputs;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            if (batch != null) {
+                while (batchSeg < batch.length && batch[batchSeg].isEmpty())
+                    batchSeg++;
+                if (batchSeg < batch.length)
+                    return true;
+                batch = null;
+            }
+            if (curInput >= inputs.length)
+                return false;
+            aggregateBatch();
+        }
+    }
+
+    @Override
+    public Iterator<ITuple> next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        Iterator<ITuple> tuples = toTuples(batchSeg, batch[batchSeg].iterator());
+        batchSeg++;
+        return tuples;
+    }
+
+    /** converts merged records by the converter of the segment they were taken from */
+    Iterator<ITuple> toTuples(int seg, Iterator<GTRecord> records) {
+        SegmentCubeTupleIterator segItr = segIterators.get(seg);
+        segItr.setGTItr(records);
+        return segItr;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void aggregateBatch() {
+        Map<Array<String>, MergedRow> map = new LinkedHashMap<Array<String>, MergedRow>();
+        long memSize = 0;
+
+        while (curInput < inputs.length && memSize <= memThreshold) {
+            SegmentInput input = inputs[curInput];
+            if (!input.hasNext()) {
+                curInput++;
+                continue;
+            }
+
+            GTRecord r = input.next();
+            inputRowCount++;
+
+            Array<String> key = input.createKey(r);
+            MergedRow row = map.get(key);
+            if (row == null) {
+                row = new MergedRow(curInput, new GTRecord(r), input.newAggregators(r));
+                map.put(key, row);
+                memSize += estimateSizeOf(key) + GTAggregateScanner.estimateSizeOf(row.aggrs) + r.sizeOf(r.getInfo().getAllColumns()) + 64;
+            }
+            input.aggregate(r, row.aggrs);
+        }
+
+        if (curInput < inputs.length) {
+            logger.info("Segment merge aggregation handed on " + map.size() + " rows early, the estimated memory " + memSize + " exceeds " + memThreshold);
+        }
+
+        batch = new List[inputs.length];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = Lists.newArrayList();
+        }
+        for (MergedRow row : map.values()) {
+            batch[row.seg].add(inputs[row.seg].fillMetrics(row));
+        }
+        batchSeg = 0;
+
+        outputRowCount += map.size();
+        if (curInput >= inputs.length) {
+            logger.info("Segment merge aggregation reduced " + inputRowCount + " rows of " + inputs.length + " segments to " + outputRowCount);
+        }
+    }
+
+    private static long estimateSizeOf(Array<String> key) {
+        long size = 16 + key.data.length * 8;
+        for (String s : key.data) {
+            if (s != null)
+                size += 40 + s.length() * 2;
+        }
+        return size;
+    }
+
+    private static class MergedRow {
+        final int seg;
+        final GTRecord record;
+        final MeasureAggregator[] aggrs;
+
+        MergedRow(int seg, GTRecord record, MeasureAggregator[] aggrs) {
+            this.seg = seg;
+            this.record = record;
+            this.aggrs = aggrs;
+        }
+    }
+
+    static class SegmentInput {
+        final Iterator<GTRecord> records;
+        final int[] dimCols;
+        final DimensionEncoding[] dimEncs;
+        final ImmutableBitSet metrics;
+        final String[] metricsAggrFuncs;
+
+        SegmentInput(SegmentCubeTupleIterator segItr, Cuboid cuboid, Set<TblColRef> selectedDimensions) {
+            this.records = segItr.gtItr;
+
+            CuboidToGridTableMapping mapping = cuboid.getCuboidToGridTableMapping();
+            CubeDimEncMap dimEncMap = segItr.scanner.getSegment().getDimensionEncodingMap();
+            dimCols = new int[selectedDimensions.size()];
+            dimEncs = new DimensionEncoding[selectedDimensions.size()];
+            int i = 0;
+            for (TblColRef dim : selectedDimensions) {
+                dimCols[i] = mapping.getIndexOf(dim);
+                dimEncs[i] = dimEncMap.get(dim);
+                i++;
+            }
+
+            GTScanRequest req = segItr.scanner.scanRequest;
+            metrics = req == null ? null : req.getAggrMetrics();
+            metricsAggrFuncs = req == null ? null : req.getAggrMetricsFuncs();
+        }
+
+        SegmentInput(Iterator<GTRecord> records, int[] dimCols, DimensionEncoding[] dimEncs, ImmutableBitSet metrics, String[] metricsAggrFuncs) {
+            this.records = records;
+            this.dimCols = dimCols;
+            this.dimEncs = dimEncs;
+            this.metrics = metrics;
+            this.metricsAggrFuncs = metricsAggrFuncs;
+        }
+
+        boolean hasNext() {
+            return metrics != null && records.hasNext();
+        }
+
+        GTRecord next() {
+            return records.next();
+        }
+
+        Array<String> createKey(GTRecord r) {
+            String[] values = new String[dimCols.length];
+            for (int i = 0; i < dimCols.length; i++) {
+                ByteArray bytes = r.get(dimCols[i]);
+                values[i] = bytes == null || bytes.array() == null ? null : dimEncs[i].decode(bytes.array(), bytes.offset(), bytes.length());
+            }
+            return new Array<String>(values);
+        }
+
+        MeasureAggregator[] newAggregators(GTRecord r) {
+            return r.getInfo().getCodeSystem().newMetricsAggregators(metrics, metricsAggrFuncs);
+        }
+
+        void aggregate(GTRecord r, MeasureAggregator[] aggrs) {
+            GTInfo info = r.getInfo();
+            for (int i = 0; i < aggrs.length; i++) {
+                int col = metrics.trueBitAt(i);
+                ByteArray bytes = r.get(col);
+                if (bytes == null || bytes.array() == null)
+                    continue;
+                aggrs[i].aggregate(info.getCodeSystem().decodeColumnValue(col, bytes.asBuffer()));
+            }
+        }
+
+        GTRecord fillMetrics(MergedRow row) {
+            Object[] values = new Object[row.aggrs.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = row.aggrs[i].getState();
+            }
+            return row.record.setValues(metrics, new ByteArray(row.record.getInfo().getMaxRecordLength()), values);
+        }
+    }
+}
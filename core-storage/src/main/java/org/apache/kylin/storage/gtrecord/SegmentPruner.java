@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.util.Set;
+
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.DimensionRangeInfo;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks a filter against the dimension value ranges recorded on a segment, so segments
+ * that cannot match are skipped before any scanner is created for them.
+ *
+ * The check is conservative: whenever a condition cannot be decided from the ranges, the segment is kept.
+ */
+public class SegmentPruner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentPruner.class);
+
+    private final TupleFilter filter;
+
+    public SegmentPruner(TupleFilter filter) {
+        this.filter = filter;
+    }
+
+    /** Return false if the segment surely has no row that satisfies the filter. */
+    public boolean check(CubeSegment seg) {
+        if (filter == null)
+            return true;
+
+        boolean result = mayMatch(filter, seg);
+        if (!result)
+            logger.info("Pruned segment {} by dimension ranges", seg);
+        return result;
+    }
+
+    private boolean mayMatch(TupleFilter filter, CubeSegment seg) {
+        switch (filter.getOperator()) {
+        case AND:
+            for (TupleFilter child : filter.getChildren()) {
+                if (!mayMatch(child, seg))
+                    return false;
+            }
+            return true;
+        case OR:
+            for (TupleFilter child : filter.getChildren()) {
+                if (mayMatch(child, seg))
+                    return true;
+            }
+            return filter.getChildren().isEmpty();
+        default:
+            if (filter instanceof LogicalTupleFilter)
+                return true; // NOT
+            if (filter instanceof CompareTupleFilter)
+                return mayMatch((CompareTupleFilter) filter, seg);
+            return true;
+        }
+    }
+
+    private boolean mayMatch(CompareTupleFilter filter, CubeSegment seg) {
+        if (filter.getColumn() == null || filter.getFunction() != null || filter.getVariables().containsValue(null))
+            return true;
+
+        DimensionRangeInfo range = seg.getDimensionRangeInfo(filter.getColumn());
+        if (range == null)
+            return true;
+
+        Set<?> values = filter.getValues();
+        if (values.isEmpty() || values.contains(null))
+            return true;
+
+        DataType type = filter.getColumn().getType();
+        String first = String.valueOf(filter.getFirstValue());
+        try {
+            switch (filter.getOperator()) {
+            case EQ:
+            case IN:
+                for (Object v : values) {
+                    if (range.mayContain(String.valueOf(v), type))
+                        return true;
+                }
+                return false;
+            case LT:
+                return range.mayContainLessThan(first, type, false);
+            case LTE:
+                return range.mayContainLessThan(first, type, true);
+            case GT:
+                return range.mayContainGreaterThan(first, type, false);
+            case GTE:
+                return range.mayContainGreaterThan(first, type, true);
+            default:
+                return true;
+            }
+        } catch (IllegalArgumentException e) {
+            // the constant does not parse as the column type, leave it to the scan
+            logger.debug("Cannot check " + filter + " against " + range, e);
+            return true;
+        }
+    }
+}
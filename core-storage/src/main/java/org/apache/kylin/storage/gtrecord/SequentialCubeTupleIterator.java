@@ -26,6 +26,7 @@ import java.util.Set;
 import javax.annotation.Nullable;
 
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.MemoryBudgetController;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.TblColRef;
@@ -63,10 +64,23 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
             segmentCubeTupleIterators.add(new SegmentCubeTupleIterator(scanner, cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context));
         }
 
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
         this.storagePushDownLimit = context.getStoragePushDownLimit();
-        if (!supportLimitPushDown || storagePushDownLimit > KylinConfig.getInstanceFromEnv().getStoragePushDownLimitMax()) {
-            //normal case
-            tupleIterator = Iterators.concat(segmentCubeTupleIterators.iterator());
+        if (!supportLimitPushDown || storagePushDownLimit > config.getStoragePushDownLimitMax()) {
+            if (needMergeAggregation(config, context)) {
+                //aggregate across segments before converting to tuples, the query engine aggregates the rest
+                long memThreshold = (long) config.getQuerySegmentMergeAggregationMemMB() * MemoryBudgetController.ONE_MB;
+                tupleIterator = Iterators.concat(new SegmentMergeAggregator(segmentCubeTupleIterators, cuboid, selectedDimensions, memThreshold));
+            } else {
+                //normal case
+                tupleIterator = Iterators.concat(segmentCubeTupleIterators.iterator());
+            }
+
+            //each shard and segment returns its own top k rows, pick the top k of all
+            int topKIndex = context.isTopKEnabled() ? getTupleIndex(context.getTopKMetric(), returnTupleInfo) : -1;
+            if (topKIndex >= 0) {
+                tupleIterator = new TopKTupleIterator(tupleIterator, topKIndex, context.isTopKDescending(), context.getStorageTopK());
+            }
         } else {
             //query with limit
             Iterator<Iterator<ITuple>> transformed = Iterators.transform(segmentCubeTupleIterators.iterator(), new Function<SegmentCubeTupleIterator, Iterator<ITuple>>() {
@@ -80,6 +94,21 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         }
     }
 
+    private int getTupleIndex(FunctionDesc metric, TupleInfo tupleInfo) {
+        if (metric.needRewrite()) {
+            String rewriteFieldName = metric.getRewriteFieldName();
+            return tupleInfo.hasField(rewriteFieldName) ? tupleInfo.getFieldIndex(rewriteFieldName) : -1;
+        } else {
+            TblColRef col = metric.getParameter().getColRefs().get(0);
+            return tupleInfo.hasColumn(col) ? tupleInfo.getColumnIndex(col) : -1;
+        }
+    }
+
+    private boolean needMergeAggregation(KylinConfig config, StorageContext context) {
+        return config.isQuerySegmentMergeAggregationEnabled() && segmentCubeTupleIterators.size() > 1 //
+                && context.isNeedStorageAggregation() && !context.isExactAggregation();
+    }
+
     @Override
     public boolean hasNext() {
         return tupleIterator.hasNext();
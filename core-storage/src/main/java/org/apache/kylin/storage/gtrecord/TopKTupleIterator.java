@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.kylin.gridtable.GTTopKScanner;
+import org.apache.kylin.metadata.tuple.ITuple;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Picks the top K tuples by one value out of the top K lists returned by every shard and segment.
+ * Input tuples may be reused by the upstream, so the kept ones are copied.
+ */
+@SuppressWarnings("rawtypes")
+public class TopKTupleIterator implements Iterator<ITuple> {
+
+    private final Iterator<ITuple> input;
+    private final int valueIndex;
+    private final boolean descending;
+    private final int k;
+
+    private Iterator<ITuple> output;
+
+    public TopKTupleIterator(Iterator<ITuple> input, int valueIndex, boolean descending, int k) {
+        this.input = input;
+        this.valueIndex = valueIndex;
+        this.descending = descending;
+        this.k = k;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (output == null)
+            output = pickTopK();
+        return output.hasNext();
+    }
+
+    @Override
+    public ITuple next() {
+        if (output == null)
+            output = pickTopK();
+        return output.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private Iterator<ITuple> pickTopK() {
+        // the worst kept tuple is at the head of the heap
+        Comparator<ITuple> worstFirst = new Comparator<ITuple>() {
+            @Override
+            public int compare(ITuple o1, ITuple o2) {
+                int c = GTTopKScanner.compareValues(valueOf(o1), valueOf(o2));
+                return descending ? c : -c;
+            }
+        };
+        PriorityQueue<ITuple> heap = new PriorityQueue<ITuple>(Math.max(1, Math.min(k, 1024)), worstFirst);
+
+        while (k > 0 && input.hasNext()) {
+            ITuple tuple = input.next();
+            if (heap.size() < k) {
+                heap.offer(tuple.makeCopy());
+            } else if (worstFirst.compare(tuple, heap.peek()) > 0) {
+                heap.poll();
+                heap.offer(tuple.makeCopy());
+            }
+        }
+
+        List<ITuple> result = Lists.newArrayListWithCapacity(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(heap.poll());
+        }
+        Collections.reverse(result);
+        return result.iterator();
+    }
+
+    private Comparable valueOf(ITuple tuple) {
+        return (Comparable) tuple.getAllValues()[valueIndex];
+    }
+}
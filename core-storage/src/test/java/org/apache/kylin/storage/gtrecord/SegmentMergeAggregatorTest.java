@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.kylin.storage.gtrecord;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kylin.common.util.Array;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.UnitTestSupport;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.tuple.ITuple;
+import org.apache.kylin.storage.gtrecord.SegmentMergeAggregator.SegmentInput;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Groups by the first two columns of the basic grid table and sums the bigint and decimal columns. The merged
+ * records are collected instead of being converted to tuples.
+ */
+public class SegmentMergeAggregatorTest extends LocalFileMetadataTestCase {
+
+    static GTInfo INFO;
+    static final ImmutableBitSet METRICS = new ImmutableBitSet(3, 5);
+    static final String[] FUNCS = new String[] { "SUM", "SUM" };
+
+    @BeforeClass
+    public static void beforeClass() {
+        staticCreateTestMetadata();
+        INFO = UnitTestSupport.basicInfo();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testSameGroupAcrossSegments() {
+        List<List<GTRecord>> segments = Lists.newArrayList();
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 10, "1.5"), rec("2015-01-14", "B", 20, "2.0")));
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 5, "0.5"), rec("2015-01-15", "C", 7, "1.0")));
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 1, "1.0"), rec("2015-01-14", "B", 3, "0.0")));
+
+        List<Merged> merged = aggregate(segments, Long.MAX_VALUE);
+
+        // one row per group, converted by the first segment that has the group
+        assertEquals(3, merged.size());
+        assertMerged(merged.get(0), 0, "2015-01-14", "A", 16, "3.0");
+        assertMerged(merged.get(1), 0, "2015-01-14", "B", 23, "2.0");
+        assertMerged(merged.get(2), 1, "2015-01-15", "C", 7, "1.0");
+    }
+
+    @Test
+    public void testDistinctGroups() {
+        List<List<GTRecord>> segments = Lists.newArrayList();
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 10, "1.5")));
+        segments.add(Lists.newArrayList(rec("2015-01-15", "A", 5, "0.5")));
+        segments.add(Lists.newArrayList(rec("2015-01-14", "B", 1, "1.0")));
+
+        List<Merged> merged = aggregate(segments, Long.MAX_VALUE);
+
+        assertEquals(3, merged.size());
+        assertMerged(merged.get(0), 0, "2015-01-14", "A", 10, "1.5");
+        assertMerged(merged.get(1), 1, "2015-01-15", "A", 5, "0.5");
+        assertMerged(merged.get(2), 2, "2015-01-14", "B", 1, "1.0");
+    }
+
+    @Test
+    public void testEmptySegment() {
+        List<List<GTRecord>> segments = Lists.newArrayList();
+        segments.add(Lists.<GTRecord> newArrayList());
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 10, "1.5")));
+        segments.add(Lists.<GTRecord> newArrayList());
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 2, "0.5")));
+
+        List<Merged> merged = aggregate(segments, Long.MAX_VALUE);
+
+        assertEquals(1, merged.size());
+        assertMerged(merged.get(0), 1, "2015-01-14", "A", 12, "2.0");
+
+        segments.clear();
+        segments.add(Lists.<GTRecord> newArrayList());
+        segments.add(Lists.<GTRecord> newArrayList());
+        assertEquals(0, aggregate(segments, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testMemoryLimitHandsOnUnmerged() {
+        List<List<GTRecord>> segments = Lists.newArrayList();
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 10, "1.5"), rec("2015-01-14", "B", 20, "2.0")));
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 5, "0.5"), rec("2015-01-15", "C", 7, "1.0")));
+        segments.add(Lists.newArrayList(rec("2015-01-14", "A", 1, "1.0"), rec("2015-01-14", "B", 3, "0.0")));
+
+        // no room for more than one group at a time, every row is handed on as it is
+        List<Merged> merged = aggregate(segments, 0);
+        assertEquals(6, merged.size());
+
+        // what the query engine gets after its own aggregation is still right
+        Map<String, Long> counts = Maps.newHashMap();
+        Map<String, BigDecimal> amounts = Maps.newHashMap();
+        for (Merged m : merged) {
+            String key = m.date + "," + m.name;
+            long count = m.count;
+            BigDecimal amount = m.amount;
+            counts.put(key, counts.containsKey(key) ? counts.get(key) + count : count);
+            amounts.put(key, amounts.containsKey(key) ? amounts.get(key).add(amount) : amount);
+        }
+        assertEquals(3, counts.size());
+        assertEquals(16L, (long) counts.get("2015-01-14,A"));
+        assertEquals(23L, (long) counts.get("2015-01-14,B"));
+        assertEquals(7L, (long) counts.get("2015-01-15,C"));
+        assertEquals(0, new BigDecimal("3.0").compareTo(amounts.get("2015-01-14,A")));
+        assertEquals(0, new BigDecimal("2.0").compareTo(amounts.get("2015-01-14,B")));
+        assertEquals(0, new BigDecimal("1.0").compareTo(amounts.get("2015-01-15,C")));
+    }
+
+    private static List<Merged> aggregate(List<List<GTRecord>> segments, long memThreshold) {
+        SegmentInput[] inputs = new SegmentInput[segments.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new SegmentInput(segments.get(i).iterator(), new int[] { 0, 1 }, null, METRICS, FUNCS) {
+                @Override
+                Array<String> createKey(GTRecord r) {
+                    Object[] values = r.getValues();
+                    return new Array<String>(new String[] { (String) values[0], (String) values[1] });
+                }
+            };
+        }
+
+        final List<Merged> result = Lists.newArrayList();
+        SegmentMergeAggregator aggregator = new SegmentMergeAggregator(null, inputs, memThreshold) {
+            @Override
+            Iterator<ITuple> toTuples(int seg, Iterator<GTRecord> records) {
+                while (records.hasNext()) {
+                    result.add(new Merged(seg, records.next().getValues()));
+                }
+                return Collections.<ITuple> emptyIterator();
+            }
+        };
+        while (aggregator.hasNext()) {
+            aggregator.next();
+        }
+        return result;
+    }
+
+    private static GTRecord rec(String date, String name, long count, String amount) {
+        return new GTRecord(INFO).setValues(date, name, "Food", new LongMutable(count), new BigDecimal(amount));
+    }
+
+    private static void assertMerged(Merged merged, int seg, String date, String name, long count, String amount) {
+        assertEquals(seg, merged.seg);
+        assertEquals(date, merged.date);
+        assertEquals(name, merged.name);
+        assertEquals(count, merged.count);
+        assertEquals(0, new BigDecimal(amount).compareTo(merged.amount));
+    }
+
+    private static class Merged {
+        final int seg;
+        final String date;
+        final String name;
+        final long count;
+        final BigDecimal amount;
+
+        Merged(int seg, Object[] values) {
+            // the decoded long is reused by the serializer, keep a copy
+            this.seg = seg;
+            this.date = (String) values[0];
+            this.name = (String) values[1];
+            this.count = ((LongMutable) values[3]).get();
+            this.amount = (BigDecimal) values[4];
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.DimensionRangeInfo;
+import org.apache.kylin.dict.AppendTrieDictionary;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.storage.translate.ColumnValueRangeTest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SegmentPrunerTest extends LocalFileMetadataTestCase {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testRangeFromDictionary() {
+        TblColRef col = ColumnValueRangeTest.mockupTblColRef();
+        Dictionary<String> dict = ColumnValueRangeTest.mockupDictionary(col, "CN", "US", "DE");
+
+        DimensionRangeInfo r1 = DimensionRangeInfo.fromDictionary(dict, 10);
+        assertEquals("CN", r1.getMin());
+        assertEquals("US", r1.getMax());
+        assertEquals(3, r1.getValues().size());
+
+        DimensionRangeInfo r2 = DimensionRangeInfo.fromDictionary(dict, 2);
+        assertNull(r2.getValues());
+
+        DimensionRangeInfo merged = DimensionRangeInfo.union(r1, new DimensionRangeInfo("AU", "FR", null), col.getType(), 10);
+        assertEquals("AU", merged.getMin());
+        assertEquals("US", merged.getMax());
+        assertNull(merged.getValues());
+    }
+
+    @Test
+    public void testPrune() {
+        TblColRef col = ColumnValueRangeTest.mockupTblColRef();
+        CubeSegment seg = mockupSegment(col, "CN", "DE", "US");
+        CubeSegment unknownSeg = mockupSegment(col);
+
+        assertTrue(new SegmentPruner(null).check(seg));
+        assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.EQ, "DE")).check(seg));
+        assertFalse(new SegmentPruner(compare(col, FilterOperatorEnum.EQ, "FR")).check(seg));
+        assertFalse(new SegmentPruner(compare(col, FilterOperatorEnum.EQ, "ZZ")).check(seg));
+        assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.EQ, "FR")).check(unknownSeg));
+
+        assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.IN, "FR", "US")).check(seg));
+        assertFalse(new SegmentPruner(compare(col, FilterOperatorEnum.IN, "FR", "JP")).check(seg));
+
+        assertFalse(new SegmentPruner(compare(col, FilterOperatorEnum.LT, "CN")).check(seg));
+        assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.LTE, "CN")).check(seg));
+        assertFalse(new SegmentPruner(compare(col, FilterOperatorEnum.GT, "US")).check(seg));
+        assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.GTE, "US")).check(seg));
+        assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.NEQ, "CN")).check(seg));
+
+        assertFalse(new SegmentPruner(logical(FilterOperatorEnum.AND, compare(col, FilterOperatorEnum.EQ, "CN"), compare(col, FilterOperatorEnum.EQ, "FR"))).check(seg));
+        assertTrue(new SegmentPruner(logical(FilterOperatorEnum.OR, compare(col, FilterOperatorEnum.EQ, "CN"), compare(col, FilterOperatorEnum.EQ, "FR"))).check(seg));
+        assertFalse(new SegmentPruner(logical(FilterOperatorEnum.OR, compare(col, FilterOperatorEnum.EQ, "JP"), compare(col, FilterOperatorEnum.EQ, "FR"))).check(seg));
+        assertTrue(new SegmentPruner(logical(FilterOperatorEnum.NOT, compare(col, FilterOperatorEnum.EQ, "FR"))).check(seg));
+    }
+
+    @Test
+    public void testGlobalDictionaryNeverPrunes() throws IOException {
+        TblColRef col = ColumnValueRangeTest.mockupTblColRef();
+        File baseDir = new File(System.getProperty("java.io.tmpdir"), "kylin_segment_pruner_dict_" + System.currentTimeMillis());
+        try {
+            // ids are given in append order, which is not the value order
+            AppendTrieDictionary.Builder<String> builder = AppendTrieDictionary.Builder.create(baseDir.getAbsolutePath());
+            for (String value : new String[] { "US", "CN", "DE" }) {
+                builder.addValue(value);
+            }
+            AppendTrieDictionary<String> dict = builder.build(0);
+            assertNull(DimensionRangeInfo.fromDictionary(dict, 10));
+
+            CubeSegment seg = mockupSegment(col);
+            seg.putDimensionRangeInfo(col, DimensionRangeInfo.fromDictionary(dict, 10));
+            assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.EQ, "CN")).check(seg));
+            assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.EQ, "FR")).check(seg));
+            assertTrue(new SegmentPruner(compare(col, FilterOperatorEnum.LT, "AA")).check(seg));
+        } finally {
+            FileUtils.deleteQuietly(baseDir);
+        }
+    }
+
+    private static CubeSegment mockupSegment(TblColRef col, String... values) {
+        CubeInstance cube = new CubeInstance();
+        cube.setName("test_cube");
+        CubeSegment seg = new CubeSegment();
+        seg.setCubeInstance(cube);
+        seg.setName("test_seg");
+        if (values.length > 0) {
+            Dictionary<String> dict = ColumnValueRangeTest.mockupDictionary(col, values);
+            seg.putDimensionRangeInfo(col, DimensionRangeInfo.fromDictionary(dict, 10));
+        }
+        return seg;
+    }
+
+    private static TupleFilter compare(TblColRef col, FilterOperatorEnum op, String... values) {
+        CompareTupleFilter filter = new CompareTupleFilter(op);
+        filter.addChild(new ColumnTupleFilter(col));
+        filter.addChild(new ConstantTupleFilter(Arrays.asList(values)));
+        return filter;
+    }
+
+    private static TupleFilter logical(FilterOperatorEnum op, TupleFilter... children) {
+        LogicalTupleFilter filter = new LogicalTupleFilter(op);
+        filter.addChildren(Arrays.asList(children));
+        return filter;
+    }
+}
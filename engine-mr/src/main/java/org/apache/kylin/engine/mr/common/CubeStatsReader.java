@@ -74,6 +74,7 @@ public class CubeStatsReader {
     final CubeSegment seg;
     final int samplingPercentage;
     final double mapperOverlapRatioOfFirstBuild; // only makes sense for the first build, is meaningless after merge
+    final int formatVersion;
     final Map<Long, HyperLogLogPlusCounter> cuboidRowEstimatesHLL;
 
     public CubeStatsReader(CubeSegment cubeSegment, KylinConfig kylinConfig) throws IOException {
@@ -91,6 +92,7 @@ public class CubeStatsReader {
 
             int percentage = 100;
             double mapperOverlapRatio = 0;
+            int formatVersion = CuboidStatsUtil.FORMAT_VERSION_UNKNOWN;
             Map<Long, HyperLogLogPlusCounter> counterMap = Maps.newHashMap();
 
             LongWritable key = (LongWritable) ReflectionUtils.newInstance(reader.getKeyClass(), hadoopConf);
@@ -100,6 +102,8 @@ public class CubeStatsReader {
                     percentage = Bytes.toInt(value.getBytes());
                 } else if (key.get() == -1) {
                     mapperOverlapRatio = Bytes.toDouble(value.getBytes());
+                } else if (key.get() == CuboidStatsUtil.FORMAT_VERSION_KEY) {
+                    formatVersion = Bytes.toInt(value.getBytes());
                 } else {
                     HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(kylinConfig.getCubeStatsHLLPrecision());
                     ByteArray byteArray = new ByteArray(value.getBytes());
@@ -111,6 +115,7 @@ public class CubeStatsReader {
             this.seg = cubeSegment;
             this.samplingPercentage = percentage;
             this.mapperOverlapRatioOfFirstBuild = mapperOverlapRatio;
+            this.formatVersion = formatVersion;
             this.cuboidRowEstimatesHLL = counterMap;
 
         } finally {
@@ -145,6 +150,10 @@ public class CubeStatsReader {
         return mapperOverlapRatioOfFirstBuild;
     }
 
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
     public static Map<Long, Long> getCuboidRowCountMapFromSampling(Map<Long, HyperLogLogPlusCounter> hllcMap, int samplingPercentage) {
         Map<Long, Long> cuboidRowCountMap = Maps.newHashMap();
         for (Map.Entry<Long, HyperLogLogPlusCounter> entry : hllcMap.entrySet()) {
@@ -73,7 +73,6 @@ public class BaseCuboidMapperBase<KEYIN, VALUEIN> extends KylinMapper<KEYIN, VAL
     protected MeasureIngester<?>[] aggrIngesters;
     protected Map<TblColRef, Dictionary<String>> dictionaryMap;
     protected Object[] measures;
-    protected byte[][] keyBytesBuf;
     protected BytesSplitter bytesSplitter;
     protected AbstractRowKeyEncoder rowKeyEncoder;
     protected BufferedMeasureEncoder measureCodec;
@@ -81,6 +80,12 @@ public class BaseCuboidMapperBase<KEYIN, VALUEIN> extends KylinMapper<KEYIN, VAL
     protected Text outputKey = new Text();
     protected Text outputValue = new Text();
 
+    // rows buffered to encode their keys column by column
+    protected byte[][][] keyValuesBatch;
+    protected byte[][] valueBatch;
+    protected byte[][] rowKeyBatch;
+    protected int batchCount;
+
     @Override
     protected void setup(Context context) throws IOException {
         super.bindCurrentConfiguration(context.getConfiguration());
@@ -111,8 +116,9 @@ public class BaseCuboidMapperBase<KEYIN, VALUEIN> extends KylinMapper<KEYIN, VAL
         measureCodec = new BufferedMeasureEncoder(cubeDesc.getMeasures());
         measures = new Object[cubeDesc.getMeasures().size()];
 
-        int colCount = cubeDesc.getRowkey().getRowKeyColumns().length;
-        keyBytesBuf = new byte[colCount][];
+        keyValuesBatch = new byte[BatchConstants.BASE_CUBOID_BATCH_SIZE][][];
+        valueBatch = new byte[BatchConstants.BASE_CUBOID_BATCH_SIZE][];
+        rowKeyBatch = new byte[BatchConstants.BASE_CUBOID_BATCH_SIZE][];
 
         aggrIngesters = MeasureIngester.create(cubeDesc.getMeasures());
         dictionaryMap = cubeSegment.buildDictionaryMap();
@@ -140,15 +146,20 @@ public class BaseCuboidMapperBase<KEYIN, VALUEIN> extends KylinMapper<KEYIN, VAL
     }
 
     protected byte[] buildKey(SplittedBytes[] splitBuffers) {
+        return rowKeyEncoder.encode(buildKeyValues(splitBuffers));
+    }
+
+    protected byte[][] buildKeyValues(SplittedBytes[] splitBuffers) {
         int[] rowKeyColumnIndexes = intermediateTableDesc.getRowKeyColumnIndexes();
-        for (int i = 0; i < baseCuboid.getColumns().size(); i++) {
+        byte[][] keyValues = new byte[baseCuboid.getColumns().size()][];
+        for (int i = 0; i < keyValues.length; i++) {
             int index = rowKeyColumnIndexes[i];
-            keyBytesBuf[i] = Arrays.copyOf(splitBuffers[index].value, splitBuffers[index].length);
-            if (isNull(keyBytesBuf[i])) {
-                keyBytesBuf[i] = null;
+            keyValues[i] = Arrays.copyOf(splitBuffers[index].value, splitBuffers[index].length);
+            if (isNull(keyValues[i])) {
+                keyValues[i] = null;
             }
         }
-        return rowKeyEncoder.encode(keyBytesBuf);
+        return keyValues;
     }
 
     private ByteBuffer buildValue(SplittedBytes[] splitBuffers) {
@@ -194,15 +205,76 @@ public class BaseCuboidMapperBase<KEYIN, VALUEIN> extends KylinMapper<KEYIN, VAL
             return Bytes.toString(bytes);
     }
 
-    protected void outputKV(Context context) throws IOException, InterruptedException {
+    /**
+     * Buffers the current row, its key is encoded together with the rest of the batch in flushKV().
+     * A bad row throws before anything is buffered.
+     */
+    protected void bufferKV() {
         intermediateTableDesc.sanityCheck(bytesSplitter);
 
-        byte[] rowKey = buildKey(bytesSplitter.getSplitBuffers());
-        outputKey.set(rowKey, 0, rowKey.length);
-
+        byte[][] keyValues = buildKeyValues(bytesSplitter.getSplitBuffers());
         ByteBuffer valueBuf = buildValue(bytesSplitter.getSplitBuffers());
-        outputValue.set(valueBuf.array(), 0, valueBuf.position());
-        context.write(outputKey, outputValue);
+        keyValuesBatch[batchCount] = keyValues;
+        valueBatch[batchCount] = Arrays.copyOf(valueBuf.array(), valueBuf.position());
+        batchCount++;
+    }
+
+    protected boolean isBatchFull() {
+        return batchCount == keyValuesBatch.length;
+    }
+
+    /**
+     * Encodes and writes the buffered rows. Rows that fail to encode are bad records,
+     * a failed write is not and is thrown.
+     */
+    protected void flushKV(Context context) throws IOException, InterruptedException {
+        int n = batchCount;
+        if (n == 0)
+            return;
+
+        try {
+            rowKeyEncoder.encode(keyValuesBatch, n, rowKeyBatch);
+        } catch (RuntimeException ex) {
+            // find out the bad rows one by one
+            for (int i = 0; i < n; i++) {
+                try {
+                    rowKeyBatch[i] = rowKeyEncoder.encode(keyValuesBatch[i]);
+                } catch (RuntimeException e) {
+                    rowKeyBatch[i] = null;
+                    handleErrorRecord(toString(keyValuesBatch[i]), e);
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (rowKeyBatch[i] != null) {
+                outputKey.set(rowKeyBatch[i], 0, rowKeyBatch[i].length);
+                outputValue.set(valueBatch[i], 0, valueBatch[i].length);
+                context.write(outputKey, outputValue);
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            keyValuesBatch[i] = null;
+            valueBatch[i] = null;
+            rowKeyBatch[i] = null;
+        }
+        batchCount = 0;
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        flushKV(context);
+    }
+
+    private String toString(byte[][] keyValues) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < keyValues.length; i++) {
+            if (i > 0)
+                buf.append(", ");
+            buf.append(keyValues[i] == null ? "null" : Bytes.toString(keyValues[i]));
+        }
+        return buf.toString();
     }
 
     protected byte[][] convertUTF8Bytes(String[] row) throws UnsupportedEncodingException {
@@ -214,8 +286,12 @@ public class BaseCuboidMapperBase<KEYIN, VALUEIN> extends KylinMapper<KEYIN, VAL
     }
 
     protected void handleErrorRecord(BytesSplitter bytesSplitter, Exception ex) throws IOException {
+        handleErrorRecord(bytesSplitter.toString(), ex);
+    }
+
+    private void handleErrorRecord(String record, Exception ex) throws IOException {
 
-        logger.error("Insane record: " + bytesSplitter, ex);
+        logger.error("Insane record: " + record, ex);
 
         // TODO expose errorRecordCounter as hadoop counter
         errorRecordCounter++;
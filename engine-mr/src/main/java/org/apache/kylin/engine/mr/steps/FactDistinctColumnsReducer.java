@@ -62,6 +62,8 @@ public class FactDistinctColumnsReducer extends KylinReducer<Text, Text, NullWri
     protected CubeDesc cubeDesc;
     private long totalRowsBeforeMerge = 0;
     private int samplingPercentage;
+    private long countedRows = 0;
+    private long sampledRows = 0;
     private List<ByteArray> colValues;
     private TblColRef col = null;
     private boolean isStatistics = false;
@@ -113,6 +115,13 @@ public class FactDistinctColumnsReducer extends KylinReducer<Text, Text, NullWri
         } else {
             // for hll
             long cuboidId = Bytes.toLong(key.getBytes(), 1, Bytes.SIZEOF_LONG);
+            if (cuboidId == FactDistinctHiveColumnsMapper.SAMPLED_ROWS_KEY) {
+                for (Text value : values) {
+                    countedRows += Bytes.toLong(value.getBytes(), 0, Bytes.SIZEOF_LONG);
+                    sampledRows += Bytes.toLong(value.getBytes(), Bytes.SIZEOF_LONG, Bytes.SIZEOF_LONG);
+                }
+                return;
+            }
             for (Text value : values) {
                 HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(cubeConfig.getCubeStatsHLLPrecision());
                 ByteBuffer bf = ByteBuffer.wrap(value.getBytes(), 0, value.getLength());
@@ -169,6 +178,11 @@ public class FactDistinctColumnsReducer extends KylinReducer<Text, Text, NullWri
                 colValues.clear();
             }
         } else {
+            if (countedRows < sampledRows) {
+                // the mappers counted reservoir samples of their rows
+                samplingPercentage = (int) Math.max(1, Math.round(samplingPercentage * (double) countedRows / sampledRows));
+            }
+
             //output the hll info;
             long grandTotal = 0;
             for (HyperLogLogPlusCounter hll : cuboidHLLMap.values()) {
@@ -49,11 +49,16 @@ public class HiveToBaseCuboidMapper<KEYIN> extends BaseCuboidMapperBase<KEYIN, O
             String[] row = flatTableInputFormat.parseMapperInput(value);
             bytesSplitter.setBuffers(convertUTF8Bytes(row));
             //take care of the data in bytesSplitter
-            outputKV(context);
+            bufferKV();
 
         } catch (Exception ex) {
             handleErrorRecord(bytesSplitter, ex);
         }
+
+        // outside of the try, a failed write is not a bad record
+        if (isBatchFull()) {
+            flushKV(context);
+        }
     }
 
 }
@@ -30,6 +30,7 @@ import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.CubeUpdate;
+import org.apache.kylin.cube.DimensionRangeInfo;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.dict.DictionaryInfo;
 import org.apache.kylin.dict.DictionaryManager;
@@ -66,6 +67,7 @@ public class MergeDictionaryStep extends AbstractExecutable {
 
             makeDictForNewSegment(conf, cube, newSegment, mergingSegments);
             makeSnapshotForNewSegment(cube, newSegment, mergingSegments);
+            makeDimensionRangeForNewSegment(conf, cube, newSegment, mergingSegments);
 
             CubeUpdate cubeBuilder = new CubeUpdate(cube);
             cubeBuilder.setToUpdateSegs(newSegment);
@@ -164,4 +166,30 @@ public class MergeDictionaryStep extends AbstractExecutable {
         }
     }
 
+    /**
+     * the dimension ranges of the new segment cover those of the merging
+     * segments. a range is dropped if any merging segment does not know it.
+     */
+    private void makeDimensionRangeForNewSegment(KylinConfig conf, CubeInstance cube, CubeSegment newSeg, List<CubeSegment> mergingSegments) {
+        int maxValues = conf.getCubeDimensionRangeMaxValues();
+        for (TblColRef col : cube.getDescriptor().getAllColumnsNeedDictionaryBuilt()) {
+            DimensionRangeInfo merged = null;
+            for (CubeSegment segment : mergingSegments) {
+                DimensionRangeInfo range = segment.getDimensionRangeInfo(col);
+                if (range == null) {
+                    merged = null;
+                    break;
+                }
+                try {
+                    merged = merged == null ? range : DimensionRangeInfo.union(merged, range, col.getType(), maxValues);
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Failed to merge dimension range on " + col, e);
+                    merged = null;
+                    break;
+                }
+            }
+            newSeg.putDimensionRangeInfo(col, merged);
+        }
+    }
+
 }
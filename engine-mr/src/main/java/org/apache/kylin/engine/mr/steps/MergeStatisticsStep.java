@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
@@ -56,7 +57,8 @@ import com.google.common.collect.Maps;
 public class MergeStatisticsStep extends AbstractExecutable {
     private static final Logger logger = LoggerFactory.getLogger(MergeStatisticsStep.class);
 
-    protected Map<Long, HyperLogLogPlusCounter> cuboidHLLMap = Maps.newHashMap();
+    // counters of different stats format versions hash rows differently, so they are merged per version
+    protected Map<Integer, Map<Long, HyperLogLogPlusCounter>> cuboidHLLMapByVersion = Maps.newTreeMap();
 
     public MergeStatisticsStep() {
         super();
@@ -75,6 +77,8 @@ public class MergeStatisticsStep extends AbstractExecutable {
         try {
 
             int averageSamplingPercentage = 0;
+            Map<Integer, Long> inputRecordsByVersion = Maps.newTreeMap();
+            long totalInputRecords = 0;
             for (String segmentId : CubingExecutableUtil.getMergingSegmentIds(this.getParams())) {
                 String fileKey = CubeSegment.getStatisticsResourcePath(CubingExecutableUtil.getCubeName(this.getParams()), segmentId);
                 InputStream is = rs.getResource(fileKey).inputStream;
@@ -91,6 +95,8 @@ public class MergeStatisticsStep extends AbstractExecutable {
 
                 FileSystem fs = HadoopUtil.getFileSystem("file:///" + tempFile.getAbsolutePath());
                 SequenceFile.Reader reader = null;
+                int formatVersion = CuboidStatsUtil.FORMAT_VERSION_UNKNOWN;
+                Map<Long, HyperLogLogPlusCounter> segmentHLLMap = Maps.newHashMap();
                 try {
                     reader = new SequenceFile.Reader(fs, new Path(tempFile.getAbsolutePath()), conf);
                     LongWritable key = (LongWritable) ReflectionUtils.newInstance(reader.getKeyClass(), conf);
@@ -99,16 +105,13 @@ public class MergeStatisticsStep extends AbstractExecutable {
                         if (key.get() == 0L) {
                             // sampling percentage;
                             averageSamplingPercentage += Bytes.toInt(value.getBytes());
+                        } else if (key.get() == CuboidStatsUtil.FORMAT_VERSION_KEY) {
+                            formatVersion = Bytes.toInt(value.getBytes());
                         } else if (key.get() > 0) {
                             HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(kylinConf.getCubeStatsHLLPrecision());
                             ByteArray byteArray = new ByteArray(value.getBytes());
                             hll.readRegisters(byteArray.asBuffer());
-
-                            if (cuboidHLLMap.get(key.get()) != null) {
-                                cuboidHLLMap.get(key.get()).merge(hll);
-                            } else {
-                                cuboidHLLMap.put(key.get(), hll);
-                            }
+                            segmentHLLMap.put(key.get(), hll);
                         }
                     }
                 } catch (Exception e) {
@@ -119,9 +122,25 @@ public class MergeStatisticsStep extends AbstractExecutable {
                     if (tempFile != null)
                         tempFile.delete();
                 }
+
+                mergeCounters(formatVersion, segmentHLLMap);
+                long inputRecords = cube.getSegmentById(segmentId).getInputRecords();
+                Long versionRecords = inputRecordsByVersion.get(formatVersion);
+                inputRecordsByVersion.put(formatVersion, (versionRecords == null ? 0 : versionRecords) + inputRecords);
+                totalInputRecords += inputRecords;
             }
             averageSamplingPercentage = averageSamplingPercentage / CubingExecutableUtil.getMergingSegmentIds(this.getParams()).size();
-            CuboidStatsUtil.writeCuboidStatistics(conf, new Path(CubingExecutableUtil.getMergedStatisticsPath(this.getParams())), cuboidHLLMap, averageSamplingPercentage);
+
+            // keep the counters of the latest version, scale them up to all rows through the sampling percentage
+            int formatVersion = Collections.max(cuboidHLLMapByVersion.keySet());
+            Map<Long, HyperLogLogPlusCounter> cuboidHLLMap = cuboidHLLMapByVersion.get(formatVersion);
+            if (cuboidHLLMapByVersion.size() > 1 && totalInputRecords > 0) {
+                long versionRecords = inputRecordsByVersion.get(formatVersion);
+                int scaledPercentage = (int) Math.max(1, Math.round((double) averageSamplingPercentage * versionRecords / totalInputRecords));
+                logger.warn("Merging statistics of format versions " + cuboidHLLMapByVersion.keySet() + ", only version " + formatVersion + " of " + versionRecords + " out of " + totalInputRecords + " rows is kept, sampling percentage " + averageSamplingPercentage + " is scaled to " + scaledPercentage);
+                averageSamplingPercentage = scaledPercentage;
+            }
+            CuboidStatsUtil.writeCuboidStatistics(conf, new Path(CubingExecutableUtil.getMergedStatisticsPath(this.getParams())), cuboidHLLMap, averageSamplingPercentage, 0, formatVersion);
             Path statisticsFilePath = new Path(CubingExecutableUtil.getMergedStatisticsPath(this.getParams()), BatchConstants.CFG_STATISTICS_CUBOID_ESTIMATION_FILENAME);
             FileSystem fs = statisticsFilePath.getFileSystem(conf);
             FSDataInputStream is = fs.open(statisticsFilePath);
@@ -140,4 +159,20 @@ public class MergeStatisticsStep extends AbstractExecutable {
         }
     }
 
+    private void mergeCounters(int formatVersion, Map<Long, HyperLogLogPlusCounter> segmentHLLMap) {
+        Map<Long, HyperLogLogPlusCounter> cuboidHLLMap = cuboidHLLMapByVersion.get(formatVersion);
+        if (cuboidHLLMap == null) {
+            cuboidHLLMapByVersion.put(formatVersion, segmentHLLMap);
+            return;
+        }
+        for (Map.Entry<Long, HyperLogLogPlusCounter> entry : segmentHLLMap.entrySet()) {
+            HyperLogLogPlusCounter hll = cuboidHLLMap.get(entry.getKey());
+            if (hll != null) {
+                hll.merge(entry.getValue());
+            } else {
+                cuboidHLLMap.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
 }
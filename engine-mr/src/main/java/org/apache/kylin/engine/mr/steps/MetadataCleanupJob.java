@@ -156,6 +156,10 @@ public class MetadataCleanupJob extends AbstractHadoopJob {
             if (System.currentTimeMillis() - lastModified > TIME_THREADSHOLD_FOR_JOB && (ExecutableState.SUCCEED.toString().equals(output.getStatus()) || ExecutableState.DISCARDED.toString().equals(output.getStatus()))) {
                 toDeleteResource.add(ResourceStore.EXECUTE_RESOURCE_ROOT + "/" + executable.getUuid());
                 toDeleteResource.add(ResourceStore.EXECUTE_OUTPUT_RESOURCE_ROOT + "/" + executable.getUuid());
+                String indexPath = ExecutableDao.pathOfJobIndex(executable, output.getStatus(), output.getLastModified());
+                if (indexPath != null) {
+                    toDeleteResource.add(indexPath);
+                }
 
                 for (ExecutablePO task : executable.getTasks()) {
                     toDeleteResource.add(ResourceStore.EXECUTE_OUTPUT_RESOURCE_ROOT + "/" + task.getUuid());
@@ -59,6 +59,7 @@ public class HiveToBaseCuboidMapperPerformanceTest {
         while (reader.next(key, value)) {
             mapper.map(key, value, context);
         }
+        mapper.cleanup(context);
 
         reader.close();
     }
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.streaming;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.StreamingBatch;
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.engine.streaming.util.StreamingUtils;
+import org.apache.kylin.metadata.realization.RealizationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Builds consecutive micro-batches of a realization into consolidated segments.
+ * <p>
+ * Micro-batches are appended to an open segment, which is built and committed as one segment once it spans the
+ * flush interval, or holds the flush rows or bytes, or when a micro-batch does not follow it. Compared to one
+ * segment per micro-batch, this saves the per segment dictionaries, statistics and HTables, as well as the
+ * merges and the segment fan-out of queries.
+ * <p>
+ * The open segment outlives the process: its time range is saved as a {@link StreamingWindow} after each
+ * micro-batch, and the next builder of the realization reads its messages again from the streaming input and
+ * continues it. So a run can end, or crash, without flushing. The saved window is removed before the open segment
+ * is built, a build that fails half way leaves a gap instead of a duplicated segment.
+ */
+public class IncrementalStreamingBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalStreamingBuilder.class);
+
+    private final IStreamingInput streamingInput;
+    private final IStreamingOutput streamingOutput;
+    private final StreamingBatchBuilder streamingBatchBuilder;
+    private final RealizationType realizationType;
+    private final String realizationName;
+    private final long flushIntervalMs;
+    private final int flushRows;
+    private final long flushBytes;
+    private final ResourceStore store;
+
+    // the open segment
+    private List<StreamingMessage> messages = Lists.newArrayList();
+    private long messageBytes = 0;
+    private long startTime = -1;
+    private long endTime = -1;
+    private StreamingWindow savedWindow;
+    private boolean restored = false;
+
+    public IncrementalStreamingBuilder(RealizationType realizationType, String realizationName) {
+        this(realizationType, realizationName, StreamingUtils.getStreamingInput(), StreamingUtils.getStreamingOutput(), StreamingUtils.getMicroBatchBuilder(realizationType, realizationName), KylinConfig.getInstanceFromEnv());
+    }
+
+    IncrementalStreamingBuilder(RealizationType realizationType, String realizationName, IStreamingInput streamingInput, IStreamingOutput streamingOutput, StreamingBatchBuilder streamingBatchBuilder, KylinConfig config) {
+        this.realizationType = Preconditions.checkNotNull(realizationType);
+        this.realizationName = Preconditions.checkNotNull(realizationName);
+        this.streamingInput = Preconditions.checkNotNull(streamingInput);
+        this.streamingOutput = Preconditions.checkNotNull(streamingOutput);
+        this.streamingBatchBuilder = Preconditions.checkNotNull(streamingBatchBuilder);
+        this.flushIntervalMs = config.getStreamingIncrementalFlushIntervalMs();
+        this.flushRows = config.getStreamingIncrementalFlushRows();
+        this.flushBytes = config.getStreamingIncrementalFlushMB() * 1024L * 1024L;
+        this.store = ResourceStore.getStore(config);
+    }
+
+    /**
+     * Consumes the micro-batch of [startTime, endTime) into the open segment, flushes the open segment if due.
+     */
+    public void append(long startTime, long endTime) {
+        Preconditions.checkArgument(startTime < endTime);
+        restore();
+        if (this.startTime >= 0 && startTime != this.endTime) {
+            logger.info("micro-batch from " + startTime + " does not follow the open segment ending at " + this.endTime);
+            flush();
+        }
+
+        StreamingBatch streamingBatch = streamingInput.getBatchWithTimeWindow(realizationType, realizationName, -1, startTime, endTime);
+        if (this.startTime < 0) {
+            this.startTime = startTime;
+        }
+        this.endTime = endTime;
+        addMessages(streamingBatch.getMessages());
+        logger.info(String.format("appended %d messages of [%d, %d) to the open segment [%d, %d) of %d messages, %d bytes", streamingBatch.getMessages().size(), startTime, endTime, this.startTime, this.endTime, messages.size(), messageBytes));
+
+        if (this.endTime - this.startTime >= flushIntervalMs || messages.size() >= flushRows || messageBytes >= flushBytes) {
+            flush();
+        } else {
+            saveWindow();
+        }
+    }
+
+    private void addMessages(List<StreamingMessage> newMessages) {
+        messages.addAll(newMessages);
+        for (StreamingMessage message : newMessages) {
+            messageBytes += estimateBytes(message);
+        }
+    }
+
+    // an estimation of the heap taken by a message, a String is a char array plus about 40 bytes of headers
+    private static long estimateBytes(StreamingMessage message) {
+        long bytes = 64;
+        for (String value : message.getData()) {
+            bytes += value == null ? 8 : 48 + 2L * value.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Continues the open segment saved by a previous builder, once.
+     */
+    private void restore() {
+        if (restored)
+            return;
+        restored = true;
+
+        try {
+            savedWindow = store.getResource(StreamingWindow.concatResourcePath(realizationName), StreamingWindow.class, StreamingWindow.SERIALIZER);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to load the open window of " + realizationName, e);
+        }
+        if (savedWindow == null)
+            return;
+
+        StreamingBatch streamingBatch = streamingInput.getBatchWithTimeWindow(realizationType, realizationName, -1, savedWindow.getStartTime(), savedWindow.getEndTime());
+        startTime = savedWindow.getStartTime();
+        endTime = savedWindow.getEndTime();
+        addMessages(streamingBatch.getMessages());
+        logger.info(String.format("continue the open segment [%d, %d) of %d messages", startTime, endTime, messages.size()));
+    }
+
+    private void saveWindow() {
+        if (savedWindow == null) {
+            savedWindow = new StreamingWindow();
+            savedWindow.updateRandomUuid();
+            savedWindow.setName(realizationName);
+        }
+        savedWindow.setStartTime(startTime);
+        savedWindow.setEndTime(endTime);
+        try {
+            store.putResource(savedWindow.getResourcePath(), savedWindow, StreamingWindow.SERIALIZER);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to save the open window of " + realizationName, e);
+        }
+    }
+
+    private void removeWindow() {
+        if (savedWindow == null)
+            return;
+
+        try {
+            store.deleteResource(savedWindow.getResourcePath());
+        } catch (IOException e) {
+            throw new RuntimeException("failed to remove the open window of " + realizationName, e);
+        }
+        savedWindow = null;
+    }
+
+    /**
+     * Builds and commits the open segment, if there is one, including the one saved by a previous builder.
+     */
+    public void flush() {
+        restore();
+        if (startTime < 0)
+            return;
+
+        logger.info(String.format("flushing the open segment [%d, %d) of %d messages", startTime, endTime, messages.size()));
+        StreamingBatch streamingBatch = new StreamingBatch(messages, Pair.newPair(startTime, endTime));
+        messages = Lists.newArrayList();
+        messageBytes = 0;
+        startTime = -1;
+        endTime = -1;
+        removeWindow();
+        OneOffStreamingBuilder.buildBatch(streamingBatch, streamingBatchBuilder, streamingOutput);
+    }
+
+    public long getOpenStartTime() {
+        return startTime;
+    }
+
+    public long getOpenEndTime() {
+        return endTime;
+    }
+
+    public int getOpenMessageCount() {
+        return messages.size();
+    }
+
+    public long getOpenMessageBytes() {
+        return messageBytes;
+    }
+}
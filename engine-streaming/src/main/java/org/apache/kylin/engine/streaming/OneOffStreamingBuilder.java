@@ -73,14 +73,18 @@ public class OneOffStreamingBuilder {
             @Override
             public void run() {
                 StreamingBatch streamingBatch = streamingInput.getBatchWithTimeWindow(realizationType, realizationName, -1, startTime, endTime);
-                final IBuildable buildable = streamingBatchBuilder.createBuildable(streamingBatch);
-                final Map<Long, HyperLogLogPlusCounter> samplingResult = streamingBatchBuilder.sampling(streamingBatch);
-                final Map<TblColRef, Dictionary<String>> dictionaryMap = streamingBatchBuilder.buildDictionary(streamingBatch, buildable);
-                streamingBatchBuilder.build(streamingBatch, dictionaryMap, streamingOutput.getCuboidWriter(buildable));
-                streamingOutput.output(buildable, samplingResult);
-                streamingBatchBuilder.commit(buildable);
+                buildBatch(streamingBatch, streamingBatchBuilder, streamingOutput);
             }
         };
     }
 
+    static void buildBatch(StreamingBatch streamingBatch, StreamingBatchBuilder streamingBatchBuilder, IStreamingOutput streamingOutput) {
+        final IBuildable buildable = streamingBatchBuilder.createBuildable(streamingBatch);
+        final Map<Long, HyperLogLogPlusCounter> samplingResult = streamingBatchBuilder.sampling(streamingBatch);
+        final Map<TblColRef, Dictionary<String>> dictionaryMap = streamingBatchBuilder.buildDictionary(streamingBatch, buildable);
+        streamingBatchBuilder.build(streamingBatch, dictionaryMap, streamingOutput.getCuboidWriter(buildable));
+        streamingOutput.output(buildable, samplingResult);
+        streamingBatchBuilder.commit(buildable);
+    }
+
 }
\ No newline at end of file
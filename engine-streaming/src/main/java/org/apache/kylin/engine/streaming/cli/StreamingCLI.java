@@ -37,8 +37,10 @@ package org.apache.kylin.engine.streaming.cli;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.engine.streaming.BootstrapConfig;
+import org.apache.kylin.engine.streaming.IncrementalStreamingBuilder;
 import org.apache.kylin.engine.streaming.OneOffStreamingBuilder;
 import org.apache.kylin.engine.streaming.monitor.StreamingMonitor;
 import org.apache.kylin.metadata.realization.RealizationType;
@@ -82,19 +84,29 @@ public class StreamingCLI {
                 }
                 i++;
             }
+            // in incremental mode, micro-batches are consolidated into as few segments as possible, across runs
+            final IncrementalStreamingBuilder incrementalBuilder = KylinConfig.getInstanceFromEnv().isStreamingIncrementalEnabled() ? new IncrementalStreamingBuilder(RealizationType.CUBE, bootstrapConfig.getCubeName()) : null;
             if (bootstrapConfig.isFillGap()) {
+                if (incrementalBuilder != null) {
+                    // the open window of previous runs has no segment yet, commit it so it's not taken for a gap
+                    incrementalBuilder.flush();
+                }
                 final List<Pair<Long, Long>> gaps = StreamingMonitor.findGaps(bootstrapConfig.getCubeName());
                 logger.info("all gaps:" + StringUtils.join(gaps, ","));
                 for (Pair<Long, Long> gap : gaps) {
                     List<Pair<Long, Long>> splitGaps = splitGap(gap, bootstrapConfig.getMaxFillGapRange());
                     for (Pair<Long, Long> splitGap : splitGaps) {
                         logger.info("start filling the gap from " + splitGap.getFirst() + " to " + splitGap.getSecond());
-                        startOneOffCubeStreaming(bootstrapConfig.getCubeName(), splitGap.getFirst(), splitGap.getSecond());
+                        startCubeStreaming(incrementalBuilder, bootstrapConfig.getCubeName(), splitGap.getFirst(), splitGap.getSecond());
                         logger.info("finish filling the gap from " + splitGap.getFirst() + " to " + splitGap.getSecond());
                     }
                 }
+                if (incrementalBuilder != null) {
+                    incrementalBuilder.flush();
+                }
             } else {
-                startOneOffCubeStreaming(bootstrapConfig.getCubeName(), bootstrapConfig.getStart(), bootstrapConfig.getEnd());
+                // an open window that is not due yet is saved, and continued by the next run
+                startCubeStreaming(incrementalBuilder, bootstrapConfig.getCubeName(), bootstrapConfig.getStart(), bootstrapConfig.getEnd());
                 logger.info("streaming process finished, exit with 0");
                 System.exit(0);
             }
@@ -118,6 +130,14 @@ public class StreamingCLI {
         return gaps;
     }
 
+    private static void startCubeStreaming(IncrementalStreamingBuilder incrementalBuilder, String cubeName, long start, long end) {
+        if (incrementalBuilder != null) {
+            incrementalBuilder.append(start, end);
+        } else {
+            startOneOffCubeStreaming(cubeName, start, end);
+        }
+    }
+
     private static void startOneOffCubeStreaming(String cubeName, long start, long end) {
         final Runnable runnable = new OneOffStreamingBuilder(RealizationType.CUBE, cubeName, start, end).build();
         runnable.run();
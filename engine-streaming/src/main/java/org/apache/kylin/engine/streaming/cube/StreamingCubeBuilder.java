@@ -41,6 +41,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
@@ -67,6 +68,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  */
@@ -88,14 +90,15 @@ public class StreamingCubeBuilder implements StreamingBatchBuilder {
             final CubeInstance cubeInstance = cubeManager.reloadCubeLocal(cubeName);
             final IJoinedFlatTableDesc flatDesc = EngineFactory.getJoinedFlatTableDesc(cubeInstance.getDescriptor());
             
-            LinkedBlockingQueue<List<String>> blockingQueue = new LinkedBlockingQueue<List<String>>();
+            // bounded, so that feeding rows waits for the cube builder instead of copying the whole batch
+            LinkedBlockingQueue<List<String>> blockingQueue = new LinkedBlockingQueue<List<String>>(cubeInstance.getConfig().getStreamingQueueSize());
             InMemCubeBuilder inMemCubeBuilder = new InMemCubeBuilder(cubeInstance.getDescriptor(), flatDesc, dictionaryMap);
             final Future<?> future = Executors.newCachedThreadPool().submit(inMemCubeBuilder.buildAsRunnable(blockingQueue, cuboidWriter));
             processedRowCount = streamingBatch.getMessages().size();
             for (StreamingMessage streamingMessage : streamingBatch.getMessages()) {
-                blockingQueue.put(streamingMessage.getData());
+                putRow(blockingQueue, streamingMessage.getData(), future);
             }
-            blockingQueue.put(Collections.<String> emptyList());
+            putRow(blockingQueue, Collections.<String> emptyList(), future);
             future.get();
             cuboidWriter.flush();
 
@@ -114,6 +117,15 @@ public class StreamingCubeBuilder implements StreamingBatchBuilder {
         }
     }
 
+    private void putRow(LinkedBlockingQueue<List<String>> blockingQueue, List<String> row, Future<?> future) throws InterruptedException, ExecutionException {
+        while (blockingQueue.offer(row, 1, TimeUnit.SECONDS) == false) {
+            if (future.isDone()) {
+                future.get(); // throws the failure of the cube builder
+                throw new IllegalStateException("cube builder ended before consuming all rows");
+            }
+        }
+    }
+
     @Override
     public IBuildable createBuildable(StreamingBatch streamingBatch) {
         CubeManager cubeManager = CubeManager.getInstance(KylinConfig.getInstanceFromEnv());
@@ -153,14 +165,31 @@ public class StreamingCubeBuilder implements StreamingBatchBuilder {
         final CubeInstance cubeInstance = cubeManager.reloadCubeLocal(cubeName);
         final Map<TblColRef, Dictionary<String>> dictionaryMap;
         try {
+            // in incremental mode, reuse the dictionaries of the last segment where they cover the new values
+            final CubeSegment lastSegment = cubeInstance.getConfig().isStreamingIncrementalEnabled() ? cubeInstance.getLatestReadySegment() : null;
+            final Map<TblColRef, Dictionary<String>> existingDicts = lastSegment == null ? Collections.<TblColRef, Dictionary<String>> emptyMap() : lastSegment.buildDictionaryMap();
+
             dictionaryMap = CubingUtils.buildDictionary(cubeInstance, Lists.transform(streamingBatch.getMessages(), new Function<StreamingMessage, List<String>>() {
                 @Nullable
                 @Override
                 public List<String> apply(@Nullable StreamingMessage input) {
                     return input.getData();
                 }
-            }));
-            Map<TblColRef, Dictionary<String>> realDictMap = CubingUtils.writeDictionary((CubeSegment) buildable, dictionaryMap, streamingBatch.getTimeRange().getFirst(), streamingBatch.getTimeRange().getSecond());
+            }), existingDicts);
+
+            Map<TblColRef, Dictionary<String>> newDicts = Maps.newHashMap();
+            Map<TblColRef, Dictionary<String>> realDictMap = Maps.newHashMap();
+            for (Map.Entry<TblColRef, Dictionary<String>> entry : dictionaryMap.entrySet()) {
+                final String existingPath = lastSegment == null ? null : lastSegment.getDictResPath(entry.getKey());
+                if (entry.getValue() == existingDicts.get(entry.getKey()) && existingPath != null) {
+                    ((CubeSegment) buildable).putDictResPath(entry.getKey(), existingPath);
+                    ((CubeSegment) buildable).putDimensionRangeInfo(entry.getKey(), lastSegment.getDimensionRangeInfo(entry.getKey()));
+                    realDictMap.put(entry.getKey(), entry.getValue());
+                } else {
+                    newDicts.put(entry.getKey(), entry.getValue());
+                }
+            }
+            realDictMap.putAll(CubingUtils.writeDictionary((CubeSegment) buildable, newDicts, streamingBatch.getTimeRange().getFirst(), streamingBatch.getTimeRange().getSecond()));
             return realDictMap;
         } catch (IOException e) {
             throw new RuntimeException("failed to build dictionary", e);
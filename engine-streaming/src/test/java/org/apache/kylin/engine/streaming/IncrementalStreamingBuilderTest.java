@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.StreamingBatch;
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.cube.inmemcubing.ICuboidWriter;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.model.IBuildable;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.realization.RealizationType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+public class IncrementalStreamingBuilderTest extends LocalFileMetadataTestCase {
+
+    private KylinConfig config;
+    private int messagesPerBatch = 10;
+    private long batchMs = 100; // the input returns messagesPerBatch messages every batchMs
+    private int valueLength = 0;
+    private final List<String> flushed = Lists.newArrayList();
+
+    @Before
+    public void setup() throws Exception {
+        this.createTestMetadata();
+        config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.streaming.incremental.flush.interval.ms", "300");
+        config.setProperty("kylin.streaming.incremental.flush.rows", "1000");
+        config.setProperty("kylin.streaming.incremental.flush.mb", "1");
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testFlushByInterval() {
+        IncrementalStreamingBuilder builder = newBuilder();
+        builder.append(0, 100);
+        builder.append(100, 200);
+        assertEquals(0, flushed.size());
+        assertEquals(20, builder.getOpenMessageCount());
+
+        builder.append(200, 300);
+        assertEquals(Lists.newArrayList("[0,300):30"), flushed);
+        assertEquals(-1, builder.getOpenStartTime());
+
+        // a gap flushes the open segment first
+        builder.append(300, 400);
+        builder.append(500, 600);
+        assertEquals(Lists.newArrayList("[0,300):30", "[300,400):10"), flushed);
+        assertEquals(500, builder.getOpenStartTime());
+        assertEquals(600, builder.getOpenEndTime());
+
+        builder.flush();
+        builder.flush();
+        assertEquals(Lists.newArrayList("[0,300):30", "[300,400):10", "[500,600):10"), flushed);
+    }
+
+    @Test
+    public void testFlushBySize() {
+        messagesPerBatch = 600;
+        batchMs = 10;
+        IncrementalStreamingBuilder builder = newBuilder();
+        builder.append(0, 10);
+        builder.append(10, 20);
+        builder.append(20, 30);
+        assertEquals(Lists.newArrayList("[0,20):1200"), flushed);
+        assertEquals(600, builder.getOpenMessageCount());
+    }
+
+    @Test
+    public void testFlushByBytes() {
+        messagesPerBatch = 5;
+        batchMs = 10;
+        valueLength = 40 * 1024; // about 80KB of heap per message
+        IncrementalStreamingBuilder builder = newBuilder();
+        builder.append(0, 10);
+        builder.append(10, 20);
+        assertEquals(0, flushed.size());
+        assertTrue(builder.getOpenMessageBytes() > 10 * 80 * 1000);
+
+        builder.append(20, 30);
+        assertEquals(Lists.newArrayList("[0,30):15"), flushed);
+        assertEquals(0, builder.getOpenMessageBytes());
+    }
+
+    @Test
+    public void testContinueAcrossRuns() {
+        IncrementalStreamingBuilder run1 = newBuilder();
+        run1.append(0, 100);
+        run1.append(100, 200);
+        assertEquals(0, flushed.size());
+
+        // a new process continues the open window, reading its messages again
+        IncrementalStreamingBuilder run2 = newBuilder();
+        run2.append(200, 300);
+        assertEquals(Lists.newArrayList("[0,300):30"), flushed);
+
+        // nothing is left open after the flush
+        IncrementalStreamingBuilder run3 = newBuilder();
+        run3.flush();
+        assertEquals(1, flushed.size());
+
+        run3.append(300, 400);
+        newBuilder().flush();
+        assertEquals(Lists.newArrayList("[0,300):30", "[300,400):10"), flushed);
+    }
+
+    private IncrementalStreamingBuilder newBuilder() {
+        IStreamingInput input = new IStreamingInput() {
+            @Override
+            public StreamingBatch getBatchWithTimeWindow(RealizationType realizationType, String realizationName, int id, long startTime, long endTime) {
+                List<StreamingMessage> messages = Lists.newArrayList();
+                long n = messagesPerBatch * (endTime - startTime) / batchMs;
+                for (int i = 0; i < n; i++) {
+                    messages.add(new StreamingMessage(Lists.newArrayList("v" + i + Strings.repeat("x", valueLength)), i, startTime + i % (endTime - startTime), Collections.<String, Object> emptyMap()));
+                }
+                return new StreamingBatch(messages, Pair.newPair(startTime, endTime));
+            }
+        };
+        IStreamingOutput output = new IStreamingOutput() {
+            @Override
+            public ICuboidWriter getCuboidWriter(IBuildable buildable) {
+                return null;
+            }
+
+            @Override
+            public void output(IBuildable buildable, Map<Long, HyperLogLogPlusCounter> samplingResult) {
+            }
+        };
+        StreamingBatchBuilder batchBuilder = new StreamingBatchBuilder() {
+            @Override
+            public IBuildable createBuildable(StreamingBatch streamingBatch) {
+                return null;
+            }
+
+            @Override
+            public Map<Long, HyperLogLogPlusCounter> sampling(StreamingBatch streamingBatch) {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public Map<TblColRef, Dictionary<String>> buildDictionary(StreamingBatch streamingBatch, IBuildable buildable) {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public void build(StreamingBatch streamingBatch, Map<TblColRef, Dictionary<String>> dictionaryMap, ICuboidWriter cuboidWriter) {
+                Pair<Long, Long> range = streamingBatch.getTimeRange();
+                flushed.add("[" + range.getFirst() + "," + range.getSecond() + "):" + streamingBatch.getMessages().size());
+            }
+
+            @Override
+            public void commit(IBuildable buildable) {
+            }
+        };
+        return new IncrementalStreamingBuilder(RealizationType.CUBE, "test_cube", input, output, batchBuilder, config);
+    }
+}
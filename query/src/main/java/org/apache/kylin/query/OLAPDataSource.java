@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.query;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.Driver;
+import org.apache.kylin.query.schema.OLAPProjectSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of calcite connections of a project, all sharing one prebuilt OLAPProjectSchema. Closing a
+ * connection returns it to the pool. The data source is immutable; when the project changes, build a
+ * new one and close the old, connections in use are then discarded on return.
+ */
+public class OLAPDataSource implements DataSource, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OLAPDataSource.class);
+
+    private static final String CALCITE_URL = "jdbc:calcite:";
+
+    private final OLAPProjectSchema projectSchema;
+    private final Properties connectionProps;
+    private final int maxIdle;
+    private final Driver driver = new Driver();
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<Connection>();
+    private volatile boolean closed = false;
+
+    public OLAPDataSource(OLAPProjectSchema projectSchema, Properties connectionProps, int maxIdle) {
+        this.projectSchema = projectSchema;
+        this.connectionProps = connectionProps;
+        this.maxIdle = maxIdle;
+    }
+
+    public OLAPProjectSchema getProjectSchema() {
+        return projectSchema;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        // still serves after close(), as a query may have got the data source just before it was replaced;
+        // such connections are simply not pooled
+        Connection conn;
+        do {
+            conn = idle.pollFirst();
+        } while (conn != null && conn.isClosed());
+
+        if (conn == null) {
+            conn = newConnection();
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new PooledConnectionHandler(conn));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    private Connection newConnection() throws SQLException {
+        Connection conn = driver.connect(CALCITE_URL, connectionProps);
+        try {
+            projectSchema.register(conn.unwrap(CalciteConnection.class));
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(conn);
+            throw e;
+        }
+        return conn;
+    }
+
+    private void release(Connection conn) {
+        if (closed || idle.size() >= maxIdle) {
+            closeQuietly(conn);
+            return;
+        }
+
+        // most recently used first, so that surplus connections stay idle and get dropped
+        idle.offerFirst(conn);
+
+        // close() might have drained the pool just before the offer
+        if (closed) {
+            drain();
+        }
+    }
+
+    /** closes idle connections, connections in use are closed when they are returned */
+    @Override
+    public void close() {
+        closed = true;
+        drain();
+    }
+
+    private void drain() {
+        Connection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            closeQuietly(conn);
+        }
+    }
+
+    private void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close connection of project " + projectSchema.getProject(), e);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return 0;
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+        throw new SQLException(getClass().getName() + " is not a wrapper of " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        PooledConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (released.compareAndSet(false, true)) {
+                    release(target);
+                }
+                return null;
+            } else if (name.equals("isClosed")) {
+                return released.get() || target.isClosed();
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("toString")) {
+                return "Pooled " + target;
+            }
+
+            if (released.get())
+                throw new SQLException("Connection is closed");
+
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -30,7 +30,7 @@ import org.apache.kylin.cube.model.DimensionDesc;
 import org.apache.kylin.dict.lookup.LookupStringTable;
 import org.apache.kylin.metadata.model.ColumnDesc;
 import org.apache.kylin.metadata.realization.IRealization;
-import org.apache.kylin.metadata.tuple.Tuple;
+import org.apache.kylin.metadata.tuple.CellValueConverter;
 import org.apache.kylin.query.relnode.OLAPContext;
 import org.apache.kylin.query.schema.OLAPTable;
 import org.apache.kylin.storage.hybrid.HybridInstance;
@@ -41,6 +41,7 @@ public class LookupTableEnumerator implements Enumerator<Object[]> {
 
     private final Collection<String[]> allRows;
     private final List<ColumnDesc> colDescs;
+    private final CellValueConverter[] converters;
     private final Object[] current;
     private Iterator<String[]> iterator;
 
@@ -73,6 +74,10 @@ public class LookupTableEnumerator implements Enumerator<Object[]> {
         OLAPTable olapTable = (OLAPTable) olapContext.firstTableScan.getOlapTable();
         this.colDescs = olapTable.getExposedColumns();
         this.current = new Object[colDescs.size()];
+        this.converters = new CellValueConverter[colDescs.size()];
+        for (int i = 0; i < converters.length; i++) {
+            converters[i] = CellValueConverter.of(colDescs.get(i).getType().getName());
+        }
 
         reset();
     }
@@ -86,7 +91,7 @@ public class LookupTableEnumerator implements Enumerator<Object[]> {
                 ColumnDesc colDesc = colDescs.get(i);
                 int colIdx = colDesc.getZeroBasedIndex();
                 if (colIdx >= 0) {
-                    current[i] = Tuple.convertOptiqCellValue(row[colIdx], colDesc.getType().getName());
+                    current[i] = converters[i].fromString(row[colIdx]);
                 } else {
                     current[i] = null; // fake column
                 }
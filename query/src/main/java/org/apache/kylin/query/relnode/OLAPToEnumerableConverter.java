@@ -39,6 +39,7 @@ import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.sql.SqlExplainLevel;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryProfile;
 import org.apache.kylin.common.util.ClassUtil;
 import org.apache.kylin.metadata.filter.LogicalTupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter;
@@ -69,6 +70,12 @@ public class OLAPToEnumerableConverter extends ConverterImpl implements Enumerab
 
     @Override
     public Result implement(EnumerableRelImplementor enumImplementor, Prefer pref) {
+        // calcite has parsed, validated and optimized the query by now
+        QueryProfile profile = QueryProfile.current();
+        if (profile != null) {
+            profile.mark("parse_and_plan");
+        }
+
         // post-order travel children
         OLAPRel.OLAPImplementor olapImplementor = new OLAPRel.OLAPImplementor();
         olapImplementor.visitChild(getInput(), this);
@@ -103,6 +110,10 @@ public class OLAPToEnumerableConverter extends ConverterImpl implements Enumerab
             }
         }
 
+        if (profile != null) {
+            profile.mark("routing");
+        }
+
         // rewrite query if necessary
         OLAPRel.RewriteImplementor rewriteImplementor = new OLAPRel.RewriteImplementor();
         rewriteImplementor.visitChild(this, getInput());
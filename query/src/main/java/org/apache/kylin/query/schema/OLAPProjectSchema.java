@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.query.schema;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.schema.Function;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The schemas and UDFs of a project, built once by OLAPSchemaFactory.createOLAPProjectSchema() and
+ * registered into every connection of the project. It is a snapshot of the project metadata, to be
+ * replaced as a whole when the project or its tables change.
+ */
+public class OLAPProjectSchema {
+
+    private final String project;
+    private final String defaultSchemaName;
+    private final Map<String, OLAPSchema> schemas;
+    private final Map<String, Function> functions;
+
+    OLAPProjectSchema(String project, String defaultSchemaName, Map<String, OLAPSchema> schemas, Map<String, Function> functions) {
+        this.project = project;
+        this.defaultSchemaName = defaultSchemaName;
+        this.schemas = schemas;
+        this.functions = functions;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    public String getDefaultSchemaName() {
+        return defaultSchemaName;
+    }
+
+    public Map<String, OLAPSchema> getSchemas() {
+        return schemas;
+    }
+
+    /** does what the JSON model of createTempOLAPJson() does, without parsing and instantiating anything */
+    public void register(CalciteConnection connection) throws SQLException {
+        SchemaPlus rootSchema = connection.getRootSchema();
+        for (Map.Entry<String, OLAPSchema> e : schemas.entrySet()) {
+            SchemaPlus schema = rootSchema.add(e.getKey(), e.getValue());
+            for (Map.Entry<String, Function> f : functions.entrySet()) {
+                schema.add(f.getKey(), f.getValue());
+            }
+        }
+
+        if (StringUtils.isNotEmpty(defaultSchemaName)) {
+            connection.setSchema(defaultSchemaName);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OLAPProjectSchema [project=" + project + ", schemas=" + schemas.keySet() + "]";
+    }
+}
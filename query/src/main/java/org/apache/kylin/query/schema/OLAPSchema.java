@@ -18,6 +18,7 @@
 
 package org.apache.kylin.query.schema;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -44,6 +45,8 @@ public class OLAPSchema extends AbstractSchema {
     private String starSchemaUrl;
     private String starSchemaUser;
     private String starSchemaPassword;
+    private boolean cacheTableMap;
+    private volatile Map<String, Table> tableMap;
 
     private void init() {
         this.config = KylinConfig.getInstanceFromEnv();
@@ -54,19 +57,40 @@ public class OLAPSchema extends AbstractSchema {
     }
 
     public OLAPSchema(String project, String schemaName) {
+        this(project, schemaName, false);
+    }
+
+    /**
+     * @param cacheTableMap whether to build the tables only once; only for a schema that is
+     *                      thrown away when the project or its tables change, see OLAPProjectSchema
+     */
+    public OLAPSchema(String project, String schemaName, boolean cacheTableMap) {
         this.projectName = ProjectInstance.getNormalizedProjectName(project);
         this.schemaName = schemaName;
+        this.cacheTableMap = cacheTableMap;
         init();
     }
 
     /**
-     * It is intended to skip caching, because underlying project/tables might change.
+     * Unless cacheTableMap, it is intended to skip caching, because underlying project/tables might change.
      *
      * @return
      */
     @Override
     protected Map<String, Table> getTableMap() {
-        return buildTableMap();
+        if (!cacheTableMap)
+            return buildTableMap();
+
+        Map<String, Table> result = tableMap;
+        if (result == null) {
+            synchronized (this) {
+                result = tableMap;
+                if (result == null) {
+                    tableMap = result = Collections.unmodifiableMap(buildTableMap());
+                }
+            }
+        }
+        return result;
     }
 
     private Map<String, Table> buildTableMap() {
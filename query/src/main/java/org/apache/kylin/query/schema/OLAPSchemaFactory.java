@@ -24,12 +24,16 @@ import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.calcite.schema.Function;
 import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaFactory;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.impl.AggregateFunctionImpl;
+import org.apache.calcite.schema.impl.ScalarFunctionImpl;
 import org.apache.calcite.util.ConversionUtil;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
@@ -78,24 +82,8 @@ public class OLAPSchemaFactory implements SchemaFactory {
 
         Set<TableDesc> tables = ProjectManager.getInstance(config).listExposedTables(project);
 
-        // "database" in TableDesc correspond to our schema
-        // the logic to decide which schema to be "default" in calcite:
-        // if some schema are named "default", use it.
-        // other wise use the schema with most tables
         HashMap<String, Integer> schemaCounts = DatabaseDesc.extractDatabaseOccurenceCounts(tables);
-        String majoritySchemaName = "";
-        int majoritySchemaCount = 0;
-        for (Map.Entry<String, Integer> e : schemaCounts.entrySet()) {
-            if (e.getKey().equalsIgnoreCase("default")) {
-                majoritySchemaCount = Integer.MAX_VALUE;
-                majoritySchemaName = e.getKey();
-            }
-
-            if (e.getValue() >= majoritySchemaCount) {
-                majoritySchemaCount = e.getValue();
-                majoritySchemaName = e.getKey();
-            }
-        }
+        String majoritySchemaName = getDefaultSchemaName(schemaCounts);
 
         try {
             File tmp = File.createTempFile("olap_model_", ".json");
@@ -137,6 +125,73 @@ public class OLAPSchemaFactory implements SchemaFactory {
         }
     }
 
+    /**
+     * Builds the schemas of a project in memory. Unlike the JSON model, the result is meant to be
+     * shared by many connections, so the tables and UDFs are resolved only once.
+     */
+    public static OLAPProjectSchema createOLAPProjectSchema(String project, KylinConfig config) {
+        project = ProjectInstance.getNormalizedProjectName(project);
+
+        Set<TableDesc> tables = ProjectManager.getInstance(config).listExposedTables(project);
+        HashMap<String, Integer> schemaCounts = DatabaseDesc.extractDatabaseOccurenceCounts(tables);
+
+        Map<String, OLAPSchema> schemas = new LinkedHashMap<String, OLAPSchema>();
+        for (String schemaName : schemaCounts.keySet()) {
+            OLAPSchema schema = new OLAPSchema(project, schemaName, true);
+            schema.getTableNames(); // build the tables now rather than in the first query
+            schemas.put(schemaName, schema);
+        }
+
+        Map<String, Function> functions = new LinkedHashMap<String, Function>();
+        for (Map.Entry<String, String> udf : KylinConfig.getInstanceFromEnv().getUDFs().entrySet()) {
+            String udfName = udf.getKey().trim().toUpperCase();
+            String udfClassName = udf.getValue().trim();
+            functions.put(udfName, createFunction(udfName, udfClassName));
+        }
+
+        return new OLAPProjectSchema(project, getDefaultSchemaName(schemaCounts), schemas, functions);
+    }
+
+    private static Function createFunction(String udfName, String udfClassName) {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(udfClassName);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("UDF class '" + udfClassName + "' not found", e);
+        }
+
+        // the same resolution as calcite model, for the function kinds kylin UDFs use
+        Function function = AggregateFunctionImpl.create(clazz);
+        if (function == null) {
+            function = ScalarFunctionImpl.create(clazz, "eval");
+        }
+        if (function == null) {
+            throw new RuntimeException("UDF class '" + udfClassName + "' of " + udfName + " is neither an aggregate function nor has an 'eval' method");
+        }
+        return function;
+    }
+
+    // "database" in TableDesc correspond to our schema
+    // the logic to decide which schema to be "default" in calcite:
+    // if some schema are named "default", use it.
+    // other wise use the schema with most tables
+    private static String getDefaultSchemaName(Map<String, Integer> schemaCounts) {
+        String majoritySchemaName = "";
+        int majoritySchemaCount = 0;
+        for (Map.Entry<String, Integer> e : schemaCounts.entrySet()) {
+            if (e.getKey().equalsIgnoreCase("default")) {
+                majoritySchemaCount = Integer.MAX_VALUE;
+                majoritySchemaName = e.getKey();
+            }
+
+            if (e.getValue() >= majoritySchemaCount) {
+                majoritySchemaCount = e.getValue();
+                majoritySchemaName = e.getKey();
+            }
+        }
+        return majoritySchemaName;
+    }
+
     private static void createOLAPSchemaFunctions(Writer out) throws IOException {
         out.write("            \"functions\": [\n");
         Map<String, String> udfs = KylinConfig.getInstanceFromEnv().getUDFs();
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.AbstractQueryableTable;
@@ -90,14 +91,14 @@ public class OLAPTable extends AbstractQueryableTable implements TranslatableTab
 
     private final OLAPSchema olapSchema;
     private final TableDesc sourceTable;
-    private RelDataType rowType;
     private List<ColumnDesc> exposedColumns;
+    // a cached table is shared by pooled connections, each with a type factory of its own
+    private final Map<RelDataTypeFactory, RelDataType> rowTypes = new WeakHashMap<RelDataTypeFactory, RelDataType>();
 
     public OLAPTable(OLAPSchema schema, TableDesc tableDesc) {
         super(Object[].class);
         this.olapSchema = schema;
         this.sourceTable = tableDesc;
-        this.rowType = null;
     }
 
     public OLAPSchema getSchema() {
@@ -117,13 +118,17 @@ public class OLAPTable extends AbstractQueryableTable implements TranslatableTab
     }
 
     @Override
-    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
-        if (this.rowType == null) {
-            // always build exposedColumns and rowType together
+    public synchronized RelDataType getRowType(RelDataTypeFactory typeFactory) {
+        // synchronized as a cached table is shared by concurrent connections
+        if (this.exposedColumns == null) {
             this.exposedColumns = listSourceColumns();
-            this.rowType = deriveRowType(typeFactory);
         }
-        return this.rowType;
+        RelDataType rowType = rowTypes.get(typeFactory);
+        if (rowType == null) {
+            rowType = deriveRowType(typeFactory);
+            rowTypes.put(typeFactory, rowType);
+        }
+        return rowType;
     }
 
     private RelDataType deriveRowType(RelDataTypeFactory typeFactory) {
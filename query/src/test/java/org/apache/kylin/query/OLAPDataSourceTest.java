@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.schema.Table;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.project.ProjectInstance;
+import org.apache.kylin.query.enumerator.OLAPQuery;
+import org.apache.kylin.query.schema.OLAPProjectSchema;
+import org.apache.kylin.query.schema.OLAPSchemaFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OLAPDataSourceTest extends LocalFileMetadataTestCase {
+
+    private OLAPDataSource dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+
+        OLAPProjectSchema projectSchema = OLAPSchemaFactory.createOLAPProjectSchema(ProjectInstance.DEFAULT_PROJECT_NAME, KylinConfig.getInstanceFromEnv());
+        Properties props = new Properties();
+        props.setProperty(OLAPQuery.PROP_SCAN_THRESHOLD, "10000");
+        dataSource = new OLAPDataSource(projectSchema, props, 1);
+    }
+
+    @After
+    public void after() throws Exception {
+        dataSource.close();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testSchema() throws SQLException {
+        Connection conn = dataSource.getConnection();
+        try {
+            CalciteConnection calciteConn = conn.unwrap(CalciteConnection.class);
+            assertEquals("DEFAULT", calciteConn.getSchema());
+            assertTrue(calciteConn.getRootSchema().getSubSchema("DEFAULT").getTableNames().contains("TEST_KYLIN_FACT"));
+            assertTrue(calciteConn.getRootSchema().getSubSchema("EDW").getTableNames().contains("TEST_CAL_DT"));
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testReuse() throws SQLException {
+        Connection conn1 = dataSource.getConnection();
+        CalciteConnection physical1 = conn1.unwrap(CalciteConnection.class);
+        conn1.close();
+        conn1.close(); // closing twice does not return it twice
+        assertTrue(conn1.isClosed());
+        assertEquals(1, dataSource.getIdleCount());
+
+        Connection conn2 = dataSource.getConnection();
+        assertSame(physical1, conn2.unwrap(CalciteConnection.class));
+        assertEquals(0, dataSource.getIdleCount());
+
+        // exceeds max idle
+        Connection conn3 = dataSource.getConnection();
+        CalciteConnection physical3 = conn3.unwrap(CalciteConnection.class);
+        assertNotSame(physical1, physical3);
+        conn2.close();
+        conn3.close();
+        assertEquals(1, dataSource.getIdleCount());
+        assertTrue(physical3.isClosed());
+        assertFalse(physical1.isClosed());
+    }
+
+    @Test
+    public void testRowTypePerConnection() throws SQLException {
+        Connection conn1 = dataSource.getConnection();
+        Connection conn2 = dataSource.getConnection();
+        try {
+            CalciteConnection physical1 = conn1.unwrap(CalciteConnection.class);
+            CalciteConnection physical2 = conn2.unwrap(CalciteConnection.class);
+            Table table = physical1.getRootSchema().getSubSchema("DEFAULT").getTable("TEST_KYLIN_FACT");
+            assertSame(table, physical2.getRootSchema().getSubSchema("DEFAULT").getTable("TEST_KYLIN_FACT"));
+
+            // the table is shared, the row type is derived for each connection's type factory
+            RelDataType rowType1 = table.getRowType(physical1.getTypeFactory());
+            RelDataType rowType2 = table.getRowType(physical2.getTypeFactory());
+            assertSame(rowType1, table.getRowType(physical1.getTypeFactory()));
+            assertSame(rowType2, table.getRowType(physical2.getTypeFactory()));
+            assertEquals(rowType1.getFullTypeString(), rowType2.getFullTypeString());
+        } finally {
+            conn1.close();
+            conn2.close();
+        }
+    }
+
+    @Test(expected = SQLException.class)
+    public void testUseAfterClose() throws SQLException {
+        Connection conn = dataSource.getConnection();
+        conn.close();
+        conn.createStatement();
+    }
+
+    @Test
+    public void testCloseDataSource() throws SQLException {
+        Connection inUse = dataSource.getConnection();
+        Connection idle = dataSource.getConnection();
+        CalciteConnection idlePhysical = idle.unwrap(CalciteConnection.class);
+        idle.close();
+
+        dataSource.close();
+        assertTrue(idlePhysical.isClosed());
+
+        // connections in use are discarded on return
+        CalciteConnection inUsePhysical = inUse.unwrap(CalciteConnection.class);
+        inUse.close();
+        assertTrue(inUsePhysical.isClosed());
+        assertEquals(0, dataSource.getIdleCount());
+
+        // queries holding a replaced data source still get served
+        Connection late = dataSource.getConnection();
+        assertFalse(late.isClosed());
+        late.close();
+        assertEquals(0, dataSource.getIdleCount());
+    }
+}
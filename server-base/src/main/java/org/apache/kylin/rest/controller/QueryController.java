@@ -22,15 +22,18 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryProfile;
 import org.apache.kylin.common.debug.BackdoorToggles;
 import org.apache.kylin.rest.constant.Constant;
 import org.apache.kylin.rest.exception.InternalErrorException;
+import org.apache.kylin.rest.exception.NotFoundException;
 import org.apache.kylin.rest.metrics.QueryMetricsFacade;
 import org.apache.kylin.rest.model.Query;
 import org.apache.kylin.rest.model.SelectedColumnMeta;
@@ -101,6 +104,16 @@ public class QueryController extends BasicController {
         return doQueryWithCache(sqlRequest);
     }
 
+    @RequestMapping(value = "/query/profile/{queryId}", method = RequestMethod.GET, produces = "application/json")
+    @ResponseBody
+    public QueryProfile getQueryProfile(@PathVariable String queryId) {
+        QueryProfile profile = queryService.getQueryProfile(queryId);
+        if (profile == null) {
+            throw new NotFoundException("Profile of query " + queryId + " not found, it may be too old..");
+        }
+        return profile;
+    }
+
     @RequestMapping(value = "/saved_queries", method = RequestMethod.POST)
     @ResponseBody
     public void saveQuery(@RequestBody SaveSqlRequest sqlRequest) throws IOException {
@@ -167,6 +180,7 @@ public class QueryController extends BasicController {
     private SQLResponse doQueryWithCache(SQLRequest sqlRequest) {
         try {
             BackdoorToggles.setToggles(sqlRequest.getBackdoorToggles());
+            QueryProfile profile = QueryProfile.start(UUID.randomUUID().toString());
 
             String sql = sqlRequest.getSql();
             String project = sqlRequest.getProject();
@@ -186,6 +200,7 @@ public class QueryController extends BasicController {
             long startTime = System.currentTimeMillis();
 
             SQLResponse sqlResponse = searchQueryInCache(sqlRequest);
+            profile.mark("cache_lookup");
             try {
                 if (null == sqlResponse) {
                     sqlResponse = queryService.query(sqlRequest);
@@ -196,7 +211,7 @@ public class QueryController extends BasicController {
                     logger.info("Stats of SQL response: isException: {}, duration: {}, total scan count {}", //
                             String.valueOf(sqlResponse.getIsException()), String.valueOf(sqlResponse.getDuration()), String.valueOf(sqlResponse.getTotalScanCount()));
                     if (!sqlResponse.getIsException() && (sqlResponse.getDuration() > durationThreshold || sqlResponse.getTotalScanCount() > scancountThreshold)) {
-                        cacheManager.getCache(SUCCESS_QUERY_CACHE).put(new Element(sqlRequest, sqlResponse));
+                        cacheManager.getCache(SUCCESS_QUERY_CACHE).put(new Element(sqlRequest, new SQLResponse(sqlResponse)));
                     }
                 } else {
                     sqlResponse.setDuration(System.currentTimeMillis() - startTime);
@@ -213,10 +228,15 @@ public class QueryController extends BasicController {
                 // for exception queries, only cache ScanOutOfLimitException
                 if (e instanceof ScanOutOfLimitException) {
                     Cache exceptionCache = cacheManager.getCache(EXCEPTION_QUERY_CACHE);
-                    exceptionCache.put(new Element(sqlRequest, sqlResponse));
+                    exceptionCache.put(new Element(sqlRequest, new SQLResponse(sqlResponse)));
                 }
             }
 
+            profile.setDuration(System.currentTimeMillis() - startTime);
+            profile.setStorageCacheUsed(sqlResponse.isStorageCacheUsed());
+            profile.setExceptionCacheHit(sqlResponse.isHitExceptionCache());
+            sqlResponse.setProfile(profile); // the query cache only holds copies, the profile stays with this request
+
             queryService.logQuery(sqlRequest, sqlResponse);
 
             QueryMetricsFacade.updateMetrics(sqlRequest, sqlResponse);
@@ -228,9 +248,11 @@ public class QueryController extends BasicController {
 
         } finally {
             BackdoorToggles.cleanToggles();
+            QueryProfile.end();
         }
     }
 
+    /** returns a copy of the cached response, to be completed for this request only */
     private SQLResponse searchQueryInCache(SQLRequest sqlRequest) {
         SQLResponse response = null;
         Cache exceptionCache = cacheManager.getCache(EXCEPTION_QUERY_CACHE);
@@ -240,12 +262,12 @@ public class QueryController extends BasicController {
             if (exceptionCache.get(sqlRequest) != null) {
                 logger.info("The sqlResponse is found in EXCEPTION_QUERY_CACHE");
                 Element element = exceptionCache.get(sqlRequest);
-                response = (SQLResponse) element.getObjectValue();
+                response = new SQLResponse((SQLResponse) element.getObjectValue());
                 response.setHitExceptionCache(true);
             } else if (successCache.get(sqlRequest) != null) {
                 logger.info("The sqlResponse is found in SUCCESS_QUERY_CACHE");
                 Element element = successCache.get(sqlRequest);
-                response = (SQLResponse) element.getObjectValue();
+                response = new SQLResponse((SQLResponse) element.getObjectValue());
                 response.setStorageCacheUsed(true);
             }
         }
@@ -48,6 +48,14 @@ public class QueryMetrics {
     MutableCounterLong cacheHitCount;
     MutableQuantiles[] cacheHitCountQuantiles;
 
+    // hedge rate is hedgedRpcCount / regionRpcCount
+    @Metric
+    MutableCounterLong regionRpcCount;
+    @Metric
+    MutableCounterLong hedgedRpcCount;
+    @Metric
+    MutableCounterLong hedgeWinCount;
+
     @Metric
     MutableRate queryLatency;
     MutableQuantiles[] queryLatencyTimeMillisQuantiles;
@@ -96,6 +104,12 @@ public class QueryMetrics {
         queryCount.incr();
     }
 
+    public void addRegionRpcCount(long count, long hedged, long hedgeWins) {
+        regionRpcCount.incr(count);
+        hedgedRpcCount.incr(hedged);
+        hedgeWinCount.incr(hedgeWins);
+    }
+
     public void addQueryLatency(long latency) {
         queryLatency.add(latency);
         for (MutableQuantiles m : queryLatencyTimeMillisQuantiles) {
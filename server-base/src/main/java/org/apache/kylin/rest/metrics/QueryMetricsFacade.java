@@ -20,6 +20,7 @@ package org.apache.kylin.rest.metrics;
 
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryProfile;
 import org.apache.kylin.rest.request.SQLRequest;
 import org.apache.kylin.rest.response.SQLResponse;
 import org.slf4j.Logger;
@@ -72,6 +73,11 @@ public class QueryMetricsFacade {
                 queryMetrics.addScanRowCount(sqlResponse.getTotalScanCount());
                 queryMetrics.addResultRowCount(sqlResponse.getResults().size());
             }
+
+            QueryProfile profile = sqlResponse.getProfile();
+            if (profile != null) {
+                queryMetrics.addRegionRpcCount(profile.getRegionRpcCount(), profile.getHedgedRpcCount(), profile.getHedgeWinCount());
+            }
         } catch (Exception e) {
             logger.error(e.getMessage());
         }
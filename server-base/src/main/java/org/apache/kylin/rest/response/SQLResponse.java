@@ -21,6 +21,7 @@ package org.apache.kylin.rest.response;
 import java.io.Serializable;
 import java.util.List;
 
+import org.apache.kylin.common.QueryProfile;
 import org.apache.kylin.rest.model.SelectedColumnMeta;
 
 public class SQLResponse implements Serializable {
@@ -59,6 +60,9 @@ public class SQLResponse implements Serializable {
 
     protected boolean storageCacheUsed = false;
 
+    // where the time of the query goes, also retrievable later by the query id
+    protected QueryProfile profile;
+
     public SQLResponse() {
     }
 
@@ -89,6 +93,24 @@ public class SQLResponse implements Serializable {
         this.isPartial = isPartial;
     }
 
+    /**
+     * A shallow copy, so that what is set for one request does not go into a response shared through the query cache.
+     */
+    public SQLResponse(SQLResponse other) {
+        this.columnMetas = other.columnMetas;
+        this.results = other.results;
+        this.cube = other.cube;
+        this.affectedRowCount = other.affectedRowCount;
+        this.isException = other.isException;
+        this.exceptionMessage = other.exceptionMessage;
+        this.duration = other.duration;
+        this.isPartial = other.isPartial;
+        this.totalScanCount = other.totalScanCount;
+        this.hitExceptionCache = other.hitExceptionCache;
+        this.storageCacheUsed = other.storageCacheUsed;
+        this.profile = other.profile;
+    }
+
     public List<SelectedColumnMeta> getColumnMetas() {
         return columnMetas;
     }
@@ -165,4 +187,12 @@ public class SQLResponse implements Serializable {
     public void setStorageCacheUsed(boolean storageCacheUsed) {
         this.storageCacheUsed = storageCacheUsed;
     }
+
+    public QueryProfile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(QueryProfile profile) {
+        this.profile = profile;
+    }
 }
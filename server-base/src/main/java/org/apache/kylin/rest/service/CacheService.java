@@ -33,6 +33,8 @@ import org.apache.calcite.jdbc.Driver;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.CachedResourceStore;
+import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.common.restclient.Broadcaster;
 import org.apache.kylin.cube.CubeDescManager;
 import org.apache.kylin.cube.CubeInstance;
@@ -44,7 +46,9 @@ import org.apache.kylin.metadata.project.ProjectInstance;
 import org.apache.kylin.metadata.project.ProjectManager;
 import org.apache.kylin.metadata.realization.RealizationRegistry;
 import org.apache.kylin.metadata.realization.RealizationType;
+import org.apache.kylin.query.OLAPDataSource;
 import org.apache.kylin.query.enumerator.OLAPQuery;
+import org.apache.kylin.query.schema.OLAPProjectSchema;
 import org.apache.kylin.query.schema.OLAPSchemaFactory;
 import org.apache.kylin.rest.controller.QueryController;
 import org.apache.kylin.source.kafka.KafkaConfigManager;
@@ -125,13 +129,22 @@ public class CacheService extends BasicService {
             throw new IllegalArgumentException("removeOLAPDataSource: project name not given");
 
         project = ProjectInstance.getNormalizedProjectName(project);
-        olapDataSources.remove(project);
+        closeOLAPDataSource(olapDataSources.remove(project));
     }
 
     public static void removeAllOLAPDataSources() {
         // brutal, yet simplest way
         logger.info("removeAllOLAPDataSources is called.");
-        olapDataSources.clear();
+        for (String project : olapDataSources.keySet()) {
+            closeOLAPDataSource(olapDataSources.remove(project));
+        }
+    }
+
+    private static void closeOLAPDataSource(DataSource ds) {
+        // queries in flight keep their connections, which are discarded on return
+        if (ds instanceof OLAPDataSource) {
+            ((OLAPDataSource) ds).close();
+        }
     }
 
     public DataSource getOLAPDataSource(String project) {
@@ -141,34 +154,52 @@ public class CacheService extends BasicService {
         DataSource ret = olapDataSources.get(project);
         if (ret == null) {
             logger.debug("Creating a new data source, OLAP data source pointing to " + getConfig());
-            File modelJson = OLAPSchemaFactory.createTempOLAPJson(project, getConfig());
-
-            try {
-                String text = FileUtils.readFileToString(modelJson, Charset.defaultCharset());
-                logger.debug("The new temp olap json is :" + text);
-            } catch (IOException e) {
-                e.printStackTrace(); // logging failure is not critical
-            }
-
-            DriverManagerDataSource ds = new DriverManagerDataSource();
-            Properties props = new Properties();
-            props.setProperty(OLAPQuery.PROP_SCAN_THRESHOLD, String.valueOf(KylinConfig.getInstanceFromEnv().getScanThreshold()));
-            ds.setConnectionProperties(props);
-            ds.setDriverClassName(Driver.class.getName());
-            ds.setUrl("jdbc:calcite:model=" + modelJson.getAbsolutePath());
+            DataSource ds = getConfig().isQueryConnectionPoolEnabled() ? createPooledDataSource(project) : createModelJsonDataSource(project);
 
             ret = olapDataSources.putIfAbsent(project, ds);
             if (ret == null) {
                 ret = ds;
+            } else {
+                closeOLAPDataSource(ds);
             }
         }
         return ret;
     }
 
+    private Properties getOLAPConnectionProperties() {
+        Properties props = new Properties();
+        props.setProperty(OLAPQuery.PROP_SCAN_THRESHOLD, String.valueOf(KylinConfig.getInstanceFromEnv().getScanThreshold()));
+        return props;
+    }
+
+    private DataSource createPooledDataSource(String project) {
+        OLAPProjectSchema projectSchema = OLAPSchemaFactory.createOLAPProjectSchema(project, getConfig());
+        logger.debug("The new olap project schema is :" + projectSchema);
+        return new OLAPDataSource(projectSchema, getOLAPConnectionProperties(), getConfig().getQueryConnectionPoolMaxIdle());
+    }
+
+    private DataSource createModelJsonDataSource(String project) {
+        File modelJson = OLAPSchemaFactory.createTempOLAPJson(project, getConfig());
+
+        try {
+            String text = FileUtils.readFileToString(modelJson, Charset.defaultCharset());
+            logger.debug("The new temp olap json is :" + text);
+        } catch (IOException e) {
+            e.printStackTrace(); // logging failure is not critical
+        }
+
+        DriverManagerDataSource ds = new DriverManagerDataSource();
+        ds.setConnectionProperties(getOLAPConnectionProperties());
+        ds.setDriverClassName(Driver.class.getName());
+        ds.setUrl("jdbc:calcite:model=" + modelJson.getAbsolutePath());
+        return ds;
+    }
+
     public void rebuildCache(Broadcaster.TYPE cacheType, String cacheKey) {
         final String log = "rebuild cache type: " + cacheType + " name:" + cacheKey;
         logger.info(log);
         try {
+            syncMetadataStore(cacheType);
             switch (cacheType) {
             case CUBE:
                 rebuildCubeCache(cacheKey);
@@ -181,6 +212,7 @@ public class CacheService extends BasicService {
                 break;
             case CUBE_DESC:
                 getCubeDescManager().reloadCubeDescLocal(cacheKey);
+                removeAllOLAPDataSources();
                 break;
             case PROJECT:
                 reloadProjectCache(cacheKey);
@@ -188,6 +220,7 @@ public class CacheService extends BasicService {
             case TABLE:
                 getMetadataManager().reloadTableCache(cacheKey);
                 CubeDescManager.clearCache();
+                removeAllOLAPDataSources();
                 break;
             case EXTERNAL_FILTER:
                 getMetadataManager().reloadExtFilter(cacheKey);
@@ -196,6 +229,7 @@ public class CacheService extends BasicService {
             case DATA_MODEL:
                 getMetadataManager().reloadDataModelDesc(cacheKey);
                 CubeDescManager.clearCache();
+                removeAllOLAPDataSources();
                 break;
             case ALL:
                 DictionaryManager.clearCache();
@@ -220,6 +254,17 @@ public class CacheService extends BasicService {
         }
     }
 
+    // the event may be ahead of the polled change log, managers must not reload what the store has cached
+    private void syncMetadataStore(Broadcaster.TYPE cacheType) throws IOException {
+        ResourceStore store = ResourceStore.getStore(getConfig());
+        if (store instanceof CachedResourceStore) {
+            if (cacheType == Broadcaster.TYPE.ALL) {
+                ((CachedResourceStore) store).invalidateAll();
+            }
+            ((CachedResourceStore) store).sync();
+        }
+    }
+
     private void rebuildCubeCache(String cubeName) {
         CubeInstance cube = getCubeManager().reloadCubeLocal(cubeName);
         getHybridManager().reloadHybridInstanceByChild(RealizationType.CUBE, cubeName);
@@ -234,6 +279,7 @@ public class CacheService extends BasicService {
     public void removeCache(Broadcaster.TYPE cacheType, String cacheKey) {
         final String log = "remove cache type: " + cacheType + " name:" + cacheKey;
         try {
+            syncMetadataStore(cacheType);
             switch (cacheType) {
             case CUBE:
                 removeCubeCache(cacheKey, null);
@@ -243,6 +289,7 @@ public class CacheService extends BasicService {
                 break;
             case PROJECT:
                 ProjectManager.clearCache();
+                removeAllOLAPDataSources();
                 break;
             case TABLE:
                 throw new UnsupportedOperationException(log);
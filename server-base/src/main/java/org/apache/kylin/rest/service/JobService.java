@@ -48,6 +48,9 @@ import org.apache.kylin.job.execution.DefaultChainedExecutable;
 import org.apache.kylin.job.execution.ExecutableState;
 import org.apache.kylin.job.execution.Output;
 import org.apache.kylin.metadata.model.SegmentStatusEnum;
+import org.apache.kylin.metadata.project.ProjectInstance;
+import org.apache.kylin.metadata.project.RealizationEntry;
+import org.apache.kylin.metadata.realization.RealizationType;
 import org.apache.kylin.rest.constant.Constant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,21 +76,18 @@ public class JobService extends BasicService {
     @Autowired
     private AccessService accessService;
 
+    /**
+     * Returns a page of the jobs submitted and last modified within the time filter, the latest submitted first.
+     * Filters and paging are pushed down to the job index, so only the jobs of the page are read.
+     */
     public List<JobInstance> listAllJobs(final String cubeName, final String projectName, final List<JobStatusEnum> statusList, final Integer limitValue, final Integer offsetValue, final JobTimeFilterEnum timeFilter) throws IOException, JobException {
         Integer limit = (null == limitValue) ? 30 : limitValue;
         Integer offset = (null == offsetValue) ? 0 : offsetValue;
-        List<JobInstance> jobs = listAllJobs(cubeName, projectName, statusList, timeFilter);
-        Collections.sort(jobs);
-
-        if (jobs.size() <= offset) {
-            return Collections.emptyList();
-        }
-
-        if ((jobs.size() - offset) < limit) {
-            return jobs.subList(offset, jobs.size());
-        }
-
-        return jobs.subList(offset, offset + limit);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(new Date());
+        long currentTimeMillis = calendar.getTimeInMillis();
+        long timeStartInMillis = getTimeStartInMillis(calendar, timeFilter);
+        return listCubeJobInstance(cubeName, projectName, statusList, timeStartInMillis, currentTimeMillis + 1, offset, limit);
     }
 
     public List<JobInstance> listAllJobs(final String cubeName, final String projectName, final List<JobStatusEnum> statusList, final JobTimeFilterEnum timeFilter) {
@@ -102,18 +102,7 @@ public class JobService extends BasicService {
     public List<JobInstance> listAllJobs(final String cubeName, final String projectName, final List<JobStatusEnum> statusList, final Integer limitValue, final Integer offsetValue) throws IOException, JobException {
         Integer limit = (null == limitValue) ? 30 : limitValue;
         Integer offset = (null == offsetValue) ? 0 : offsetValue;
-        List<JobInstance> jobs = listAllJobs(cubeName, projectName, statusList);
-        Collections.sort(jobs);
-
-        if (jobs.size() <= offset) {
-            return Collections.emptyList();
-        }
-
-        if ((jobs.size() - offset) < limit) {
-            return jobs.subList(offset, jobs.size());
-        }
-
-        return jobs.subList(offset, offset + limit);
+        return listCubeJobInstance(cubeName, projectName, statusList, 0, Long.MAX_VALUE, offset, limit);
     }
 
     public List<JobInstance> listAllJobs(final String cubeName, final String projectName, final List<JobStatusEnum> statusList) {
@@ -142,6 +131,54 @@ public class JobService extends BasicService {
         }));
     }
 
+    private List<JobInstance> listCubeJobInstance(final String cubeName, final String projectName, List<JobStatusEnum> statusList, final long timeStartInMillis, final long timeEndInMillis, int offset, int limit) {
+        Set<String> cubes = getRelatedCubes(cubeName, projectName);
+        if (cubes != null && cubes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<ExecutableState> states = convertStatusEnumToStates(statusList);
+        List<AbstractExecutable> jobs = getExecutableManager().queryJobs(cubes, CubingJob.class, states, timeStartInMillis, timeEndInMillis, offset, limit);
+
+        List<String> ids = Lists.newArrayList();
+        for (AbstractExecutable job : jobs) {
+            ids.add(job.getId());
+            for (AbstractExecutable task : ((CubingJob) job).getTasks()) {
+                ids.add(task.getId());
+            }
+        }
+        Map<String, Output> outputs = getExecutableManager().getOutputs(ids);
+
+        List<JobInstance> results = Lists.newArrayListWithCapacity(jobs.size());
+        for (AbstractExecutable job : jobs) {
+            if (outputs.containsKey(job.getId())) {
+                results.add(parseToJobInstance(job, outputs));
+            }
+        }
+        return results;
+    }
+
+    /** returns null for all cubes */
+    private Set<String> getRelatedCubes(String cubeName, String projectName) {
+        if (cubeName != null) {
+            CubeInstance cube = getCubeManager().getCube(cubeName);
+            cubeName = cube == null ? cubeName : cube.getName();
+        }
+
+        ProjectInstance project = projectName == null ? null : getProjectManager().getProject(projectName);
+        if (project == null) {
+            return cubeName == null ? null : Collections.singleton(cubeName);
+        }
+
+        Set<String> cubes = Sets.newHashSet();
+        for (RealizationEntry entry : project.getRealizationEntries(RealizationType.CUBE)) {
+            if (cubeName == null || cubeName.equalsIgnoreCase(entry.getRealization())) {
+                cubes.add(cubeName == null ? entry.getRealization() : cubeName);
+            }
+        }
+        return cubes;
+    }
+
     private Set<ExecutableState> convertStatusEnumToStates(List<JobStatusEnum> statusList) {
         Set<ExecutableState> states;
         if (statusList == null || statusList.isEmpty()) {
@@ -51,6 +51,7 @@ import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryProfile;
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
@@ -79,6 +80,8 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 
 /**
@@ -99,6 +102,7 @@ public class QueryService extends BasicService {
 
     private final Serializer<Query[]> querySerializer = new Serializer<Query[]>(Query[].class);
     private final BadQueryDetector badQueryDetector = new BadQueryDetector();
+    private final Cache<String, QueryProfile> recentProfiles;
 
     private final String hbaseUrl;
     private final String tableNameBase;
@@ -111,6 +115,7 @@ public class QueryService extends BasicService {
         tableNameBase = cut < 0 ? DEFAULT_TABLE_PREFIX : metadataUrl.substring(0, cut);
         hbaseUrl = cut < 0 ? metadataUrl : metadataUrl.substring(cut + 1);
         userTableName = tableNameBase + USER_TABLE_NAME;
+        recentProfiles = CacheBuilder.newBuilder().maximumSize(KylinConfig.getInstanceFromEnv().getQueryProfileKeepCount()).build();
 
         badQueryDetector.start();
     }
@@ -216,6 +221,7 @@ public class QueryService extends BasicService {
         final Set<Long> cuboidIds = new HashSet<Long>();
         float duration = response.getDuration() / (float) 1000;
         boolean storageCacheUsed = response.isStorageCacheUsed();
+        QueryProfile profile = response.getProfile();
 
         if (!response.isHitExceptionCache() && null != OLAPContext.getThreadLocalContexts()) {
             for (OLAPContext ctx : OLAPContext.getThreadLocalContexts()) {
@@ -242,6 +248,7 @@ public class QueryService extends BasicService {
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append(newLine);
         stringBuilder.append("==========================[QUERY]===============================").append(newLine);
+        stringBuilder.append("Query Id: ").append(profile == null ? null : profile.getQueryId()).append(newLine);
         stringBuilder.append("SQL: ").append(request.getSql()).append(newLine);
         stringBuilder.append("User: ").append(user).append(newLine);
         stringBuilder.append("Success: ").append((null == response.getExceptionMessage())).append(newLine);
@@ -255,10 +262,22 @@ public class QueryService extends BasicService {
         stringBuilder.append("Is Partial Result: ").append(response.isPartial()).append(newLine);
         stringBuilder.append("Hit Exception Cache: ").append(response.isHitExceptionCache()).append(newLine);
         stringBuilder.append("Storage cache used: ").append(storageCacheUsed).append(newLine);
+        stringBuilder.append("Profile: ").append(profile).append(newLine);
         stringBuilder.append("Message: ").append(response.getExceptionMessage()).append(newLine);
         stringBuilder.append("==========================[QUERY]===============================").append(newLine);
 
         logger.info(stringBuilder.toString());
+
+        if (profile != null) {
+            recentProfiles.put(profile.getQueryId(), profile);
+        }
+    }
+
+    /**
+     * @return the profile of a recent query, or null if the query is unknown or too old
+     */
+    public QueryProfile getQueryProfile(String queryId) {
+        return recentProfiles.getIfPresent(queryId);
     }
 
     public void checkAuthorization(String cubeName) throws AccessDeniedException {
@@ -393,6 +412,7 @@ public class QueryService extends BasicService {
 
         List<List<String>> results = Lists.newArrayList();
         List<SelectedColumnMeta> columnMetas = Lists.newArrayList();
+        QueryProfile profile = QueryProfile.current();
 
         try {
             conn = cacheService.getOLAPDataSource(sqlRequest.getProject()).getConnection();
@@ -409,6 +429,9 @@ public class QueryService extends BasicService {
                 stat = conn.createStatement();
                 resultSet = stat.executeQuery(sql);
             }
+            if (profile != null) {
+                profile.mark("compile");
+            }
 
             ResultSetMetaData metaData = resultSet.getMetaData();
             int columnCount = metaData.getColumnCount();
@@ -427,6 +450,9 @@ public class QueryService extends BasicService {
 
                 results.add(oneRow);
             }
+            if (profile != null) {
+                profile.mark("execute");
+            }
         } finally {
             close(resultSet, stat, conn);
         }
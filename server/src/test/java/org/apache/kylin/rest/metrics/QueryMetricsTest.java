@@ -25,6 +25,9 @@ import java.util.List;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import org.apache.kylin.common.QueryProfile;
+import org.apache.kylin.common.QueryProfile.RegionProfile;
+import org.apache.kylin.common.QueryProfile.SegmentProfile;
 import org.apache.kylin.rest.request.SQLRequest;
 import org.apache.kylin.rest.response.SQLResponse;
 import org.apache.kylin.rest.service.ServiceTestBase;
@@ -70,6 +73,13 @@ public class QueryMetricsTest extends ServiceTestBase {
         results.add(list2);
         sqlResponse.setResults(results);
         sqlResponse.setStorageCacheUsed(true);
+        QueryProfile profile = new QueryProfile("q1");
+        SegmentProfile seg = profile.newSegment("test_cube[seg1]", 255);
+        for (int i = 0; i < 3; i++) {
+            seg.addRegion(new RegionProfile("000" + i, "host" + i));
+        }
+        seg.setHedges(1, 1);
+        sqlResponse.setProfile(profile);
 
         QueryMetricsFacade.updateMetrics(sqlRequest, sqlResponse);
 
@@ -79,6 +89,9 @@ public class QueryMetricsTest extends ServiceTestBase {
         Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "QuerySuccessCount"));
         Assert.assertEquals(0L, mBeanServer.getAttribute(objectName, "QueryFailCount"));
         Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "CacheHitCount"));
+        Assert.assertEquals(3L, mBeanServer.getAttribute(objectName, "RegionRpcCount"));
+        Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "HedgedRpcCount"));
+        Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "HedgeWinCount"));
 
         Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "ScanRowCountNumOps"));
         Assert.assertEquals(100.0, mBeanServer.getAttribute(objectName, "ScanRowCountAvgTime"));
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source.kafka.consumer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.source.kafka.StreamingParser;
+import org.apache.kylin.source.kafka.config.KafkaClusterConfig;
+import org.apache.kylin.source.kafka.util.KafkaRequester;
+import org.apache.kylin.source.kafka.util.KafkaUtils;
+
+import com.google.common.collect.Lists;
+
+import kafka.cluster.Broker;
+import kafka.javaapi.FetchResponse;
+import kafka.javaapi.PartitionMetadata;
+import kafka.message.MessageAndOffset;
+
+/**
+ * Reads a partition from its lead broker, looking up the leader again after a failure.
+ */
+public class BrokerPartitionReader implements IPartitionReader {
+
+    private final KafkaClusterConfig kafkaClusterConfig;
+    private final int partitionId;
+    private final StreamingParser streamingParser;
+
+    private List<Broker> replicaBrokers;
+    private Broker leadBroker;
+
+    public BrokerPartitionReader(KafkaClusterConfig kafkaClusterConfig, int partitionId, StreamingParser streamingParser) {
+        this.kafkaClusterConfig = kafkaClusterConfig;
+        this.partitionId = partitionId;
+        this.streamingParser = streamingParser;
+        this.replicaBrokers = kafkaClusterConfig.getBrokers();
+    }
+
+    @Override
+    public long findOffset(long timestamp) {
+        return KafkaUtils.findClosestOffsetWithDataTimestamp(kafkaClusterConfig, partitionId, timestamp, streamingParser);
+    }
+
+    @Override
+    public List<Pair<Long, ByteBuffer>> fetch(long offset, int maxWaitMs) {
+        String topic = kafkaClusterConfig.getTopic();
+        Broker broker = getLeadBroker();
+        // wait less than the socket timeout
+        int wait = Math.min(maxWaitMs, kafkaClusterConfig.getTimeout() / 2);
+        FetchResponse fetchResponse;
+        try {
+            fetchResponse = KafkaRequester.fetchResponse(topic, partitionId, offset, broker, kafkaClusterConfig, wait);
+        } catch (RuntimeException e) {
+            leadBroker = null;
+            throw e;
+        }
+        if (fetchResponse.errorCode(topic, partitionId) != 0) {
+            leadBroker = null;
+            throw new IllegalStateException("fetch response offset:" + offset + " errorCode:" + fetchResponse.errorCode(topic, partitionId));
+        }
+
+        List<Pair<Long, ByteBuffer>> result = Lists.newArrayList();
+        for (MessageAndOffset messageAndOffset : fetchResponse.messageSet(topic, partitionId)) {
+            if (messageAndOffset.offset() < offset) // a compressed message set may start before the requested offset
+                continue;
+            result.add(Pair.newPair(messageAndOffset.offset(), messageAndOffset.message().payload()));
+        }
+        return result;
+    }
+
+    private Broker getLeadBroker() {
+        if (leadBroker == null) {
+            final PartitionMetadata partitionMetadata = KafkaRequester.getPartitionMetadata(kafkaClusterConfig.getTopic(), partitionId, replicaBrokers, kafkaClusterConfig);
+            if (partitionMetadata == null || partitionMetadata.leader() == null)
+                throw new IllegalStateException("cannot find lead broker of " + this);
+            replicaBrokers = partitionMetadata.replicas();
+            leadBroker = partitionMetadata.leader();
+        }
+        return leadBroker;
+    }
+
+    @Override
+    public String toString() {
+        return kafkaClusterConfig.getTopic() + "-" + partitionId;
+    }
+}
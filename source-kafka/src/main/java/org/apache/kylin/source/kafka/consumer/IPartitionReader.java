@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source.kafka.consumer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.kylin.common.util.Pair;
+
+/**
+ * Reads the messages of one topic partition, for KafkaConsumerPipeline.
+ */
+public interface IPartitionReader {
+
+    /**
+     * @return offset of the first message whose data timestamp is not smaller than the given one
+     */
+    long findOffset(long timestamp) throws Exception;
+
+    /**
+     * Fetches messages from the given offset on, waiting at most maxWaitMs for new messages to arrive.
+     *
+     * @return pairs of message offset and payload in offset order, empty if nothing arrived in time
+     */
+    List<Pair<Long, ByteBuffer>> fetch(long offset, int maxWaitMs) throws Exception;
+
+}
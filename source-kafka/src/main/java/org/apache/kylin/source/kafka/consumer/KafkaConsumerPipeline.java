@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source.kafka.consumer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.source.kafka.StreamingParser;
+import org.apache.kylin.source.kafka.config.KafkaClusterConfig;
+import org.apache.kylin.source.kafka.config.KafkaConfig;
+import org.apache.kylin.source.kafka.util.KafkaRequester;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A long-lived consumer of the partitions of a streaming table, which serves consecutive time windows.
+ * <p>
+ * Every partition has a fetch thread, which fetches continuously with long polling instead of sleeping between
+ * empty fetches. Fetched messages go through bounded queues to a fixed number of parse threads, partitions being
+ * assigned to parse threads so that each partition is parsed in offset order. Parsed messages are handed to the
+ * consumer of the current window through another bounded queue. A full queue blocks the stage before it, so a slow
+ * consumer slows down fetching instead of piling up messages.
+ * <p>
+ * A window [start, end) is complete when every partition has delivered a message of timestamp end + margin or
+ * later, the same rule the one-off fetch of a window used. Partitions fetch up to one window ahead of the current
+ * window and then pause, the messages read ahead are served to the next window. A window that does not follow the
+ * previous one restarts the fetch threads from the offsets of its start time.
+ */
+public class KafkaConsumerPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerPipeline.class);
+
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 5000;
+
+    private static class RawMessage {
+        final int partition;
+        final long offset;
+        final ByteBuffer payload;
+
+        RawMessage(int partition, long offset, ByteBuffer payload) {
+            this.partition = partition;
+            this.offset = offset;
+            this.payload = payload;
+        }
+    }
+
+    private final String name;
+    private final List<IPartitionReader> readers;
+    private final List<StreamingParser> parsers; // one per parse thread, parsers need not be thread-safe
+    private final long margin;
+    private final int fetchMaxWaitMs;
+
+    private final List<BlockingQueue<RawMessage>> parseQueues;
+    private final BlockingQueue<StreamingMessage> output;
+    private final AtomicLongArray watermarks; // the latest timestamp delivered by each partition
+    private final List<StreamingMessage> readAhead = Lists.newArrayList();
+    private final List<Thread> threads = Lists.newArrayList();
+    private final Object limitLock = new Object();
+
+    private volatile boolean running = false;
+    private volatile long fetchLimit; // a partition pauses once delivered beyond this timestamp
+    private volatile Throwable error;
+    private long nextStartTime = Long.MIN_VALUE;
+
+    public static KafkaConsumerPipeline create(KafkaConfig kafkaConfig, List<TblColRef> columns, KylinConfig config) throws ReflectiveOperationException {
+        final StreamingParser seekParser = StreamingParser.getStreamingParser(kafkaConfig.getParserName(), kafkaConfig.getParserProperties(), columns);
+        List<IPartitionReader> readers = Lists.newArrayList();
+        for (KafkaClusterConfig kafkaClusterConfig : kafkaConfig.getKafkaClusterConfigs()) {
+            final int partitionCount = KafkaRequester.getKafkaTopicMeta(kafkaClusterConfig).getPartitionIds().size();
+            for (int i = 0; i < partitionCount; ++i) {
+                readers.add(new BrokerPartitionReader(kafkaClusterConfig, i, seekParser));
+            }
+        }
+
+        List<StreamingParser> parsers = Lists.newArrayList();
+        int nParsers = Math.max(1, Math.min(config.getStreamingParserThreads(), readers.size()));
+        for (int i = 0; i < nParsers; i++) {
+            parsers.add(StreamingParser.getStreamingParser(kafkaConfig.getParserName(), kafkaConfig.getParserProperties(), columns));
+        }
+        return new KafkaConsumerPipeline(kafkaConfig.getName(), readers, parsers, kafkaConfig.getMargin(), config.getStreamingFetchMaxWaitMs(), config.getStreamingQueueSize());
+    }
+
+    public KafkaConsumerPipeline(String name, List<IPartitionReader> readers, List<StreamingParser> parsers, long margin, int fetchMaxWaitMs, int queueSize) {
+        this.name = name;
+        this.readers = readers;
+        this.parsers = parsers;
+        this.margin = margin;
+        this.fetchMaxWaitMs = fetchMaxWaitMs;
+        this.parseQueues = Lists.newArrayList();
+        for (int i = 0; i < parsers.size(); i++) {
+            parseQueues.add(new ArrayBlockingQueue<RawMessage>(queueSize));
+        }
+        this.output = new ArrayBlockingQueue<StreamingMessage>(queueSize);
+        this.watermarks = new AtomicLongArray(readers.size());
+    }
+
+    /**
+     * Puts the messages of time window [startTime, endTime) into the sink, returns when the window is complete.
+     * A bounded sink passes its backpressure on to the fetch threads.
+     */
+    public synchronized void consume(long startTime, long endTime, BlockingQueue<StreamingMessage> sink) throws InterruptedException {
+        if (running == false || startTime != nextStartTime) {
+            stop();
+            start(startTime);
+        }
+
+        final long completeTime = endTime + margin;
+        fetchLimit = completeTime + (endTime - startTime);
+        synchronized (limitLock) {
+            limitLock.notifyAll();
+        }
+
+        List<StreamingMessage> ahead = Lists.newArrayList(readAhead);
+        readAhead.clear();
+        for (StreamingMessage message : ahead) {
+            route(message, startTime, endTime, sink);
+        }
+
+        long count = 0;
+        while (true) {
+            if (error != null) {
+                stop();
+                throw new RuntimeException("error when consuming " + name, error);
+            }
+            // all messages delivered before the check are in the output queue
+            boolean complete = isComplete(completeTime);
+            StreamingMessage message;
+            while ((message = output.poll()) != null) {
+                count += route(message, startTime, endTime, sink);
+            }
+            if (complete)
+                break;
+            message = output.poll(100, TimeUnit.MILLISECONDS);
+            if (message != null) {
+                count += route(message, startTime, endTime, sink);
+            }
+        }
+        nextStartTime = endTime;
+        logger.info("{} consumed {} messages in window [{}, {}), {} read ahead", name, count, startTime, endTime, readAhead.size());
+    }
+
+    private int route(StreamingMessage message, long startTime, long endTime, BlockingQueue<StreamingMessage> sink) throws InterruptedException {
+        final long timestamp = message.getTimestamp();
+        if (timestamp >= endTime) {
+            readAhead.add(message);
+        } else if (timestamp >= startTime) {
+            sink.put(message);
+            return 1;
+        }
+        // else older than the window, dropped like in the one-off fetch
+        return 0;
+    }
+
+    private boolean isComplete(long completeTime) {
+        for (int i = 0; i < watermarks.length(); i++) {
+            if (watermarks.get(i) < completeTime)
+                return false;
+        }
+        return true;
+    }
+
+    private void start(final long startTime) {
+        logger.info("starting {} from {}, {} partitions, {} parse threads", name, startTime, readers.size(), parsers.size());
+        for (int i = 0; i < watermarks.length(); i++) {
+            watermarks.set(i, Long.MIN_VALUE);
+        }
+        for (BlockingQueue<RawMessage> queue : parseQueues) {
+            queue.clear();
+        }
+        output.clear();
+        readAhead.clear();
+        error = null;
+        fetchLimit = Long.MIN_VALUE;
+        running = true;
+
+        for (int i = 0; i < readers.size(); i++) {
+            final int partition = i;
+            startThread("fetch-" + name + "-" + readers.get(i), new Runnable() {
+                @Override
+                public void run() {
+                    fetch(partition, startTime - margin);
+                }
+            });
+        }
+        for (int i = 0; i < parsers.size(); i++) {
+            final int parser = i;
+            startThread("parse-" + name + "-" + i, new Runnable() {
+                @Override
+                public void run() {
+                    parse(parser);
+                }
+            });
+        }
+    }
+
+    private void startThread(String threadName, Runnable runnable) {
+        Thread t = new Thread(runnable, threadName);
+        t.setDaemon(true);
+        t.start();
+        threads.add(t);
+    }
+
+    public synchronized void stop() {
+        if (threads.isEmpty())
+            return;
+
+        running = false;
+        synchronized (limitLock) {
+            limitLock.notifyAll();
+        }
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        threads.clear();
+        nextStartTime = Long.MIN_VALUE;
+    }
+
+    private void fetch(int partition, long seekTime) {
+        final IPartitionReader reader = readers.get(partition);
+        final BlockingQueue<RawMessage> parseQueue = parseQueues.get(partition % parseQueues.size());
+        long offset = -1;
+        long backoff = MIN_BACKOFF_MS;
+        try {
+            while (running) {
+                if (offset < 0) {
+                    try {
+                        offset = reader.findOffset(seekTime);
+                        logger.info("{} starts from offset {}", reader, offset);
+                    } catch (Exception e) {
+                        logger.warn("failed to find offset of " + reader + ", retry in " + backoff + " ms", e);
+                        Thread.sleep(backoff);
+                        backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+                    }
+                    continue;
+                }
+
+                if (watermarks.get(partition) >= fetchLimit) {
+                    synchronized (limitLock) {
+                        while (running && watermarks.get(partition) >= fetchLimit) {
+                            limitLock.wait();
+                        }
+                    }
+                    continue;
+                }
+
+                List<Pair<Long, ByteBuffer>> messages;
+                try {
+                    messages = reader.fetch(offset, fetchMaxWaitMs);
+                    backoff = MIN_BACKOFF_MS;
+                } catch (Exception e) {
+                    if (running == false)
+                        break;
+                    logger.warn("failed to fetch " + reader + " at offset " + offset + ", retry in " + backoff + " ms", e);
+                    Thread.sleep(backoff);
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+                    continue;
+                }
+
+                for (Pair<Long, ByteBuffer> message : messages) {
+                    parseQueue.put(new RawMessage(partition, message.getFirst(), message.getSecond()));
+                    offset = message.getFirst() + 1;
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private void parse(int parser) {
+        final StreamingParser streamingParser = parsers.get(parser);
+        final BlockingQueue<RawMessage> parseQueue = parseQueues.get(parser);
+        try {
+            while (running) {
+                RawMessage raw = parseQueue.take();
+                StreamingMessage message = streamingParser.parse(raw.payload);
+                message.setOffset(raw.offset);
+                if (streamingParser.filter(message) == false)
+                    continue;
+
+                output.put(message);
+                // a partition is parsed by a single thread, no race with other writers
+                if (message.getTimestamp() > watermarks.get(raw.partition)) {
+                    watermarks.set(raw.partition, message.getTimestamp());
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (Throwable e) {
+            logger.error("failed to parse message of " + name, e);
+            error = e;
+        }
+    }
+}
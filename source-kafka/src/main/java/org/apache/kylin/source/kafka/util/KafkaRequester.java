@@ -178,6 +178,16 @@ public final class KafkaRequester {
         return consumer.fetch(req);
     }
 
+    /**
+     * A long polling fetch, the broker holds the request for up to maxWaitMs until there is at least one new message.
+     */
+    public static FetchResponse fetchResponse(String topic, int partitionId, long offset, Broker broker, KafkaClusterConfig kafkaClusterConfig, int maxWaitMs) {
+        final String clientName = "client_" + topic + "_" + partitionId;
+        SimpleConsumer consumer = getSimpleConsumer(broker, kafkaClusterConfig.getTimeout(), kafkaClusterConfig.getBufferSize(), clientName);
+        kafka.api.FetchRequest req = new FetchRequestBuilder().clientId(clientName).addFetch(topic, partitionId, offset, 1048576).maxWait(maxWaitMs).minBytes(1).build();
+        return consumer.fetch(req);
+    }
+
     public static long getLastOffset(String topic, int partitionId, long whichTime, Broker broker, KafkaClusterConfig kafkaClusterConfig) {
         String clientName = "client_" + topic + "_" + partitionId;
         SimpleConsumer consumer = getSimpleConsumer(broker, kafkaClusterConfig.getTimeout(), kafkaClusterConfig.getBufferSize(), clientName);
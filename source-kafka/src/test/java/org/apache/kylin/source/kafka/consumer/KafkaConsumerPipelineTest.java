@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source.kafka.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.source.kafka.StreamingParser;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class KafkaConsumerPipelineTest {
+
+    private KafkaConsumerPipeline pipeline;
+
+    @After
+    public void after() {
+        if (pipeline != null)
+            pipeline.stop();
+    }
+
+    @Test
+    public void testConsecutiveWindows() throws Exception {
+        List<IPartitionReader> readers = Lists.newArrayList();
+        for (int p = 0; p < 3; p++) {
+            readers.add(new MemPartitionReader(p, 0, 1000, 3, 0));
+        }
+        pipeline = new KafkaConsumerPipeline("test", readers, parsers(2), 20, 10, 4);
+
+        for (long start = 100; start < 600; start += 100) {
+            List<StreamingMessage> messages = consume(pipeline, start, start + 100);
+            assertWindow(messages, start, start + 100, 3, 3);
+        }
+
+        // not following the last window, restarts from the offsets of the new start
+        assertWindow(consume(pipeline, 200, 300), 200, 300, 3, 3);
+    }
+
+    @Test
+    public void testFetchFailure() throws Exception {
+        List<IPartitionReader> readers = Lists.newArrayList();
+        readers.add(new MemPartitionReader(0, 0, 500, 1, 2));
+        readers.add(new MemPartitionReader(1, 0, 500, 1, 0));
+        pipeline = new KafkaConsumerPipeline("test", readers, parsers(1), 0, 10, 100);
+
+        assertWindow(consume(pipeline, 0, 100), 0, 100, 2, 1);
+        assertWindow(consume(pipeline, 100, 200), 100, 200, 2, 1);
+    }
+
+    @Test
+    public void testParseFailure() throws Exception {
+        List<IPartitionReader> readers = Lists.newArrayList();
+        readers.add(new MemPartitionReader(0, 0, 100, 1, 0) {
+            @Override
+            String value(long timestamp) {
+                return timestamp == 50 ? "0,bad" : super.value(timestamp);
+            }
+        });
+        pipeline = new KafkaConsumerPipeline("test", readers, parsers(1), 0, 10, 100);
+        try {
+            consume(pipeline, 0, 60);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof NumberFormatException);
+        }
+    }
+
+    private static List<StreamingMessage> consume(KafkaConsumerPipeline pipeline, long start, long end) throws InterruptedException {
+        LinkedBlockingQueue<StreamingMessage> sink = new LinkedBlockingQueue<StreamingMessage>();
+        pipeline.consume(start, end, sink);
+        List<StreamingMessage> messages = Lists.newArrayList();
+        sink.drainTo(messages);
+        return messages;
+    }
+
+    // every partition has one message per timestamp step in the window
+    private static void assertWindow(List<StreamingMessage> messages, long start, long end, int nPartitions, int step) {
+        List<String> expected = Lists.newArrayList();
+        for (int p = 0; p < nPartitions; p++) {
+            for (long t = 0; t < end; t += step) {
+                if (t >= start)
+                    expected.add(p + "," + t);
+            }
+        }
+        List<String> actual = Lists.newArrayList();
+        for (StreamingMessage message : messages) {
+            actual.add(message.getData().get(0) + "," + message.getTimestamp());
+            assertEquals(message.getTimestamp() / step, message.getOffset());
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    private static List<StreamingParser> parsers(int n) {
+        List<StreamingParser> parsers = Lists.newArrayList();
+        for (int i = 0; i < n; i++) {
+            parsers.add(new StreamingParser() {
+                @Override
+                public StreamingMessage parse(ByteBuffer message) {
+                    String[] parts = Bytes.toString(message.array(), message.position(), message.remaining()).split(",");
+                    return new StreamingMessage(Lists.newArrayList(parts[0]), 0, Long.parseLong(parts[1]), Collections.<String, Object> emptyMap());
+                }
+
+                @Override
+                public boolean filter(StreamingMessage streamingMessage) {
+                    return true;
+                }
+            });
+        }
+        return parsers;
+    }
+
+    /**
+     * A partition in memory, of messages "partition,timestamp" for timestamps from start to end by step.
+     */
+    private static class MemPartitionReader implements IPartitionReader {
+        final int partition;
+        final long start, end;
+        final int step;
+        int failures;
+
+        MemPartitionReader(int partition, long start, long end, int step, int failures) {
+            this.partition = partition;
+            this.start = start;
+            this.end = end;
+            this.step = step;
+            this.failures = failures;
+        }
+
+        String value(long timestamp) {
+            return partition + "," + timestamp;
+        }
+
+        @Override
+        public long findOffset(long timestamp) {
+            return Math.max(0, (timestamp - start + step - 1) / step);
+        }
+
+        @Override
+        public List<Pair<Long, ByteBuffer>> fetch(long offset, int maxWaitMs) throws Exception {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("failure for test");
+            }
+            List<Pair<Long, ByteBuffer>> result = Lists.newArrayList();
+            for (long o = offset; o < offset + 7 && start + o * step < end; o++) {
+                result.add(Pair.newPair(o, ByteBuffer.wrap(Bytes.toBytes(value(start + o * step)))));
+            }
+            if (result.isEmpty())
+                Thread.sleep(maxWaitMs);
+            return result;
+        }
+    }
+}
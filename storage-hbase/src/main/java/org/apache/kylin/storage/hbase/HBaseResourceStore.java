@@ -181,6 +181,67 @@ public class HBaseResourceStore extends ResourceStore {
         return result;
     }
 
+    @Override
+    protected List<RawResource> getResourcesImpl(List<String> resPaths) throws IOException {
+        final List<RawResource> result = Lists.newArrayListWithCapacity(resPaths.size());
+        final int batchSize = Math.max(1, kylinConfig.getHBaseMetadataMultiGetBatchSize());
+
+        HTableInterface table = getConnection().getTable(getAllInOneTableName());
+        try {
+            for (int start = 0; start < resPaths.size(); start += batchSize) {
+                List<String> batch = resPaths.subList(start, Math.min(resPaths.size(), start + batchSize));
+                List<Get> gets = Lists.newArrayListWithCapacity(batch.size());
+                for (String resPath : batch) {
+                    Get get = new Get(Bytes.toBytes(resPath));
+                    get.addColumn(B_FAMILY, B_COLUMN);
+                    get.addColumn(B_FAMILY, B_COLUMN_TS);
+                    gets.add(get);
+                }
+
+                Result[] hbaseResults = table.get(gets);
+                for (int i = 0; i < batch.size(); i++) {
+                    Result r = hbaseResults[i];
+                    if (r == null || r.isEmpty())
+                        result.add(null);
+                    else
+                        result.add(new RawResource(getInputStream(batch.get(i), r), getTimestamp(r)));
+                }
+            }
+        } catch (IOException e) {
+            for (RawResource rawResource : result) {
+                if (rawResource != null)
+                    IOUtils.closeQuietly(rawResource.inputStream);
+            }
+            throw e;
+        } finally {
+            IOUtils.closeQuietly(table);
+        }
+        return result;
+    }
+
+    /**
+     * One key only scan, rather than a scan and a get for every resource as the default does.
+     */
+    @Override
+    public List<String> collectResourceRecursively(String root, final String suffix) throws IOException {
+        final String folderPath = norm(root);
+        final List<String> result = Lists.newArrayList();
+
+        visitFolder(folderPath, new KeyOnlyFilter(), new FolderVisitor() {
+            @Override
+            public void visit(String childPath, String fullPath, Result hbaseResult) {
+                if (fullPath.endsWith(suffix))
+                    result.add(fullPath);
+            }
+        });
+
+        // root is not a folder, but might be a resource itself
+        if (result.isEmpty() && folderPath.endsWith(suffix) && existsImpl(folderPath)) {
+            result.add(folderPath);
+        }
+        return result;
+    }
+
     private FilterList generateTimeFilterList(long timeStart, long timeEndExclusive) {
         FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ALL);
         if (timeStart != Long.MIN_VALUE) {
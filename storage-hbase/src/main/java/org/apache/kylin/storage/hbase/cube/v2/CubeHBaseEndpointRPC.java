@@ -22,26 +22,33 @@ import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.DataFormatException;
 
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.HConnection;
 import org.apache.hadoop.hbase.client.HTableInterface;
-import org.apache.hadoop.hbase.client.coprocessor.Batch;
 import org.apache.hadoop.hbase.ipc.BlockingRpcCallback;
 import org.apache.hadoop.hbase.ipc.ServerRpcController;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryProfile;
+import org.apache.kylin.common.QueryProfile.RegionProfile;
+import org.apache.kylin.common.QueryProfile.SegmentProfile;
 import org.apache.kylin.common.debug.BackdoorToggles;
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.BytesSerializer;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.CompressionUtils;
 import org.apache.kylin.common.util.ImmutableBitSet;
-import org.apache.kylin.common.util.LoggableCachedThreadPool;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.cube.ISegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.cuboid.CuboidQueryStatsManager;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTScanRange;
 import org.apache.kylin.gridtable.GTScanRequest;
@@ -65,8 +72,6 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
     private static final Logger logger = LoggerFactory.getLogger(CubeHBaseEndpointRPC.class);
 
-    private static ExecutorService executorService = new LoggableCachedThreadPool();
-
     public CubeHBaseEndpointRPC(ISegment segment, Cuboid cuboid, GTInfo fullGTInfo) {
         super(segment, cuboid, fullGTInfo);
     }
@@ -171,8 +176,38 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
         logger.debug("Submitting rpc to {} shards starting from shard {}, scan range count {}", shardNum, cuboidBaseShard, rawScans.size());
 
+        // the callbacks run in RPC threads, take the segment profile along
+        QueryProfile queryProfile = QueryProfile.current();
+        final SegmentProfile segProfile = queryProfile == null ? null : queryProfile.newSegment(cubeSeg.toString(), cuboid.getId());
+        if (segProfile != null) {
+            segProfile.setStorage(cubeSeg.getStorageLocationIdentifier(), rawScans.size(), scanRequestByteString.size() + rawScanByteString.size());
+        }
+
         final AtomicLong totalScannedCount = new AtomicLong(0);
-        final ExpectedSizeIterator epResultItr = new ExpectedSizeIterator(shardNum);
+
+        // every region returns one blob
+        List<HRegionLocation> regions = Lists.newArrayList();
+        final TableName tableName = TableName.valueOf(cubeSeg.getStorageLocationIdentifier());
+        RegionLookup regionLookup = new RegionLookup() {
+            @Override
+            public HRegionLocation locate(byte[] row) throws IOException {
+                return conn.getRegionLocation(tableName, row, false);
+            }
+        };
+        for (Pair<byte[], byte[]> epRange : getEPKeyRanges(cuboidBaseShard, shardNum, totalShards)) {
+            regions.addAll(getRegionsInRange(regionLookup, epRange.getFirst(), epRange.getSecond()));
+        }
+        if (regions.size() != shardNum) {
+            logger.warn("{} shards are served by {} regions", shardNum, regions.size());
+        }
+        final ExpectedSizeIterator epResultItr = new ExpectedSizeIterator(regions.size());
+
+        // feeds adaptive shard planning of future segments
+        final CuboidQueryStatsManager queryStatsMgr = cubeSeg.getConfig().isHBaseAdaptiveShardEnabled() ? CuboidQueryStatsManager.getInstance(KylinConfig.getInstanceFromEnv()) : null;
+        final String cubeName = cubeSeg.getCubeInstance().getName();
+        if (queryStatsMgr != null) {
+            queryStatsMgr.recordVisit(cubeName, cuboid.getId());
+        }
 
         // KylinConfig: use env instance instead of CubeSegment, because KylinConfig will share among queries
         // for different cubes until redeployment of coprocessor jar.
@@ -189,77 +224,174 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         builder.setTimeout(epResultItr.getRpcTimeout());
         builder.setKylinProperties(kylinConfig.getConfigAsString());
 
-        for (final Pair<byte[], byte[]> epRange : getEPKeyRanges(cuboidBaseShard, shardNum, totalShards)) {
-            executorService.submit(new Runnable() {
+        final String logHeader = "<sub-thread for GTScanRequest " + Integer.toHexString(System.identityHashCode(scanRequest)) + "> ";
+        final HTableInterface table = conn.getTable(cubeSeg.getStorageLocationIdentifier(), HBaseConnection.getCoprocessorPool());
+        final CubeVisitRequest request = builder.build();
+
+        // One task per region on the shared bounded coprocessor pool, so the query thread only submits and then
+        // merges results in the order the regions complete. The in-flight RPCs are cancelled once the iterator is
+        // closed, fails or times out. Slow regions may get a hedged request, see RegionRPCHedger. When the pool
+        // is full, the query waits for room until it times out.
+        final RegionRPCHedger hedger = RegionRPCHedger.forScan(kylinConfig, HBaseConnection.getCoprocessorPool(), cubeName, cuboid.getId(), queryProfile);
+        for (final HRegionLocation region : regions) {
+            final byte[] regionName = region.getRegionInfo().getRegionName();
+            final long rpcStartTime = System.currentTimeMillis();
+
+            Callable<CubeVisitResponse> regionRpc = new Callable<CubeVisitResponse>() {
                 @Override
-                public void run() {
+                public CubeVisitResponse call() throws Exception {
+                    if (epResultItr.isClosed()) {
+                        throw new CancellationException("the query no longer needs region " + BytesUtil.toHex(regionName));
+                    }
+                    CubeVisitService rowsService = CubeVisitService.newStub(table.coprocessorService(region.getRegionInfo().getStartKey()));
+                    ServerRpcController controller = new ServerRpcController();
+                    BlockingRpcCallback<CubeVisitResponse> rpcCallback = new BlockingRpcCallback<>();
+                    rowsService.visitCube(controller, request, rpcCallback);
+                    CubeVisitResponse result = rpcCallback.get();
+                    if (controller.failedOnException()) {
+                        throw controller.getFailedOn();
+                    }
+                    if (result == null) {
+                        throw new IOException("No response from region " + BytesUtil.toHex(regionName) + ": " + controller.errorText());
+                    }
+                    return result;
+                }
+            };
 
-                    final String logHeader = "<sub-thread for GTScanRequest " + Integer.toHexString(System.identityHashCode(scanRequest)) + "> ";
-                    final boolean[] abnormalFinish = new boolean[1];
+            // the RPC channel locates the region on every call, so once the cached location is refreshed the same RPC
+            // goes to the current server, a retry if the region has not moved; a split region is not hedged as its
+            // start key now covers a smaller range
+            final Callable<CubeVisitResponse> hedgeRpc = regionRpc;
+            RegionRPCHedger.Relocator<CubeVisitResponse> regionRelocator = new RegionRPCHedger.Relocator<CubeVisitResponse>() {
+                @Override
+                public Callable<CubeVisitResponse> relocate() throws Exception {
+                    HRegionLocation current = conn.getRegionLocation(tableName, region.getRegionInfo().getStartKey(), true);
+                    if (current == null || !current.getRegionInfo().equals(region.getRegionInfo())) {
+                        return null;
+                    }
+                    if (current.getServerName().equals(region.getServerName())) {
+                        logger.info(logHeader + "Region " + BytesUtil.toHex(regionName) + " is slow on " + current.getServerName() + ", hedging with a retry");
+                    } else {
+                        logger.info(logHeader + "Region " + BytesUtil.toHex(regionName) + " moved from " + region.getServerName() + " to " + current.getServerName() + ", hedging");
+                    }
+                    return hedgeRpc;
+                }
+            };
 
+            RegionRPCHedger.Callback<CubeVisitResponse> regionCallback = new RegionRPCHedger.Callback<CubeVisitResponse>() {
+                @Override
+                public void completed(CubeVisitResponse result, boolean hedged) {
                     try {
-                        HTableInterface table = conn.getTable(cubeSeg.getStorageLocationIdentifier(), HBaseConnection.getCoprocessorPool());
-
-                        final CubeVisitRequest request = builder.build();
-                        final byte[] startKey = epRange.getFirst();
-                        final byte[] endKey = epRange.getSecond();
-
-                        table.coprocessorService(CubeVisitService.class, startKey, endKey, //
-                                new Batch.Call<CubeVisitService, CubeVisitResponse>() {
-                                    public CubeVisitResponse call(CubeVisitService rowsService) throws IOException {
-                                        ServerRpcController controller = new ServerRpcController();
-                                        BlockingRpcCallback<CubeVisitResponse> rpcCallback = new BlockingRpcCallback<>();
-                                        rowsService.visitCube(controller, request, rpcCallback);
-                                        CubeVisitResponse response = rpcCallback.get();
-                                        if (controller.failedOnException()) {
-                                            throw controller.getFailedOn();
-                                        }
-                                        return response;
-                                    }
-                                }, new Batch.Callback<CubeVisitResponse>() {
-                                    @Override
-                                    public void update(byte[] region, byte[] row, CubeVisitResponse result) {
-                                        if (region == null)
-                                            return;
-
-                                        totalScannedCount.addAndGet(result.getStats().getScannedRowCount());
-                                        logger.info(logHeader + getStatsString(region, result));
-
-                                        if (result.getStats().getNormalComplete() != 1) {
-                                            abnormalFinish[0] = true;
-                                            return;
-                                        }
-                                        try {
-                                            if (compressionResult) {
-                                                epResultItr.append(CompressionUtils.decompress(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows())));
-                                            } else {
-                                                epResultItr.append(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows()));
-                                            }
-                                        } catch (IOException | DataFormatException e) {
-                                            throw new RuntimeException(logHeader + "Error when decompressing", e);
-                                        }
-                                    }
-                                });
+                        totalScannedCount.addAndGet(result.getStats().getScannedRowCount());
+                        logger.info(logHeader + (hedged ? "(hedged) " : "") + getStatsString(regionName, result));
+                        if (queryStatsMgr != null) {
+                            Stats stats = result.getStats();
+                            queryStatsMgr.recordShardLatency(cubeName, cuboid.getId(), stats.getServiceEndTime() - stats.getServiceStartTime());
+                        }
+
+                        long rpcTime = System.currentTimeMillis() - rpcStartTime;
+
+                        if (result.getStats().getNormalComplete() != 1) {
+                            addRegionProfile(segProfile, hedger, regionName, result, hedged, rpcTime, 0);
+                            throw new RuntimeException(logHeader + "The coprocessor thread stopped itself due to scan timeout or scan threshold(check region server log), failing current query...");
+                        }
+
+                        long decompressStartTime = System.currentTimeMillis();
+                        try {
+                            if (compressionResult) {
+                                epResultItr.append(CompressionUtils.decompress(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows())));
+                            } else {
+                                epResultItr.append(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows()));
+                            }
+                        } catch (IOException | DataFormatException e) {
+                            throw new RuntimeException(logHeader + "Error when decompressing", e);
+                        }
+                        addRegionProfile(segProfile, hedger, regionName, result, hedged, rpcTime, System.currentTimeMillis() - decompressStartTime);
 
                     } catch (Throwable ex) {
-                        logger.error(logHeader + "Error when visiting cubes by endpoint", ex); // double log coz the query thread may already timeout
-                        epResultItr.notifyCoprocException(ex);
-                        return;
+                        failed(ex);
                     }
+                }
 
-                    if (abnormalFinish[0]) {
-                        Throwable ex = new RuntimeException(logHeader + "The coprocessor thread stopped itself due to scan timeout or scan threshold(check region server log), failing current query...");
-                        logger.error(logHeader + "Error when visiting cubes by endpoint", ex); // double log coz the query thread may already timeout
-                        epResultItr.notifyCoprocException(ex);
-                        return;
+                @Override
+                public void failed(Throwable ex) {
+                    if (epResultItr.isClosed()) {
+                        return; // cancelled, nobody is waiting for the result
                     }
+                    logger.error(logHeader + "Error when visiting cubes by endpoint", ex); // double log coz the query thread may already timeout
+                    epResultItr.notifyCoprocException(ex);
                 }
-            });
+            };
+
+            if (!submitRegionRpc(hedger, regionRpc, regionRelocator, regionCallback, epResultItr, logHeader)) {
+                break;
+            }
         }
 
         return new GTBlobScatter(fullGTInfo, epResultItr, scanRequest.getColumns(), totalScannedCount.get(), scanRequest.getStoragePushDownLimit());
     }
 
+    private boolean submitRegionRpc(RegionRPCHedger hedger, Callable<CubeVisitResponse> regionRpc, RegionRPCHedger.Relocator<CubeVisitResponse> regionRelocator, RegionRPCHedger.Callback<CubeVisitResponse> regionCallback, ExpectedSizeIterator epResultItr, String logHeader) {
+        boolean waited = false;
+        while (true) {
+            try {
+                epResultItr.addRpcFuture(hedger.submit(regionRpc, regionRelocator, regionCallback));
+                return true;
+            } catch (RejectedExecutionException ex) {
+                if (!waited) {
+                    logger.warn(logHeader + "Coprocessor thread pool is saturated, waiting for room");
+                    waited = true;
+                }
+                boolean retry;
+                try {
+                    retry = epResultItr.awaitResubmit();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    retry = false;
+                }
+                if (!retry) {
+                    logger.error(logHeader + "Coprocessor thread pool is saturated, failing current query", ex);
+                    epResultItr.notifyCoprocException(ex);
+                    return false;
+                }
+            }
+        }
+    }
+
+    interface RegionLookup {
+        HRegionLocation locate(byte[] row) throws IOException;
+    }
+
+    /**
+     * Walks the regions covering [startKey, endKey], the end key being inclusive like in HTable.coprocessorService().
+     */
+    static List<HRegionLocation> getRegionsInRange(RegionLookup lookup, byte[] startKey, byte[] endKey) throws IOException {
+        List<HRegionLocation> regions = Lists.newArrayList();
+        byte[] currentKey = startKey;
+        do {
+            HRegionLocation location = lookup.locate(currentKey);
+            regions.add(location);
+            currentKey = location.getRegionInfo().getEndKey();
+        } while (!Bytes.equals(currentKey, HConstants.EMPTY_END_ROW) && Bytes.compareTo(currentKey, endKey) <= 0);
+        return regions;
+    }
+
+    private void addRegionProfile(SegmentProfile segProfile, RegionRPCHedger hedger, byte[] region, CubeVisitResponse result, boolean hedged, long rpcTime, long decompressTime) {
+        if (segProfile == null)
+            return;
+
+        segProfile.setHedges(hedger.getHedgedCount(), hedger.getWinCount());
+
+        Stats stats = result.getStats();
+        RegionProfile regionProfile = new RegionProfile(BytesUtil.toHex(region), stats.getHostname());
+        regionProfile.setTimes(rpcTime, stats.getServiceEndTime() - stats.getServiceStartTime(), stats.getScanTime(), stats.getCompressTime(), decompressTime);
+        regionProfile.setRows(stats.getScannedRowCount(), stats.getScannedRowCount() - stats.getAggregatedRowCount());
+        regionProfile.setBytes(stats.getUncompressedBytes(), result.getCompressedRows().size());
+        regionProfile.setNormalComplete(stats.getNormalComplete() == 1);
+        regionProfile.setHedged(hedged);
+        segProfile.addRegion(regionProfile);
+    }
+
     private String getStatsString(byte[] region, CubeVisitResponse result) {
         StringBuilder sb = new StringBuilder();
         Stats stats = result.getStats();
@@ -267,6 +399,7 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         sb.append("Total scanned row: ").append(stats.getScannedRowCount()).append(". ");
         sb.append("Total filtered/aggred row: ").append(stats.getAggregatedRowCount()).append(". ");
         sb.append("Time elapsed in EP: ").append(stats.getServiceEndTime() - stats.getServiceStartTime()).append("(ms). ");
+        sb.append("Scan time: ").append(stats.getScanTime()).append("(ms), compress time: ").append(stats.getCompressTime()).append("(ms), bytes before/after compression: ").append(stats.getUncompressedBytes()).append("/").append(result.getCompressedRows().size()).append(". ");
         sb.append("Server CPU usage: ").append(stats.getSystemCpuLoad()).append(", server physical mem left: ").append(stats.getFreePhysicalMemorySize()).append(", server swap mem left:").append(stats.getFreeSwapSpaceSize()).append(".");
         sb.append("Etc message: ").append(stats.getEtcMsg()).append(".");
         sb.append("Normal Complete: ").append(stats.getNormalComplete() == 1).append(".");
@@ -18,6 +18,15 @@
 
 package org.apache.kylin.storage.hbase.cube.v2;
 
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HConstants;
@@ -27,15 +36,20 @@ import org.apache.kylin.storage.hbase.HBaseConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
-
-class ExpectedSizeIterator implements Iterator<byte[]> {
+/**
+ * Collects the region blobs in the order the RPCs complete. Tracks the in-flight RPCs so that
+ * they are cancelled once the query no longer needs them, i.e. on close, failure or timeout.
+ * <p>
+ * Cancelling never interrupts: a thread interrupted inside the blocking RPC client of HBase 0.98 may close
+ * the connection shared by all queries. RPCs not yet started are dropped, the running ones finish and their
+ * results are dropped as the iterator is closed by then.
+ */
+class ExpectedSizeIterator implements Iterator<byte[]>, Closeable {
     private static final Logger logger = LoggerFactory.getLogger(ExpectedSizeIterator.class);
+    private static final long RESUBMIT_WAIT_MS = 50;
 
     BlockingQueue<byte[]> queue;
+    List<Future<?>> rpcFutures = new CopyOnWriteArrayList<Future<?>>();
 
     int expectedSize;
     int current = 0;
@@ -43,12 +57,16 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
     long timeout;
     long timeoutTS;
     volatile Throwable coprocException;
+    volatile boolean closed = false;
 
     public ExpectedSizeIterator(int expectedSize) {
+        this(expectedSize, HBaseConnection.getCurrentHBaseConfiguration());
+    }
+
+    ExpectedSizeIterator(int expectedSize, Configuration hconf) {
         this.expectedSize = expectedSize;
-        this.queue = new ArrayBlockingQueue<byte[]>(expectedSize);
+        this.queue = new ArrayBlockingQueue<byte[]>(Math.max(expectedSize, 1));
 
-        Configuration hconf = HBaseConnection.getCurrentHBaseConfiguration();
         this.rpcTimeout = hconf.getInt(HConstants.HBASE_RPC_TIMEOUT_KEY, HConstants.DEFAULT_HBASE_RPC_TIMEOUT);
         this.timeout = this.rpcTimeout * hconf.getInt(HConstants.HBASE_CLIENT_RETRIES_NUMBER, HConstants.DEFAULT_HBASE_CLIENT_RETRIES_NUMBER);
         logger.info("rpc timeout is {} and after multiply retry times become {}", this.rpcTimeout, this.timeout);
@@ -81,17 +99,20 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
             byte[] ret = null;
 
             while (ret == null && coprocException == null && timeoutTS > System.currentTimeMillis()) {
-                ret = queue.poll(5000, TimeUnit.MILLISECONDS);
+                ret = queue.poll(Math.min(5000, Math.max(timeoutTS - System.currentTimeMillis(), 1)), TimeUnit.MILLISECONDS);
             }
 
             if (coprocException != null) {
+                close();
                 throw new RuntimeException("Error in coprocessor", coprocException);
             } else if (ret == null) {
+                close();
                 throw new RuntimeException("Timeout visiting cube!");
             } else {
                 return ret;
             }
         } catch (InterruptedException e) {
+            close();
             throw new RuntimeException("Error when waiting queue", e);
         }
     }
@@ -102,6 +123,9 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
     }
 
     public void append(byte[] data) {
+        if (closed) {
+            return; // the query is gone, drop the late result
+        }
         try {
             queue.put(data);
         } catch (InterruptedException e) {
@@ -109,11 +133,56 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
         }
     }
 
+    public void addRpcFuture(Future<?> future) {
+        rpcFutures.add(future);
+        if (closed) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Called when the RPC pool rejects a region RPC. The pool is bounded and shared by all queries, so rather
+     * than failing the query at once, wait a little and let the caller submit again, until the query times out.
+     *
+     * @return false if the query should give up, i.e. it is closed, failed or timed out
+     */
+    public boolean awaitResubmit() throws InterruptedException {
+        long wait = Math.min(RESUBMIT_WAIT_MS, timeoutTS - System.currentTimeMillis());
+        if (closed || coprocException != null || wait <= 0) {
+            return false;
+        }
+        Thread.sleep(wait);
+        return true;
+    }
+
     public long getRpcTimeout() {
         return this.rpcTimeout;
     }
 
+    public boolean isClosed() {
+        return closed;
+    }
+
     public void notifyCoprocException(Throwable ex) {
         coprocException = ex;
     }
+
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        cancelRpcs();
+    }
+
+    private void cancelRpcs() {
+        int cancelled = 0;
+        for (Future<?> future : rpcFutures) {
+            if (!future.isDone() && future.cancel(false)) {
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            logger.info("Cancelled {} in-flight endpoint RPCs", cancelled);
+        }
+    }
 }
@@ -18,6 +18,7 @@
 
 package org.apache.kylin.storage.hbase.cube.v2;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
@@ -69,7 +70,10 @@ class GTBlobScatter implements IGTScanner {
 
     @Override
     public void close() throws IOException {
-        //do nothing
+        // cancels the endpoint RPCs still in flight, e.g. when a limit is reached early
+        if (blocks instanceof Closeable) {
+            ((Closeable) blocks).close();
+        }
     }
 
     @Override
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.hadoop.hbase.util.Threads;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Hedged requests for the region RPCs of one segment scan. When a region has not answered after the hedge delay,
+ * its location is looked up again and the request is sent once more: to the new server if the region has moved,
+ * else as a retry on the same server, which gets past a request stuck behind a GC pause or a busy handler. The
+ * first response wins and the other attempt is cancelled.
+ * <p>
+ * The delay follows a percentile of the recent region RPC latencies of the same cuboid. The hedges of all the scans
+ * of a query share one budget, carried on the query profile. Attempts are never interrupted, see
+ * ExpectedSizeIterator.
+ */
+class RegionRPCHedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionRPCHedger.class);
+
+    // latencies of the region RPCs issued by this query server, per cube and cuboid
+    private static final LoadingCache<String, LatencyWindow> recentLatencies = CacheBuilder.newBuilder().maximumSize(1000).build(new CacheLoader<String, LatencyWindow>() {
+        @Override
+        public LatencyWindow load(String key) {
+            return new LatencyWindow(1024, 100);
+        }
+    });
+    private static final ScheduledExecutorService hedgeTimer = Executors.newSingleThreadScheduledExecutor(Threads.newDaemonThreadFactory("kylin-rpc-hedge-"));
+
+    /**
+     * @param queryProfile carries the hedge budget of the query, null means no hedging
+     */
+    static RegionRPCHedger forScan(KylinConfig config, ExecutorService pool, String cubeName, long cuboidId, QueryProfile queryProfile) {
+        LatencyWindow latencies = getLatencies(cubeName, cuboidId);
+        long delay = -1;
+        AtomicInteger budget = new AtomicInteger(0);
+        if (config.isQueryHedgedRpcEnabled() && queryProfile != null) {
+            long percentile = latencies.percentile(config.getQueryHedgedRpcPercentile());
+            if (percentile >= 0) {
+                delay = Math.max(percentile, config.getQueryHedgedRpcMinDelay());
+                budget = queryProfile.getHedgeBudget(config.getQueryHedgedRpcBudget());
+                logger.debug("Region RPCs will be hedged after {}ms, {} hedges left for the query", delay, budget.get());
+            }
+        }
+        return new RegionRPCHedger(pool, hedgeTimer, latencies, delay, budget);
+    }
+
+    static LatencyWindow getLatencies(String cubeName, long cuboidId) {
+        return recentLatencies.getUnchecked(cubeName + "/" + cuboidId);
+    }
+
+    public interface Relocator<T> {
+        /** looks the region up again, and gives the RPC to re-issue to its current server, or null if it can't be */
+        Callable<T> relocate() throws Exception;
+    }
+
+    public interface Callback<T> {
+        /** the first response, hedged tells it came from the re-issued request */
+        void completed(T response, boolean hedged);
+
+        /** all attempts failed */
+        void failed(Throwable ex);
+    }
+
+    private final ExecutorService pool;
+    private final ScheduledExecutorService timer;
+    private final LatencyWindow latencies;
+    private final long delay; // in ms, negative means no hedging
+    private final AtomicInteger budget; // shared by the scans of a query
+    private final AtomicInteger hedgedCount = new AtomicInteger();
+    private final AtomicInteger winCount = new AtomicInteger();
+
+    RegionRPCHedger(ExecutorService pool, ScheduledExecutorService timer, LatencyWindow latencies, long delay, AtomicInteger budget) {
+        this.pool = pool;
+        this.timer = timer;
+        this.latencies = latencies;
+        this.delay = delay;
+        this.budget = budget;
+    }
+
+    /**
+     * Runs the RPC on the pool. If it is still outstanding after the hedge delay and the budget allows, the region
+     * is relocated and the RPC sent once more. Cancelling the returned future cancels all attempts.
+     */
+    public <T> Future<?> submit(Callable<T> rpc, Relocator<T> relocator, Callback<T> callback) {
+        HedgedCall<T> call = new HedgedCall<T>(rpc, relocator, callback);
+        call.attempts.set(0, pool.submit(call.attempt(0, rpc)));
+        if (relocator != null && delay >= 0 && budget.get() > 0) {
+            call.hedgeTask = timer.schedule(call.hedge(), delay, TimeUnit.MILLISECONDS);
+        }
+        return call;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    public int getHedgedCount() {
+        return hedgedCount.get();
+    }
+
+    public int getWinCount() {
+        return winCount.get();
+    }
+
+    private class HedgedCall<T> implements Future<Object> {
+        final Callable<T> rpc;
+        final Relocator<T> relocator;
+        final Callback<T> callback;
+        final AtomicReferenceArray<Future<?>> attempts = new AtomicReferenceArray<Future<?>>(2); // the first and the hedged
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicBoolean done = new AtomicBoolean(false); // a response, the final failure or the cancel is through
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile Future<?> hedgeTask;
+        volatile Throwable failure;
+        volatile boolean cancelled = false;
+
+        HedgedCall(Callable<T> rpc, Relocator<T> relocator, Callback<T> callback) {
+            this.rpc = rpc;
+            this.relocator = relocator;
+            this.callback = callback;
+        }
+
+        Runnable attempt(final int i, final Callable<T> rpc) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (done.get()) {
+                        return;
+                    }
+
+                    long startTime = System.currentTimeMillis();
+                    T response;
+                    try {
+                        response = rpc.call();
+                    } catch (Throwable ex) {
+                        failure = ex;
+                        attemptEnded();
+                        return;
+                    }
+                    latencies.add(System.currentTimeMillis() - startTime);
+
+                    if (done.compareAndSet(false, true)) {
+                        if (i > 0) {
+                            winCount.incrementAndGet();
+                        }
+                        // the loser runs on if started, its response is dropped
+                        Future<?> other = attempts.get(1 - i);
+                        if (other != null) {
+                            other.cancel(false);
+                        }
+                        try {
+                            callback.completed(response, i > 0);
+                        } finally {
+                            finish();
+                        }
+                    }
+                }
+            };
+        }
+
+        Runnable hedge() {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (done.get()) {
+                        return;
+                    }
+                    if (budget.decrementAndGet() < 0) {
+                        budget.incrementAndGet();
+                        return;
+                    }
+                    // the lookup blocks, keep it off the timer thread
+                    pending.incrementAndGet();
+                    try {
+                        attempts.set(1, pool.submit(relocated()));
+                    } catch (RejectedExecutionException ex) {
+                        logger.debug("No room in the pool for a hedged RPC", ex);
+                        budget.incrementAndGet();
+                        attemptEnded();
+                    }
+                }
+            };
+        }
+
+        Runnable relocated() {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (done.get()) {
+                        attemptEnded();
+                        return;
+                    }
+                    Callable<T> moved;
+                    try {
+                        moved = relocator.relocate();
+                    } catch (Throwable ex) {
+                        logger.debug("Failed to look the region up again, not hedging", ex);
+                        moved = null;
+                    }
+                    if (moved == null) {
+                        budget.incrementAndGet();
+                        attemptEnded();
+                        return;
+                    }
+                    hedgedCount.incrementAndGet();
+                    attempt(1, moved).run();
+                }
+            };
+        }
+
+        // the failure of the last attempt is reported, once no attempt is left
+        void attemptEnded() {
+            if (pending.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+                try {
+                    callback.failed(failure);
+                } finally {
+                    finish();
+                }
+            }
+        }
+
+        void finish() {
+            if (hedgeTask != null) {
+                hedgeTask.cancel(false);
+            }
+            finished.countDown();
+        }
+
+        // running attempts are never interrupted, whatever the caller asks
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            cancelled = true;
+            for (int i = 0; i < 2; i++) {
+                Future<?> attempt = attempts.get(i);
+                if (attempt != null) {
+                    attempt.cancel(false);
+                }
+            }
+            finish();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.get();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            finished.await();
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!finished.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The last N latencies in ms. Percentiles are only given once there are enough samples.
+     */
+    static class LatencyWindow {
+        private final long[] samples;
+        private final int minSamples;
+        private int count = 0;
+        private int next = 0;
+
+        LatencyWindow(int size, int minSamples) {
+            this.samples = new long[size];
+            this.minSamples = minSamples;
+        }
+
+        synchronized void add(long latency) {
+            samples[next] = latency;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /** the given percentile (0 to 100), or -1 if there are not enough samples yet */
+        long percentile(double p) {
+            long[] sorted;
+            synchronized (this) {
+                if (count < minSamples || count == 0) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(samples, count);
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+}
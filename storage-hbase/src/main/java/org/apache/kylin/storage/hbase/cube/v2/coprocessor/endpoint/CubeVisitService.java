@@ -295,6 +295,7 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
 
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream(BufferedMeasureEncoder.DEFAULT_BUFFER_SIZE);//ByteArrayOutputStream will auto grow
             int finalRowCount = 0;
+            long scanStartTime = System.currentTimeMillis();
 
             try {
                 for (GTRecord oneRecord : finalScanner) {
@@ -331,10 +332,12 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
                 finalScanner.close();
             }
 
+            long scanTime = System.currentTimeMillis() - scanStartTime;
             appendProfileInfo(sb, "agg done");
 
             //outputStream.close() is not necessary
             byte[] compressedAllRows;
+            long compressStartTime = System.currentTimeMillis();
             if (scanNormalComplete.booleanValue()) {
                 allRows = outputStream.toByteArray();
             } else {
@@ -346,6 +349,7 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
                 compressedAllRows = CompressionUtils.compress(allRows);
             }
 
+            long compressTime = System.currentTimeMillis() - compressStartTime;
             appendProfileInfo(sb, "compress done");
 
             OperatingSystemMXBean operatingSystemMXBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
@@ -369,7 +373,10 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
                             setFreeSwapSpaceSize(freeSwapSpaceSize).//
                             setHostname(InetAddress.getLocalHost().getHostName()).// 
                             setEtcMsg(sb.toString()).//
-                            setNormalComplete(scanNormalComplete.booleanValue() ? 1 : 0).build())
+                            setNormalComplete(scanNormalComplete.booleanValue() ? 1 : 0).//
+                            setScanTime(scanTime).//
+                            setCompressTime(compressTime).//
+                            setUncompressedBytes(allRows.length).build())
                     .//
                     build());
 
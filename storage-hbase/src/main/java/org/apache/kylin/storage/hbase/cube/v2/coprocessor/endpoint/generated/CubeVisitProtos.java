@@ -2433,6 +2433,60 @@ public final class CubeVisitProtos {
        * </pre>
        */
       int getNormalComplete();
+
+      // optional int64 scanTime = 11;
+      /**
+       * <code>optional int64 scanTime = 11;</code>
+       *
+       * <pre>
+       *ms spent in scan, filter and aggregation, which run as one pipeline
+       * </pre>
+       */
+      boolean hasScanTime();
+      /**
+       * <code>optional int64 scanTime = 11;</code>
+       *
+       * <pre>
+       *ms spent in scan, filter and aggregation, which run as one pipeline
+       * </pre>
+       */
+      long getScanTime();
+
+      // optional int64 compressTime = 12;
+      /**
+       * <code>optional int64 compressTime = 12;</code>
+       *
+       * <pre>
+       *ms spent in compressing the rows
+       * </pre>
+       */
+      boolean hasCompressTime();
+      /**
+       * <code>optional int64 compressTime = 12;</code>
+       *
+       * <pre>
+       *ms spent in compressing the rows
+       * </pre>
+       */
+      long getCompressTime();
+
+      // optional int64 uncompressedBytes = 13;
+      /**
+       * <code>optional int64 uncompressedBytes = 13;</code>
+       *
+       * <pre>
+       *size of the rows before compression
+       * </pre>
+       */
+      boolean hasUncompressedBytes();
+      /**
+       * <code>optional int64 uncompressedBytes = 13;</code>
+       *
+       * <pre>
+       *size of the rows before compression
+       * </pre>
+       */
+      long getUncompressedBytes();
     }
     /**
      * Protobuf type {@code CubeVisitResponse.Stats}
@@ -2535,6 +2589,21 @@ public final class CubeVisitProtos {
                 normalComplete_ = input.readInt32();
                 break;
               }
+              case 88: {
+                bitField0_ |= 0x00000400;
+                scanTime_ = input.readInt64();
+                break;
+              }
+              case 96: {
+                bitField0_ |= 0x00000800;
+                compressTime_ = input.readInt64();
+                break;
+              }
+              case 104: {
+                bitField0_ |= 0x00001000;
+                uncompressedBytes_ = input.readInt64();
+                break;
+              }
             }
           }
         } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2797,6 +2866,78 @@ public final class CubeVisitProtos {
         return normalComplete_;
       }
 
+      // optional int64 scanTime = 11;
+      public static final int SCANTIME_FIELD_NUMBER = 11;
+      private long scanTime_;
+      /**
+       * <code>optional int64 scanTime = 11;</code>
+       *
+       * <pre>
+       *ms spent in scan, filter and aggregation, which run as one pipeline
+       * </pre>
+       */
+      public boolean hasScanTime() {
+        return ((bitField0_ & 0x00000400) == 0x00000400);
+      }
+      /**
+       * <code>optional int64 scanTime = 11;</code>
+       *
+       * <pre>
+       *ms spent in scan, filter and aggregation, which run as one pipeline
+       * </pre>
+       */
+      public long getScanTime() {
+        return scanTime_;
+      }
+
+      // optional int64 compressTime = 12;
+      public static final int COMPRESSTIME_FIELD_NUMBER = 12;
+      private long compressTime_;
+      /**
+       * <code>optional int64 compressTime = 12;</code>
+       *
+       * <pre>
+       *ms spent in compressing the rows
+       * </pre>
+       */
+      public boolean hasCompressTime() {
+        return ((bitField0_ & 0x00000800) == 0x00000800);
+      }
+      /**
+       * <code>optional int64 compressTime = 12;</code>
+       *
+       * <pre>
+       *ms spent in compressing the rows
+       * </pre>
+       */
+      public long getCompressTime() {
+        return compressTime_;
+      }
+
+      // optional int64 uncompressedBytes = 13;
+      public static final int UNCOMPRESSEDBYTES_FIELD_NUMBER = 13;
+      private long uncompressedBytes_;
+      /**
+       * <code>optional int64 uncompressedBytes = 13;</code>
+       *
+       * <pre>
+       *size of the rows before compression
+       * </pre>
+       */
+      public boolean hasUncompressedBytes() {
+        return ((bitField0_ & 0x00001000) == 0x00001000);
+      }
+      /**
+       * <code>optional int64 uncompressedBytes = 13;</code>
+       *
+       * <pre>
+       *size of the rows before compression
+       * </pre>
+       */
+      public long getUncompressedBytes() {
+        return uncompressedBytes_;
+      }
+
       private void initFields() {
         serviceStartTime_ = 0L;
         serviceEndTime_ = 0L;
@@ -2808,6 +2949,9 @@ public final class CubeVisitProtos {
         hostname_ = "";
         etcMsg_ = "";
         normalComplete_ = 0;
+        scanTime_ = 0L;
+        compressTime_ = 0L;
+        uncompressedBytes_ = 0L;
       }
       private byte memoizedIsInitialized = -1;
       public final boolean isInitialized() {
@@ -2851,6 +2995,15 @@ public final class CubeVisitProtos {
         if (((bitField0_ & 0x00000200) == 0x00000200)) {
           output.writeInt32(10, normalComplete_);
         }
+        if (((bitField0_ & 0x00000400) == 0x00000400)) {
+          output.writeInt64(11, scanTime_);
+        }
+        if (((bitField0_ & 0x00000800) == 0x00000800)) {
+          output.writeInt64(12, compressTime_);
+        }
+        if (((bitField0_ & 0x00001000) == 0x00001000)) {
+          output.writeInt64(13, uncompressedBytes_);
+        }
         getUnknownFields().writeTo(output);
       }
 
@@ -2900,6 +3053,18 @@ public final class CubeVisitProtos {
           size += com.google.protobuf.CodedOutputStream
             .computeInt32Size(10, normalComplete_);
         }
+        if (((bitField0_ & 0x00000400) == 0x00000400)) {
+          size += com.google.protobuf.CodedOutputStream
+            .computeInt64Size(11, scanTime_);
+        }
+        if (((bitField0_ & 0x00000800) == 0x00000800)) {
+          size += com.google.protobuf.CodedOutputStream
+            .computeInt64Size(12, compressTime_);
+        }
+        if (((bitField0_ & 0x00001000) == 0x00001000)) {
+          size += com.google.protobuf.CodedOutputStream
+            .computeInt64Size(13, uncompressedBytes_);
+        }
         size += getUnknownFields().getSerializedSize();
         memoizedSerializedSize = size;
         return size;
@@ -2970,6 +3135,21 @@ public final class CubeVisitProtos {
           result = result && (getNormalComplete()
               == other.getNormalComplete());
         }
+        result = result && (hasScanTime() == other.hasScanTime());
+        if (hasScanTime()) {
+          result = result && (getScanTime()
+              == other.getScanTime());
+        }
+        result = result && (hasCompressTime() == other.hasCompressTime());
+        if (hasCompressTime()) {
+          result = result && (getCompressTime()
+              == other.getCompressTime());
+        }
+        result = result && (hasUncompressedBytes() == other.hasUncompressedBytes());
+        if (hasUncompressedBytes()) {
+          result = result && (getUncompressedBytes()
+              == other.getUncompressedBytes());
+        }
         result = result &&
             getUnknownFields().equals(other.getUnknownFields());
         return result;
@@ -3026,6 +3206,18 @@ public final class CubeVisitProtos {
           hash = (37 * hash) + NORMALCOMPLETE_FIELD_NUMBER;
           hash = (53 * hash) + getNormalComplete();
         }
+        if (hasScanTime()) {
+          hash = (37 * hash) + SCANTIME_FIELD_NUMBER;
+          hash = (53 * hash) + hashLong(getScanTime());
+        }
+        if (hasCompressTime()) {
+          hash = (37 * hash) + COMPRESSTIME_FIELD_NUMBER;
+          hash = (53 * hash) + hashLong(getCompressTime());
+        }
+        if (hasUncompressedBytes()) {
+          hash = (37 * hash) + UNCOMPRESSEDBYTES_FIELD_NUMBER;
+          hash = (53 * hash) + hashLong(getUncompressedBytes());
+        }
         hash = (29 * hash) + getUnknownFields().hashCode();
         memoizedHashCode = hash;
         return hash;
@@ -3155,6 +3347,12 @@ public final class CubeVisitProtos {
           bitField0_ = (bitField0_ & ~0x00000100);
           normalComplete_ = 0;
           bitField0_ = (bitField0_ & ~0x00000200);
+          scanTime_ = 0L;
+          bitField0_ = (bitField0_ & ~0x00000400);
+          compressTime_ = 0L;
+          bitField0_ = (bitField0_ & ~0x00000800);
+          uncompressedBytes_ = 0L;
+          bitField0_ = (bitField0_ & ~0x00001000);
           return this;
         }
 
@@ -3223,6 +3421,18 @@ public final class CubeVisitProtos {
             to_bitField0_ |= 0x00000200;
           }
           result.normalComplete_ = normalComplete_;
+          if (((from_bitField0_ & 0x00000400) == 0x00000400)) {
+            to_bitField0_ |= 0x00000400;
+          }
+          result.scanTime_ = scanTime_;
+          if (((from_bitField0_ & 0x00000800) == 0x00000800)) {
+            to_bitField0_ |= 0x00000800;
+          }
+          result.compressTime_ = compressTime_;
+          if (((from_bitField0_ & 0x00001000) == 0x00001000)) {
+            to_bitField0_ |= 0x00001000;
+          }
+          result.uncompressedBytes_ = uncompressedBytes_;
           result.bitField0_ = to_bitField0_;
           onBuilt();
           return result;
@@ -3273,6 +3483,15 @@ public final class CubeVisitProtos {
           if (other.hasNormalComplete()) {
             setNormalComplete(other.getNormalComplete());
           }
+          if (other.hasScanTime()) {
+            setScanTime(other.getScanTime());
+          }
+          if (other.hasCompressTime()) {
+            setCompressTime(other.getCompressTime());
+          }
+          if (other.hasUncompressedBytes()) {
+            setUncompressedBytes(other.getUncompressedBytes());
+          }
           this.mergeUnknownFields(other.getUnknownFields());
           return this;
         }
@@ -3728,6 +3947,153 @@ public final class CubeVisitProtos {
           return this;
         }
 
+        // optional int64 scanTime = 11;
+        private long scanTime_ ;
+        /**
+         * <code>optional int64 scanTime = 11;</code>
+         *
+         * <pre>
+         *ms spent in scan, filter and aggregation, which run as one pipeline
+         * </pre>
+         */
+        public boolean hasScanTime() {
+          return ((bitField0_ & 0x00000400) == 0x00000400);
+        }
+        /**
+         * <code>optional int64 scanTime = 11;</code>
+         *
+         * <pre>
+         *ms spent in scan, filter and aggregation, which run as one pipeline
+         * </pre>
+         */
+        public long getScanTime() {
+          return scanTime_;
+        }
+        /**
+         * <code>optional int64 scanTime = 11;</code>
+         *
+         * <pre>
+         *ms spent in scan, filter and aggregation, which run as one pipeline
+         * </pre>
+         */
+        public Builder setScanTime(long value) {
+          bitField0_ |= 0x00000400;
+          scanTime_ = value;
+          onChanged();
+          return this;
+        }
+        /**
+         * <code>optional int64 scanTime = 11;</code>
+         *
+         * <pre>
+         *ms spent in scan, filter and aggregation, which run as one pipeline
+         * </pre>
+         */
+        public Builder clearScanTime() {
+          bitField0_ = (bitField0_ & ~0x00000400);
+          scanTime_ = 0L;
+          onChanged();
+          return this;
+        }
+
+        // optional int64 compressTime = 12;
+        private long compressTime_ ;
+        /**
+         * <code>optional int64 compressTime = 12;</code>
+         *
+         * <pre>
+         *ms spent in compressing the rows
+         * </pre>
+         */
+        public boolean hasCompressTime() {
+          return ((bitField0_ & 0x00000800) == 0x00000800);
+        }
+        /**
+         * <code>optional int64 compressTime = 12;</code>
+         *
+         * <pre>
+         *ms spent in compressing the rows
+         * </pre>
+         */
+        public long getCompressTime() {
+          return compressTime_;
+        }
+        /**
+         * <code>optional int64 compressTime = 12;</code>
+         *
+         * <pre>
+         *ms spent in compressing the rows
+         * </pre>
+         */
+        public Builder setCompressTime(long value) {
+          bitField0_ |= 0x00000800;
+          compressTime_ = value;
+          onChanged();
+          return this;
+        }
+        /**
+         * <code>optional int64 compressTime = 12;</code>
+         *
+         * <pre>
+         *ms spent in compressing the rows
+         * </pre>
+         */
+        public Builder clearCompressTime() {
+          bitField0_ = (bitField0_ & ~0x00000800);
+          compressTime_ = 0L;
+          onChanged();
+          return this;
+        }
+
+        // optional int64 uncompressedBytes = 13;
+        private long uncompressedBytes_ ;
+        /**
+         * <code>optional int64 uncompressedBytes = 13;</code>
+         *
+         * <pre>
+         *size of the rows before compression
+         * </pre>
+         */
+        public boolean hasUncompressedBytes() {
+          return ((bitField0_ & 0x00001000) == 0x00001000);
+        }
+        /**
+         * <code>optional int64 uncompressedBytes = 13;</code>
+         *
+         * <pre>
+         *size of the rows before compression
+         * </pre>
+         */
+        public long getUncompressedBytes() {
+          return uncompressedBytes_;
+        }
+        /**
+         * <code>optional int64 uncompressedBytes = 13;</code>
+         *
+         * <pre>
+         *size of the rows before compression
+         * </pre>
+         */
+        public Builder setUncompressedBytes(long value) {
+          bitField0_ |= 0x00001000;
+          uncompressedBytes_ = value;
+          onChanged();
+          return this;
+        }
+        /**
+         * <code>optional int64 uncompressedBytes = 13;</code>
+         *
+         * <pre>
+         *size of the rows before compression
+         * </pre>
+         */
+        public Builder clearUncompressedBytes() {
+          bitField0_ = (bitField0_ & ~0x00001000);
+          uncompressedBytes_ = 0L;
+          onChanged();
+          return this;
+        }
+
         // @@protoc_insertion_point(builder_scope:CubeVisitResponse.Stats)
       }
 
@@ -4528,19 +4894,21 @@ public final class CubeVisitProtos {
       "nsToGT\030\005 \003(\0132\031.CubeVisitRequest.IntList\022" +
       "\021\n\tstartTime\030\006 \002(\003\022\017\n\007timeout\030\007 \002(\003\022\027\n\017k" +
       "ylinProperties\030\010 \002(\t\032\027\n\007IntList\022\014\n\004ints\030" +
-      "\001 \003(\005\"\321\002\n\021CubeVisitResponse\022\026\n\016compresse",
+      "\001 \003(\005\"\224\003\n\021CubeVisitResponse\022\026\n\016compresse",
       "dRows\030\001 \002(\014\022\'\n\005stats\030\002 \002(\0132\030.CubeVisitRe" +
-      "sponse.Stats\032\372\001\n\005Stats\022\030\n\020serviceStartTi" +
+      "sponse.Stats\032\275\002\n\005Stats\022\030\n\020serviceStartTi" +
       "me\030\001 \001(\003\022\026\n\016serviceEndTime\030\002 \001(\003\022\027\n\017scan" +
       "nedRowCount\030\003 \001(\003\022\032\n\022aggregatedRowCount\030" +
       "\004 \001(\003\022\025\n\rsystemCpuLoad\030\005 \001(\001\022\036\n\026freePhys" +
       "icalMemorySize\030\006 \001(\001\022\031\n\021freeSwapSpaceSiz" +
       "e\030\007 \001(\001\022\020\n\010hostname\030\010 \001(\t\022\016\n\006etcMsg\030\t \001(" +
-      "\t\022\026\n\016normalComplete\030\n \001(\0052F\n\020CubeVisitSe" +
-      "rvice\0222\n\tvisitCube\022\021.CubeVisitRequest\032\022." +
-      "CubeVisitResponseB`\nEorg.apache.kylin.st",
-      "orage.hbase.cube.v2.coprocessor.endpoint" +
-      ".generatedB\017CubeVisitProtosH\001\210\001\001\240\001\001"
+      "\t\022\026\n\016normalComplete\030\n \001(\005\022\020\n\010scanTime\030\013 " +
+      "\001(\003\022\024\n\014compressTime\030\014 \001(\003\022\031\n\021uncompresse" +
+      "dBytes\030\r \001(\0032F\n\020CubeVisitService\0222\n\tvisi",
+      "tCube\022\021.CubeVisitRequest\032\022.CubeVisitResp" +
+      "onseB`\nEorg.apache.kylin.storage.hbase.c" +
+      "ube.v2.coprocessor.endpoint.generatedB\017C" +
+      "ubeVisitProtosH\001\210\001\001\240\001\001"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -4570,7 +4938,7 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitResponse_Stats_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitResponse_Stats_descriptor,
-              new java.lang.String[] { "ServiceStartTime", "ServiceEndTime", "ScannedRowCount", "AggregatedRowCount", "SystemCpuLoad", "FreePhysicalMemorySize", "FreeSwapSpaceSize", "Hostname", "EtcMsg", "NormalComplete", });
+              new java.lang.String[] { "ServiceStartTime", "ServiceEndTime", "ScannedRowCount", "AggregatedRowCount", "SystemCpuLoad", "FreePhysicalMemorySize", "FreeSwapSpaceSize", "Hostname", "EtcMsg", "NormalComplete", "ScanTime", "CompressTime", "UncompressedBytes", });
           return null;
         }
       };
@@ -210,6 +210,9 @@ public class CreateHTableJob extends AbstractHadoopJob {
                 innerRegionSplits.add(new HashMap<Long, Double>());
             }
             
+            // observed query load of the cube, null if adaptive shard is off
+            CuboidShardAdvisor shardAdvisor = CuboidShardAdvisor.create(cubeSegment.getCubeInstance().getName(), kylinConfig);
+
             double[] regionSizes = new double[nRegion];
             for (long cuboidId : allCuboids) {
                 double estimatedSize = cubeSizeMap.get(cuboidId);
@@ -219,6 +222,14 @@ public class CreateHTableJob extends AbstractHadoopJob {
                     shardNum = 1;
                 }
 
+                if (shardAdvisor != null) {
+                    int adjusted = shardAdvisor.adjustShardNum(cuboidId, shardNum, nRegion);
+                    if (adjusted != shardNum) {
+                        logger.info(String.format("Cuboid %d 's shard number is adjusted from %d to %d by query stats", cuboidId, shardNum, adjusted));
+                        shardNum = adjusted;
+                    }
+                }
+
                 if (shardNum > nRegion) {
                     logger.info(String.format("Cuboid %d 's estimated size %.2f MB will generate %d regions, reduce to %d", cuboidId, estimatedSize, shardNum, nRegion));
                     shardNum = nRegion;
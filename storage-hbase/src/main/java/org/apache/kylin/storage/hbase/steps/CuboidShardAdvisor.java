@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.cube.cuboid.CuboidQueryStats;
+import org.apache.kylin.cube.cuboid.CuboidQueryStatsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the size based shard number of cuboids with the observed query load. A hot cuboid whose shards respond
+ * slower than the target latency gets more shards, and a cuboid that is hardly queried gets fewer.
+ */
+public class CuboidShardAdvisor {
+
+    private static final Logger logger = LoggerFactory.getLogger(CuboidShardAdvisor.class);
+
+    // a cuboid is cold if its share of visits is below hot ratio divided by this
+    private static final int COLD_DIVISOR = 50;
+
+    private final CuboidQueryStats stats;
+    private final double totalVisits;
+    private final double hotRatio;
+    private final long targetLatencyMs;
+
+    /** returns null if adaptive shard is disabled or there are not enough stats yet */
+    public static CuboidShardAdvisor create(String cubeName, KylinConfig config) {
+        if (!config.isHBaseAdaptiveShardEnabled())
+            return null;
+
+        CuboidQueryStats stats;
+        try {
+            stats = CuboidQueryStatsManager.getInstance(KylinConfig.getInstanceFromEnv()).getCuboidQueryStats(cubeName);
+        } catch (IOException e) {
+            logger.warn("Failed to load cuboid query stats of " + cubeName + ", shard numbers are by size only", e);
+            return null;
+        }
+
+        if (stats == null || stats.getTotalVisitCount() < config.getHBaseAdaptiveShardMinVisits()) {
+            logger.info("Not enough cuboid query stats of " + cubeName + ", shard numbers are by size only");
+            return null;
+        }
+        return new CuboidShardAdvisor(stats, config.getHBaseAdaptiveShardHotRatio(), config.getHBaseAdaptiveShardTargetLatencyMs());
+    }
+
+    CuboidShardAdvisor(CuboidQueryStats stats, double hotRatio, long targetLatencyMs) {
+        this.stats = stats;
+        this.totalVisits = stats.getTotalVisitCount();
+        this.hotRatio = hotRatio;
+        this.targetLatencyMs = targetLatencyMs;
+    }
+
+    public int adjustShardNum(long cuboidId, int shardNum, int maxShardNum) {
+        CuboidQueryStats.CuboidEntry entry = stats.getCuboid(cuboidId);
+        double share = (entry == null || totalVisits == 0) ? 0 : entry.getVisitCount() / totalVisits;
+
+        int result = shardNum;
+        if (share >= hotRatio && entry.getAvgShardLatencyMs() > targetLatencyMs) {
+            // shard latency goes down roughly in proportion to the shard number
+            double observedShards = Math.max(1, entry.getAvgShardsPerVisit());
+            int wanted = (int) Math.ceil(observedShards * entry.getAvgShardLatencyMs() / targetLatencyMs);
+            result = Math.max(shardNum, wanted);
+        } else if (share < hotRatio / COLD_DIVISOR) {
+            result = (shardNum + 1) / 2;
+        }
+
+        return Math.max(1, Math.min(maxShardNum, result));
+    }
+}
@@ -56,10 +56,15 @@ public class HBaseStreamingOutput implements IStreamingOutput {
         try {
             CubeSegment cubeSegment = (CubeSegment) buildable;
 
-            final HTableInterface hTable;
-            hTable = createHTable(cubeSegment);
             List<ICuboidWriter> cuboidWriters = Lists.newArrayList();
-            cuboidWriters.add(new HBaseCuboidWriter(cubeSegment, hTable));
+            if (cubeSegment.getConfig().isStreamingHFileOutputEnabled()) {
+                createHTable(cubeSegment).close();
+                cuboidWriters.add(new HFileCuboidWriter(cubeSegment, HBaseConnection.getCurrentHBaseConfiguration(), new HTableBulkLoadTarget(cubeSegment)));
+            } else {
+                final HTableInterface hTable;
+                hTable = createHTable(cubeSegment);
+                cuboidWriters.add(new HBaseCuboidWriter(cubeSegment, hTable));
+            }
             cuboidWriters.add(new SequenceFileCuboidWriter(cubeSegment.getCubeDesc(), cubeSegment));
             return new CompoundCuboidWriter(cuboidWriters);
         } catch (IOException e) {
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.inmemcubing.ICuboidWriter;
+import org.apache.kylin.cube.kv.AbstractRowKeyEncoder;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.HBaseColumnDesc;
+import org.apache.kylin.cube.model.HBaseColumnFamilyDesc;
+import org.apache.kylin.gridtable.GTRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Writes cuboids as sorted HFiles and bulk loads them through an IHFileTarget. Rows of all cuboids
+ * share one buffer, each time it fills up it is written as one file per region and column family, like
+ * HFileOutputFormat does. As LoadIncrementalHFiles refuses more than a limited number of files per region
+ * and family, files written so far are loaded before the limit is reached, and the rest on close.
+ * An alternative to HBaseCuboidWriter that avoids the per-row Put path of HBase.
+ */
+public class HFileCuboidWriter implements ICuboidWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HFileCuboidWriter.class);
+
+    private final CubeSegment cubeSegment;
+    private final CubeDesc cubeDesc;
+    private final IHFileTarget target;
+    private final FileSystem fs;
+    private final List<KeyValueCreator> keyValueCreators;
+    private final ByteBuffer[] valueBufs;
+    private final Object[] measureValues;
+    private final KeyValueSortBuffer buffer;
+    private final int maxBufferBytes;
+    private final int maxFilesPerRegion;
+
+    private byte[][] regionStartKeys;
+    private int filesPerRegion = 0; // each buffer write adds at most one file per region and family
+    private int bufferWrites = 0;
+    private long lastCuboidId = -1;
+    private AbstractRowKeyEncoder rowKeyEncoder;
+    private byte[] keybuf;
+    private ImmutableBitSet measureColumns;
+
+    public HFileCuboidWriter(CubeSegment segment, Configuration conf, IHFileTarget target) throws IOException {
+        this.cubeSegment = segment;
+        this.cubeDesc = segment.getCubeDesc();
+        this.target = target;
+        this.fs = target.getFileSystem();
+        this.keyValueCreators = Lists.newArrayList();
+
+        KylinConfig kylinConfig = cubeDesc.getConfig();
+        List<byte[]> columnFamilies = Lists.newArrayList();
+        List<byte[]> columnQualifiers = Lists.newArrayList();
+        HBaseColumnFamilyDesc[] cfDescs = cubeDesc.getHbaseMapping().getColumnFamily();
+        String[] families = new String[cfDescs.length];
+        HFileContext[] familyContexts = new HFileContext[cfDescs.length];
+        for (int f = 0; f < cfDescs.length; f++) {
+            HBaseColumnFamilyDesc cfDesc = cfDescs[f];
+            for (HBaseColumnDesc colDesc : cfDesc.getColumns()) {
+                KeyValueCreator creator = new KeyValueCreator(cubeDesc, colDesc);
+                keyValueCreators.add(creator);
+                columnFamilies.add(creator.cfBytes);
+                columnQualifiers.add(creator.qBytes);
+            }
+            families[f] = cfDesc.getName();
+            familyContexts[f] = createHFileContext(CubeHTableUtil.createColumnFamily(kylinConfig, cfDesc.getName(), cfDesc.isMemoryHungry()));
+        }
+
+        this.valueBufs = new ByteBuffer[keyValueCreators.size()];
+        this.measureValues = new Object[cubeDesc.getMeasures().size()];
+        this.buffer = new KeyValueSortBuffer(conf, columnFamilies.toArray(new byte[columnFamilies.size()][]), columnQualifiers.toArray(new byte[columnQualifiers.size()][]), families, familyContexts);
+        this.maxBufferBytes = kylinConfig.getStreamingHFileBufferMB() * 1024 * 1024;
+        this.maxFilesPerRegion = conf.getInt(LoadIncrementalHFiles.MAX_FILES_PER_REGION_PER_FAMILY, 32);
+        this.regionStartKeys = target.getRegionStartKeys();
+    }
+
+    // HFiles are written the same way the table would write them, so compaction needs not rewrite
+    private static HFileContext createHFileContext(HColumnDescriptor cf) {
+        return new HFileContextBuilder() //
+                .withBlockSize(cf.getBlocksize()) //
+                .withCompression(cf.getCompressionType()) //
+                .withDataBlockEncoding(cf.getDataBlockEncoding()) //
+                .build();
+    }
+
+    @Override
+    public void write(long cuboidId, GTRecord record) throws IOException {
+        if (cuboidId != lastCuboidId) {
+            initVariables(cuboidId);
+        }
+
+        rowKeyEncoder.encode(record, record.getInfo().getPrimaryKey(), keybuf);
+        final Object[] values = record.getValues(measureColumns, measureValues);
+        for (int i = 0; i < valueBufs.length; i++) {
+            valueBufs[i] = keyValueCreators.get(i).encodeValue(values);
+        }
+        buffer.add(keybuf, keybuf.length, valueBufs);
+
+        if (buffer.getBufferedBytes() >= maxBufferBytes) {
+            writeBuffer();
+        }
+    }
+
+    private void initVariables(long cuboidId) {
+        rowKeyEncoder = AbstractRowKeyEncoder.createInstance(cubeSegment, Cuboid.findById(cubeDesc, cuboidId));
+        keybuf = rowKeyEncoder.createBuf();
+        int nDims = Long.bitCount(cuboidId);
+        measureColumns = new ImmutableBitSet(nDims, nDims + cubeDesc.getMeasures().size());
+        lastCuboidId = cuboidId;
+    }
+
+    private void writeBuffer() throws IOException {
+        if (buffer.isEmpty())
+            return;
+
+        if (filesPerRegion >= maxFilesPerRegion) {
+            bulkLoad();
+        }
+
+        long t = System.currentTimeMillis();
+        int rows = buffer.getRowCount();
+        // files of different writes may overlap in key range, which bulk load allows
+        String fileName = String.valueOf(bufferWrites++);
+        boolean[] written = buffer.writeHFiles(fs, target.getHFileDir(), fileName, regionStartKeys);
+        filesPerRegion++;
+        logger.info("wrote " + rows + " rows to HFiles " + fileName + "_* of " + countTrue(written) + " regions, cost " + (System.currentTimeMillis() - t) + "ms");
+    }
+
+    private void bulkLoad() throws IOException {
+        target.bulkLoad();
+        filesPerRegion = 0;
+        // regions may have split meanwhile
+        regionStartKeys = target.getRegionStartKeys();
+    }
+
+    private static int countTrue(boolean[] flags) {
+        int n = 0;
+        for (boolean b : flags) {
+            if (b)
+                n++;
+        }
+        return n;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeBuffer();
+        bulkLoad();
+    }
+}
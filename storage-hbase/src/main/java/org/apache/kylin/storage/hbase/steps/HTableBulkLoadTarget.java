@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.engine.mr.JobBuilderSupport;
+import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes HFiles into the segment's working dir in HBase cluster and bulk loads them into the segment's HTable.
+ */
+public class HTableBulkLoadTarget implements IHFileTarget {
+
+    private static final Logger logger = LoggerFactory.getLogger(HTableBulkLoadTarget.class);
+
+    private final CubeSegment cubeSegment;
+    private final Path dir;
+
+    public HTableBulkLoadTarget(CubeSegment cubeSegment) {
+        this.cubeSegment = cubeSegment;
+        JobBuilderSupport jobBuilderSupport = new JobBuilderSupport(cubeSegment, "SYSTEM");
+        String hfilePath = jobBuilderSupport.getRealizationRootPath(cubeSegment.getLastBuildJobID()) + "/hfile/";
+        this.dir = new Path(HBaseConnection.makeQualifiedPathInHBaseCluster(hfilePath));
+    }
+
+    @Override
+    public Path getHFileDir() {
+        return dir;
+    }
+
+    @Override
+    public FileSystem getFileSystem() throws IOException {
+        return dir.getFileSystem(HBaseConnection.getCurrentHBaseConfiguration());
+    }
+
+    @Override
+    public byte[][] getRegionStartKeys() throws IOException {
+        HTable hTable = new HTable(HBaseConnection.getCurrentHBaseConfiguration(), cubeSegment.getStorageLocationIdentifier());
+        try {
+            return hTable.getStartKeys();
+        } finally {
+            hTable.close();
+        }
+    }
+
+    @Override
+    public void bulkLoad() throws IOException {
+        final String hTableName = cubeSegment.getStorageLocationIdentifier();
+        final Configuration conf = HBaseConnection.getCurrentHBaseConfiguration();
+        final FileSystem fs = getFileSystem();
+        if (!fs.exists(dir)) {
+            logger.info("No HFile under " + dir + ", skip bulk load");
+            return;
+        }
+
+        long t = System.currentTimeMillis();
+        HTable hTable = new HTable(conf, hTableName);
+        try {
+            new LoadIncrementalHFiles(conf).doBulkLoad(dir, hTable);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("failed to bulk load " + dir + " into " + hTableName, e);
+        } finally {
+            hTable.close();
+        }
+        logger.info("bulk load " + dir + " into " + hTableName + " cost " + (System.currentTimeMillis() - t) + "ms");
+        fs.delete(dir, true);
+    }
+}
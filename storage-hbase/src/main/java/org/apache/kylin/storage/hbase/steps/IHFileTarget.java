@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Where HFileCuboidWriter puts its HFiles, and how they are made visible once all are written.
+ */
+public interface IHFileTarget {
+
+    /** HFiles are written as {dir}/{family}/{file} under this directory */
+    Path getHFileDir();
+
+    FileSystem getFileSystem() throws IOException;
+
+    /** start keys of the regions files are loaded into, in ascending order with the first one empty */
+    byte[][] getRegionStartKeys() throws IOException;
+
+    /** called once after all HFiles are closed */
+    void bulkLoad() throws IOException;
+}
@@ -70,13 +70,20 @@ public class KeyValueCreator {
     }
 
     public KeyValue create(byte[] keyBytes, int keyOffset, int keyLength, Object[] measureValues) {
+        ByteBuffer valueBuf = encodeValue(measureValues);
+
+        return create(keyBytes, keyOffset, keyLength, valueBuf.array(), 0, valueBuf.position());
+    }
+
+    /**
+     * Encode the measures of this column into the reused codec buffer, valid until next call.
+     */
+    public ByteBuffer encodeValue(Object[] measureValues) {
         for (int i = 0; i < colValues.length; i++) {
             colValues[i] = measureValues[refIndex[i]];
         }
 
-        ByteBuffer valueBuf = codec.encode(colValues);
-
-        return create(keyBytes, keyOffset, keyLength, valueBuf.array(), 0, valueBuf.position());
+        return codec.encode(colValues);
     }
 
     public KeyValue create(byte[] keyBytes, int keyOffset, int keyLength, byte[] value, int voffset, int vlen) {
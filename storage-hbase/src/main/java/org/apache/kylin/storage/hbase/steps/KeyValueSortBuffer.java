@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.kylin.common.util.Bytes;
+
+/**
+ * Buffers rows of (key, column values) in one reusable byte arena and writes them out
+ * as key-sorted HFiles, one per region and column family, laid out as {dir}/{family}/{fileName}_{region}
+ * which is what LoadIncrementalHFiles expects. Not thread-safe.
+ */
+public class KeyValueSortBuffer {
+
+    private static final int INIT_ARENA_SIZE = 1024 * 1024;
+    private static final int INIT_ROW_CAPACITY = 1024;
+
+    private final Configuration conf;
+    private final byte[][] columnFamilies; // per column
+    private final byte[][] columnQualifiers; // per column
+    private final String[] families; // distinct families
+    private final int[][] familyColumns; // per family, column indexes in qualifier order
+    private final HFileContext[] familyContexts;
+
+    private byte[] arena = new byte[INIT_ARENA_SIZE];
+    private int arenaSize = 0;
+    private int[] rowStarts = new int[INIT_ROW_CAPACITY];
+    private int rowCount = 0;
+    private boolean sorted = true;
+    private final int[] valueOffsets;
+    private final int[] valueLengths;
+
+    /**
+     * @param columnFamilies family of each column
+     * @param columnQualifiers qualifier of each column
+     * @param families the distinct families, each must appear in columnFamilies
+     * @param familyContexts HFile settings (block size, compression, encoding) of each family
+     */
+    public KeyValueSortBuffer(Configuration conf, byte[][] columnFamilies, byte[][] columnQualifiers, String[] families, HFileContext[] familyContexts) {
+        this.conf = conf;
+        this.columnFamilies = columnFamilies;
+        this.columnQualifiers = columnQualifiers;
+        this.families = families;
+        this.familyContexts = familyContexts;
+        this.familyColumns = new int[families.length][];
+        for (int f = 0; f < families.length; f++) {
+            byte[] family = Bytes.toBytes(families[f]);
+            Integer[] cols = new Integer[columnFamilies.length];
+            int n = 0;
+            for (int i = 0; i < columnFamilies.length; i++) {
+                if (Bytes.equals(family, columnFamilies[i]))
+                    cols[n++] = i;
+            }
+            cols = Arrays.copyOf(cols, n);
+            Arrays.sort(cols, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Bytes.compareTo(KeyValueSortBuffer.this.columnQualifiers[o1], KeyValueSortBuffer.this.columnQualifiers[o2]);
+                }
+            });
+            familyColumns[f] = new int[n];
+            for (int i = 0; i < n; i++) {
+                familyColumns[f][i] = cols[i];
+            }
+        }
+        this.valueOffsets = new int[columnFamilies.length];
+        this.valueLengths = new int[columnFamilies.length];
+    }
+
+    /**
+     * Copy one row into the buffer, each value is taken from position 0 to its current position.
+     */
+    public void add(byte[] key, int keyLength, ByteBuffer[] values) {
+        int rowSize = 4 + keyLength;
+        for (int i = 0; i < values.length; i++) {
+            rowSize += 4 + values[i].position();
+        }
+        ensureCapacity(rowSize);
+
+        int start = arenaSize;
+        arenaSize = Bytes.putInt(arena, arenaSize, keyLength);
+        arenaSize = Bytes.putBytes(arena, arenaSize, key, 0, keyLength);
+        for (int i = 0; i < values.length; i++) {
+            ByteBuffer value = values[i];
+            arenaSize = Bytes.putInt(arena, arenaSize, value.position());
+            arenaSize = Bytes.putBytes(arena, arenaSize, value.array(), value.arrayOffset(), value.position());
+        }
+
+        if (sorted && rowCount > 0 && compareRows(rowStarts[rowCount - 1], start) > 0) {
+            sorted = false;
+        }
+        rowStarts[rowCount++] = start;
+    }
+
+    private void ensureCapacity(int rowSize) {
+        if (arenaSize + rowSize > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + rowSize));
+        }
+        if (rowCount == rowStarts.length) {
+            rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+        }
+    }
+
+    private int compareRows(int start1, int start2) {
+        int len1 = Bytes.toInt(arena, start1);
+        int len2 = Bytes.toInt(arena, start2);
+        return Bytes.compareTo(arena, start1 + 4, len1, arena, start2 + 4, len2);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getBufferedBytes() {
+        return arenaSize;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    /**
+     * Sort the buffered rows by key, write them as {dir}/{family}/{fileName}_{region} and reset the buffer.
+     * Rows are partitioned by the region start keys like HFileOutputFormat does, so each region gets
+     * at most one file per family.
+     *
+     * @param regionStartKeys start keys of the target regions in ascending order, the first one is empty
+     * @return for each region, whether a file is written for it
+     */
+    public boolean[] writeHFiles(FileSystem fs, Path dir, String fileName, byte[][] regionStartKeys) throws IOException {
+        boolean[] written = new boolean[regionStartKeys.length];
+        if (rowCount == 0)
+            return written;
+
+        sortRows();
+
+        CacheConfig cacheConf = new CacheConfig(conf);
+        int from = 0;
+        for (int region = 0; region < regionStartKeys.length && from < rowCount; region++) {
+            int to = from;
+            byte[] regionEnd = region + 1 < regionStartKeys.length ? regionStartKeys[region + 1] : null;
+            while (to < rowCount && (regionEnd == null || compareKey(rowStarts[to], regionEnd) < 0)) {
+                to++;
+            }
+            if (to == from)
+                continue;
+
+            String regionFileName = fileName + "_" + region;
+            for (int f = 0; f < families.length; f++) {
+                writeHFile(fs, new Path(new Path(dir, families[f]), regionFileName), cacheConf, f, from, to);
+            }
+            written[region] = true;
+            from = to;
+        }
+
+        clear();
+        return written;
+    }
+
+    private void writeHFile(FileSystem fs, Path path, CacheConfig cacheConf, int family, int fromRow, int toRow) throws IOException {
+        StoreFile.Writer writer = new StoreFile.WriterBuilder(conf, cacheConf, fs) //
+                .withFilePath(path) //
+                .withComparator(KeyValue.COMPARATOR) //
+                .withFileContext(familyContexts[family]) //
+                .build();
+        try {
+            for (int r = fromRow; r < toRow; r++) {
+                appendRow(writer, rowStarts[r], familyColumns[family]);
+            }
+            writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+            writer.appendFileInfo(StoreFile.BULKLOAD_TASK_KEY, Bytes.toBytes(path.getName()));
+            writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true));
+            writer.appendFileInfo(StoreFile.EXCLUDE_FROM_MINOR_COMPACTION_KEY, Bytes.toBytes(false));
+            writer.appendTrackedTimestampsToMetadata();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private int compareKey(int rowStart, byte[] key) {
+        return Bytes.compareTo(arena, rowStart + 4, Bytes.toInt(arena, rowStart), key, 0, key.length);
+    }
+
+    private void appendRow(StoreFile.Writer writer, int rowStart, int[] columns) throws IOException {
+        int keyLength = Bytes.toInt(arena, rowStart);
+        int keyOffset = rowStart + 4;
+        int pos = keyOffset + keyLength;
+        for (int i = 0; i < valueOffsets.length; i++) {
+            valueLengths[i] = Bytes.toInt(arena, pos);
+            valueOffsets[i] = pos + 4;
+            pos = valueOffsets[i] + valueLengths[i];
+        }
+
+        for (int c : columns) {
+            byte[] family = columnFamilies[c];
+            byte[] qualifier = columnQualifiers[c];
+            // the writer keeps a reference to the last key, so a KeyValue cannot share a reused array here
+            writer.append(new KeyValue(arena, keyOffset, keyLength, //
+                    family, 0, family.length, //
+                    qualifier, 0, qualifier.length, //
+                    0L, KeyValue.Type.Put, //
+                    arena, valueOffsets[c], valueLengths[c]));
+        }
+    }
+
+    private void sortRows() {
+        if (sorted)
+            return;
+
+        Integer[] order = new Integer[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            order[i] = rowStarts[i];
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return compareRows(o1, o2);
+            }
+        });
+        for (int i = 0; i < rowCount; i++) {
+            rowStarts[i] = order[i];
+        }
+        sorted = true;
+    }
+
+    public void clear() {
+        arenaSize = 0;
+        rowCount = 0;
+        sorted = true;
+    }
+}
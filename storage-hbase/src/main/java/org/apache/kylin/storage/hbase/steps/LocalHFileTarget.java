@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the HFiles on local file system without loading them anywhere, for testing and debugging.
+ */
+public class LocalHFileTarget implements IHFileTarget {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalHFileTarget.class);
+
+    private final Configuration conf;
+    private final Path dir;
+    private final byte[][] regionStartKeys;
+
+    public LocalHFileTarget(Configuration conf, String localDir) {
+        this(conf, localDir, new byte[][] { HConstants.EMPTY_BYTE_ARRAY });
+    }
+
+    /** regionStartKeys pretend a table of these regions, so files are split the same way */
+    public LocalHFileTarget(Configuration conf, String localDir, byte[][] regionStartKeys) {
+        this.conf = conf;
+        this.dir = new Path("file://" + localDir);
+        this.regionStartKeys = regionStartKeys;
+    }
+
+    @Override
+    public Path getHFileDir() {
+        return dir;
+    }
+
+    @Override
+    public FileSystem getFileSystem() throws IOException {
+        return FileSystem.getLocal(conf);
+    }
+
+    @Override
+    public byte[][] getRegionStartKeys() {
+        return regionStartKeys;
+    }
+
+    @Override
+    public void bulkLoad() throws IOException {
+        logger.info("HFiles are kept at " + dir);
+    }
+}
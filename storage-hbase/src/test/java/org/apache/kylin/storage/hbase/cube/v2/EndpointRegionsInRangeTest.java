@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Region resolution of the endpoint RPC, against a fake table split at "b", "d" and "f".
+ */
+public class EndpointRegionsInRangeTest {
+
+    private static final TableName TABLE = TableName.valueOf("T");
+
+    private final TreeMap<byte[], HRegionLocation> regions = new TreeMap<byte[], HRegionLocation>(Bytes.BYTES_COMPARATOR);
+
+    public EndpointRegionsInRangeTest() {
+        byte[][] splits = new byte[][] { HConstants.EMPTY_START_ROW, Bytes.toBytes("b"), Bytes.toBytes("d"), Bytes.toBytes("f"), HConstants.EMPTY_END_ROW };
+        for (int i = 0; i < splits.length - 1; i++) {
+            HRegionInfo info = new HRegionInfo(TABLE, splits[i], splits[i + 1]);
+            regions.put(splits[i], new HRegionLocation(info, ServerName.valueOf("host", 16020, 1L)));
+        }
+    }
+
+    private final CubeHBaseEndpointRPC.RegionLookup lookup = new CubeHBaseEndpointRPC.RegionLookup() {
+        @Override
+        public HRegionLocation locate(byte[] row) throws IOException {
+            return regions.floorEntry(row).getValue();
+        }
+    };
+
+    @Test
+    public void testSingleRegion() throws IOException {
+        List<HRegionLocation> found = CubeHBaseEndpointRPC.getRegionsInRange(lookup, Bytes.toBytes("b1"), Bytes.toBytes("c"));
+        Assert.assertEquals(1, found.size());
+        Assert.assertEquals("b", Bytes.toString(found.get(0).getRegionInfo().getStartKey()));
+    }
+
+    @Test
+    public void testEndKeyInclusive() throws IOException {
+        // "d" starts the third region, so it is visited too
+        List<HRegionLocation> found = CubeHBaseEndpointRPC.getRegionsInRange(lookup, Bytes.toBytes("a"), Bytes.toBytes("d"));
+        Assert.assertEquals(3, found.size());
+        Assert.assertEquals("d", Bytes.toString(found.get(2).getRegionInfo().getStartKey()));
+    }
+
+    @Test
+    public void testStopAtLastRegion() throws IOException {
+        List<HRegionLocation> found = CubeHBaseEndpointRPC.getRegionsInRange(lookup, Bytes.toBytes("c"), Bytes.toBytes("zzz"));
+        Assert.assertEquals(3, found.size());
+        Assert.assertArrayEquals(HConstants.EMPTY_END_ROW, found.get(2).getRegionInfo().getEndKey());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExpectedSizeIteratorTest extends LocalFileMetadataTestCase {
+
+    private ExecutorService pool;
+    private Configuration hconf;
+
+    @Before
+    public void setup() throws Exception {
+        this.createTestMetadata();
+        pool = Executors.newCachedThreadPool();
+        hconf = new Configuration(false);
+        hconf.setInt(HConstants.HBASE_RPC_TIMEOUT_KEY, 1000);
+        hconf.setInt(HConstants.HBASE_CLIENT_RETRIES_NUMBER, 1);
+    }
+
+    @After
+    public void after() throws Exception {
+        pool.shutdownNow();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testCompletionOrder() {
+        ExpectedSizeIterator itr = new ExpectedSizeIterator(3, hconf);
+        itr.append(Bytes.toBytes("b"));
+        itr.append(Bytes.toBytes("c"));
+        itr.append(Bytes.toBytes("a"));
+
+        Assert.assertEquals("b", Bytes.toString(itr.next()));
+        Assert.assertEquals("c", Bytes.toString(itr.next()));
+        Assert.assertEquals("a", Bytes.toString(itr.next()));
+        Assert.assertFalse(itr.hasNext());
+    }
+
+    @Test
+    public void testCoprocExceptionCancelsWithoutInterrupt() throws Exception {
+        ExpectedSizeIterator itr = new ExpectedSizeIterator(2, hconf);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        FutureTask<Void> running = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return null;
+            }
+        });
+        final AtomicBoolean pendingRan = new AtomicBoolean(false);
+        FutureTask<Void> pending = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                pendingRan.set(true);
+                return null;
+            }
+        });
+        pool.submit(running);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        itr.addRpcFuture(running);
+        itr.addRpcFuture(pending);
+
+        itr.notifyCoprocException(new RuntimeException("region failed"));
+        try {
+            itr.next();
+            Assert.fail("the coprocessor exception should fail the query");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("region failed", e.getCause().getMessage());
+        }
+        Assert.assertTrue(itr.isClosed());
+
+        // the pending RPC never runs
+        Assert.assertTrue(pending.isCancelled());
+        pending.run();
+        Assert.assertFalse(pendingRan.get());
+
+        // the running RPC is left to finish, not interrupted
+        Thread.sleep(100);
+        Assert.assertFalse(interrupted.get());
+        release.countDown();
+        Thread.sleep(100);
+        Assert.assertFalse(interrupted.get());
+    }
+
+    @Test
+    public void testCloseDropsLateResults() {
+        ExpectedSizeIterator itr = new ExpectedSizeIterator(2, hconf);
+        itr.append(Bytes.toBytes("a"));
+        itr.close();
+
+        itr.append(Bytes.toBytes("b"));
+        Assert.assertTrue(itr.queue.isEmpty());
+
+        FutureTask<Void> late = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null);
+        itr.addRpcFuture(late);
+        Assert.assertTrue(late.isCancelled());
+    }
+
+    @Test
+    public void testAwaitResubmit() throws Exception {
+        ExpectedSizeIterator itr = new ExpectedSizeIterator(1, hconf);
+        Assert.assertTrue(itr.awaitResubmit());
+
+        itr.notifyCoprocException(new RuntimeException());
+        Assert.assertFalse(itr.awaitResubmit());
+
+        ExpectedSizeIterator closed = new ExpectedSizeIterator(1, hconf);
+        closed.close();
+        Assert.assertFalse(closed.awaitResubmit());
+
+        ExpectedSizeIterator timedOut = new ExpectedSizeIterator(1, hconf);
+        timedOut.timeoutTS = System.currentTimeMillis() - 1;
+        Assert.assertFalse(timedOut.awaitResubmit());
+    }
+}
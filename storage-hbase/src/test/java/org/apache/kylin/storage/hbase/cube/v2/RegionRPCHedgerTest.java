@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kylin.storage.hbase.cube.v2.RegionRPCHedger.LatencyWindow;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The region RPC is stubbed by a Callable that answers after a given delay, per attempt. Unless told otherwise the
+ * region can be re-issued when the hedge looks it up again.
+ */
+public class RegionRPCHedgerTest {
+
+    private ExecutorService pool;
+    private ScheduledExecutorService timer;
+    private LatencyWindow latencies;
+
+    @Before
+    public void setup() {
+        pool = Executors.newCachedThreadPool();
+        timer = Executors.newSingleThreadScheduledExecutor();
+        latencies = new LatencyWindow(100, 10);
+    }
+
+    @After
+    public void after() {
+        pool.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testFastResponseNotHedged() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, 200, new AtomicInteger(10));
+        StubRPC rpc = new StubRPC(0, 0);
+        Result result = new Result();
+
+        hedger.submit(rpc, moved(rpc), result).get(5, TimeUnit.SECONDS);
+        Thread.sleep(300);
+
+        Assert.assertEquals("attempt-0", result.responses.poll());
+        Assert.assertFalse(result.hedged);
+        Assert.assertEquals(1, rpc.calls.get());
+        Assert.assertEquals(0, hedger.getHedgedCount());
+    }
+
+    @Test
+    public void testHedgeWins() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, 50, new AtomicInteger(10));
+        StubRPC rpc = new StubRPC(500, 0);
+        Result result = new Result();
+
+        hedger.submit(rpc, moved(rpc), result).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals("attempt-1", result.responses.poll());
+        Assert.assertTrue(result.hedged);
+        Assert.assertEquals(1, hedger.getHedgedCount());
+        Assert.assertEquals(1, hedger.getWinCount());
+        // the slow attempt runs on, not interrupted, and its response is dropped
+        Thread.sleep(700);
+        Assert.assertEquals(1, rpc.interrupted.getCount());
+        Assert.assertTrue(result.responses.isEmpty());
+    }
+
+    @Test
+    public void testFirstAttemptWinsOverHedge() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, 50, new AtomicInteger(10));
+        StubRPC rpc = new StubRPC(200, 500);
+        Result result = new Result();
+
+        hedger.submit(rpc, moved(rpc), result).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals("attempt-0", result.responses.poll());
+        Assert.assertFalse(result.hedged);
+        Assert.assertEquals(1, hedger.getHedgedCount());
+        Assert.assertEquals(0, hedger.getWinCount());
+        Thread.sleep(700);
+        Assert.assertEquals(1, rpc.interrupted.getCount());
+        Assert.assertTrue(result.responses.isEmpty());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, 20, new AtomicInteger(1));
+        StubRPC rpc1 = new StubRPC(500, 500);
+        StubRPC rpc2 = new StubRPC(500, 500);
+        Result result1 = new Result();
+        Result result2 = new Result();
+
+        Future<?> f1 = hedger.submit(rpc1, moved(rpc1), result1);
+        Future<?> f2 = hedger.submit(rpc2, moved(rpc2), result2);
+        f1.get(5, TimeUnit.SECONDS);
+        f2.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, hedger.getHedgedCount());
+        Assert.assertEquals(3, rpc1.calls.get() + rpc2.calls.get());
+        Assert.assertEquals(1, result1.responses.size());
+        Assert.assertEquals(1, result2.responses.size());
+    }
+
+    @Test
+    public void testBudgetPerQuery() throws Exception {
+        // two scans of one query share its budget
+        AtomicInteger budget = new AtomicInteger(1);
+        RegionRPCHedger hedger1 = new RegionRPCHedger(pool, timer, latencies, 20, budget);
+        RegionRPCHedger hedger2 = new RegionRPCHedger(pool, timer, latencies, 20, budget);
+        StubRPC rpc1 = new StubRPC(300, 0);
+        StubRPC rpc2 = new StubRPC(300, 0);
+        Result result1 = new Result();
+        Result result2 = new Result();
+
+        Future<?> f1 = hedger1.submit(rpc1, moved(rpc1), result1);
+        Future<?> f2 = hedger2.submit(rpc2, moved(rpc2), result2);
+        f1.get(5, TimeUnit.SECONDS);
+        f2.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, hedger1.getHedgedCount() + hedger2.getHedgedCount());
+        Assert.assertEquals(3, rpc1.calls.get() + rpc2.calls.get());
+        Assert.assertEquals(0, budget.get());
+    }
+
+    @Test
+    public void testFailureWaitsForHedge() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, 20, new AtomicInteger(10));
+        StubRPC rpc = new StubRPC(200, 400);
+        rpc.failFirst = true;
+        Result result = new Result();
+
+        hedger.submit(rpc, moved(rpc), result).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals("attempt-1", result.responses.poll());
+        Assert.assertNull(result.failure);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, -1, new AtomicInteger(10));
+        StubRPC rpc = new StubRPC(0, 0);
+        rpc.failFirst = true;
+        Result result = new Result();
+
+        hedger.submit(rpc, moved(rpc), result).get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(result.failure instanceof IOException);
+        Assert.assertTrue(result.responses.isEmpty());
+        Assert.assertEquals(0, hedger.getHedgedCount());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, 100, new AtomicInteger(10));
+        StubRPC rpc = new StubRPC(500, 500);
+        Result result = new Result();
+
+        Future<?> future = hedger.submit(rpc, moved(rpc), result);
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(future.isDone());
+        Assert.assertTrue(future.isCancelled());
+        Thread.sleep(700);
+
+        Assert.assertEquals(0, hedger.getHedgedCount());
+        Assert.assertTrue(result.responses.isEmpty());
+        Assert.assertNull(result.failure);
+        // cancelling never interrupts a running RPC
+        Assert.assertEquals(1, rpc.interrupted.getCount());
+    }
+
+    @Test
+    public void testSplitNotHedged() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, 20, new AtomicInteger(1));
+        StubRPC rpc1 = new StubRPC(200, 0);
+        StubRPC rpc2 = new StubRPC(200, 0);
+        final AtomicInteger lookups = new AtomicInteger();
+        RegionRPCHedger.Relocator<String> split = new RegionRPCHedger.Relocator<String>() {
+            @Override
+            public Callable<String> relocate() {
+                lookups.incrementAndGet();
+                return null;
+            }
+        };
+        Result result1 = new Result();
+        Result result2 = new Result();
+
+        hedger.submit(rpc1, split, result1).get(5, TimeUnit.SECONDS);
+        hedger.submit(rpc2, split, result2).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals("attempt-0", result1.responses.poll());
+        Assert.assertEquals("attempt-0", result2.responses.poll());
+        Assert.assertEquals(0, hedger.getHedgedCount());
+        Assert.assertEquals(1, rpc1.calls.get());
+        Assert.assertEquals(1, rpc2.calls.get());
+        // a lookup that finds the region split gives the budget back
+        Assert.assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testRelocateFailure() throws Exception {
+        RegionRPCHedger hedger = new RegionRPCHedger(pool, timer, latencies, 20, new AtomicInteger(10));
+        StubRPC rpc = new StubRPC(200, 0);
+        rpc.failFirst = true;
+        Result result = new Result();
+        RegionRPCHedger.Relocator<String> broken = new RegionRPCHedger.Relocator<String>() {
+            @Override
+            public Callable<String> relocate() throws Exception {
+                throw new IOException("meta is not available");
+            }
+        };
+
+        hedger.submit(rpc, broken, result).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals("region server is down", result.failure.getMessage());
+        Assert.assertEquals(0, hedger.getHedgedCount());
+        Assert.assertEquals(1, rpc.calls.get());
+    }
+
+    @Test
+    public void testLatenciesPerCuboid() {
+        Assert.assertSame(RegionRPCHedger.getLatencies("cube", 255), RegionRPCHedger.getLatencies("cube", 255));
+        Assert.assertNotSame(RegionRPCHedger.getLatencies("cube", 255), RegionRPCHedger.getLatencies("cube", 7));
+        Assert.assertNotSame(RegionRPCHedger.getLatencies("cube", 255), RegionRPCHedger.getLatencies("other_cube", 255));
+    }
+
+    @Test
+    public void testLatencyWindow() {
+        Assert.assertEquals(-1, latencies.percentile(95));
+        for (int i = 1; i <= 200; i++) {
+            latencies.add(i);
+        }
+        // only the last 100 are kept
+        Assert.assertEquals(195, latencies.percentile(95));
+        Assert.assertEquals(150, latencies.percentile(50));
+        Assert.assertEquals(101, latencies.percentile(0));
+        Assert.assertEquals(200, latencies.percentile(100));
+    }
+
+    private static RegionRPCHedger.Relocator<String> moved(final Callable<String> rpc) {
+        return new RegionRPCHedger.Relocator<String>() {
+            @Override
+            public Callable<String> relocate() {
+                return rpc;
+            }
+        };
+    }
+
+    private static class StubRPC implements Callable<String> {
+        final long[] delays;
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        boolean failFirst = false;
+
+        StubRPC(long... delays) {
+            this.delays = delays;
+        }
+
+        @Override
+        public String call() throws Exception {
+            int attempt = calls.getAndIncrement();
+            try {
+                Thread.sleep(delays[attempt]);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            if (attempt == 0 && failFirst) {
+                throw new IOException("region server is down");
+            }
+            return "attempt-" + attempt;
+        }
+    }
+
+    private static class Result implements RegionRPCHedger.Callback<String> {
+        final BlockingQueue<String> responses = new ArrayBlockingQueue<String>(2);
+        volatile boolean hedged;
+        volatile Throwable failure;
+
+        @Override
+        public void completed(String response, boolean hedged) {
+            this.hedged = hedged;
+            responses.add(response);
+        }
+
+        @Override
+        public void failed(Throwable ex) {
+            failure = ex;
+        }
+    }
+}
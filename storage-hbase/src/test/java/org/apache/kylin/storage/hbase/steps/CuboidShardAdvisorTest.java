@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.kylin.cube.cuboid.CuboidQueryStats;
+import org.junit.Test;
+
+public class CuboidShardAdvisorTest {
+
+    @Test
+    public void testAdjustShardNum() {
+        CuboidQueryStats stats = new CuboidQueryStats("test_cube");
+        // hot and slow: 2 shards per visit at 3000 ms each
+        stats.getOrCreateCuboid(1L).add(500, 1000, 3000 * 1000);
+        // hot but fast enough
+        stats.getOrCreateCuboid(2L).add(400, 400, 200 * 400);
+        // cold
+        stats.getOrCreateCuboid(3L).add(0.5, 0.5, 2500);
+        // lukewarm
+        stats.getOrCreateCuboid(4L).add(20, 20, 5000 * 20);
+
+        CuboidShardAdvisor advisor = new CuboidShardAdvisor(stats, 0.05, 1000);
+
+        assertEquals(6, advisor.adjustShardNum(1L, 1, 10));
+        assertEquals(8, advisor.adjustShardNum(1L, 8, 10));
+        assertEquals(4, advisor.adjustShardNum(1L, 1, 4)); // capped by region count
+
+        assertEquals(3, advisor.adjustShardNum(2L, 3, 10));
+
+        assertEquals(3, advisor.adjustShardNum(3L, 6, 10));
+        assertEquals(1, advisor.adjustShardNum(3L, 1, 10));
+        assertEquals(2, advisor.adjustShardNum(99L, 4, 10)); // never visited
+
+        assertEquals(5, advisor.adjustShardNum(4L, 5, 10));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.engine.mr.HadoopUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class KeyValueSortBufferTest {
+
+    private File tempDir;
+    private Configuration conf;
+
+    @Before
+    public void setup() throws Exception {
+        tempDir = File.createTempFile("KeyValueSortBufferTest", "");
+        FileUtils.forceDelete(tempDir);
+        conf = HadoopUtil.getCurrentConfiguration();
+    }
+
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteQuietly(tempDir);
+    }
+
+    @Test
+    public void testWriteSortedHFiles() throws Exception {
+        byte[] f1 = Bytes.toBytes("F1");
+        byte[] f2 = Bytes.toBytes("F2");
+        // F1 columns deliberately out of qualifier order
+        byte[][] families = new byte[][] { f1, f1, f2 };
+        byte[][] qualifiers = new byte[][] { Bytes.toBytes("M2"), Bytes.toBytes("M1"), Bytes.toBytes("M") };
+        HFileContext context = new HFileContextBuilder().build();
+        KeyValueSortBuffer buffer = new KeyValueSortBuffer(conf, families, qualifiers, new String[] { "F1", "F2" }, new HFileContext[] { context, context });
+
+        LocalHFileTarget target = new LocalHFileTarget(conf, tempDir.getAbsolutePath());
+        ByteBuffer[] values = new ByteBuffer[] { ByteBuffer.allocate(16), ByteBuffer.allocate(16), ByteBuffer.allocate(16) };
+        byte[] key = new byte[4];
+        int[] order = new int[] { 5, 3, 9, 1, 7, 2, 8, 0, 6, 4 };
+        for (int k : order) {
+            Bytes.putInt(key, 0, k);
+            for (int i = 0; i < values.length; i++) {
+                values[i].clear();
+                values[i].putInt(k * 10 + i);
+            }
+            buffer.add(key, key.length, values);
+        }
+        assertEquals(order.length, buffer.getRowCount());
+
+        buffer.writeHFiles(target.getFileSystem(), target.getHFileDir(), "1", target.getRegionStartKeys());
+        assertTrue(buffer.isEmpty());
+        target.bulkLoad();
+
+        List<KeyValue> f1Cells = readHFile(new Path(new Path(target.getHFileDir(), "F1"), "1_0"));
+        assertEquals(order.length * 2, f1Cells.size());
+        for (int k = 0; k < order.length; k++) {
+            KeyValue m1 = f1Cells.get(k * 2);
+            KeyValue m2 = f1Cells.get(k * 2 + 1);
+            assertEquals(k, Bytes.toInt(m1.getRowArray(), m1.getRowOffset()));
+            assertEquals("M1", Bytes.toString(m1.getQualifierArray(), m1.getQualifierOffset(), m1.getQualifierLength()));
+            assertEquals(k * 10 + 1, Bytes.toInt(m1.getValueArray(), m1.getValueOffset()));
+            assertEquals("M2", Bytes.toString(m2.getQualifierArray(), m2.getQualifierOffset(), m2.getQualifierLength()));
+            assertEquals(k * 10, Bytes.toInt(m2.getValueArray(), m2.getValueOffset()));
+        }
+
+        List<KeyValue> f2Cells = readHFile(new Path(new Path(target.getHFileDir(), "F2"), "1_0"));
+        assertEquals(order.length, f2Cells.size());
+        for (int k = 0; k < order.length; k++) {
+            KeyValue m = f2Cells.get(k);
+            assertEquals(k, Bytes.toInt(m.getRowArray(), m.getRowOffset()));
+            assertEquals(k * 10 + 2, Bytes.toInt(m.getValueArray(), m.getValueOffset()));
+        }
+    }
+
+    @Test
+    public void testOneFilePerRegionForManyCuboids() throws Exception {
+        byte[] f1 = Bytes.toBytes("F1");
+        HFileContext context = new HFileContextBuilder().build();
+        KeyValueSortBuffer buffer = new KeyValueSortBuffer(conf, new byte[][] { f1 }, new byte[][] { Bytes.toBytes("M") }, new String[] { "F1" }, new HFileContext[] { context });
+
+        // rowkey is shard + cuboid + dim, so every cuboid spreads over all 3 regions
+        byte[][] regionStartKeys = new byte[][] { HConstants.EMPTY_BYTE_ARRAY, Bytes.toBytes((short) 1), Bytes.toBytes((short) 2) };
+        LocalHFileTarget target = new LocalHFileTarget(conf, tempDir.getAbsolutePath(), regionStartKeys);
+        ByteBuffer[] values = new ByteBuffer[] { ByteBuffer.allocate(16) };
+        byte[] key = new byte[14];
+        int nCuboids = 40;
+        int nWrites = 2;
+        for (int w = 0; w < nWrites; w++) {
+            for (long cuboid = 1; cuboid <= nCuboids; cuboid++) {
+                for (short shard = 0; shard < 3; shard++) {
+                    Bytes.putShort(key, 0, shard);
+                    Bytes.putLong(key, 2, cuboid);
+                    Bytes.putInt(key, 10, w);
+                    values[0].clear();
+                    values[0].putLong(cuboid);
+                    buffer.add(key, key.length, values);
+                }
+            }
+            boolean[] written = buffer.writeHFiles(target.getFileSystem(), target.getHFileDir(), String.valueOf(w), regionStartKeys);
+            for (boolean b : written) {
+                assertTrue(b);
+            }
+        }
+
+        // one file per region each write, no matter how many cuboids
+        Path familyDir = new Path(target.getHFileDir(), "F1");
+        assertEquals(nWrites * regionStartKeys.length, target.getFileSystem().listStatus(familyDir).length);
+        for (int w = 0; w < nWrites; w++) {
+            for (short region = 0; region < regionStartKeys.length; region++) {
+                List<KeyValue> cells = readHFile(new Path(familyDir, w + "_" + region));
+                assertEquals(nCuboids, cells.size());
+                for (int i = 0; i < cells.size(); i++) {
+                    KeyValue kv = cells.get(i);
+                    assertEquals(region, Bytes.toShort(kv.getRowArray(), kv.getRowOffset()));
+                    assertEquals(i + 1, Bytes.toLong(kv.getRowArray(), kv.getRowOffset() + 2));
+                }
+            }
+        }
+    }
+
+    private List<KeyValue> readHFile(Path path) throws Exception {
+        FileSystem fs = FileSystem.getLocal(conf);
+        HFile.Reader reader = HFile.createReader(fs, path, new CacheConfig(conf), conf);
+        List<KeyValue> result = Lists.newArrayList();
+        try {
+            reader.loadFileInfo();
+            HFileScanner scanner = reader.getScanner(false, false);
+            if (scanner.seekTo()) {
+                do {
+                    result.add(scanner.getKeyValue().clone());
+                } while (scanner.next());
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+}